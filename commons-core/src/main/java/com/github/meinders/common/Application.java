@@ -21,8 +21,6 @@ import java.io.*;
 import java.net.*;
 import java.util.concurrent.atomic.*;
 
-import jakarta.xml.bind.*;
-
 public class Application {
 	private static AtomicReference<Application> instance = new AtomicReference<Application>();
 
@@ -48,14 +46,12 @@ public class Application {
 	protected void initialize() {
 		try {
 			readApplicationDescriptor();
-		} catch (JAXBException e) {
+		} catch (IOException e) {
 			throw new IOError(e);
 		}
 	}
 
-	private void readApplicationDescriptor() throws JAXBException {
-		JAXBContext context = JAXBContext.newInstance( ApplicationDescriptor.class);
-		Unmarshaller unmarshaller = context.createUnmarshaller();
+	private void readApplicationDescriptor() throws IOException {
 		ClassLoader classLoader = Application.class.getClassLoader();
 		URL source = classLoader.getResource("META-INF/application.xml");
 		if (source == null) {
@@ -64,7 +60,8 @@ public class Application {
 		if (source == null) {
 			throw new RuntimeException("Can't find 'application.xml'");
 		}
-		descriptor = (ApplicationDescriptor) unmarshaller.unmarshal(source);
+		// avoids the cost of creating a JAXB context during startup
+		descriptor = ApplicationDescriptor.read(source);
 	}
 
 	public ApplicationDescriptor getDescriptor() {
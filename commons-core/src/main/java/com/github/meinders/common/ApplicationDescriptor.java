@@ -18,41 +18,216 @@
 package com.github.meinders.common;
 
 import java.io.*;
+import java.net.*;
 import java.text.*;
+import java.time.*;
+import java.time.format.*;
 import java.util.*;
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.*;
-import javax.xml.transform.stream.*;
+import javax.xml.stream.*;
 
 import jakarta.xml.bind.*;
 import jakarta.xml.bind.annotation.*;
-import org.w3c.dom.*;
 
+/**
+ * Describes an application, as specified by an <code>application.xml</code>
+ * file. Descriptors can be read and written using {@link #read(InputStream)}
+ * and {@link #write(OutputStream)}, which produce the same XML as JAXB but
+ * don't need a {@link JAXBContext}, since creating one takes a significant
+ * part of the startup time of a small application. The (shared) context for
+ * use with JAXB is available from {@link #getContext()}.
+ *
+ * @author Gerrit Meinders
+ */
 @XmlRootElement
 public class ApplicationDescriptor {
-	public static void main(String[] args) throws Exception {
-		JAXBContext context = JAXBContext.newInstance(ApplicationDescriptor.class);
+	/**
+	 * Name of the document element, as derived by JAXB.
+	 */
+	private static final String ROOT_ELEMENT = "applicationDescriptor";
+
+	private static volatile JAXBContext context;
+
+	/**
+	 * Returns a JAXB context for application descriptors. The context is
+	 * created when first needed and then shared, since it is thread-safe.
+	 *
+	 * @return the JAXB context
+	 * @throws JAXBException if the context can't be created
+	 */
+	public static JAXBContext getContext() throws JAXBException {
+		JAXBContext result = context;
+		if (result == null) {
+			synchronized (ApplicationDescriptor.class) {
+				result = context;
+				if (result == null) {
+					result = JAXBContext.newInstance(ApplicationDescriptor.class);
+					context = result;
+				}
+			}
+		}
+		return result;
+	}
 
-		Unmarshaller unmarshaller = context.createUnmarshaller();
-		ApplicationDescriptor descriptor = (ApplicationDescriptor) unmarshaller.unmarshal(new File(
-		        "template-application.xml"));
+	public static void main(String[] args) throws Exception {
+		ApplicationDescriptor descriptor;
+		InputStream in = new FileInputStream("template-application.xml");
+		try {
+			descriptor = read(in);
+		} finally {
+			in.close();
+		}
 		descriptor.version.buildDate = new Date();
+		descriptor.write(System.out);
+	}
 
-		Marshaller marshaller = context.createMarshaller();
+	/**
+	 * Reads an application descriptor from the given location.
+	 *
+	 * @param source the location of the descriptor
+	 * @return the application descriptor
+	 * @throws IOException if the descriptor can't be read or is invalid
+	 */
+	public static ApplicationDescriptor read(URL source) throws IOException {
+		InputStream in = source.openStream();
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads an application descriptor from the given stream, which is not
+	 * closed. Unknown elements and attributes are ignored, as JAXB would.
+	 *
+	 * @param in the stream to read from
+	 * @return the application descriptor
+	 * @throws IOException if the descriptor can't be read or is invalid
+	 */
+	public static ApplicationDescriptor read(InputStream in) throws IOException {
+		try {
+			// the built-in implementation avoids a service lookup at startup
+			XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+			try {
+				reader.nextTag();
+				if (!ROOT_ELEMENT.equals(reader.getLocalName())) {
+					throw new IOException("Not an application descriptor: "
+					        + reader.getName());
+				}
 
-		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-		Document document = documentBuilder.newDocument();
-		marshaller.marshal(descriptor, document);
+				ApplicationDescriptor result = new ApplicationDescriptor();
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("title".equals(name)) {
+						result.title = reader.getElementText();
+					} else if ("short-name".equals(name)) {
+						result.shortName = reader.getElementText();
+					} else if ("vendor".equals(name)) {
+						result.vendor = reader.getElementText();
+					} else if ("vendorURL".equals(name)) {
+						result.vendorURL = reader.getElementText();
+					} else if ("vendorEmail".equals(name)) {
+						result.vendorEmail = reader.getElementText();
+					} else if ("copyright".equals(name)) {
+						result.copyright = reader.getElementText();
+					} else if ("version".equals(name)) {
+						result.version = Version.read(reader);
+					} else {
+						skipElement(reader);
+					}
+				}
+				return result;
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Invalid application descriptor", e);
+		} catch (RuntimeException e) {
+			// e.g. invalid numbers or dates
+			throw new IOException("Invalid application descriptor", e);
+		}
+	}
 
-		TransformerFactory transformerFactory = TransformerFactory.newInstance();
-		Transformer transformer = transformerFactory.newTransformer();
-		transformer.setOutputProperty(
-		        "{http://xml.apache.org/xslt}indent-amount", "4");
-		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-		transformer.transform(new DOMSource(document), new StreamResult(
-		        System.out));
+	/**
+	 * Skips the current element, including its content.
+	 */
+	private static void skipElement(XMLStreamReader reader)
+	        throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Writes this application descriptor to the given stream, which is not
+	 * closed, using the UTF-8 encoding. Elements are indented by four
+	 * spaces.
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if the descriptor can't be written
+	 */
+	public void write(OutputStream out) throws IOException {
+		try {
+			XMLStreamWriter writer = XMLOutputFactory.newDefaultFactory().createXMLStreamWriter(
+			        out, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement(ROOT_ELEMENT);
+			writeElement(writer, "title", title);
+			writeElement(writer, "short-name", shortName);
+			writeElement(writer, "vendor", vendor);
+			writeElement(writer, "vendorURL", vendorURL);
+			writeElement(writer, "vendorEmail", vendorEmail);
+			if (version != null) {
+				version.write(writer);
+			}
+			writeElement(writer, "copyright", copyright);
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.close();
+			out.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to write application descriptor", e);
+		}
+	}
+
+	private static void writeElement(XMLStreamWriter writer, String name,
+	        String value) throws XMLStreamException {
+		if (value != null) {
+			writer.writeCharacters("\n    ");
+			writer.writeStartElement(name);
+			writer.writeCharacters(value);
+			writer.writeEndElement();
+		}
+	}
+
+	/**
+	 * Parses a date in the <code>xsd:dateTime</code> format, as written by
+	 * JAXB. Dates without a time zone are in the default time zone.
+	 */
+	private static Date parseDateTime(String text) {
+		text = text.trim();
+		try {
+			return Date.from(OffsetDateTime.parse(text).toInstant());
+		} catch (DateTimeParseException e) {
+			return Date.from(LocalDateTime.parse(text).atZone(
+			        ZoneId.systemDefault()).toInstant());
+		}
+	}
+
+	private static String formatDateTime(Date date) {
+		return OffsetDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()).format(
+		        DateTimeFormatter.ISO_OFFSET_DATE_TIME);
 	}
 
 	private String title;
@@ -139,7 +314,7 @@ public class ApplicationDescriptor {
 		this.copyright = copyright;
 	}
 
-	private static class Version {
+	public static class Version {
 		private int major = 1;
 
 		private Integer minor;
@@ -218,6 +393,62 @@ public class ApplicationDescriptor {
 			this.buildDate = buildDate;
 		}
 
+		/**
+		 * Reads a version from the given reader, which is positioned at the
+		 * start of the version element and is left at its end.
+		 */
+		static Version read(XMLStreamReader reader) throws XMLStreamException {
+			Version result = new Version();
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				String name = reader.getAttributeLocalName(i);
+				String value = reader.getAttributeValue(i).trim();
+				if ("major".equals(name)) {
+					result.major = Integer.parseInt(value);
+				} else if ("minor".equals(name)) {
+					result.minor = Integer.valueOf(value);
+				} else if ("revision".equals(name)) {
+					result.revision = Integer.valueOf(value);
+				} else if ("buildNumber".equals(name)) {
+					result.buildNumber = Integer.valueOf(value);
+				}
+			}
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				if ("buildDate".equals(reader.getLocalName())) {
+					result.buildDate = parseDateTime(reader.getElementText());
+				} else {
+					skipElement(reader);
+				}
+			}
+			return result;
+		}
+
+		void write(XMLStreamWriter writer) throws XMLStreamException {
+			writer.writeCharacters("\n    ");
+			if (buildDate == null) {
+				writer.writeEmptyElement("version");
+			} else {
+				writer.writeStartElement("version");
+			}
+			writer.writeAttribute("major", Integer.toString(major));
+			if (minor != null) {
+				writer.writeAttribute("minor", minor.toString());
+			}
+			if (revision != null) {
+				writer.writeAttribute("revision", revision.toString());
+			}
+			if (buildNumber != null) {
+				writer.writeAttribute("buildNumber", buildNumber.toString());
+			}
+			if (buildDate != null) {
+				writer.writeCharacters("\n        ");
+				writer.writeStartElement("buildDate");
+				writer.writeCharacters(formatDateTime(buildDate));
+				writer.writeEndElement();
+				writer.writeCharacters("\n    ");
+				writer.writeEndElement();
+			}
+		}
+
 		@Override
 		public String toString() {
 			StringBuilder result = new StringBuilder();
@@ -17,8 +17,12 @@
 
 package com.github.meinders.common;
 
+import java.io.*;
 import java.lang.reflect.*;
 import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * <p>
@@ -49,13 +53,71 @@ import java.net.*;
  *
  * </p>
  *
+ * <p>
+ * While the splash screen is showing, initialization tasks registered by
+ * {@link #registerPhases()}, such as loading resource bundles, preloading
+ * classes, reading the application descriptor or warming up caches, are
+ * run in parallel, each as soon as the phases it depends on have finished.
+ * The main class is loaded in parallel as well. Its main method is invoked
+ * once all phases have completed, after {@link #warmUp()}. When the
+ * {@link #REPORT_PROPERTY} system property is set, the timing of each phase
+ * is then written to a startup report.
+ * </p>
+ *
+ * <p>
+ * When the {@link #TRAINING_PROPERTY} system property is set, the JVM exits
+ * as soon as the events posted by the main method have been processed, such
+ * that the classes loaded during startup can be recorded to create a class
+ * data sharing archive. See {@link ClassDataSharing}.
+ * </p>
+ *
  * @version 0.9 (2006.02.23)
  * @author Gerrit Meinders
  */
 public abstract class Bootstrap implements Runnable
 {
+	/**
+	 * System property specifying where the startup report is written: to
+	 * standard error if the value is empty or "-", or otherwise to the file
+	 * with the given name. If the property isn't set, no report is written.
+	 */
+	public static final String REPORT_PROPERTY = "com.github.meinders.common.Bootstrap.report";
+
+	/**
+	 * System property that, when set to <code>true</code>, causes the JVM to
+	 * exit once startup has completed, i.e. once the main method has
+	 * returned and the events it posted to the event queue, such as creating
+	 * the first frame, have been processed.
+	 */
+	public static final String TRAINING_PROPERTY = "com.github.meinders.common.Bootstrap.training";
+
+	/**
+	 * Default number of threads that phases are run on. Since phases tend
+	 * to block on I/O, at least two threads are used.
+	 */
+	public static final int DEFAULT_PARALLELISM = Math.max(2,
+	        Runtime.getRuntime().availableProcessors());
+
 	private String[] args;
 
+	private final List<Phase> phases = new ArrayList<Phase>();
+
+	private int parallelism = DEFAULT_PARALLELISM;
+
+	private StatusListener statusListener = null;
+
+	private boolean started = false;
+
+	private long startTime;
+
+	private Phase splashPhase = null;
+
+	private Phase mainPhase = null;
+
+	private ExecutorService executor;
+
+	private CountDownLatch remaining;
+
 	protected Bootstrap(String[] args)
 	{
 		this.args = args;
@@ -93,25 +155,426 @@ public abstract class Bootstrap implements Runnable
 	 */
 	public final void run()
 	{
+		startTime = System.nanoTime();
+
 		if (getSplashImage() != null)
 		{
-			createSplashInstance();
-			// Splash.getInstance().setVisible(true);
+			splashPhase = new Phase("splash", new Task()
+			{
+				public void run()
+				{
+					createSplashInstance();
+					// Splash.getInstance().setVisible(true);
+				}
+			});
+			runPhase(splashPhase);
 		}
 
+		final String mainClassName = getMainClassName();
+		registerPhases();
+		addPhase("warm-up", new Task()
+		{
+			public void run() throws Exception
+			{
+				warmUp();
+			}
+		}, getPhases().toArray(new Phase[0]));
+		addPhase("main class", preloadClasses(mainClassName));
+		synchronized (this)
+		{
+			started = true;
+		}
+		runPhases();
+
+		mainPhase = new Phase("main", new Task()
+		{
+			public void run() throws Exception
+			{
+				// perform "Main.main(args)" using reflection
+				Class mainClass = Class.forName(mainClassName);
+				Method mainMethod = mainClass.getMethod("main", String[].class);
+				mainMethod.invoke(null, (Object) args);
+			}
+		});
+		runPhase(mainPhase);
+
+		String report = System.getProperty(REPORT_PROPERTY);
+		if (report != null)
+		{
+			writeReport(report);
+		}
+
+		if (Boolean.getBoolean(TRAINING_PROPERTY))
+		{
+			try
+			{
+				java.awt.EventQueue.invokeAndWait(new Runnable()
+				{
+					public void run()
+					{
+						// all previously posted events have been processed
+					}
+				});
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+			System.exit(0);
+		}
+	}
+
+	/**
+	 * Registers the phases to be run before the main method is invoked, using
+	 * {@link #addPhase(String, Task, Phase...)}. The default implementation
+	 * doesn't register any phases.
+	 */
+	protected void registerPhases()
+	{
+	}
+
+	/**
+	 * Exercises code that is performance critical right after startup, such
+	 * that it is loaded and compiled by the time the first frame is shown.
+	 * This method runs as a phase of its own, after all registered phases
+	 * have finished and before the main method is invoked. The default
+	 * implementation does nothing.
+	 *
+	 * @throws Exception if the warm-up fails
+	 */
+	protected void warmUp() throws Exception
+	{
+	}
+
+	/**
+	 * Adds a phase that runs the given task once all of the given phases have
+	 * finished. If any of them fails, the phase is skipped.
+	 *
+	 * @param name the name of the phase, as shown in the startup report
+	 * @param task the task to be performed
+	 * @param dependencies the phases that must finish first
+	 * @return the added phase
+	 * @throws IllegalStateException if the phases were already started
+	 * @throws IllegalArgumentException if a dependency isn't a phase of this
+	 *             bootstrap
+	 */
+	public synchronized Phase addPhase(String name, Task task,
+	        Phase... dependencies)
+	{
+		if (name == null)
+		{
+			throw new NullPointerException("name");
+		}
+		if (task == null)
+		{
+			throw new NullPointerException("task");
+		}
+		if (started)
+		{
+			throw new IllegalStateException("phases already started");
+		}
+
+		Phase phase = new Phase(name, task);
+		for (Phase dependency : dependencies)
+		{
+			if (!phases.contains(dependency))
+			{
+				throw new IllegalArgumentException("dependency: " + dependency);
+			}
+			if (!phase.dependencies.contains(dependency))
+			{
+				phase.dependencies.add(dependency);
+				dependency.dependents.add(phase);
+			}
+		}
+		phase.remaining.set(phase.dependencies.size());
+		phases.add(phase);
+		return phase;
+	}
+
+	/**
+	 * Returns the phases that were added, in the order in which they were
+	 * added.
+	 *
+	 * @return the phases
+	 */
+	public synchronized List<Phase> getPhases()
+	{
+		return new ArrayList<Phase>(phases);
+	}
+
+	/**
+	 * Returns the number of threads that phases are run on.
+	 *
+	 * @return the number of threads
+	 */
+	public synchronized int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads that phases are run on.
+	 *
+	 * @param parallelism the number of threads
+	 */
+	public synchronized void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the listener that is notified when a phase starts, such as the
+	 * splash screen.
+	 *
+	 * @param statusListener the listener, or <code>null</code>
+	 */
+	public void setStatusListener(StatusListener statusListener)
+	{
+		this.statusListener = statusListener;
+	}
+
+	/**
+	 * Runs all phases and waits for them to complete.
+	 */
+	private void runPhases()
+	{
+		remaining = new CountDownLatch(phases.size());
+		executor = Executors.newFixedThreadPool(Math.min(parallelism,
+		        phases.size()), new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "Bootstrap-"
+				        + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 		try
 		{
-			// perform "Main.main(args)" using reflection
-			Class mainClass = Class.forName(getMainClassName());
-			Method mainMethod = mainClass.getMethod("main", String[].class);
-			mainMethod.invoke(null, (Object) args);
+			for (Phase phase : phases)
+			{
+				if (phase.dependencies.isEmpty())
+				{
+					submit(phase);
+				}
+			}
+
+			boolean interrupted = false;
+			while (true)
+			{
+				try
+				{
+					remaining.await();
+					break;
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
 		}
-		catch (Exception e)
+		finally
 		{
+			executor.shutdown();
+		}
+	}
+
+	private void submit(final Phase phase)
+	{
+		executor.execute(new Runnable()
+		{
+			public void run()
+			{
+				runPhase(phase);
+				completed(phase);
+			}
+		});
+	}
+
+	/**
+	 * Starts or skips the dependents of the given phase, once all of their
+	 * dependencies have completed.
+	 */
+	private void completed(Phase phase)
+	{
+		for (Phase dependent : phase.dependents)
+		{
+			if (phase.state != State.FINISHED)
+			{
+				dependent.dependencyFailed = true;
+			}
+			if (dependent.remaining.decrementAndGet() == 0)
+			{
+				if (dependent.dependencyFailed)
+				{
+					dependent.state = State.SKIPPED;
+					completed(dependent);
+				}
+				else
+				{
+					submit(dependent);
+				}
+			}
+		}
+		remaining.countDown();
+	}
+
+	/**
+	 * Runs the given phase on the current thread, recording its timing.
+	 */
+	private void runPhase(Phase phase)
+	{
+		phase.threadName = Thread.currentThread().getName();
+		phase.startTime = System.nanoTime() - startTime;
+		phase.state = State.RUNNING;
+		StatusListener listener = statusListener;
+		if (listener != null)
+		{
+			listener.setStatus(phase.getName());
+		}
+
+		try
+		{
+			phase.task.run();
+			phase.endTime = System.nanoTime() - startTime;
+			phase.state = State.FINISHED;
+		}
+		catch (Throwable e)
+		{
+			phase.endTime = System.nanoTime() - startTime;
+			phase.failure = e;
+			phase.state = State.FAILED;
 			e.printStackTrace();
 		}
 	}
 
+	private void writeReport(String destination)
+	{
+		if (destination.isEmpty() || destination.equals("-"))
+		{
+			writeReport(System.err);
+		}
+		else
+		{
+			try
+			{
+				PrintStream out = new PrintStream(new FileOutputStream(
+				        destination));
+				try
+				{
+					writeReport(out);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Writes the timing of the splash screen, of each phase and of the main
+	 * method to the given stream, in the order in which they were started.
+	 * Times are in milliseconds since {@link #run()} was invoked.
+	 *
+	 * @param out the stream to write to
+	 */
+	public void writeReport(PrintStream out)
+	{
+		List<Phase> report = new ArrayList<Phase>();
+		if (splashPhase != null)
+		{
+			report.add(splashPhase);
+		}
+		List<Phase> sorted = getPhases();
+		Collections.sort(sorted, new Comparator<Phase>()
+		{
+			public int compare(Phase o1, Phase o2)
+			{
+				return Long.compare(o1.startTime, o2.startTime);
+			}
+		});
+		report.addAll(sorted);
+		if (mainPhase != null)
+		{
+			report.add(mainPhase);
+		}
+
+		out.println("Startup report (ms)");
+		out.printf("%9s %9s %9s  %-9s %-14s %s%n", "start", "end",
+		        "duration", "state", "thread", "phase");
+		for (Phase phase : report)
+		{
+			boolean ran = phase.startTime >= 0;
+			out.printf("%9s %9s %9s  %-9s %-14s %s%n",
+			        ran ? format(phase.startTime) : "",
+			        ran ? format(phase.endTime) : "",
+			        ran ? format(phase.getDuration()) : "", phase.state,
+			        ran ? phase.threadName : "", phase.getName());
+		}
+	}
+
+	private static String format(long nanos)
+	{
+		return String.format("%.1f", nanos / 1e6);
+	}
+
+	/**
+	 * Returns a task that loads the given classes, without initializing
+	 * them.
+	 *
+	 * @param classNames the full names of the classes
+	 * @return the task
+	 */
+	public static Task preloadClasses(final String... classNames)
+	{
+		return new Task()
+		{
+			public void run() throws ClassNotFoundException
+			{
+				ClassLoader classLoader = Bootstrap.class.getClassLoader();
+				for (String className : classNames)
+				{
+					Class.forName(className, false, classLoader);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a task that loads the resource bundle with the given name for
+	 * the default locale, which is then cached by {@link ResourceBundle}.
+	 *
+	 * @param baseName the base name of the resource bundle
+	 * @return the task
+	 */
+	public static Task loadResourceBundle(final String baseName)
+	{
+		return new Task()
+		{
+			public void run()
+			{
+				ResourceBundle.getBundle(baseName);
+			}
+		};
+	}
+
 	/**
 	 * Creates a splash screen instance using the title and image returned by
 	 * the <code>getSplashTitle</code> and <code>getSplashImage</code> methods.
@@ -140,4 +603,148 @@ public abstract class Bootstrap implements Runnable
 		// instance.setTitle(getSplashTitle());
 		// instance.setSplashImage(getSplashImage());
 	}
+
+	/**
+	 * A task that is performed during startup.
+	 */
+	public interface Task
+	{
+		/**
+		 * Performs the task.
+		 *
+		 * @throws Exception if the task fails
+		 */
+		void run() throws Exception;
+	}
+
+	/**
+	 * The state of a phase.
+	 */
+	public enum State
+	{
+		/** The phase hasn't started yet. */
+		PENDING,
+
+		/** The phase is running. */
+		RUNNING,
+
+		/** The phase finished successfully. */
+		FINISHED,
+
+		/** The phase threw an exception. */
+		FAILED,
+
+		/** The phase wasn't run, because a phase it depends on failed. */
+		SKIPPED
+	}
+
+	/**
+	 * A task that is performed during startup, along with its timing.
+	 */
+	public static final class Phase
+	{
+		private final String name;
+
+		private final Task task;
+
+		private final List<Phase> dependencies = new ArrayList<Phase>();
+
+		private final List<Phase> dependents = new ArrayList<Phase>();
+
+		private final AtomicInteger remaining = new AtomicInteger();
+
+		private volatile boolean dependencyFailed = false;
+
+		private volatile State state = State.PENDING;
+
+		private volatile Throwable failure = null;
+
+		private volatile String threadName = null;
+
+		private volatile long startTime = -1;
+
+		private volatile long endTime = -1;
+
+		private Phase(String name, Task task)
+		{
+			this.name = name;
+			this.task = task;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public List<Phase> getDependencies()
+		{
+			return Collections.unmodifiableList(dependencies);
+		}
+
+		public State getState()
+		{
+			return state;
+		}
+
+		/**
+		 * Returns the exception thrown by the task, if the phase failed.
+		 *
+		 * @return the exception, or <code>null</code>
+		 */
+		public Throwable getFailure()
+		{
+			return failure;
+		}
+
+		/**
+		 * Returns the name of the thread that ran the phase.
+		 *
+		 * @return the thread name, or <code>null</code> if the phase didn't
+		 *         run
+		 */
+		public String getThreadName()
+		{
+			return threadName;
+		}
+
+		/**
+		 * Returns when the phase was started, in nanoseconds since the
+		 * bootstrap started.
+		 *
+		 * @return the start time, or <code>-1</code> if the phase didn't run
+		 */
+		public long getStartTime()
+		{
+			return startTime;
+		}
+
+		/**
+		 * Returns when the phase completed, in nanoseconds since the
+		 * bootstrap started.
+		 *
+		 * @return the end time, or <code>-1</code> if the phase didn't
+		 *         complete
+		 */
+		public long getEndTime()
+		{
+			return endTime;
+		}
+
+		/**
+		 * Returns how long the phase took, in nanoseconds.
+		 *
+		 * @return the duration, or <code>-1</code> if the phase didn't
+		 *         complete
+		 */
+		public long getDuration()
+		{
+			return (endTime < 0) ? -1 : endTime - startTime;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
 }
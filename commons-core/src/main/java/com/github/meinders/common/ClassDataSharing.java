@@ -0,0 +1,252 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Creates a class data sharing (AppCDS) archive for an application, which
+ * lets the JVM map the classes needed during startup from the archive
+ * instead of loading and verifying them from the class path.
+ *
+ * <p>
+ * The archive is created in two steps, each of which starts a new JVM:
+ * first the application is run once in the training mode of
+ * {@link Bootstrap}, recording the classes that are loaded until the first
+ * frame has been created to a class list; then the JVM creates the archive
+ * from the class list. The application is then started with the options
+ * returned by {@link #getArchiveOptions()}. The class path must consist of
+ * JAR files only, and must be the same when the archive is used.
+ *
+ * <p>
+ * Usage:
+ * <code>java -cp &lt;class path&gt; com.github.meinders.common.ClassDataSharing
+ * [-runs n] &lt;archive&gt; &lt;main class&gt; [arguments]</code>, where the
+ * main class is normally a subclass of {@link Bootstrap}. After creating the
+ * archive, the startup time of the application is measured with and without
+ * the archive.
+ *
+ * @author Gerrit Meinders
+ */
+public class ClassDataSharing {
+    /**
+     * Default number of times the startup time is measured.
+     */
+    public static final int DEFAULT_RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int runs = DEFAULT_RUNS;
+        int argIndex = 0;
+        if (args.length > 1 && args[0].equals("-runs")) {
+            runs = Integer.parseInt(args[1]);
+            argIndex = 2;
+        }
+        if (args.length - argIndex < 2) {
+            System.err.println("Usage: ClassDataSharing [-runs n] <archive> <main class> [arguments]");
+            System.exit(1);
+        }
+        Path archive = Paths.get(args[argIndex]);
+        String mainClass = args[argIndex + 1];
+        String[] mainArgs = Arrays.copyOfRange(args, argIndex + 2, args.length);
+
+        ClassDataSharing sharing = new ClassDataSharing(archive,
+                System.getProperty("java.class.path"));
+        sharing.recordClassList(mainClass, mainArgs);
+        sharing.createArchive();
+        System.out.println("Created " + archive + " from " + sharing.getClassList());
+
+        if (runs > 0) {
+            long without = sharing.measureStartup(false, runs, mainClass, mainArgs);
+            long with = sharing.measureStartup(true, runs, mainClass, mainArgs);
+            System.out.printf("Startup without archive: %8.1f ms (median of %d)%n", without / 1e6, runs);
+            System.out.printf("Startup with archive:    %8.1f ms (median of %d)%n", with / 1e6, runs);
+        }
+        System.out.println("Start the application using: " + sharing.getArchiveOptions());
+    }
+
+    private final Path archive;
+
+    private final String classPath;
+
+    private List<String> jvmOptions = Collections.emptyList();
+
+    /**
+     * Constructs a new instance for creating the given archive.
+     *
+     * @param archive the archive file
+     * @param classPath the class path of the application, consisting of JAR
+     *            files only
+     * @throws IllegalArgumentException if the class path contains a
+     *             directory
+     */
+    public ClassDataSharing(Path archive, String classPath) {
+        if (archive == null) {
+            throw new NullPointerException("archive");
+        }
+        if (classPath == null) {
+            throw new NullPointerException("classPath");
+        }
+        for (String entry : classPath.split(File.pathSeparator)) {
+            // the JVM refuses to use an archive for non-empty directories
+            if (!entry.isEmpty() && Files.isDirectory(Paths.get(entry))) {
+                throw new IllegalArgumentException("classPath: " + entry
+                        + " is a directory, but only JAR files are supported");
+            }
+        }
+        this.archive = archive;
+        this.classPath = classPath;
+    }
+
+    public Path getArchive() {
+        return archive;
+    }
+
+    /**
+     * Returns the class list file, which is located next to the archive.
+     *
+     * @return the class list file
+     */
+    public Path getClassList() {
+        return archive.resolveSibling(archive.getFileName() + ".classlist");
+    }
+
+    public List<String> getJvmOptions() {
+        return jvmOptions;
+    }
+
+    /**
+     * Sets additional options passed to each JVM that is started, e.g. to
+     * set the heap size. Options that affect the archive, such as the
+     * garbage collector, must be the same when the archive is used.
+     *
+     * @param jvmOptions the options
+     */
+    public void setJvmOptions(List<String> jvmOptions) {
+        this.jvmOptions = Collections.unmodifiableList(new ArrayList<String>(jvmOptions));
+    }
+
+    /**
+     * Returns the JVM options needed to start the application using the
+     * archive. If the archive can't be used, e.g. because the class path has
+     * changed, the JVM starts without it.
+     *
+     * @return the JVM options
+     */
+    public List<String> getArchiveOptions() {
+        return Arrays.asList("-XX:SharedArchiveFile=" + archive, "-Xshare:auto");
+    }
+
+    /**
+     * Runs the application in training mode, recording the classes that are
+     * loaded during startup to the class list.
+     *
+     * @param mainClass the main class of the application
+     * @param args the arguments passed to the main class
+     * @throws IOException if the application fails
+     */
+    public void recordClassList(String mainClass, String... args)
+            throws IOException {
+        List<String> command = createCommand();
+        command.add("-XX:DumpLoadedClassList=" + getClassList());
+        addApplication(command, mainClass, args);
+        run(command, ProcessBuilder.Redirect.INHERIT);
+    }
+
+    /**
+     * Creates the archive from the recorded class list.
+     *
+     * @throws IOException if the archive can't be created
+     */
+    public void createArchive() throws IOException {
+        List<String> command = createCommand();
+        command.add("-Xshare:dump");
+        command.add("-XX:SharedClassListFile=" + getClassList());
+        command.add("-XX:SharedArchiveFile=" + archive);
+        command.add("-cp");
+        command.add(classPath);
+        run(command, ProcessBuilder.Redirect.INHERIT);
+    }
+
+    /**
+     * Measures the time needed to start the application in training mode,
+     * from starting the JVM until it exits, and returns the median of the
+     * given number of runs.
+     *
+     * @param useArchive whether to use the archive, instead of only the
+     *            default archive of the JDK
+     * @param runs the number of runs
+     * @param mainClass the main class of the application
+     * @param args the arguments passed to the main class
+     * @return the median startup time, in nanoseconds
+     * @throws IOException if the application fails
+     */
+    public long measureStartup(boolean useArchive, int runs, String mainClass,
+            String... args) throws IOException {
+        if (runs < 1) {
+            throw new IllegalArgumentException("runs: " + runs);
+        }
+        List<String> command = createCommand();
+        if (useArchive) {
+            command.addAll(getArchiveOptions());
+        }
+        addApplication(command, mainClass, args);
+
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            run(command, ProcessBuilder.Redirect.DISCARD);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+
+    private List<String> createCommand() {
+        List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        return command;
+    }
+
+    private void addApplication(List<String> command, String mainClass,
+            String[] args) {
+        command.add("-D" + Bootstrap.TRAINING_PROPERTY + "=true");
+        command.add("-cp");
+        command.add(classPath);
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+    }
+
+    private static void run(List<String> command,
+            ProcessBuilder.Redirect output) throws IOException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(output).start();
+        try {
+            int exitValue = process.waitFor();
+            if (exitValue != 0) {
+                throw new IOException("Exit value " + exitValue + ": " + command);
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
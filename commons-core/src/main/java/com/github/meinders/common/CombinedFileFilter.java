@@ -19,11 +19,23 @@ package com.github.meinders.common;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * A file filter that combines one or more filters, creating either a union or
  * an intersection of the those filters.
  *
+ * <p>
+ * The underlying filters are applied in the order that is expected to decide
+ * the outcome at the lowest cost. For a union, filters that are cheap and
+ * likely to accept a file are applied first; for an intersection, filters that
+ * are cheap and likely to reject a file. The cost and selectivity of each
+ * filter start from {@link FileFilter#getCostEstimate()} and an even chance,
+ * and are updated periodically from the measured time and outcome of recent
+ * calls. The underlying filters should
+ * therefore not depend on the order in which they are applied. The measured
+ * statistics are available through {@link #getStatistics()}.
+ *
  * @version 0.9 (2006.02.20)
  * @author Gerrit Meinders
  */
@@ -44,12 +56,31 @@ public class CombinedFileFilter extends FileFilter
 		INTERSECTION
 	}
 
-	/** The first file filter. */
+	/**
+	 * Number of evaluations after which the underlying filters are reordered.
+	 */
+	private static final int REORDER_INTERVAL = 256;
+
+	/**
+	 * Weight of the current cost and selectivity estimates when they are
+	 * updated, as a number of evaluations. Measurements of later evaluations
+	 * gradually replace earlier ones, such as those of the first calls of a
+	 * filter, which tend to be slow.
+	 */
+	private static final double ESTIMATE_WEIGHT = 16.0;
+
+	/** The underlying file filters, in the order they were specified. */
 	private List<FileFilter> filters;
 
 	/** The combination method. */
 	private Method method;
 
+	/** Statistics of the underlying filters, in the order they are applied. */
+	private volatile Statistics[] order;
+
+	/** Number of evaluations since the filters were last reordered. */
+	private final AtomicInteger evaluations = new AtomicInteger();
+
 	/**
 	 * Constructs a new file filter with the given description which combines
 	 * the given filters using the given method. The first filter defines the
@@ -76,6 +107,7 @@ public class CombinedFileFilter extends FileFilter
 		this.filters.add(filter);
 		this.filters.addAll(Arrays.asList(filters));
 		this.method = method;
+		initStatistics();
 	}
 
 	/**
@@ -105,6 +137,17 @@ public class CombinedFileFilter extends FileFilter
 		}
 		this.filters = new ArrayList<FileFilter>(filters);
 		this.method = method;
+		initStatistics();
+	}
+
+	private void initStatistics()
+	{
+		order = new Statistics[filters.size()];
+		for (int i = 0; i < order.length; i++)
+		{
+			order[i] = new Statistics(filters.get(i));
+		}
+		reorder();
 	}
 
 	/**
@@ -115,31 +158,141 @@ public class CombinedFileFilter extends FileFilter
 	 *         otherwise
 	 */
 	@Override
-	public synchronized boolean accept(File file)
+	public boolean accept(File file)
 	{
+		if (evaluations.incrementAndGet() >= REORDER_INTERVAL)
+		{
+			evaluations.set(0);
+			reorder();
+		}
+
+		/*
+		 * A union is decided by the first filter that accepts the file; an
+		 * intersection by the first filter that rejects it.
+		 */
+		boolean decisive;
 		switch (method)
 		{
 		case UNION:
-			for (FileFilter filter : filters)
+			decisive = true;
+			break;
+		case INTERSECTION:
+			decisive = false;
+			break;
+		default:
+			throw new AssertionError("unknown method: " + method);
+		}
+
+		for (Statistics statistics : order)
+		{
+			if (statistics.accept(file) == decisive)
 			{
-				if (filter.accept(file))
-				{
-					return true;
-				}
+				return decisive;
 			}
-			return false;
-		case INTERSECTION:
-			for (FileFilter filter : filters)
+		}
+		return !decisive;
+	}
+
+	/**
+	 * Sorts the underlying filters by the ratio of their expected cost to the
+	 * probability that they decide the outcome.
+	 */
+	private synchronized void reorder()
+	{
+		Statistics[] current = order;
+		for (Statistics statistics : current)
+		{
+			statistics.update();
+		}
+
+		final double[] ranks = new double[current.length];
+		Integer[] indices = new Integer[current.length];
+		for (int i = 0; i < current.length; i++)
+		{
+			double acceptRate = current[i].getAcceptRate();
+			double decisive = (method == Method.UNION) ? acceptRate
+			        : 1.0 - acceptRate;
+			ranks[i] = current[i].getCostEstimate()
+			        / Math.max(decisive, 1e-6);
+			indices[i] = i;
+		}
+		Arrays.sort(indices, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer o1, Integer o2)
 			{
-				if (!filter.accept(file))
+				return Double.compare(ranks[o1], ranks[o2]);
+			}
+		});
+
+		Statistics[] sorted = new Statistics[current.length];
+		for (int i = 0; i < sorted.length; i++)
+		{
+			sorted[i] = current[indices[i]];
+		}
+		order = sorted;
+	}
+
+	/**
+	 * Returns statistics about the underlying filters, in the order in which
+	 * the filters were specified.
+	 *
+	 * @return the statistics of each filter
+	 */
+	public List<Statistics> getStatistics()
+	{
+		Statistics[] current = order;
+		List<Statistics> result = new ArrayList<Statistics>(current.length);
+		for (FileFilter filter : filters)
+		{
+			for (Statistics statistics : current)
+			{
+				if (statistics.getFilter() == filter)
 				{
-					return false;
+					result.add(statistics);
+					break;
 				}
 			}
-			return true;
-		default:
-			throw new AssertionError("unknown method: " + method);
 		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the given folder is pruned by the underlying filters. A
+	 * union prunes a folder if all filters do; an intersection if any of them
+	 * does.
+	 *
+	 * @param folder the folder
+	 * @return <code>true</code> if no file inside the folder is accepted
+	 */
+	@Override
+	public boolean isPruned(File folder)
+	{
+		boolean union = (method == Method.UNION);
+		for (FileFilter filter : filters)
+		{
+			if (filter.isPruned(folder) != union)
+			{
+				return !union;
+			}
+		}
+		return union;
+	}
+
+	/**
+	 * Returns the sum of the cost estimates of the underlying filters.
+	 *
+	 * @return the estimated cost, in nanoseconds
+	 */
+	@Override
+	public double getCostEstimate()
+	{
+		double result = 0.0;
+		for (Statistics statistics : order)
+		{
+			result += statistics.getCostEstimate();
+		}
+		return result;
 	}
 
 	/**
@@ -153,4 +306,138 @@ public class CombinedFileFilter extends FileFilter
 	{
 		return filters.get(0).getAppropriateFile(file);
 	}
+
+	/**
+	 * Measures the time spent in an underlying filter and how often it
+	 * accepts a file.
+	 */
+	public static class Statistics
+	{
+		private final FileFilter filter;
+
+		private final AtomicLong calls = new AtomicLong();
+
+		private final AtomicLong accepted = new AtomicLong();
+
+		private final AtomicLong time = new AtomicLong();
+
+		private volatile double costEstimate;
+
+		private volatile double acceptRate = 0.5;
+
+		/** Counters at the time of the last update of the estimates. */
+		private long lastCalls, lastAccepted, lastTime;
+
+		private Statistics(FileFilter filter)
+		{
+			this.filter = filter;
+			costEstimate = filter.getCostEstimate();
+		}
+
+		/**
+		 * Blends the measurements since the last update into the estimates.
+		 */
+		private void update()
+		{
+			long calls = this.calls.get();
+			long accepted = this.accepted.get();
+			long time = this.time.get();
+			long count = calls - lastCalls;
+			if (count > 0)
+			{
+				double weight = count / (count + ESTIMATE_WEIGHT);
+				costEstimate += weight
+				        * ((double) (time - lastTime) / count - costEstimate);
+				acceptRate += weight
+				        * ((double) (accepted - lastAccepted) / count - acceptRate);
+				lastCalls = calls;
+				lastAccepted = accepted;
+				lastTime = time;
+			}
+		}
+
+		private boolean accept(File file)
+		{
+			long start = System.nanoTime();
+			boolean result = filter.accept(file);
+			time.addAndGet(System.nanoTime() - start);
+			calls.incrementAndGet();
+			if (result)
+			{
+				accepted.incrementAndGet();
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the filter that the statistics apply to.
+		 *
+		 * @return the filter
+		 */
+		public FileFilter getFilter()
+		{
+			return filter;
+		}
+
+		/**
+		 * Returns the number of times the filter was applied.
+		 *
+		 * @return the number of calls
+		 */
+		public long getCalls()
+		{
+			return calls.get();
+		}
+
+		/**
+		 * Returns the number of files that the filter accepted.
+		 *
+		 * @return the number of accepted files
+		 */
+		public long getAccepted()
+		{
+			return accepted.get();
+		}
+
+		/**
+		 * Returns the total time spent in the filter.
+		 *
+		 * @return the time, in nanoseconds
+		 */
+		public long getTotalTime()
+		{
+			return time.get();
+		}
+
+		/**
+		 * Returns the expected time needed to apply the filter. Starts from
+		 * the filter's own estimate and follows the measured time of recent
+		 * calls.
+		 *
+		 * @return the expected cost, in nanoseconds
+		 */
+		public double getCostEstimate()
+		{
+			return costEstimate;
+		}
+
+		/**
+		 * Returns the expected fraction of files that the filter accepts.
+		 * Starts from an even chance and follows the outcome of recent calls.
+		 *
+		 * @return the expected accept rate, between 0 and 1
+		 */
+		public double getAcceptRate()
+		{
+			return acceptRate;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s: %d calls, %d accepted, %.1f ms",
+			        filter.getDescription(), getCalls(), getAccepted(),
+			        getTotalTime() / 1e6);
+		}
+	}
 }
@@ -130,6 +130,15 @@ public class ExtensionFileFilter extends FileFilter {
         return file;
     }
 
+    /**
+     * Returns a low estimate: besides comparing the file name, only one file
+     * system query is needed to determine whether the file is a directory.
+     */
+    @Override
+    public double getCostEstimate() {
+        return 1000.0;
+    }
+
     @Override
     public boolean accept(File f) {
         if (includeDirs && f.isDirectory()) {
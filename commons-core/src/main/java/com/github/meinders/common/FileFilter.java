@@ -19,6 +19,8 @@ package com.github.meinders.common;
 
 import java.io.*;
 
+import com.github.meinders.common.util.*;
+
 /**
  * This class is a union of both the FileFilter class and the FileFilter
  * interface found in the J2SE, and can be used in place of either of those
@@ -30,7 +32,7 @@ import java.io.*;
  * @author Gerrit Meinders
  */
 public abstract class FileFilter extends javax.swing.filechooser.FileFilter
-        implements java.io.FileFilter {
+        implements PruningFileFilter {
     private String description;
 
     /**
@@ -61,6 +63,31 @@ public abstract class FileFilter extends javax.swing.filechooser.FileFilter
         return description;
     }
 
+    /**
+     * Returns an estimate of the average time needed to accept or reject a
+     * file, in nanoseconds. Used by {@link CombinedFileFilter} to decide which
+     * filters to apply first, until it has measured the actual time. The
+     * default implementation assumes that the filter queries the file system,
+     * e.g. to determine whether a file is a directory.
+     *
+     * @return the estimated cost, in nanoseconds
+     */
+    public double getCostEstimate() {
+        return 2000.0;
+    }
+
+    /**
+     * Returns whether no file inside the given folder is accepted by this
+     * filter, such that the folder doesn't need to be listed. The default
+     * implementation returns <code>false</code>.
+     *
+     * @param folder the folder
+     * @return <code>true</code> if no file inside the folder is accepted
+     */
+    public boolean isPruned(File folder) {
+        return false;
+    }
+
     /**
      * Returns a the given file or a more appropriate alternative, for example
      * with the proper extension for this file filter.
@@ -17,7 +17,9 @@
 
 package com.github.meinders.common;
 
+import java.awt.event.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.swing.*;
 
 /**
@@ -29,6 +31,14 @@ import javax.swing.*;
  *
  * <p>http://java.sun.com/docs/books/tutorial/uiswing/misc/threads.html</p>
  *
+ * <p>Worker events are delivered to listeners on the event dispatching
+ * thread, in the order in which they were fired. Progress events are
+ * coalesced: only the latest progress event is kept, and it is delivered at
+ * most once per {@link #getMinimumProgressInterval() minimum progress
+ * interval}. Any pending progress event is delivered before the next event
+ * of another type, so listeners always see the final progress before the
+ * worker finishes.</p>
+ *
  * @see Worker
  *
  * @author Gerrit Meinders
@@ -36,17 +46,81 @@ import javax.swing.*;
  */
 public abstract class GenericWorker<T> extends SwingWorker
         implements Worker<T> {
+    /**
+     * The default minimum interval between progress events, in
+     * milliseconds.
+     */
+    public static final int DEFAULT_MINIMUM_PROGRESS_INTERVAL = 10;
+
     private LinkedHashSet<WorkerListener<T>> listeners;
 
+    private volatile int minimumProgressInterval =
+            DEFAULT_MINIMUM_PROGRESS_INTERVAL;
+
+    /**
+     * Guards {@link #queuedEvents}, {@link #pendingProgress} and
+     * {@link #progressTimer}.
+     */
+    private final Object deliveryLock = new Object();
+
+    /**
+     * Events waiting to be delivered, in the order in which they were fired.
+     */
+    private List<WorkerEvent<T>> queuedEvents = new ArrayList<WorkerEvent<T>>();
+
     /**
-     * Start a thread that will call the <code>construct</code> method
-     * and then exit.
+     * The latest progress event that wasn't delivered yet. It was fired after
+     * all queued events.
+     */
+    private WorkerEvent<T> pendingProgress = null;
+
+    /**
+     * Delivers the pending progress event once the minimum progress interval
+     * has passed. Created when first needed.
+     */
+    private javax.swing.Timer progressTimer = null;
+
+    /**
+     * Time at which the last progress event was delivered, as returned by
+     * {@link System#nanoTime()}.
+     */
+    private volatile long lastProgressTime = System.nanoTime()
+            - TimeUnit.DAYS.toNanos(1);
+
+    private final Runnable eventDelivery = new Runnable() {
+        public void run() {
+            deliverEvents(false);
+        }
+    };
+
+    private final Runnable progressDelivery = new Runnable() {
+        public void run() {
+            deliverEvents(true);
+        }
+    };
+
+    /**
+     * Creates a worker that uses the default executor, as returned by
+     * {@link SwingWorker#getDefaultExecutor()}. Call {@link #start()} to run
+     * it.
      */
     public GenericWorker() {
         super();
         listeners = new LinkedHashSet<WorkerListener<T>>();
     }
 
+    /**
+     * Creates a worker that uses the given executor. Call {@link #start()}
+     * to run it.
+     *
+     * @param executor the executor that calls the <code>construct</code>
+     *        method
+     */
+    public GenericWorker(Executor executor) {
+        super(executor);
+        listeners = new LinkedHashSet<WorkerListener<T>>();
+    }
+
     /**
      * Compute the value to be returned by the <code>get</code> method.
      */
@@ -63,6 +137,28 @@ public abstract class GenericWorker<T> extends SwingWorker
         return super.get() == null ? null : getValue();
     }
 
+    /**
+     * Return the value created by the <code>construct</code> method,
+     * waiting at most the given time for it to be produced. Returns null if
+     * either the constructing thread or the current thread was interrupted
+     * before a value was produced.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout argument
+     * @return the value created by the <code>construct</code> method
+     * @throws TimeoutException if the value wasn't produced in time
+     */
+    public T get(long timeout, TimeUnit unit) throws TimeoutException {
+        return super.get(timeout, unit) == null ? null : getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public CompletableFuture<T> getFuture() {
+        // cast can't be checked but is guaranteed by the construct method
+        return (CompletableFuture<T>) super.getFuture();
+    }
+
     /**
      * Get the value produced by the worker thread, or null if it
      * hasn't been constructed yet.
@@ -85,6 +181,31 @@ public abstract class GenericWorker<T> extends SwingWorker
         return Collections.unmodifiableSet(listeners);
     }
 
+    /**
+     * Returns the minimum interval between the delivery of progress events.
+     *
+     * @return the interval in milliseconds
+     */
+    public int getMinimumProgressInterval() {
+        return minimumProgressInterval;
+    }
+
+    /**
+     * Sets the minimum interval between the delivery of progress events.
+     * Progress events fired within this interval replace each other, such
+     * that only the latest is delivered. If set to <code>0</code>, every
+     * progress event is delivered.
+     *
+     * @param minimumProgressInterval the interval in milliseconds
+     */
+    public void setMinimumProgressInterval(int minimumProgressInterval) {
+        if (minimumProgressInterval < 0) {
+            throw new IllegalArgumentException("minimumProgressInterval: "
+                    + minimumProgressInterval);
+        }
+        this.minimumProgressInterval = minimumProgressInterval;
+    }
+
     protected void fireWorkerStarted() {
         fireWorkerStarted(null);
     }
@@ -125,6 +246,83 @@ public abstract class GenericWorker<T> extends SwingWorker
         fireWorkerEvent(new WorkerEvent<T>(this, progress, length, message));
     }
 
+    /**
+     * Stores the given progress event as the pending progress event, and
+     * schedules its delivery if there was none already.
+     */
+    private void fireProgressEvent(WorkerEvent<T> e) {
+        synchronized (deliveryLock) {
+            boolean scheduled = pendingProgress != null;
+            pendingProgress = e;
+            if (scheduled) {
+                return;
+            }
+
+            long delay = lastProgressTime
+                    + TimeUnit.MILLISECONDS.toNanos(minimumProgressInterval)
+                    - System.nanoTime();
+            if (delay > 0) {
+                if (progressTimer == null) {
+                    progressTimer = new javax.swing.Timer(0,
+                            new ActionListener() {
+                        public void actionPerformed(ActionEvent e) {
+                            deliverEvents(true);
+                        }
+                    });
+                    progressTimer.setRepeats(false);
+                }
+                progressTimer.setInitialDelay(
+                        (int) TimeUnit.NANOSECONDS.toMillis(delay) + 1);
+                progressTimer.restart();
+                return;
+            }
+        }
+
+        if (SwingUtilities.isEventDispatchThread()) {
+            deliverEvents(true);
+        } else {
+            SwingUtilities.invokeLater(progressDelivery);
+        }
+    }
+
+    /**
+     * Delivers the queued events, followed by the pending progress event if
+     * requested. Must be called on the event dispatching thread.
+     *
+     * <p>Every delivery takes all events queued so far, regardless of which
+     * event it was scheduled for, so events are always delivered in the order
+     * in which they were fired.</p>
+     */
+    private void deliverEvents(boolean includeProgress) {
+        List<WorkerEvent<T>> events;
+        WorkerEvent<T> progress = null;
+        synchronized (deliveryLock) {
+            events = queuedEvents;
+            queuedEvents = new ArrayList<WorkerEvent<T>>();
+            if (includeProgress) {
+                progress = pendingProgress;
+                pendingProgress = null;
+            }
+        }
+
+        for (WorkerEvent<T> e : events) {
+            if (e.getType() == WorkerEvent.EventType.PROGRESS) {
+                lastProgressTime = System.nanoTime();
+            }
+            deliverWorkerEvent(e);
+        }
+        if (progress != null) {
+            lastProgressTime = System.nanoTime();
+            deliverWorkerEvent(progress);
+        }
+    }
+
+    private void deliverWorkerEvent(WorkerEvent<T> e) {
+        for (WorkerListener<T> listener : getWorkerListeners()) {
+            listener.stateChanged(e);
+        }
+    }
+
     protected void fireWorkerMessage(String message) {
         fireWorkerEvent(new WorkerEvent<T>(this, message));
     }
@@ -158,15 +356,24 @@ public abstract class GenericWorker<T> extends SwingWorker
     }
 
     protected void fireWorkerEvent(final WorkerEvent<T> e) {
-        if (SwingUtilities.isEventDispatchThread()) {
-            for (WorkerListener<T> listener : getWorkerListeners()) {
-                listener.stateChanged(e);
+        if (e.getType() == WorkerEvent.EventType.PROGRESS
+                && minimumProgressInterval > 0) {
+            fireProgressEvent(e);
+            return;
+        }
+
+        synchronized (deliveryLock) {
+            // progress fired before this event must be delivered before it
+            if (pendingProgress != null) {
+                queuedEvents.add(pendingProgress);
+                pendingProgress = null;
             }
+            queuedEvents.add(e);
+        }
+        if (SwingUtilities.isEventDispatchThread()) {
+            deliverEvents(false);
         } else {
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    fireWorkerEvent(e);
-                }});
+            SwingUtilities.invokeLater(eventDelivery);
         }
     }
 }
@@ -18,61 +18,42 @@
 package com.github.meinders.common;
 
 import java.io.*;
-import java.net.*;
+import java.nio.file.*;
 import java.util.*;
-import java.util.regex.*;
 
-public class PatternFileFilter extends FileFilter {
-    private static final Pattern WILCARD_PATTERN = Pattern
-            .compile("\\?|(\\*\\*?)");
-
-    private final URI path;
+import com.github.meinders.common.util.*;
 
-    private final Set<Pattern> includes;
+/**
+ * A file filter that accepts files based on include and exclude patterns,
+ * matched against the path of each file relative to a base folder. In a
+ * pattern, <code>?</code> matches any character, <code>*</code> matches any
+ * sequence of characters within a path segment and <code>**</code> matches any
+ * sequence of characters.
+ *
+ * <p>
+ * All patterns are combined into a single {@link GlobSet}, so that the cost of
+ * matching a file doesn't grow with the number of patterns. Folders that
+ * can't contain any accepted files are {@linkplain #isPruned(File) pruned},
+ * so {@link FileIterator} skips them entirely.
+ *
+ * @author Gerrit Meinders
+ */
+public class PatternFileFilter extends FileFilter {
+    private final Path path;
 
-    private final Set<Pattern> excludes;
+    private final GlobSet globs = new GlobSet(File.separatorChar);
 
     public PatternFileFilter(String description, File path) {
         super(description);
-        this.path = path.toURI();
-
-        includes = new LinkedHashSet<Pattern>();
-        excludes = new LinkedHashSet<Pattern>();
+        this.path = path.toPath().toAbsolutePath();
     }
 
     public void addInclude(String include) {
-        includes.add(createPattern(include));
+        globs.addInclude(include);
     }
 
     public void addExclude(String exclude) {
-        excludes.add(createPattern(exclude));
-    }
-
-    private Pattern createPattern(String pattern) {
-        final Matcher matcher = WILCARD_PATTERN.matcher(pattern);
-        final StringBuffer buffer = new StringBuffer();
-        while (matcher.find()) {
-            final String wildcard = matcher.group();
-            final String wildcardRegEx;
-            if (wildcard.charAt(0) == '?') {
-                wildcardRegEx = ".";
-            } else if (wildcard.length() == 1) {
-                wildcardRegEx = "[^\\" + File.separatorChar + "]*";
-            } else {
-                wildcardRegEx = ".*";
-            }
-
-            buffer.append("\\Q");
-            matcher.appendReplacement(buffer, "");
-            buffer.append("\\E");
-            buffer.append(wildcardRegEx);
-        }
-
-        buffer.append("\\Q");
-        matcher.appendTail(buffer);
-        buffer.append("\\E");
-
-        return Pattern.compile(buffer.toString());
+        globs.addExclude(exclude);
     }
 
     public void addIncludes(Collection<String> includes) {
@@ -87,26 +68,32 @@ public class PatternFileFilter extends FileFilter {
         }
     }
 
+    /**
+     * Returns a low estimate, since matching doesn't query the file system.
+     */
     @Override
-    public boolean accept(File file) {
-        final File relative = new File(file.toURI().relativize(path));
-        final String relativeName = relative.toString();
+    public double getCostEstimate() {
+        return 500.0;
+    }
 
-        boolean included = includes.isEmpty();
-        for (Iterator<Pattern> i = includes.iterator(); i.hasNext()
-                && !included;) {
-            Pattern include = i.next();
-            included = include.matcher(relativeName).matches();
-        }
+    @Override
+    public boolean accept(File file) {
+        return globs.matches(relativeName(file));
+    }
 
-        if (included) {
-            for (Iterator<Pattern> i = excludes.iterator(); i.hasNext()
-                    && included;) {
-                Pattern exclude = i.next();
-                included = !exclude.matcher(relativeName).matches();
-            }
-        }
+    /**
+     * Returns whether the given folder can't contain any files that are
+     * accepted by this filter, such that it doesn't need to be listed.
+     *
+     * @param folder the folder
+     * @return <code>true</code> if no file inside the folder is accepted
+     */
+    @Override
+    public boolean isPruned(File folder) {
+        return globs.isPruned(relativeName(folder));
+    }
 
-        return included;
+    private String relativeName(File file) {
+        return path.relativize(file.toPath().toAbsolutePath()).toString();
     }
 }
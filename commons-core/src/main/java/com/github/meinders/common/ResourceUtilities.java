@@ -19,15 +19,61 @@ package com.github.meinders.common;
 
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * A utility class and wrapper for resource bundles to provide better access to
  * resources.
  *
+ * <p>Resolved strings, compiled message formats and parsed integers are
+ * cached for each bundle, since the same resources tend to be requested very
+ * often. Bundles for different locales are different objects and are cached
+ * separately, while message formats are compiled again when the default
+ * format locale changes. When bundles are reloaded, e.g. after calling
+ * {@link ResourceBundle#clearCache()}, the cache should be cleared using
+ * {@link #clearCache()}.
+ *
  * @version 0.9 (2005.02.22)
  * @author Gerrit Meinders
  */
 public class ResourceUtilities {
+    /**
+     * Cached resources for each bundle. Bundles don't override equals, so
+     * they are effectively compared by identity.
+     */
+    private static final Map<ResourceBundle, BundleCache> caches = Collections.synchronizedMap(new WeakHashMap<ResourceBundle, BundleCache>());
+
+    /**
+     * Clears the cached resources of all bundles. This should be called
+     * when bundles are reloaded.
+     */
+    public static void clearCache() {
+        caches.clear();
+    }
+
+    /**
+     * Clears the cached resources of the given bundle.
+     *
+     * @param bundle the bundle
+     */
+    public static void clearCache(ResourceBundle bundle) {
+        caches.remove(bundle);
+    }
+
+    private static BundleCache getCache(ResourceBundle bundle) {
+        BundleCache cache = caches.get(bundle);
+        if (cache == null) {
+            synchronized (caches) {
+                cache = caches.get(bundle);
+                if (cache == null) {
+                    cache = new BundleCache();
+                    caches.put(bundle, cache);
+                }
+            }
+        }
+        return cache;
+    }
+
     public static String getString(ResourceBundle bundle, String key) {
         return getString(bundle, key, getMissingResourceString(key));
     }
@@ -38,26 +84,12 @@ public class ResourceUtilities {
 
     private static String getString(ResourceBundle bundle, String key,
             String fallback) {
-        String value = null;
-        try {
-            value = bundle.getString(key);
-        } catch (Exception e) {
-        }
-        if (value == null) {
-            return fallback;
-        } else {
-            return value;
-        }
+        return getCache(bundle).getString(bundle, key, fallback);
     }
 
     public static String getString(ResourceBundle bundle, String key,
             Object... args) {
-        String value = getString(bundle, key, (String) null);
-        if (value == null) {
-            return getMissingResourceString(key);
-        } else {
-            return MessageFormat.format(getString(bundle, key), args);
-        }
+        return getCache(bundle).format(bundle, key, args);
     }
 
     public static Integer getMnemonic(ResourceBundle bundle, String key) {
@@ -66,12 +98,7 @@ public class ResourceUtilities {
 
     public static Integer getMnemonic(ResourceBundle bundle, String key,
             Integer fallback) {
-        String value = getString(bundle, getKey(key, "mnemonic"));
-        if (value == null) {
-            return fallback;
-        } else {
-            return new Integer(Character.toUpperCase(value.charAt(0)));
-        }
+        return getCache(bundle).getMnemonic(bundle, key, fallback);
     }
 
     public static Integer getInteger(ResourceBundle bundle, String key) {
@@ -80,16 +107,7 @@ public class ResourceUtilities {
 
     public static Integer getInteger(ResourceBundle bundle, String key,
             Integer fallback) {
-        Integer value = null;
-        try {
-            value = Integer.parseInt(bundle.getString(key));
-        } catch (Exception e) {
-        }
-        if (value == null) {
-            return fallback;
-        } else {
-            return value;
-        }
+        return getCache(bundle).getInteger(bundle, key, fallback);
     }
 
     public static String[] getStringArray(ResourceBundle bundle, String arrayKey) {
@@ -206,4 +224,78 @@ public class ResourceUtilities {
         return ResourceUtilities.getString(bundle, "label",
                 (Object) getString(key));
     }
+
+    /**
+     * The cached resources of a single bundle. Missing resources are cached
+     * as well, since looking them up involves an exception. The bundle is
+     * passed to each method rather than stored, since the cache must not
+     * keep its key in {@link #caches} reachable.
+     */
+    private static final class BundleCache {
+        private static final Object MISSING = new Object();
+
+        private final ConcurrentMap<String, Object> strings = new ConcurrentHashMap<String, Object>();
+
+        private final ConcurrentMap<String, MessageFormat> formats = new ConcurrentHashMap<String, MessageFormat>();
+
+        private final ConcurrentMap<String, Object> integers = new ConcurrentHashMap<String, Object>();
+
+        private final ConcurrentMap<String, Integer> mnemonics = new ConcurrentHashMap<String, Integer>();
+
+        String getString(ResourceBundle bundle, String key, String fallback) {
+            Object value = strings.get(key);
+            if (value == null) {
+                try {
+                    value = bundle.getString(key);
+                } catch (Exception e) {
+                }
+                if (value == null) {
+                    value = MISSING;
+                }
+                strings.put(key, value);
+            }
+            return (value == MISSING) ? fallback : (String) value;
+        }
+
+        String format(ResourceBundle bundle, String key, Object[] args) {
+            Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+            MessageFormat format = formats.get(key);
+            if (format == null || !locale.equals(format.getLocale())) {
+                String pattern = getString(bundle, key, null);
+                if (pattern == null) {
+                    return getMissingResourceString(key);
+                }
+                format = new MessageFormat(pattern, locale);
+                formats.put(key, format);
+            }
+            // message formats and their sub-formats aren't thread-safe
+            synchronized (format) {
+                return format.format(args);
+            }
+        }
+
+        Integer getInteger(ResourceBundle bundle, String key, Integer fallback) {
+            Object value = integers.get(key);
+            if (value == null) {
+                try {
+                    value = Integer.parseInt(bundle.getString(key));
+                } catch (Exception e) {
+                    value = MISSING;
+                }
+                integers.put(key, value);
+            }
+            return (value == MISSING) ? fallback : (Integer) value;
+        }
+
+        Integer getMnemonic(ResourceBundle bundle, String key, Integer fallback) {
+            Integer value = mnemonics.get(key);
+            if (value == null) {
+                String mnemonicKey = getKey(key, "mnemonic");
+                String string = getString(bundle, mnemonicKey, getMissingResourceString(mnemonicKey));
+                value = (int) Character.toUpperCase(string.charAt(0));
+                mnemonics.put(key, value);
+            }
+            return value;
+        }
+    }
 }
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.table.*;
+
+/**
+ * The sort keys of the rows of a table model, extracted once from the model
+ * for each sorting column, such that rows can be compared without calling
+ * the model or the column comparators. Integral and floating point columns
+ * are stored as <code>long</code> and <code>double</code> arrays. All other
+ * columns are stored as ranks: the distinct values of the column are sorted
+ * once using the column comparator, and each row stores the rank of its
+ * value as an <code>int</code>.
+ *
+ * <p>Rows are compared in the same way as {@link TableSorter} compares
+ * them: <code>null</code> is less than any other value, and the sorting
+ * columns are compared in order until they differ.
+ *
+ * @author Gerrit Meinders
+ */
+@SuppressWarnings("unchecked") // column comparators are raw, as in TableSorter
+final class SortKeys {
+    /**
+     * Arrays of at most this length are sorted using insertion sort.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    /**
+     * Ranges of at most this length are not split any further by a
+     * parallel sort.
+     */
+    private static final int PARALLEL_GRANULARITY = 8192;
+
+    private final Key[] keys;
+
+    private final int[] directions;
+
+    /**
+     * Extracts the sort keys for the given sorting columns from the model.
+     *
+     * @param model the table model
+     * @param columns the sorting columns, in order of priority
+     * @param directions the direction of each sorting column, either
+     *        {@link TableSorter#ASCENDING} or {@link TableSorter#DESCENDING}
+     * @param comparators the comparator of each sorting column
+     */
+    SortKeys(TableModel model, int[] columns, int[] directions,
+            Comparator<?>[] comparators) {
+        this.directions = directions.clone();
+        keys = new Key[columns.length];
+        int rowCount = model.getRowCount();
+        for (int i = 0; i < columns.length; i++) {
+            keys[i] = createKey(model, rowCount, columns[i],
+                    objectComparator(comparators[i]));
+        }
+    }
+
+    /**
+     * Returns the number of rows that keys were extracted for.
+     */
+    int size() {
+        return keys.length == 0 ? 0 : keys[0].size();
+    }
+
+    /**
+     * Compares the given model rows.
+     */
+    int compare(int row1, int row2) {
+        for (int i = 0; i < keys.length; i++) {
+            int comparison = keys[i].compare(row1, row2);
+            if (comparison != 0) {
+                return directions[i] == TableSorter.DESCENDING ? -comparison
+                        : comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sorts the given model rows. The sort is stable.
+     *
+     * @param rows the rows to be sorted
+     */
+    void sort(int[] rows) {
+        sort(rows, 0, rows.length, new int[rows.length]);
+    }
+
+    /**
+     * Sorts the given model rows using a parallel merge sort on the common
+     * fork/join pool. The sort is stable.
+     *
+     * @param rows the rows to be sorted
+     */
+    void parallelSort(int[] rows) {
+        ForkJoinPool.commonPool().invoke(
+                new SortTask(rows, 0, rows.length, new int[rows.length]));
+    }
+
+    /**
+     * Sorts a range of the given rows, using a buffer of the same length.
+     */
+    void sort(int[] rows, int from, int to, int[] buffer) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(rows, from, to);
+        } else {
+            int middle = (from + to) >>> 1;
+            sort(rows, from, middle, buffer);
+            sort(rows, middle, to, buffer);
+            merge(rows, from, middle, to, buffer);
+        }
+    }
+
+    /**
+     * Merges the sorted ranges <code>[from, middle)</code> and
+     * <code>[middle, to)</code> of the given rows.
+     */
+    void merge(int[] rows, int from, int middle, int to, int[] buffer) {
+        if (compare(rows[middle - 1], rows[middle]) <= 0) {
+            return; // already in order
+        }
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int i = from;
+        int j = middle;
+        int k = from;
+        while (i < middle && j < to) {
+            if (compare(buffer[j], buffer[i]) < 0) {
+                rows[k++] = buffer[j++];
+            } else {
+                rows[k++] = buffer[i++];
+            }
+        }
+        System.arraycopy(buffer, i, rows, k, middle - i);
+        System.arraycopy(buffer, j, rows, k, to - j);
+    }
+
+    private void insertionSort(int[] rows, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int row = rows[i];
+            int j = i;
+            while (j > from && compare(row, rows[j - 1]) < 0) {
+                rows[j] = rows[j - 1];
+                j--;
+            }
+            rows[j] = row;
+        }
+    }
+
+    /**
+     * Sorts a range of rows, sorting both halves in parallel.
+     */
+    private class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] rows;
+
+        private final int from;
+
+        private final int to;
+
+        private final int[] buffer;
+
+        SortTask(int[] rows, int from, int to, int[] buffer) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.buffer = buffer;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRANULARITY) {
+                sort(rows, from, to, buffer);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SortTask(rows, from, middle, buffer),
+                        new SortTask(rows, middle, to, buffer));
+                merge(rows, from, middle, to, buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns the given comparator as one that accepts any value. The
+     * comparators of a {@link TableSorter} are applied to the values of a
+     * column, whatever their type.
+     */
+    @SuppressWarnings("unchecked")
+    private static Comparator<Object> objectComparator(Comparator<?> comparator) {
+        return (Comparator<Object>) comparator;
+    }
+
+    private static Key createKey(TableModel model, int rowCount, int column,
+            Comparator<Object> comparator) {
+        Object[] values = new Object[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            values[row] = model.getValueAt(row, column);
+        }
+
+        if (comparator == TableSorter.COMPARABLE_COMAPRATOR) {
+            Class<?> type = model.getColumnClass(column);
+            if (type == Integer.class || type == Long.class
+                    || type == Short.class || type == Byte.class) {
+                LongKey key = LongKey.create(values);
+                if (key != null) {
+                    return key;
+                }
+            } else if (type == Double.class || type == Float.class) {
+                DoubleKey key = DoubleKey.create(values);
+                if (key != null) {
+                    return key;
+                }
+            }
+        }
+        return RankKey.create(values, comparator);
+    }
+
+    /**
+     * The sort key of a single column.
+     */
+    private abstract static class Key {
+        abstract int size();
+
+        abstract int compare(int row1, int row2);
+    }
+
+    /**
+     * Integral values; nulls are marked separately.
+     */
+    private static final class LongKey extends Key {
+        private final long[] values;
+
+        private final BitSet nulls;
+
+        private LongKey(long[] values, BitSet nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        /**
+         * Returns a key for the given values, or <code>null</code> if any of
+         * them isn't an integral number.
+         */
+        static LongKey create(Object[] values) {
+            long[] result = new long[values.length];
+            BitSet nulls = null;
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value == null) {
+                    if (nulls == null) {
+                        nulls = new BitSet(values.length);
+                    }
+                    nulls.set(i);
+                } else if (value instanceof Integer || value instanceof Long
+                        || value instanceof Short || value instanceof Byte) {
+                    result[i] = ((Number) value).longValue();
+                } else {
+                    return null;
+                }
+            }
+            return new LongKey(result, nulls);
+        }
+
+        int size() {
+            return values.length;
+        }
+
+        int compare(int row1, int row2) {
+            if (nulls != null) {
+                boolean null1 = nulls.get(row1);
+                boolean null2 = nulls.get(row2);
+                if (null1 || null2) {
+                    return null1 == null2 ? 0 : null1 ? -1 : 1;
+                }
+            }
+            return Long.compare(values[row1], values[row2]);
+        }
+    }
+
+    /**
+     * Floating point values; nulls are marked separately.
+     */
+    private static final class DoubleKey extends Key {
+        private final double[] values;
+
+        private final BitSet nulls;
+
+        private DoubleKey(double[] values, BitSet nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        /**
+         * Returns a key for the given values, or <code>null</code> if any of
+         * them isn't a floating point number.
+         */
+        static DoubleKey create(Object[] values) {
+            double[] result = new double[values.length];
+            BitSet nulls = null;
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value == null) {
+                    if (nulls == null) {
+                        nulls = new BitSet(values.length);
+                    }
+                    nulls.set(i);
+                } else if (value instanceof Double || value instanceof Float) {
+                    result[i] = ((Number) value).doubleValue();
+                } else {
+                    return null;
+                }
+            }
+            return new DoubleKey(result, nulls);
+        }
+
+        int size() {
+            return values.length;
+        }
+
+        int compare(int row1, int row2) {
+            if (nulls != null) {
+                boolean null1 = nulls.get(row1);
+                boolean null2 = nulls.get(row2);
+                if (null1 || null2) {
+                    return null1 == null2 ? 0 : null1 ? -1 : 1;
+                }
+            }
+            return Double.compare(values[row1], values[row2]);
+        }
+    }
+
+    /**
+     * Ranks of arbitrary values, where <code>0</code> represents
+     * <code>null</code> and values that compare as equal share a rank.
+     */
+    private static final class RankKey extends Key {
+        private final int[] ranks;
+
+        private RankKey(int[] ranks) {
+            this.ranks = ranks;
+        }
+
+        static RankKey create(Object[] values, Comparator<Object> comparator) {
+            // each distinct value is only compared once
+            Map<Object, Integer> indices = new HashMap<Object, Integer>();
+            List<Object> distinct = new ArrayList<Object>();
+            int[] result = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value != null) {
+                    Integer index = indices.get(value);
+                    if (index == null) {
+                        index = distinct.size();
+                        indices.put(value, index);
+                        distinct.add(value);
+                    }
+                    result[i] = index;
+                }
+            }
+
+            Integer[] order = new Integer[distinct.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            final List<Object> sortedValues = distinct;
+            final Comparator<Object> valueComparator = comparator;
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer o1, Integer o2) {
+                    return valueComparator.compare(sortedValues.get(o1),
+                            sortedValues.get(o2));
+                }
+            });
+
+            int[] ranks = new int[order.length];
+            int rank = 0;
+            for (int i = 0; i < order.length; i++) {
+                if (i == 0 || comparator.compare(distinct.get(order[i - 1]),
+                        distinct.get(order[i])) != 0) {
+                    rank++;
+                }
+                ranks[order[i]] = rank;
+            }
+
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    result[i] = ranks[result[i]];
+                }
+            }
+            return new RankKey(result);
+        }
+
+        int size() {
+            return ranks.length;
+        }
+
+        int compare(int row1, int row2) {
+            return Integer.compare(ranks[row1], ranks[row2]);
+        }
+    }
+}
@@ -17,6 +17,8 @@
 
 package com.github.meinders.common;
 
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import javax.swing.*;
 
 /**
@@ -31,22 +33,152 @@ import javax.swing.*;
  * <p>Note that the API changed slightly in the 3rd version:
  * You must now invoke start() on the SwingWorker after
  * creating it.</p>
+ *
+ * <p>Unlike the original, workers don't create a thread of their own.
+ * The <code>construct</code> method is run by an {@link Executor}, which is
+ * the shared, bounded pool of daemon threads returned by
+ * {@link #getDefaultExecutor()} unless specified otherwise. Because the pool
+ * is bounded, a worker shouldn't wait for another worker that is started
+ * after it. Use {@link #createVirtualThreadExecutor()} to run each worker on
+ * a virtual thread instead.</p>
+ *
+ * <p>If a {@link #setMetricsSink(WorkerMetricsSink) metrics sink} is set,
+ * each worker run is timed and reported to it; see {@link WorkerTrace}.</p>
  */
 public abstract class SwingWorker {
+    /**
+     * The maximum number of threads in the default executor.
+     */
+    public static final int DEFAULT_POOL_SIZE =
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Time in seconds that idle threads of the default executor are kept.
+     */
+    private static final long KEEP_ALIVE_TIME = 60;
+
+    private static volatile Executor defaultExecutor = null;
+
+    private static volatile WorkerMetricsSink metricsSink = null;
+
     private Object value;  // see getValue(), setValue()
 
+    private final Executor executor;
+
+    /**
+     * Completed when the value is set, or when the worker is interrupted
+     * before that.
+     */
+    private final CompletableFuture<Object> future =
+            new CompletableFuture<Object>();
+
     /**
-     * Class to maintain reference to current worker thread
-     * under separate synchronization control.
+     * Whether the worker was started (or interrupted before it started).
      */
-    private static class ThreadVar {
-        private Thread thread;
-        ThreadVar(Thread t) { thread = t; }
-        synchronized Thread get() { return thread; }
-        synchronized void clear() { thread = null; }
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * The thread running the <code>construct</code> method, guarded by
+     * <code>this</code>.
+     */
+    private Thread thread = null;
+
+    /**
+     * Whether {@link #interrupt()} was called.
+     */
+    private volatile boolean interrupted = false;
+
+    /**
+     * The metrics sink at the time the worker was started, if any.
+     */
+    private WorkerMetricsSink sink = null;
+
+    private long enqueueTime;
+
+    private long startTime;
+
+    private long constructEndTime;
+
+    /**
+     * Returns the executor used by workers that don't specify one. Unless
+     * {@link #setDefaultExecutor(Executor)} was called, this is a shared pool
+     * of at most {@link #DEFAULT_POOL_SIZE} daemon threads, which are
+     * discarded after a minute of inactivity.
+     *
+     * @return the default executor
+     */
+    public static Executor getDefaultExecutor() {
+        Executor result = defaultExecutor;
+        if (result == null) {
+            synchronized (SwingWorker.class) {
+                result = defaultExecutor;
+                if (result == null) {
+                    result = createDefaultExecutor();
+                    defaultExecutor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the executor used by workers created after this call that don't
+     * specify one.
+     *
+     * @param executor the executor to be used, or <code>null</code> to use
+     *        the shared pool
+     */
+    public static void setDefaultExecutor(Executor executor) {
+        defaultExecutor = executor;
+    }
+
+    /**
+     * Returns a new executor that runs each worker on its own virtual
+     * thread. Virtual threads are cheap to create, which suits large numbers
+     * of workers that mostly wait for I/O. Note that thread priorities have no
+     * effect on virtual threads.
+     *
+     * @return a new executor using virtual threads
+     */
+    public static ExecutorService createVirtualThreadExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
     }
 
-    private ThreadVar threadVar;
+    /**
+     * Returns the sink that the timestamps of worker runs are reported to.
+     *
+     * @return the metrics sink, or <code>null</code> if none is set
+     */
+    public static WorkerMetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * Sets the sink that the timestamps of worker runs are reported to.
+     * Affects workers started after this call. Without a sink, workers are
+     * not timed at all.
+     *
+     * @param sink the metrics sink, or <code>null</code> to stop reporting
+     */
+    public static void setMetricsSink(WorkerMetricsSink sink) {
+        metricsSink = sink;
+    }
+
+    private static Executor createDefaultExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor result = new ThreadPoolExecutor(DEFAULT_POOL_SIZE,
+                DEFAULT_POOL_SIZE, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "SwingWorker-"
+                                + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        result.allowCoreThreadTimeOut(true);
+        return result;
+    }
 
     /**
      * Get the value produced by the worker thread, or null if it
@@ -77,14 +209,29 @@ public abstract class SwingWorker {
 
     /**
      * A new method that interrupts the worker thread.  Call this method
-     * to force the worker to stop what it's doing.
+     * to force the worker to stop what it's doing. If the worker wasn't
+     * started yet, it won't be.
      */
     public void interrupt() {
-        Thread t = threadVar.get();
-        if (t != null) {
-            t.interrupt();
+        interrupted = true;
+        started.set(true);
+        synchronized (this) {
+            if (thread != null) {
+                thread.interrupt();
+            }
         }
-        threadVar.clear();
+        future.complete(null);
+    }
+
+    /**
+     * Returns whether {@link #interrupt()} was called. The future of an
+     * interrupted worker completes with <code>null</code>, unless the value
+     * was produced before.
+     *
+     * @return <code>true</code> if the worker was interrupted
+     */
+    public boolean isInterrupted() {
+        return interrupted;
     }
 
     /**
@@ -95,55 +242,181 @@ public abstract class SwingWorker {
      * @return the value created by the <code>construct</code> method
      */
     public Object get() {
-        while (true) {
-            Thread t = threadVar.get();
-            if (t == null) {
-                return getValue();
-            }
-            try {
-                t.join();
-            }
-            catch (InterruptedException e) {
-                Thread.currentThread().interrupt(); // propagate
-                return null;
-            }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // propagate
+            return null;
+        } catch (ExecutionException e) {
+            // construct threw an exception; no value was produced
+        }
+        return getValue();
+    }
+
+    /**
+     * Return the value created by the <code>construct</code> method,
+     * waiting at most the given time for it to be produced. Returns null if
+     * either the constructing thread or the current thread was interrupted
+     * before a value was produced.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout argument
+     * @return the value created by the <code>construct</code> method
+     * @throws TimeoutException if the value wasn't produced in time
+     */
+    public Object get(long timeout, TimeUnit unit) throws TimeoutException {
+        try {
+            future.get(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // propagate
+            return null;
+        } catch (ExecutionException e) {
+            // construct threw an exception; no value was produced
         }
+        return getValue();
     }
 
+    /**
+     * Returns a future that is completed with the value created by the
+     * <code>construct</code> method, or with <code>null</code> if the worker
+     * is interrupted before it produces a value. If <code>construct</code>
+     * throws an exception, the future completes exceptionally. The future
+     * completes before <code>finished</code> is called. Completing or
+     * cancelling the returned future doesn't affect the worker.
+     *
+     * @return a future for the value of the worker
+     */
+    public CompletableFuture<?> getFuture() {
+        return future.copy();
+    }
 
     /**
-     * Start a thread that will call the <code>construct</code> method
-     * and then exit.
+     * Creates a worker that uses the default executor, as returned by
+     * {@link #getDefaultExecutor()}. Call {@link #start()} to run it.
      */
     public SwingWorker() {
-        final Runnable doFinished = new Runnable() {
-           public void run() { finished(); }
-        };
+        this(getDefaultExecutor());
+    }
 
-        Runnable doConstruct = new Runnable() {
-            public void run() {
-                try {
-                    setValue(construct());
-                }
-                finally {
-                    threadVar.clear();
+    /**
+     * Creates a worker that uses the given executor. Call {@link #start()}
+     * to run it.
+     *
+     * @param executor the executor that calls the <code>construct</code>
+     *        method
+     */
+    public SwingWorker(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Start the worker thread. Has no effect if the worker was started or
+     * interrupted before.
+     */
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            sink = metricsSink;
+            if (sink != null) {
+                enqueueTime = System.nanoTime();
+            }
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        doConstruct();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    private void doConstruct() {
+        Thread current = Thread.currentThread();
+        synchronized (this) {
+            if (future.isDone()) {
+                // interrupted while queued
+                if (sink != null) {
+                    startTime = System.nanoTime();
+                    constructEndTime = startTime;
+                    report(WorkerTrace.Outcome.INTERRUPTED, startTime,
+                            startTime);
                 }
+                return;
+            }
+            thread = current;
+        }
+        if (sink != null) {
+            startTime = System.nanoTime();
+        }
 
-                SwingUtilities.invokeLater(doFinished);
+        int priority = current.getPriority();
+        try {
+            setValue(construct());
+        } catch (RuntimeException e) {
+            constructFailed(e);
+            return;
+        } catch (Error e) {
+            constructFailed(e);
+            return;
+        } finally {
+            synchronized (this) {
+                thread = null;
             }
-        };
+            // don't let this worker affect the next one on a pooled thread
+            Thread.interrupted();
+            current.setPriority(priority);
+        }
 
-        Thread t = new Thread(doConstruct);
-        threadVar = new ThreadVar(t);
+        if (sink != null) {
+            constructEndTime = System.nanoTime();
+        }
+        future.complete(getValue());
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (sink == null) {
+                    finished();
+                } else {
+                    long dispatchTime = System.nanoTime();
+                    try {
+                        finished();
+                    } finally {
+                        report(interrupted ? WorkerTrace.Outcome.INTERRUPTED
+                                : WorkerTrace.Outcome.COMPLETED, dispatchTime,
+                                System.nanoTime());
+                    }
+                }
+            }
+        });
     }
 
     /**
-     * Start the worker thread.
+     * Reports an exception thrown by <code>construct</code> to the uncaught
+     * exception handler of the current thread, as if the worker had its own
+     * thread, without terminating a pooled thread. The future is completed
+     * afterwards, so callers of <code>get</code> see the report first.
      */
-    public void start() {
-        Thread t = threadVar.get();
-        if (t != null) {
-            t.start();
+    private void constructFailed(Throwable e) {
+        if (sink != null) {
+            constructEndTime = System.nanoTime();
+            report(WorkerTrace.Outcome.FAILED, constructEndTime,
+                    constructEndTime);
         }
+        Thread current = Thread.currentThread();
+        try {
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        } finally {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void report(WorkerTrace.Outcome outcome, long dispatchTime,
+            long completionTime) {
+        sink.workerCompleted(new WorkerTrace(getClass(), outcome, enqueueTime,
+                startTime, constructEndTime, dispatchTime, completionTime));
     }
 }
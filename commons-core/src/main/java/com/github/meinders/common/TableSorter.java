@@ -21,6 +21,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.table.*;
@@ -44,6 +45,21 @@ import javax.swing.table.*;
  * rows, a note of this is made and the sorter will resort the
  * rows the next time a value is requested.
  * <p/>
+ * Once sorted, the order is maintained incrementally as rows are inserted,
+ * deleted or updated: inserted rows are placed using a binary search, deleted
+ * rows are removed and updated rows are moved to their new position. The
+ * resulting changes are passed on as a minimal number of row events.
+ * Changes that affect a large part of the model cause a full re-sort
+ * instead.
+ * <p/>
+ * A {@link Filter} may be set to hide rows. The rows it accepts are kept as
+ * a compact set of model indices (an <code>int[]</code>, or a bit set when
+ * most rows are accepted) and only those rows are sorted, so no
+ * intermediate model is created. When a filter replaces a filter that it
+ * {@link Filter#isNarrowerThan(Filter) narrows}, such as a search string that
+ * the user keeps typing, only the rows that are currently shown are tested
+ * and their order is kept, without sorting again.
+ * <p/>
  * When the tableHeader property is set, either by using the
  * setTableHeader() method or the two argument constructor, the
  * table header may be used as a complete UI for TableSorter.
@@ -67,6 +83,15 @@ import javax.swing.table.*;
  * sort.
  * </ul>
  * <p/>
+ * By default, the sorter extracts the values of the sorting columns from the
+ * model once per sort, into primitive key arrays, and sorts an array of row
+ * indices using those keys. See {@link SortMode}. Models with at least
+ * {@link #getParallelSortThreshold()} rows are sorted in parallel. If such a
+ * sort is needed on the event dispatch thread, it is performed in the
+ * background instead: the previous row order is kept until the sort
+ * completes, after which the new order is swapped in and a single
+ * <code>fireTableDataChanged()</code> is fired.
+ * <p/>
  * This is a long overdue rewrite of a class of the same name that
  * first appeared in the swing table demos in 1997.
  *
@@ -97,7 +122,103 @@ public class TableSorter extends AbstractTableModel {
         }
     };
 
-    private Row[] viewToModel;
+    /**
+     * Specifies how rows are compared while sorting.
+     */
+    public enum SortMode {
+        /**
+         * Rows are compared by getting their values from the model and
+         * comparing them with the column comparators, for every comparison.
+         */
+        COMPARATOR,
+
+        /**
+         * The values of each sorting column are first extracted from the
+         * model into an array of primitive keys: numbers are stored as
+         * <code>long</code> or <code>double</code> values and other values
+         * are ranked using the column comparator, which is called only to
+         * sort the distinct values of the column. Rows are then sorted by
+         * comparing their keys. The resulting order is the same as with
+         * {@link #COMPARATOR}, but the model and comparators are called far
+         * less often.
+         */
+        KEYS;
+    }
+
+    /**
+     * Determines which rows of the model are shown.
+     */
+    public interface Filter {
+        /**
+         * Returns whether the given row of the model should be shown.
+         *
+         * @param model the table model
+         * @param row the model index of the row
+         * @return <code>true</code> to show the row
+         */
+        boolean accept(TableModel model, int row);
+
+        /**
+         * Returns whether this filter only accepts rows that are also
+         * accepted by the given filter. If so, setting this filter after the
+         * given filter only needs to test the rows that are currently shown,
+         * which also keeps their order.
+         *
+         * @param filter the filter to compare with
+         * @return <code>true</code> if this filter narrows the given filter;
+         *         <code>false</code> if it does not or if this is unknown
+         */
+        boolean isNarrowerThan(Filter filter);
+    }
+
+    /**
+     * The default minimum number of rows for a model to be sorted in
+     * parallel.
+     */
+    public static final int DEFAULT_PARALLEL_SORT_THRESHOLD = 100000;
+
+    /**
+     * Changes to at most this many rows, or to at most an eighth of the
+     * rows, are always applied incrementally.
+     */
+    private static final int INCREMENTAL_LIMIT = 64;
+
+    private SortMode sortMode = SortMode.KEYS;
+
+    private int parallelSortThreshold = DEFAULT_PARALLEL_SORT_THRESHOLD;
+
+    /**
+     * Incremented whenever the sorting state is cleared, such that the
+     * results of outdated background sorts are discarded.
+     */
+    private int sortGeneration = 0;
+
+    /**
+     * The row order before the sorting state was last cleared, shown while
+     * a background sort is in progress. Only kept for large models.
+     */
+    private int[] previousViewToModel;
+
+    /**
+     * Whether a background sort is in progress. While it is, the row order
+     * is provisional and isn't maintained incrementally.
+     */
+    private boolean backgroundSortPending = false;
+
+    private Filter filter = null;
+
+    /**
+     * The rows accepted by the filter, if known while there is no row order.
+     */
+    private RowSet filteredRows = null;
+
+    /**
+     * The number of rows of the model that the current row order is based
+     * on.
+     */
+    private int modelRowCount = 0;
+
+    private int[] viewToModel;
     private int[] modelToView;
 
     private JTableHeader tableHeader;
@@ -122,9 +243,40 @@ public class TableSorter extends AbstractTableModel {
         setTableModel(tableModel);
     }
 
+    /**
+     * Clears the sorting state, such that the rows are sorted again when
+     * needed. The rows accepted by the filter are kept, since only the
+     * sorting has changed.
+     */
     private void clearSortingState() {
+        if (filter != null && filteredRows == null && viewToModel != null
+                && !backgroundSortPending) {
+            filteredRows = RowSet.create(viewToModel, modelRowCount);
+        }
+        if (viewToModel != null && viewToModel.length >= parallelSortThreshold) {
+            previousViewToModel = viewToModel;
+        }
         viewToModel = null;
         modelToView = null;
+        sortGeneration++;
+        backgroundSortPending = false;
+    }
+
+    /**
+     * Clears the sorting state and the rows accepted by the filter, such
+     * that both are determined again when needed.
+     */
+    private void clearFilterState() {
+        int[] rows = viewToModel;
+        viewToModel = null;
+        clearSortingState();
+        filteredRows = null;
+        // with a filter, the previous order may not even contain valid rows
+        if (filter == null && rows != null && rows.length >= parallelSortThreshold) {
+            previousViewToModel = rows;
+        } else {
+            previousViewToModel = null;
+        }
     }
 
     public TableModel getTableModel() {
@@ -141,7 +293,7 @@ public class TableSorter extends AbstractTableModel {
             this.tableModel.addTableModelListener(tableModelListener);
         }
 
-        clearSortingState();
+        clearFilterState();
         fireTableStructureChanged();
     }
 
@@ -179,6 +331,92 @@ public class TableSorter extends AbstractTableModel {
         return EMPTY_DIRECTIVE;
     }
 
+    public SortMode getSortMode() {
+        return sortMode;
+    }
+
+    public void setSortMode(SortMode sortMode) {
+        if (sortMode == null) {
+            throw new NullPointerException("sortMode");
+        }
+        this.sortMode = sortMode;
+    }
+
+    public int getParallelSortThreshold() {
+        return parallelSortThreshold;
+    }
+
+    /**
+     * Sets the minimum number of rows for a model to be sorted in parallel
+     * and, when on the event dispatch thread, in the background. Only applies
+     * to {@link SortMode#KEYS}.
+     *
+     * @param parallelSortThreshold the number of rows, or
+     *        <code>Integer.MAX_VALUE</code> to always sort sequentially
+     */
+    public void setParallelSortThreshold(int parallelSortThreshold) {
+        if (parallelSortThreshold < 0) {
+            throw new IllegalArgumentException("parallelSortThreshold: "
+                    + parallelSortThreshold);
+        }
+        this.parallelSortThreshold = parallelSortThreshold;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Sets the filter that determines which rows of the model are shown.
+     *
+     * @param filter the filter, or <code>null</code> to show all rows
+     */
+    public void setFilter(Filter filter) {
+        Filter previous = this.filter;
+        this.filter = filter;
+        if (filter != null && previous != null && filter.isNarrowerThan(previous)
+                && viewToModel != null && !backgroundSortPending
+                && modelRowCount == tableModel.getRowCount()) {
+            narrowFilter();
+        } else {
+            clearFilterState();
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Removes the rows that the filter rejects from the current row order,
+     * assuming the previous filter accepted a superset of the rows that the
+     * current filter accepts.
+     */
+    private void narrowFilter() {
+        int[] rows = new int[viewToModel.length];
+        int count = 0;
+        for (int row : viewToModel) {
+            if (filter.accept(tableModel, row)) {
+                rows[count++] = row;
+            }
+        }
+        viewToModel = Arrays.copyOf(rows, count);
+        modelToView = null;
+        filteredRows = null;
+        previousViewToModel = null;
+    }
+
+    /**
+     * Returns a filter that accepts rows for which the string representation
+     * of the value in the given column contains the given text, ignoring
+     * case. A filter for a text that contains the text of another such filter
+     * for the same column narrows that filter.
+     *
+     * @param column the model index of the column
+     * @param text the text to search for
+     * @return the filter
+     */
+    public static Filter createContainsFilter(int column, String text) {
+        return new ContainsFilter(column, text);
+    }
+
     public int getSortingStatus(int column) {
         return getDirective(column).direction;
     }
@@ -235,31 +473,152 @@ public class TableSorter extends AbstractTableModel {
         return LEXICAL_COMPARATOR;
     }
 
-    private Row[] getViewToModel() {
+    private int[] getViewToModel() {
         if (viewToModel == null) {
             int tableModelRowCount = tableModel.getRowCount();
-            viewToModel = new Row[tableModelRowCount];
-            for (int row = 0; row < tableModelRowCount; row++) {
-                viewToModel[row] = new Row(row);
+            int[] rows;
+            if (filter == null) {
+                rows = new int[tableModelRowCount];
+                for (int row = 0; row < tableModelRowCount; row++) {
+                    rows[row] = row;
+                }
+            } else {
+                if (filteredRows == null) {
+                    filteredRows = RowSet.create(tableModel, filter);
+                }
+                rows = filteredRows.toArray();
             }
+            int rowCount = rows.length;
 
             if (isSorting()) {
-                Arrays.sort(viewToModel);
+                if (sortMode == SortMode.KEYS) {
+                    SortKeys keys = createSortKeys();
+                    if (rowCount < parallelSortThreshold) {
+                        keys.sort(rows);
+                    } else if (SwingUtilities.isEventDispatchThread()) {
+                        sortInBackground(keys, rows.clone());
+                        if (previousViewToModel != null
+                                && previousViewToModel.length == rowCount) {
+                            rows = previousViewToModel;
+                        }
+                    } else {
+                        keys.parallelSort(rows);
+                    }
+                } else {
+                    Row[] sorted = new Row[rowCount];
+                    for (int i = 0; i < rowCount; i++) {
+                        sorted[i] = new Row(rows[i]);
+                    }
+                    Arrays.sort(sorted);
+                    for (int i = 0; i < rowCount; i++) {
+                        rows[i] = sorted[i].modelIndex;
+                    }
+                }
             }
+            viewToModel = rows;
+            modelRowCount = tableModelRowCount;
+            previousViewToModel = null;
         }
         return viewToModel;
     }
 
+    /**
+     * Sorts the given rows in parallel on the common fork/join pool. When
+     * done, the result replaces the current row order on the event dispatch
+     * thread, unless the sorting state was cleared in the meantime. The keys
+     * are extracted beforehand, so the model is never accessed from another
+     * thread.
+     */
+    private void sortInBackground(final SortKeys keys, final int[] rows) {
+        final int generation = sortGeneration;
+        final int modelRowCount = keys.size();
+        backgroundSortPending = true;
+        ForkJoinPool.commonPool().execute(new Runnable() {
+            public void run() {
+                keys.parallelSort(rows);
+                final int[] inverse = new int[modelRowCount];
+                Arrays.fill(inverse, -1);
+                for (int i = 0; i < rows.length; i++) {
+                    inverse[rows[i]] = i;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (generation == sortGeneration) {
+                            backgroundSortPending = false;
+                            viewToModel = rows;
+                            modelToView = inverse;
+                            fireTableDataChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Extracts the sort keys for the current sorting columns from the model.
+     */
+    private SortKeys createSortKeys() {
+        int[] columns = new int[sortingColumns.size()];
+        int[] directions = new int[columns.length];
+        Comparator<?>[] comparators = new Comparator<?>[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Directive directive = (Directive) sortingColumns.get(i);
+            columns[i] = directive.column;
+            directions[i] = directive.direction;
+            comparators[i] = getComparator(directive.column);
+        }
+        return new SortKeys(tableModel, columns, directions, comparators);
+    }
+
+    /**
+     * Compares the given model rows by the values of the sorting columns.
+     */
+    private int compareRows(int row1, int row2) {
+        for (Iterator it = sortingColumns.iterator(); it.hasNext();) {
+            Directive directive = (Directive) it.next();
+            int column = directive.column;
+            Object o1 = tableModel.getValueAt(row1, column);
+            Object o2 = tableModel.getValueAt(row2, column);
+
+            int comparison = 0;
+            // Define null less than everything, except null.
+            if (o1 == null && o2 == null) {
+                comparison = 0;
+            } else if (o1 == null) {
+                comparison = -1;
+            } else if (o2 == null) {
+                comparison = 1;
+            } else {
+                comparison = getComparator(column).compare(o1, o2);
+            }
+            if (comparison != 0) {
+                return directive.direction == DESCENDING ? -comparison : comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares the given model rows as a stable sort orders them: by the
+     * values of the sorting columns, then by model index.
+     */
+    private int compareRowsStable(int row1, int row2) {
+        int comparison = compareRows(row1, row2);
+        return comparison != 0 ? comparison : (row1 < row2 ? -1 : row1 == row2 ? 0 : 1);
+    }
+
     public int modelIndex(int viewIndex) {
-        return getViewToModel()[viewIndex].modelIndex;
+        return getViewToModel()[viewIndex];
     }
 
     private int[] getModelToView() {
         if (modelToView == null) {
-            int n = getViewToModel().length;
-            modelToView = new int[n];
-            for (int i = 0; i < n; i++) {
-                modelToView[modelIndex(i)] = i;
+            int[] rows = getViewToModel();
+            modelToView = new int[modelRowCount];
+            Arrays.fill(modelToView, -1);
+            for (int i = 0; i < rows.length; i++) {
+                modelToView[rows[i]] = i;
             }
         }
         return modelToView;
@@ -268,7 +627,10 @@ public class TableSorter extends AbstractTableModel {
     // TableModel interface methods
 
     public int getRowCount() {
-        return (tableModel == null) ? 0 : tableModel.getRowCount();
+        if (tableModel == null) {
+            return 0;
+        }
+        return (filter == null) ? tableModel.getRowCount() : getViewToModel().length;
     }
 
     public int getColumnCount() {
@@ -305,39 +667,15 @@ public class TableSorter extends AbstractTableModel {
         }
 
         public int compareTo(Object o) {
-            int row1 = modelIndex;
-            int row2 = ((Row) o).modelIndex;
-
-            for (Iterator it = sortingColumns.iterator(); it.hasNext();) {
-                Directive directive = (Directive) it.next();
-                int column = directive.column;
-                Object o1 = tableModel.getValueAt(row1, column);
-                Object o2 = tableModel.getValueAt(row2, column);
-
-                int comparison = 0;
-                // Define null less than everything, except null.
-                if (o1 == null && o2 == null) {
-                    comparison = 0;
-                } else if (o1 == null) {
-                    comparison = -1;
-                } else if (o2 == null) {
-                    comparison = 1;
-                } else {
-                    comparison = getComparator(column).compare(o1, o2);
-                }
-                if (comparison != 0) {
-                    return directive.direction == DESCENDING ? -comparison : comparison;
-                }
-            }
-            return 0;
+            return compareRows(modelIndex, ((Row) o).modelIndex);
         }
     }
 
     private class TableModelHandler implements TableModelListener {
         public void tableChanged(TableModelEvent e) {
-            // If we're not sorting by anything, just pass the event along.
-            if (!isSorting()) {
-                clearSortingState();
+            // If we're not sorting or filtering, just pass the event along.
+            if (!isSorting() && filter == null) {
+                clearFilterState();
                 fireTableChanged(e);
                 return;
             }
@@ -346,6 +684,7 @@ public class TableSorter extends AbstractTableModel {
             // sorting columns may have been either moved or deleted from
             // the model.
             if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+                clearFilterState();
                 cancelSorting();
                 fireTableChanged(e);
                 return;
@@ -373,6 +712,7 @@ public class TableSorter extends AbstractTableModel {
             if (e.getFirstRow() == e.getLastRow()
                     && column != TableModelEvent.ALL_COLUMNS
                     && getSortingStatus(column) == NOT_SORTED
+                    && filter == null
                     && modelToView != null) {
                 int viewIndex = getModelToView()[e.getFirstRow()];
                 fireTableChanged(new TableModelEvent(TableSorter.this,
@@ -381,13 +721,327 @@ public class TableSorter extends AbstractTableModel {
                 return;
             }
 
+            // Otherwise, try to maintain the existing order incrementally.
+            if (viewToModel != null && !backgroundSortPending
+                    && e.getLastRow() != Integer.MAX_VALUE) {
+                boolean handled;
+                switch (e.getType()) {
+                case TableModelEvent.INSERT:
+                    handled = rowsInserted(e.getFirstRow(), e.getLastRow());
+                    break;
+                case TableModelEvent.DELETE:
+                    handled = rowsDeleted(e.getFirstRow(), e.getLastRow());
+                    break;
+                default:
+                    handled = rowsUpdated(e.getFirstRow(), e.getLastRow(), column);
+                    break;
+                }
+                if (handled) {
+                    return;
+                }
+            }
+
             // Something has happened to the data that may have invalidated the row order.
-            clearSortingState();
+            clearFilterState();
             fireTableDataChanged();
             return;
         }
     }
 
+    /**
+     * Returns whether the given number of changed rows is small enough to
+     * update the order incrementally, rather than re-sorting.
+     */
+    private boolean isIncremental(int changed) {
+        return changed <= Math.max(INCREMENTAL_LIMIT, viewToModel.length / 8);
+    }
+
+    /**
+     * Inserts the given model rows, which were just inserted into the model,
+     * into the current order.
+     *
+     * @return <code>false</code> if a full re-sort is needed instead
+     */
+    private boolean rowsInserted(int first, int last) {
+        int count = last - first + 1;
+        int n = viewToModel.length;
+        if (tableModel.getRowCount() != modelRowCount + count
+                || first > modelRowCount || !isIncremental(count)) {
+            return false;
+        }
+        int[] oldModelToView = getModelToView();
+
+        // shift the existing rows, then find the position of each new row
+        int[] rows = viewToModel.clone();
+        for (int i = 0; i < n; i++) {
+            if (rows[i] >= first) {
+                rows[i] += count;
+            }
+        }
+        int[] inserted = new int[count];
+        int accepted = 0;
+        for (int row = first; row <= last; row++) {
+            if (filter == null || filter.accept(tableModel, row)) {
+                inserted[accepted++] = row;
+            }
+        }
+        inserted = Arrays.copyOf(inserted, accepted);
+        int[] positions = findPositions(rows, n, inserted);
+
+        int[] newViewToModel = merge(rows, n, inserted, positions);
+        int[] newModelToView = new int[modelRowCount + count];
+        System.arraycopy(oldModelToView, 0, newModelToView, 0, first);
+        System.arraycopy(oldModelToView, first, newModelToView, last + 1,
+                modelRowCount - first);
+        Arrays.fill(newModelToView, first, last + 1, -1);
+        int from = (accepted == 0) ? newViewToModel.length : positions[0];
+        for (int v = from; v < newViewToModel.length; v++) {
+            newModelToView[newViewToModel[v]] = v;
+        }
+        viewToModel = newViewToModel;
+        modelToView = newModelToView;
+        modelRowCount += count;
+        filteredRows = null;
+
+        // final positions are ascending, so insert events apply in order
+        int[] finalPositions = new int[accepted];
+        for (int i = 0; i < accepted; i++) {
+            finalPositions[i] = positions[i] + i;
+        }
+        fireRuns(finalPositions, TableModelEvent.INSERT, TableModelEvent.ALL_COLUMNS, false);
+        return true;
+    }
+
+    /**
+     * Removes the given model rows, which were just deleted from the model,
+     * from the current order.
+     *
+     * @return <code>false</code> if a full re-sort is needed instead
+     */
+    private boolean rowsDeleted(int first, int last) {
+        int count = last - first + 1;
+        if (tableModel.getRowCount() != modelRowCount - count
+                || last >= modelRowCount) {
+            return false;
+        }
+        int[] oldModelToView = getModelToView();
+
+        int[] positions = new int[count];
+        int visible = 0;
+        for (int row = first; row <= last; row++) {
+            if (oldModelToView[row] != -1) {
+                positions[visible++] = oldModelToView[row];
+            }
+        }
+        positions = Arrays.copyOf(positions, visible);
+        Arrays.sort(positions);
+
+        int[] newViewToModel = remove(viewToModel, positions);
+        for (int v = 0; v < newViewToModel.length; v++) {
+            if (newViewToModel[v] > last) {
+                newViewToModel[v] -= count;
+            }
+        }
+        int[] newModelToView = new int[modelRowCount - count];
+        System.arraycopy(oldModelToView, 0, newModelToView, 0, first);
+        System.arraycopy(oldModelToView, last + 1, newModelToView, first,
+                modelRowCount - last - 1);
+        int from = (visible == 0) ? newViewToModel.length : positions[0];
+        for (int v = from; v < newViewToModel.length; v++) {
+            newModelToView[newViewToModel[v]] = v;
+        }
+        viewToModel = newViewToModel;
+        modelToView = newModelToView;
+        modelRowCount -= count;
+        filteredRows = null;
+
+        // delete from the bottom up, so earlier events don't shift later ones
+        fireRuns(positions, TableModelEvent.DELETE, TableModelEvent.ALL_COLUMNS, true);
+        return true;
+    }
+
+    /**
+     * Handles an update of the given model rows. If a sorting column may
+     * have changed, the rows are moved to their new positions.
+     *
+     * @return <code>false</code> if a full re-sort is needed instead,
+     *         including when the filter now accepts a different set of rows
+     */
+    private boolean rowsUpdated(int first, int last, int column) {
+        int count = last - first + 1;
+        int n = viewToModel.length;
+        if (first < 0 || tableModel.getRowCount() != modelRowCount
+                || last >= modelRowCount || !isIncremental(count)) {
+            return false;
+        }
+        int[] m2v = getModelToView();
+
+        int[] moved = new int[count];
+        int[] oldPositions = new int[count];
+        int visible = 0;
+        for (int row = first; row <= last; row++) {
+            boolean accepted = (filter == null) || filter.accept(tableModel, row);
+            if (accepted != (m2v[row] != -1)) {
+                return false;
+            }
+            if (accepted) {
+                moved[visible] = row;
+                oldPositions[visible++] = m2v[row];
+            }
+        }
+        if (visible == 0) {
+            return true;
+        }
+        count = visible;
+        moved = Arrays.copyOf(moved, count);
+        oldPositions = Arrays.copyOf(oldPositions, count);
+        Arrays.sort(oldPositions);
+
+        if (column != TableModelEvent.ALL_COLUMNS
+                && getSortingStatus(column) == NOT_SORTED) {
+            fireRuns(oldPositions, TableModelEvent.UPDATE, column, false);
+            return true;
+        }
+
+        int[] rows = remove(viewToModel, oldPositions);
+        int[] positions = findPositions(rows, n - count, moved);
+        int[] newViewToModel = merge(rows, n - count, moved, positions);
+
+        int from = Math.min(oldPositions[0], positions[0]);
+        for (int v = from; v < n; v++) {
+            m2v[newViewToModel[v]] = v;
+        }
+        viewToModel = newViewToModel;
+
+        // every row between the old and new position of a moved row changes
+        int[] ranges = new int[2 * count];
+        for (int i = 0; i < count; i++) {
+            int newPosition = positions[i] + i;
+            int oldPosition = oldPositions[i];
+            ranges[2 * i] = Math.min(oldPosition, newPosition);
+            ranges[2 * i + 1] = Math.max(oldPosition, newPosition);
+        }
+        fireRanges(ranges);
+        return true;
+    }
+
+    /**
+     * Sorts the given model rows and returns, for each of them, the number of
+     * the given sorted rows that precede it.
+     */
+    private int[] findPositions(int[] sorted, int size, int[] rows) {
+        Integer[] order = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            order[i] = rows[i];
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return compareRowsStable(o1, o2);
+            }
+        });
+
+        int[] positions = new int[rows.length];
+        int low = 0;
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = order[i];
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareRowsStable(sorted[middle], rows[i]) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            positions[i] = low;
+        }
+        return positions;
+    }
+
+    /**
+     * Inserts the given rows into the first <code>size</code> elements of
+     * the sorted rows, at the given positions.
+     */
+    private static int[] merge(int[] sorted, int size, int[] rows, int[] positions) {
+        int[] result = new int[size + rows.length];
+        int source = 0;
+        int target = 0;
+        for (int i = 0; i < rows.length; i++) {
+            int length = positions[i] - source;
+            System.arraycopy(sorted, source, result, target, length);
+            source += length;
+            target += length;
+            result[target++] = rows[i];
+        }
+        System.arraycopy(sorted, source, result, target, size - source);
+        return result;
+    }
+
+    /**
+     * Returns a copy of the given array without the elements at the given
+     * ascending positions.
+     */
+    private static int[] remove(int[] array, int[] positions) {
+        int[] result = new int[array.length - positions.length];
+        int source = 0;
+        int target = 0;
+        for (int position : positions) {
+            int length = position - source;
+            System.arraycopy(array, source, result, target, length);
+            target += length;
+            source = position + 1;
+        }
+        System.arraycopy(array, source, result, target, array.length - source);
+        return result;
+    }
+
+    /**
+     * Fires one event for each run of consecutive view rows among the given
+     * ascending positions.
+     */
+    private void fireRuns(int[] positions, int type, int column, boolean descending) {
+        List<int[]> runs = new ArrayList<int[]>();
+        int start = 0;
+        for (int i = 1; i <= positions.length; i++) {
+            if (i == positions.length || positions[i] != positions[i - 1] + 1) {
+                runs.add(new int[] { positions[start], positions[i - 1] });
+                start = i;
+            }
+        }
+        if (descending) {
+            Collections.reverse(runs);
+        }
+        for (int[] run : runs) {
+            fireTableChanged(new TableModelEvent(this, run[0], run[1], column, type));
+        }
+    }
+
+    /**
+     * Fires an update event for each of the given ranges of view rows, after
+     * merging ranges that overlap or are adjacent.
+     */
+    private void fireRanges(int[] ranges) {
+        int count = ranges.length / 2;
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = ((long) ranges[2 * i] << 32) | ranges[2 * i + 1];
+        }
+        Arrays.sort(sorted);
+        int start = (int) (sorted[0] >>> 32);
+        int end = (int) sorted[0];
+        for (int i = 1; i <= count; i++) {
+            if (i < count && (int) (sorted[i] >>> 32) <= end + 1) {
+                end = Math.max(end, (int) sorted[i]);
+            } else {
+                fireTableRowsUpdated(start, end);
+                if (i < count) {
+                    start = (int) (sorted[i] >>> 32);
+                    end = (int) sorted[i];
+                }
+            }
+        }
+    }
+
     private class MouseHandler extends MouseAdapter {
         public void mouseClicked(MouseEvent e) {
             JTableHeader h = (JTableHeader) e.getSource();
@@ -495,4 +1149,100 @@ public class TableSorter extends AbstractTableModel {
             this.direction = direction;
         }
     }
+
+    /**
+     * Accepts rows for which the value in a column contains a text.
+     */
+    private static class ContainsFilter implements Filter {
+        private final int column;
+        private final String text;
+
+        public ContainsFilter(int column, String text) {
+            if (text == null) {
+                throw new NullPointerException("text");
+            }
+            this.column = column;
+            this.text = text.toLowerCase();
+        }
+
+        public boolean accept(TableModel model, int row) {
+            Object value = model.getValueAt(row, column);
+            return value != null && value.toString().toLowerCase().contains(text);
+        }
+
+        public boolean isNarrowerThan(Filter filter) {
+            if (filter instanceof ContainsFilter) {
+                ContainsFilter other = (ContainsFilter) filter;
+                return column == other.column && text.contains(other.text);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A set of model rows, stored as a sorted array of row indices when
+     * only a few rows are in the set and as a bit set otherwise, whichever
+     * takes less memory.
+     */
+    private static final class RowSet {
+        private final int[] rows;
+        private final BitSet bits;
+        private final int size;
+
+        private RowSet(int[] rows, BitSet bits, int size) {
+            this.rows = rows;
+            this.bits = bits;
+            this.size = size;
+        }
+
+        /**
+         * Returns the set of rows of the given model that the given filter
+         * accepts.
+         */
+        static RowSet create(TableModel model, Filter filter) {
+            int rowCount = model.getRowCount();
+            BitSet bits = new BitSet(rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                if (filter.accept(model, row)) {
+                    bits.set(row);
+                }
+            }
+            return create(bits, rowCount);
+        }
+
+        /**
+         * Returns the set of rows in the given row order.
+         */
+        static RowSet create(int[] viewToModel, int modelRowCount) {
+            BitSet bits = new BitSet(modelRowCount);
+            for (int row : viewToModel) {
+                bits.set(row);
+            }
+            return create(bits, modelRowCount);
+        }
+
+        private static RowSet create(BitSet bits, int rowCount) {
+            int size = bits.cardinality();
+            // an int per row takes less memory than a bit per model row
+            if ((long) size * Integer.SIZE < rowCount) {
+                return new RowSet(bits.stream().toArray(), null, size);
+            }
+            return new RowSet(null, bits, size);
+        }
+
+        /**
+         * Returns the rows in the set, in ascending order.
+         */
+        int[] toArray() {
+            if (rows != null) {
+                return rows.clone();
+            }
+            int[] result = new int[size];
+            int i = 0;
+            for (int row = bits.nextSetBit(0); row >= 0; row = bits.nextSetBit(row + 1)) {
+                result[i++] = row;
+            }
+            return result;
+        }
+    }
 }
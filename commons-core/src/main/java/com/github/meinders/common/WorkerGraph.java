@@ -0,0 +1,559 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * <p>A worker that runs a graph of workers, starting each worker as soon as
+ * the workers it depends on have finished. Workers that don't depend on each
+ * other run concurrently, up to the {@link #getParallelism() parallelism} of
+ * the graph.</p>
+ *
+ * <p>Workers are added with {@link #add(Worker, Node...)}, which returns a
+ * node for the worker. A worker can only depend on nodes that were added
+ * before it, so the graph can't contain cycles. The result of a worker is
+ * available from its node once the worker has finished, so a dependent
+ * worker can read the results of its dependencies from its
+ * <code>construct</code> method:</p>
+ *
+ * <pre>
+ * final WorkerGraph.Node&lt;Document&gt; load = graph.add(loadWorker);
+ * graph.add(new GenericWorker&lt;Index&gt;() {
+ *     public Index construct() {
+ *         return createIndex(load.getResult());
+ *     }
+ * }, load);
+ * graph.start();
+ * </pre>
+ *
+ * <p>If a worker fails, by throwing an exception from its
+ * <code>construct</code> method, all workers that depend on it (directly or
+ * indirectly) are cancelled. The same applies to a worker that is
+ * interrupted, which is cancelled as well. Other workers are not affected.
+ * Interrupting the graph cancels all pending workers and interrupts the
+ * running ones.</p>
+ *
+ * <p>Listeners of the graph receive a single stream of events for the whole
+ * graph. The progress of the graph is the combined progress of its workers,
+ * where each worker counts equally. Messages, warnings and errors of the
+ * workers are passed on as events of the graph. The graph finishes with a
+ * <code>FINISHED</code> event if all workers succeeded, or with an
+ * <code>ERROR</code> event otherwise.</p>
+ *
+ * <p>While the graph is running, it occupies one thread of its own executor
+ * to wait for its workers.</p>
+ *
+ * @see Worker
+ *
+ * @author Gerrit Meinders
+ */
+public class WorkerGraph extends GenericWorker<Void> {
+    /**
+     * The default maximum number of workers that run at the same time.
+     */
+    public static final int DEFAULT_PARALLELISM =
+            Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The length of the task of a single worker, in terms of the progress of
+     * the graph.
+     */
+    private static final long NODE_LENGTH = 1000;
+
+    /** The state of a node in the graph. */
+    public enum State {
+        /** The worker is waiting for its dependencies or for a free slot. */
+        PENDING,
+        /** The worker was started and hasn't finished yet. */
+        RUNNING,
+        /** The worker has finished and its result is available. */
+        FINISHED,
+        /** The worker has thrown an exception. */
+        FAILED,
+        /**
+         * The worker was interrupted, or will never run because a
+         * dependency failed or was interrupted, or the graph was
+         * interrupted.
+         */
+        CANCELLED;
+    }
+
+    private final List<Node<?>> nodes = new ArrayList<Node<?>>();
+
+    private final ArrayDeque<Node<?>> ready = new ArrayDeque<Node<?>>();
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private boolean started = false;
+
+    private int running = 0;
+
+    private int completed = 0;
+
+    private int failed = 0;
+
+    private int cancelled = 0;
+
+    /** Completed when every node has finished, failed or was cancelled. */
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * Creates a new, empty worker graph that uses the default executor.
+     */
+    public WorkerGraph() {
+        super();
+    }
+
+    /**
+     * Creates a new, empty worker graph that waits for its workers on the
+     * given executor. The workers themselves are run by their own executors.
+     *
+     * @param executor the executor that runs the graph
+     */
+    public WorkerGraph(Executor executor) {
+        super(executor);
+    }
+
+    /**
+     * Returns the maximum number of workers that run at the same time.
+     *
+     * @return the parallelism of the graph
+     */
+    public synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the maximum number of workers that run at the same time.
+     *
+     * @param parallelism the parallelism of the graph
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Adds a worker to the graph. The worker is started once all of the given
+     * nodes have finished.
+     *
+     * @param worker the worker to be added
+     * @param dependencies the nodes that the worker depends on
+     * @return the node for the worker
+     * @throws IllegalStateException if the graph was already started
+     * @throws IllegalArgumentException if a dependency isn't part of this
+     *         graph
+     */
+    public synchronized <T> Node<T> add(Worker<T> worker,
+            Node<?>... dependencies) {
+        if (worker == null) {
+            throw new NullPointerException("worker");
+        }
+        if (started) {
+            throw new IllegalStateException("graph already started");
+        }
+
+        Node<T> node = new Node<T>(worker, nodes.size());
+        for (Node<?> dependency : dependencies) {
+            if (dependency.getGraph() != this) {
+                throw new IllegalArgumentException("dependency: " + dependency);
+            }
+            if (!node.dependencies.contains(dependency)) {
+                node.dependencies.add(dependency);
+                dependency.dependents.add(node);
+            }
+        }
+        node.remaining = node.dependencies.size();
+        nodes.add(node);
+
+        final Node<T> source = node;
+        worker.addWorkerListener(new WorkerListener<T>() {
+            public void stateChanged(WorkerEvent<T> e) {
+                nodeStateChanged(source, e);
+            }
+        });
+        return node;
+    }
+
+    /**
+     * Returns the nodes of the graph, in the order in which they were added.
+     *
+     * @return the nodes of the graph
+     */
+    public synchronized List<Node<?>> getNodes() {
+        return Collections.unmodifiableList(new ArrayList<Node<?>>(nodes));
+    }
+
+    public Void construct() {
+        fireWorkerStarted();
+
+        int total;
+        synchronized (this) {
+            started = true;
+            total = nodes.size();
+            for (Node<?> node : nodes) {
+                if (node.remaining == 0) {
+                    ready.add(node);
+                }
+            }
+            checkDone();
+        }
+        fireWorkerProgress(0, total * NODE_LENGTH);
+        startReady();
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            cancel();
+            fireWorkerInterrupted();
+            return null;
+        }
+
+        int failed;
+        int cancelled;
+        synchronized (this) {
+            failed = this.failed;
+            cancelled = this.cancelled;
+        }
+        if (failed > 0 || cancelled > 0) {
+            fireWorkerError(failed + " of " + total + " tasks failed, "
+                    + cancelled + " cancelled");
+        } else {
+            fireWorkerFinished();
+        }
+        return null;
+    }
+
+    /**
+     * Interrupts the graph: pending workers are cancelled and running
+     * workers are interrupted.
+     */
+    @Override
+    public void interrupt() {
+        cancel();
+        super.interrupt();
+    }
+
+    private void cancel() {
+        List<Node<?>> interrupted = new ArrayList<Node<?>>();
+        synchronized (this) {
+            started = true;
+            for (Node<?> node : nodes) {
+                if (node.state == State.PENDING) {
+                    setCancelled(node);
+                } else if (node.state == State.RUNNING) {
+                    node.interrupted = true;
+                    interrupted.add(node);
+                }
+            }
+            ready.clear();
+            checkDone();
+        }
+        for (Node<?> node : interrupted) {
+            node.worker.interrupt();
+        }
+    }
+
+    /**
+     * Starts as many ready nodes as the parallelism allows.
+     */
+    private void startReady() {
+        while (true) {
+            Node<?> node;
+            synchronized (this) {
+                if (running >= parallelism || ready.isEmpty()) {
+                    return;
+                }
+                node = ready.poll();
+                node.state = State.RUNNING;
+                running++;
+            }
+            start(node);
+        }
+    }
+
+    private <T> void start(final Node<T> node) {
+        CompletableFuture<?> future;
+        try {
+            if (node.worker instanceof SwingWorker) {
+                SwingWorker worker = (SwingWorker) node.worker;
+                future = worker.getFuture();
+                worker.start();
+            } else {
+                // no way to be notified; wait on a thread of the default pool
+                node.worker.start();
+                future = CompletableFuture.supplyAsync(new Supplier<T>() {
+                    public T get() {
+                        return node.worker.get();
+                    }
+                }, SwingWorker.getDefaultExecutor());
+            }
+        } catch (RuntimeException e) {
+            nodeCompleted(node, e);
+            return;
+        }
+
+        future.whenComplete(new BiConsumer<Object, Throwable>() {
+            public void accept(Object value, Throwable failure) {
+                nodeCompleted(node, failure);
+            }
+        });
+    }
+
+    private <T> void nodeCompleted(Node<T> node, Throwable failure) {
+        if (failure instanceof CompletionException
+                && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+
+        synchronized (this) {
+            running--;
+            if (failure == null && isInterrupted(node)) {
+                // the worker may not have produced a result
+                node.state = State.CANCELLED;
+                cancelled++;
+                cancelDependents(node);
+            } else if (failure == null) {
+                node.result = node.worker.get();
+                node.state = State.FINISHED;
+                for (Node<?> dependent : node.dependents) {
+                    if (--dependent.remaining == 0
+                            && dependent.state == State.PENDING) {
+                        ready.add(dependent);
+                    }
+                }
+            } else {
+                node.state = State.FAILED;
+                node.failure = failure;
+                failed++;
+                cancelDependents(node);
+            }
+            node.progress = 1.0;
+            completed++;
+        }
+
+        if (failure != null) {
+            String message = failure.getClass().getSimpleName() + ": "
+                    + failure.getLocalizedMessage();
+            fireWorkerError(message, failure instanceof Exception
+                    ? (Exception) failure : null);
+        }
+        fireProgress();
+        startReady();
+
+        synchronized (this) {
+            checkDone();
+        }
+    }
+
+    /**
+     * Returns whether the worker of the given node was interrupted, either by
+     * the graph or directly. Must be called while holding the lock.
+     */
+    private boolean isInterrupted(Node<?> node) {
+        return node.interrupted || (node.worker instanceof SwingWorker
+                && ((SwingWorker) node.worker).isInterrupted());
+    }
+
+    /**
+     * Cancels all nodes that depend on the given node, directly or
+     * indirectly. Must be called while holding the lock.
+     */
+    private void cancelDependents(Node<?> node) {
+        for (Node<?> dependent : node.dependents) {
+            if (dependent.state == State.PENDING) {
+                setCancelled(dependent);
+                cancelDependents(dependent);
+            }
+        }
+    }
+
+    private void setCancelled(Node<?> node) {
+        node.state = State.CANCELLED;
+        node.progress = 1.0;
+        cancelled++;
+        completed++;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void checkDone() {
+        if (completed == nodes.size()) {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Passes on an event of the worker of the given node to the listeners of
+     * the graph. Called on the event dispatching thread.
+     */
+    private <T> void nodeStateChanged(Node<T> node, WorkerEvent<T> e) {
+        switch (e.getType()) {
+        case PROGRESS:
+            if (e.getLength() > 0) {
+                synchronized (this) {
+                    if (node.state == State.RUNNING) {
+                        node.progress = Math.min(1.0,
+                                (double) e.getProgress() / e.getLength());
+                    }
+                }
+                fireProgress();
+            }
+            if (e.getMessage() != null) {
+                fireWorkerMessage(e.getMessage());
+            }
+            break;
+
+        case ERROR:
+            fireWorkerError(e.getMessage(), e.getCause());
+            break;
+
+        case WARNING:
+            fireWorkerWarning(e.getMessage(), e.getCause());
+            break;
+
+        default:
+            if (e.getMessage() != null) {
+                fireWorkerMessage(e.getMessage());
+            }
+            break;
+        }
+    }
+
+    private void fireProgress() {
+        double progress = 0.0;
+        int total;
+        synchronized (this) {
+            total = nodes.size();
+            for (Node<?> node : nodes) {
+                progress += node.progress;
+            }
+        }
+        fireWorkerProgress((long) (progress * NODE_LENGTH),
+                total * NODE_LENGTH);
+    }
+
+    /**
+     * A worker in a worker graph, along with its dependencies and state.
+     *
+     * @param <T> the type of the result of the worker
+     */
+    public final class Node<T> {
+        private final Worker<T> worker;
+
+        private final int index;
+
+        private final List<Node<?>> dependencies = new ArrayList<Node<?>>();
+
+        private final List<Node<?>> dependents = new ArrayList<Node<?>>();
+
+        /** Number of dependencies that haven't finished yet. */
+        private int remaining;
+
+        private State state = State.PENDING;
+
+        private T result = null;
+
+        private Throwable failure = null;
+
+        /** Whether the graph interrupted the worker. */
+        private boolean interrupted = false;
+
+        /** Progress of the worker, between 0.0 and 1.0. */
+        private double progress = 0.0;
+
+        private Node(Worker<T> worker, int index) {
+            this.worker = worker;
+            this.index = index;
+        }
+
+        private WorkerGraph getGraph() {
+            return WorkerGraph.this;
+        }
+
+        /**
+         * Returns the worker of this node.
+         *
+         * @return the worker
+         */
+        public Worker<T> getWorker() {
+            return worker;
+        }
+
+        /**
+         * Returns the nodes that this node depends on.
+         *
+         * @return the dependencies of this node
+         */
+        public List<Node<?>> getDependencies() {
+            synchronized (WorkerGraph.this) {
+                return Collections.unmodifiableList(dependencies);
+            }
+        }
+
+        /**
+         * Returns the current state of this node.
+         *
+         * @return the state of this node
+         */
+        public State getState() {
+            synchronized (WorkerGraph.this) {
+                return state;
+            }
+        }
+
+        /**
+         * Returns the result of the worker of this node.
+         *
+         * @return the value returned by the <code>construct</code> method of
+         *         the worker
+         * @throws IllegalStateException if the worker hasn't finished
+         */
+        public T getResult() {
+            synchronized (WorkerGraph.this) {
+                if (state != State.FINISHED) {
+                    throw new IllegalStateException("state: " + state);
+                }
+                return result;
+            }
+        }
+
+        /**
+         * Returns the exception thrown by the worker of this node, if it
+         * failed.
+         *
+         * @return the exception thrown by the worker, or <code>null</code>
+         */
+        public Throwable getFailure() {
+            synchronized (WorkerGraph.this) {
+                return failure;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Node[" + index + ", " + getState() + "]";
+        }
+    }
+}
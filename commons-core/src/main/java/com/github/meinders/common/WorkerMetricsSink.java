@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+/**
+ * Receives the timestamps of every worker run, as recorded by
+ * {@link SwingWorker}. Implementations must be thread-safe, since traces are
+ * reported from worker threads as well as the event dispatching thread, and
+ * should return quickly.
+ *
+ * @see SwingWorker#setMetricsSink(WorkerMetricsSink)
+ * @see WorkerStatistics
+ *
+ * @author Gerrit Meinders
+ */
+public interface WorkerMetricsSink {
+    /**
+     * Called when a worker run has ended.
+     *
+     * @param trace the timestamps of the run
+     */
+    public void workerCompleted(WorkerTrace trace);
+}
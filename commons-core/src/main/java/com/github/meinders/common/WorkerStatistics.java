@@ -0,0 +1,404 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * A metrics sink that aggregates worker traces in memory, per worker type.
+ * For each type, it counts completed, interrupted and failed runs and keeps
+ * a latency histogram of each phase of a run, such that the time that
+ * workers wait for a thread shows up separately from the time they spend
+ * working. The statistics can be inspected with {@link #getStatistics()}, or
+ * through JMX after calling {@link #register()}.
+ *
+ * <pre>
+ * WorkerStatistics statistics = new WorkerStatistics();
+ * statistics.register();
+ * SwingWorker.setMetricsSink(statistics);
+ * </pre>
+ *
+ * @author Gerrit Meinders
+ */
+public class WorkerStatistics implements WorkerMetricsSink,
+        WorkerStatisticsMXBean {
+    /**
+     * The name that the statistics are registered with by
+     * {@link #register()}.
+     */
+    public static final String DEFAULT_OBJECT_NAME =
+            "com.github.meinders.common:type=WorkerStatistics";
+
+    private final ConcurrentMap<Class<?>, TypeStatistics> types =
+            new ConcurrentHashMap<Class<?>, TypeStatistics>();
+
+    public void workerCompleted(WorkerTrace trace) {
+        TypeStatistics statistics = types.get(trace.getWorkerType());
+        if (statistics == null) {
+            statistics = new TypeStatistics(trace.getWorkerType());
+            TypeStatistics existing = types.putIfAbsent(trace.getWorkerType(),
+                    statistics);
+            if (existing != null) {
+                statistics = existing;
+            }
+        }
+        statistics.add(trace);
+    }
+
+    /**
+     * Returns the statistics of each worker type that completed a run.
+     *
+     * @return the statistics by worker type
+     */
+    public Map<Class<?>, TypeStatistics> getStatistics() {
+        return Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Returns the statistics of the given worker type.
+     *
+     * @param workerType the class of the worker
+     * @return the statistics, or <code>null</code> if no worker of the given
+     *         type completed a run
+     */
+    public TypeStatistics getStatistics(Class<?> workerType) {
+        return types.get(workerType);
+    }
+
+    public Map<String, Summary> getSummaries() {
+        Map<String, Summary> result = new TreeMap<String, Summary>();
+        for (TypeStatistics statistics : types.values()) {
+            result.put(statistics.getWorkerType().getName(),
+                    statistics.getSummary());
+        }
+        return result;
+    }
+
+    public void reset() {
+        types.clear();
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server, under
+     * {@link #DEFAULT_OBJECT_NAME}.
+     *
+     * @return the name of the registered MBean
+     * @throws JMException if the MBean can't be registered, for example
+     *         because the name is already taken
+     */
+    public ObjectName register() throws JMException {
+        return register(ManagementFactory.getPlatformMBeanServer(),
+                new ObjectName(DEFAULT_OBJECT_NAME));
+    }
+
+    /**
+     * Registers these statistics with the given MBean server.
+     *
+     * @param server the MBean server
+     * @param name the name of the MBean
+     * @return the name of the registered MBean
+     * @throws JMException if the MBean can't be registered
+     */
+    public ObjectName register(MBeanServer server, ObjectName name)
+            throws JMException {
+        return server.registerMBean(this, name).getObjectName();
+    }
+
+    /**
+     * Statistics of the runs of a single worker type.
+     */
+    public static class TypeStatistics {
+        private final Class<?> workerType;
+
+        private final LongAdder completed = new LongAdder();
+
+        private final LongAdder interrupted = new LongAdder();
+
+        private final LongAdder failed = new LongAdder();
+
+        private final Histogram queueDelay = new Histogram();
+
+        private final Histogram constructTime = new Histogram();
+
+        private final Histogram dispatchDelay = new Histogram();
+
+        private final Histogram finishedTime = new Histogram();
+
+        private final Histogram totalTime = new Histogram();
+
+        TypeStatistics(Class<?> workerType) {
+            this.workerType = workerType;
+        }
+
+        void add(WorkerTrace trace) {
+            switch (trace.getOutcome()) {
+            case COMPLETED:
+                completed.increment();
+                break;
+            case INTERRUPTED:
+                interrupted.increment();
+                break;
+            case FAILED:
+                failed.increment();
+                break;
+            }
+            queueDelay.add(trace.getQueueDelay());
+            constructTime.add(trace.getConstructTime());
+            if (trace.getOutcome() != WorkerTrace.Outcome.FAILED) {
+                dispatchDelay.add(trace.getDispatchDelay());
+                finishedTime.add(trace.getFinishedTime());
+            }
+            totalTime.add(trace.getTotalTime());
+        }
+
+        public Class<?> getWorkerType() {
+            return workerType;
+        }
+
+        /** Returns the number of runs that completed normally. */
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        /** Returns the number of runs that were interrupted. */
+        public long getInterrupted() {
+            return interrupted.sum();
+        }
+
+        /** Returns the number of runs in which construct threw. */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /** Returns the time that workers waited for a thread. */
+        public Histogram getQueueDelay() {
+            return queueDelay;
+        }
+
+        /** Returns the time taken by the construct method. */
+        public Histogram getConstructTime() {
+            return constructTime;
+        }
+
+        /**
+         * Returns the time between the end of construct and the call of
+         * finished on the event dispatching thread.
+         */
+        public Histogram getDispatchDelay() {
+            return dispatchDelay;
+        }
+
+        /** Returns the time taken by the finished method. */
+        public Histogram getFinishedTime() {
+            return finishedTime;
+        }
+
+        /** Returns the time from starting a worker until it completed. */
+        public Histogram getTotalTime() {
+            return totalTime;
+        }
+
+        /**
+         * Returns a summary of these statistics.
+         */
+        public Summary getSummary() {
+            return new Summary(getCompleted(), getInterrupted(), getFailed(),
+                    queueDelay.getMean(), queueDelay.getPercentile(0.99),
+                    constructTime.getMean(), constructTime.getPercentile(0.99),
+                    dispatchDelay.getMean(), dispatchDelay.getPercentile(0.99),
+                    totalTime.getMean(), totalTime.getPercentile(0.99));
+        }
+
+        @Override
+        public String toString() {
+            return workerType.getName() + ": completed=" + getCompleted()
+                    + ", interrupted=" + getInterrupted() + ", failed="
+                    + getFailed() + ", queue=" + queueDelay + ", construct="
+                    + constructTime + ", dispatch=" + dispatchDelay
+                    + ", finished=" + finishedTime;
+        }
+    }
+
+    /**
+     * A histogram of durations in nanoseconds, with buckets for powers of
+     * two. Percentiles are therefore accurate up to a factor of two.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder sum = new LongAdder();
+
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Adds the given duration to the histogram. Negative durations are
+         * counted as zero.
+         *
+         * @param duration the duration in nanoseconds
+         */
+        public void add(long duration) {
+            duration = Math.max(0, duration);
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(duration));
+            count.increment();
+            sum.add(duration);
+            max.accumulate(duration);
+        }
+
+        /** Returns the number of durations added. */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /** Returns the mean duration in nanoseconds. */
+        public long getMean() {
+            long count = getCount();
+            return count == 0 ? 0 : sum.sum() / count;
+        }
+
+        /** Returns the maximum duration in nanoseconds. */
+        public long getMaximum() {
+            return max.get();
+        }
+
+        /**
+         * Returns an upper bound of the given percentile of the durations.
+         *
+         * @param fraction the percentile, between 0.0 and 1.0
+         * @return the duration in nanoseconds
+         */
+        public long getPercentile(double fraction) {
+            if (fraction < 0.0 || fraction > 1.0) {
+                throw new IllegalArgumentException("fraction: " + fraction);
+            }
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    long upper = (i == 0) ? 0 : (i == BUCKETS - 1)
+                            ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(upper, getMaximum());
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "[n=" + getCount() + ", mean=" + getMean() + "ns, p99="
+                    + getPercentile(0.99) + "ns, max=" + getMaximum() + "ns]";
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of a worker type, as exposed through JMX.
+     * Durations are in nanoseconds.
+     */
+    public static class Summary {
+        private final long completed;
+        private final long interrupted;
+        private final long failed;
+        private final long meanQueueDelay;
+        private final long queueDelay99;
+        private final long meanConstructTime;
+        private final long constructTime99;
+        private final long meanDispatchDelay;
+        private final long dispatchDelay99;
+        private final long meanTotalTime;
+        private final long totalTime99;
+
+        @ConstructorParameters({ "completed", "interrupted", "failed",
+                "meanQueueDelay", "queueDelay99", "meanConstructTime",
+                "constructTime99", "meanDispatchDelay", "dispatchDelay99",
+                "meanTotalTime", "totalTime99" })
+        public Summary(long completed, long interrupted, long failed,
+                long meanQueueDelay, long queueDelay99, long meanConstructTime,
+                long constructTime99, long meanDispatchDelay,
+                long dispatchDelay99, long meanTotalTime, long totalTime99) {
+            this.completed = completed;
+            this.interrupted = interrupted;
+            this.failed = failed;
+            this.meanQueueDelay = meanQueueDelay;
+            this.queueDelay99 = queueDelay99;
+            this.meanConstructTime = meanConstructTime;
+            this.constructTime99 = constructTime99;
+            this.meanDispatchDelay = meanDispatchDelay;
+            this.dispatchDelay99 = dispatchDelay99;
+            this.meanTotalTime = meanTotalTime;
+            this.totalTime99 = totalTime99;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getInterrupted() {
+            return interrupted;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getMeanQueueDelay() {
+            return meanQueueDelay;
+        }
+
+        public long getQueueDelay99() {
+            return queueDelay99;
+        }
+
+        public long getMeanConstructTime() {
+            return meanConstructTime;
+        }
+
+        public long getConstructTime99() {
+            return constructTime99;
+        }
+
+        public long getMeanDispatchDelay() {
+            return meanDispatchDelay;
+        }
+
+        public long getDispatchDelay99() {
+            return dispatchDelay99;
+        }
+
+        public long getMeanTotalTime() {
+            return meanTotalTime;
+        }
+
+        public long getTotalTime99() {
+            return totalTime99;
+        }
+    }
+}
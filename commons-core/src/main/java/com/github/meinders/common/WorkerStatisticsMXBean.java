@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.util.*;
+
+/**
+ * Management interface of {@link WorkerStatistics}.
+ *
+ * @author Gerrit Meinders
+ */
+public interface WorkerStatisticsMXBean {
+    /**
+     * Returns a summary of the statistics of each worker type, by class name.
+     */
+    public Map<String, WorkerStatistics.Summary> getSummaries();
+
+    /**
+     * Discards all statistics.
+     */
+    public void reset();
+}
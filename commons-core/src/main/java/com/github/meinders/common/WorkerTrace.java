@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+/**
+ * The timestamps of a single run of a worker, as passed to a
+ * {@link WorkerMetricsSink}. All timestamps are values of
+ * {@link System#nanoTime()}.
+ *
+ * <p>A run is divided into four phases: waiting in the queue of the executor,
+ * running the <code>construct</code> method, waiting for the event
+ * dispatching thread to call <code>finished</code>, and running the
+ * <code>finished</code> method. If the worker fails or is interrupted before
+ * <code>finished</code> is called, the remaining phases take no time.</p>
+ *
+ * @see SwingWorker#setMetricsSink(WorkerMetricsSink)
+ *
+ * @author Gerrit Meinders
+ */
+public final class WorkerTrace {
+    /** Defines how a worker run ended. */
+    public enum Outcome {
+        /** The worker constructed its value and finished. */
+        COMPLETED,
+        /** The worker was interrupted. */
+        INTERRUPTED,
+        /** The <code>construct</code> method threw an exception. */
+        FAILED;
+    }
+
+    private final Class<?> workerType;
+    private final Outcome outcome;
+    private final long enqueueTime;
+    private final long startTime;
+    private final long constructEndTime;
+    private final long finishedDispatchTime;
+    private final long completionTime;
+
+    public WorkerTrace(Class<?> workerType, Outcome outcome, long enqueueTime,
+            long startTime, long constructEndTime, long finishedDispatchTime,
+            long completionTime) {
+        if (workerType == null) {
+            throw new NullPointerException("workerType");
+        }
+        if (outcome == null) {
+            throw new NullPointerException("outcome");
+        }
+        this.workerType = workerType;
+        this.outcome = outcome;
+        this.enqueueTime = enqueueTime;
+        this.startTime = startTime;
+        this.constructEndTime = constructEndTime;
+        this.finishedDispatchTime = finishedDispatchTime;
+        this.completionTime = completionTime;
+    }
+
+    /**
+     * Returns the class of the worker.
+     */
+    public Class<?> getWorkerType() {
+        return workerType;
+    }
+
+    /**
+     * Returns how the run ended.
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Returns the time at which the worker was started, i.e. submitted to
+     * its executor.
+     */
+    public long getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    /**
+     * Returns the time at which the <code>construct</code> method was called.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the time at which the <code>construct</code> method returned.
+     */
+    public long getConstructEndTime() {
+        return constructEndTime;
+    }
+
+    /**
+     * Returns the time at which the <code>finished</code> method was called
+     * on the event dispatching thread.
+     */
+    public long getFinishedDispatchTime() {
+        return finishedDispatchTime;
+    }
+
+    /**
+     * Returns the time at which the <code>finished</code> method returned.
+     */
+    public long getCompletionTime() {
+        return completionTime;
+    }
+
+    /**
+     * Returns the time in nanoseconds that the worker waited for a thread.
+     */
+    public long getQueueDelay() {
+        return startTime - enqueueTime;
+    }
+
+    /**
+     * Returns the time in nanoseconds taken by the <code>construct</code>
+     * method.
+     */
+    public long getConstructTime() {
+        return constructEndTime - startTime;
+    }
+
+    /**
+     * Returns the time in nanoseconds between the end of the
+     * <code>construct</code> method and the call of the <code>finished</code>
+     * method.
+     */
+    public long getDispatchDelay() {
+        return finishedDispatchTime - constructEndTime;
+    }
+
+    /**
+     * Returns the time in nanoseconds taken by the <code>finished</code>
+     * method.
+     */
+    public long getFinishedTime() {
+        return completionTime - finishedDispatchTime;
+    }
+
+    /**
+     * Returns the time in nanoseconds from starting the worker until it
+     * completed.
+     */
+    public long getTotalTime() {
+        return completionTime - enqueueTime;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerTrace[" + workerType.getName() + ", " + outcome
+                + ", queue=" + getQueueDelay() + "ns, construct="
+                + getConstructTime() + "ns, dispatch=" + getDispatchDelay()
+                + "ns, finished=" + getFinishedTime() + "ns]";
+    }
+}
@@ -20,7 +20,9 @@ package com.github.meinders.common;
 import java.io.*;
 
 /**
- * A file filter that accepts XML files with of specific document type.
+ * A file filter that accepts XML files with of specific document type. The
+ * public identifier is determined by the shared {@link XMLSniffer}, which
+ * caches its results. Instances of this class are thread-safe.
  *
  * @version 0.8 (2004.12.18)
  * @author Gerrit Meinders
@@ -38,6 +40,15 @@ public class XMLFileFilter extends ExtensionFileFilter {
         return publicId;
     }
 
+    /**
+     * Returns a high estimate, since the start of the file must be read to
+     * determine its public identifier, unless it's already cached.
+     */
+    @Override
+    public double getCostEstimate() {
+        return 50000.0;
+    }
+
     public boolean accept(File f) {
         if (super.accept(f)) {
             if (!f.isFile()) {
@@ -45,58 +56,10 @@ public class XMLFileFilter extends ExtensionFileFilter {
             }
 
             // check the file's public id
-            /*
-             * NOTE: This should be done using a SAX parser that supports the
-             * DeclHandler interface, but that's currently not supported by the
-             * J2SE. A simple home-made solution is used in stead...
-             */
-
             try {
-                Reader in = new BufferedReader(new FileReader(f));
-
-                // read the first part of the file
-                char[] buffer = new char[0x200];
-                int off = 0;
-                int len = buffer.length;
-                while (len > 0) {
-                    int charsRead = in.read(buffer, off, len);
-                    if (charsRead == -1) {
-                        break;
-                    }
-                    off += charsRead;
-                    len -= charsRead;
-                }
-
-                // fix UTF-16... (stupid Reader classes :/ -- )
-                // TODO: hack
-                /* How about checking for UTF-16 *before* reading the file? */
-                if (buffer[0] == 0xff && buffer[1] == 0xfe) {
-                    // little-endian
-                    char[] fixedBuffer = new char[buffer.length / 2 - 1];
-                    for (int i = 0; i < buffer.length / 2 - 1; i++) {
-                        fixedBuffer[i] = (char) (buffer[(i + 1) * 2] + buffer[(i + 1) * 2 + 1] * 0x100);
-                    }
-                    buffer = fixedBuffer;
-                } else if (buffer[0] == 0xfe && buffer[1] == 0xff) {
-                    // big-endian
-                    char[] fixedBuffer = new char[buffer.length / 2 - 1];
-                    for (int i = 0; i < buffer.length / 2 - 1; i++) {
-                        fixedBuffer[i] = (char) (buffer[(i + 1) * 2 + 1] + buffer[(i + 1) * 2] * 0x100);
-                    }
-                    buffer = fixedBuffer;
-                }
-
-                // reject UTF-8 with BOM (unsupported by Crimson JAXP parser)
-                if (buffer[0] == 0xef && buffer[1] == 0xbb && buffer[2] == 0xbf) {
-                    return false;
-                }
-
-                // return whether public id was found
-                String content = new String(buffer);
-                return content.indexOf(publicId) > -1;
-
-            } catch (Exception e) {
-                e.printStackTrace();
+                return publicId.equals(XMLSniffer.getInstance().sniff(f).getPublicId());
+            } catch (IOException e) {
+                System.err.println("WARNING: " + e);
                 return false;
             }
         } else {
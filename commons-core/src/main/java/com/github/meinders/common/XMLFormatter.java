@@ -26,6 +26,8 @@ import org.w3c.dom.*;
  *
  * @version 0.9 (2006.03.11)
  * @author Gerrit Meinders
+ * @deprecated Use {@link XMLStreamFormatter}, which formats documents of any
+ *             size without building a DOM tree.
  */
 @Deprecated
 public class XMLFormatter {
@@ -18,10 +18,6 @@
 package com.github.meinders.common;
 
 import java.io.*;
-import javax.xml.parsers.*;
-
-import org.xml.sax.*;
-import org.xml.sax.helpers.*;
 
 /**
  * A file filter that accepts XML files based on the namespace URI of the
@@ -33,27 +29,27 @@ import org.xml.sax.helpers.*;
 public class XMLNamespaceFileFilter extends ExtensionFileFilter {
     private String namespaceURI;
 
-    private SAXParser parser;
-
     public XMLNamespaceFileFilter(String description, String namespaceURI) {
         super(description, "xml");
         if (namespaceURI == null) {
             throw new NullPointerException("namespaceURI");
         }
         this.namespaceURI = namespaceURI;
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        try {
-            parser = factory.newSAXParser();
-        } catch (Exception e) {
-            throw new AssertionError(e);
-        }
     }
 
     public String getNamespaceURI() {
         return namespaceURI;
     }
 
+    /**
+     * Returns a high estimate, since the start of the file must be read to
+     * determine its namespace, unless it's already cached.
+     */
+    @Override
+    public double getCostEstimate() {
+        return 50000.0;
+    }
+
     @Override
     public boolean accept(File f) {
         if (super.accept(f)) {
@@ -71,17 +67,12 @@ public class XMLNamespaceFileFilter extends ExtensionFileFilter {
      * Returns the namespace URI of the document element.
      */
     private String getNamespaceURI(File file) {
-        NamespaceRetrievalHandler handler = new NamespaceRetrievalHandler();
         try {
-            parser.parse(file, handler);
+            return XMLSniffer.getInstance().sniff(file).getNamespaceURI();
         } catch (IOException e) {
             System.err.println("WARNING: " + e);
             return null;
-        } catch (SAXException e) {
-            // thrown to abort the parser; no action required
-            parser.reset();
         }
-        return handler.getNamespaceURI();
     }
 
     /**
@@ -98,33 +89,4 @@ public class XMLNamespaceFileFilter extends ExtensionFileFilter {
             return false;
         }
     }
-
-    /**
-     * A SAX2 event handler that retrieves the namespace URI of the document
-     * element.
-     */
-    private class NamespaceRetrievalHandler extends DefaultHandler {
-        /** The namespace URI. */
-        private String namespaceURI = null;
-
-        /**
-         * Returns the namespace URI retrieved by the handler.
-         *
-         * @return the namespace URI
-         */
-        public String getNamespaceURI() {
-            return namespaceURI;
-        }
-
-        /**
-         * Sets the namespaceURI property and aborts the parser by throwing an
-         * exception.
-         */
-        @Override
-        public void startElement(String uri, String localName, String qName,
-                Attributes attributes) throws SAXException {
-            namespaceURI = uri;
-            throw new SAXException("aborting parser");
-        }
-    }
 }
@@ -0,0 +1,613 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Determines the document type and the namespace of XML files by reading only
+ * the start of each file, up to and including the document element's start
+ * tag. The encoding is detected from the byte order mark or the XML
+ * declaration. Instead of a full XML parser, a simple scanner is used that
+ * skips the XML declaration, comments, processing instructions and the
+ * internal subset of the document type declaration.
+ *
+ * <p>
+ * Results are cached by path and validated against the size and modification
+ * time of the file. This class is thread-safe.
+ *
+ * @author Gerrit Meinders
+ */
+public class XMLSniffer {
+    /**
+     * Number of bytes that is initially read from each file. If the document
+     * element doesn't start within this prefix, the prefix is doubled until
+     * it does, up to {@link #MAX_PREFIX_SIZE}.
+     */
+    public static final int DEFAULT_PREFIX_SIZE = 0x1000;
+
+    /**
+     * Maximum number of bytes that is read from each file.
+     */
+    public static final int MAX_PREFIX_SIZE = 0x100000;
+
+    /**
+     * Default maximum number of cached results.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 0x40000;
+
+    private static final XMLSniffer INSTANCE = new XMLSniffer();
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return the shared sniffer
+     */
+    public static XMLSniffer getInstance() {
+        return INSTANCE;
+    }
+
+    /** Buffer used to read the first part of each file, per thread. */
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(DEFAULT_PREFIX_SIZE);
+        }
+    };
+
+    private final ConcurrentHashMap<Path, CacheEntry> cache = new ConcurrentHashMap<Path, CacheEntry>();
+
+    private final int cacheSize;
+
+    /**
+     * Constructs a new sniffer with a cache of the default size.
+     */
+    public XMLSniffer() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a new sniffer with a cache of the given size.
+     *
+     * @param cacheSize the maximum number of cached results, or
+     *            <code>0</code> to disable caching
+     */
+    public XMLSniffer(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize: " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Returns information about the start of the given file.
+     *
+     * @param file the file
+     * @return information about the file
+     * @throws IOException if the file can't be read
+     */
+    public Result sniff(File file) throws IOException {
+        return sniff(file.toPath());
+    }
+
+    /**
+     * Returns information about the start of the given file.
+     *
+     * @param path the file
+     * @return information about the file
+     * @throws IOException if the file can't be read
+     */
+    public Result sniff(Path path) throws IOException {
+        if (cacheSize == 0) {
+            return read(path);
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        CacheEntry entry = cache.get(path);
+        if (entry != null && entry.size == size && entry.modified == modified) {
+            return entry.result;
+        }
+
+        Result result = read(path);
+        if (cache.size() >= cacheSize) {
+            evict();
+        }
+        cache.put(path, new CacheEntry(size, modified, result));
+        return result;
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Removes about a quarter of the cached results, in no particular order.
+     */
+    private void evict() {
+        int count = cacheSize / 4 + 1;
+        for (Iterator<Path> i = cache.keySet().iterator(); i.hasNext() && count > 0; count--) {
+            i.next();
+            i.remove();
+        }
+    }
+
+    private Result read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer buffer = BUFFER.get();
+            while (true) {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // keep reading
+                }
+                buffer.flip();
+
+                boolean complete = buffer.limit() >= fileSize;
+                Result result = parse(buffer, complete);
+                if (result != null) {
+                    return result;
+                }
+
+                if (buffer.capacity() >= MAX_PREFIX_SIZE) {
+                    return parse(buffer, true);
+                }
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                channel.position(0);
+            }
+        }
+    }
+
+    /**
+     * Parses the given prefix of a file.
+     *
+     * @param bytes the prefix
+     * @param complete whether the prefix contains the entire file
+     * @return the result, or <code>null</code> if the prefix is incomplete
+     */
+    static Result parse(ByteBuffer bytes, boolean complete) {
+        Charset encoding;
+        boolean byteOrderMark = false;
+
+        int b0 = get(bytes, 0);
+        int b1 = get(bytes, 1);
+        int b2 = get(bytes, 2);
+        int b3 = get(bytes, 3);
+        if (b0 == 0xef && b1 == 0xbb && b2 == 0xbf) {
+            encoding = StandardCharsets.UTF_8;
+            byteOrderMark = true;
+            bytes.position(3);
+        } else if (b0 == 0xfe && b1 == 0xff) {
+            encoding = StandardCharsets.UTF_16BE;
+            byteOrderMark = true;
+            bytes.position(2);
+        } else if (b0 == 0xff && b1 == 0xfe) {
+            encoding = StandardCharsets.UTF_16LE;
+            byteOrderMark = true;
+            bytes.position(2);
+        } else if (b0 == 0x3c && b1 == 0x00 && b2 == 0x3f && b3 == 0x00) {
+            encoding = StandardCharsets.UTF_16LE;
+        } else if (b0 == 0x00 && b1 == 0x3c && b2 == 0x00 && b3 == 0x3f) {
+            encoding = StandardCharsets.UTF_16BE;
+        } else {
+            encoding = declaredEncoding(bytes);
+        }
+
+        CharsetDecoder decoder = encoding.newDecoder();
+        decoder.onMalformedInput(CodingErrorAction.REPLACE);
+        decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars;
+        try {
+            chars = decoder.decode(bytes);
+        } catch (CharacterCodingException e) {
+            throw new AssertionError(e);
+        }
+
+        Scanner scanner = new Scanner(chars);
+        Result result = new Result(encoding, byteOrderMark);
+        if (scanner.scan(result) || complete) {
+            return result;
+        } else {
+            return null;
+        }
+    }
+
+    private static int get(ByteBuffer bytes, int index) {
+        return (index < bytes.limit()) ? (bytes.get(index) & 0xff) : -1;
+    }
+
+    /**
+     * Returns the encoding specified by the XML declaration of an
+     * ASCII-compatible document, defaulting to UTF-8.
+     */
+    private static Charset declaredEncoding(ByteBuffer bytes) {
+        if (!startsWith(bytes, "<?xml")) {
+            return StandardCharsets.UTF_8;
+        }
+        StringBuilder declaration = new StringBuilder();
+        for (int i = 5; i < bytes.limit(); i++) {
+            char c = (char) (bytes.get(i) & 0xff);
+            if (c == '>') {
+                break;
+            }
+            declaration.append(c);
+        }
+
+        Scanner scanner = new Scanner(CharBuffer.wrap(declaration));
+        String label = scanner.attribute("encoding");
+        if (label != null) {
+            try {
+                return Charset.forName(label);
+            } catch (IllegalArgumentException e) {
+                // unsupported or illegal name; fall back to the default
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, String prefix) {
+        if (bytes.limit() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes.get(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Information about the start of an XML file.
+     */
+    public static class Result {
+        private final Charset encoding;
+
+        private final boolean byteOrderMark;
+
+        private String publicId = null;
+
+        private String systemId = null;
+
+        private String rootElement = null;
+
+        private String namespaceURI = null;
+
+        private Result(Charset encoding, boolean byteOrderMark) {
+            this.encoding = encoding;
+            this.byteOrderMark = byteOrderMark;
+        }
+
+        /**
+         * Returns the detected encoding of the file.
+         *
+         * @return the encoding
+         */
+        public Charset getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * Returns whether the file starts with a byte order mark.
+         *
+         * @return <code>true</code> if there is a byte order mark
+         */
+        public boolean hasByteOrderMark() {
+            return byteOrderMark;
+        }
+
+        /**
+         * Returns the public identifier of the document type declaration.
+         *
+         * @return the public identifier, or <code>null</code> if none
+         */
+        public String getPublicId() {
+            return publicId;
+        }
+
+        /**
+         * Returns the system identifier of the document type declaration.
+         *
+         * @return the system identifier, or <code>null</code> if none
+         */
+        public String getSystemId() {
+            return systemId;
+        }
+
+        /**
+         * Returns the qualified name of the document element.
+         *
+         * @return the element name, or <code>null</code> if the file doesn't
+         *         appear to be an XML document
+         */
+        public String getRootElement() {
+            return rootElement;
+        }
+
+        /**
+         * Returns the namespace URI of the document element.
+         *
+         * @return the namespace URI, or <code>null</code> if the document
+         *         element isn't in a namespace
+         */
+        public String getNamespaceURI() {
+            return namespaceURI;
+        }
+
+        @Override
+        public String toString() {
+            return "Result[encoding=" + encoding + ", publicId=" + publicId
+                    + ", systemId=" + systemId + ", rootElement="
+                    + rootElement + ", namespaceURI=" + namespaceURI + "]";
+        }
+    }
+
+    private static class CacheEntry {
+        private final long size;
+
+        private final long modified;
+
+        private final Result result;
+
+        CacheEntry(long size, long modified, Result result) {
+            this.size = size;
+            this.modified = modified;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Scans the prolog and the start tag of the document element.
+     */
+    private static class Scanner {
+        private final CharBuffer chars;
+
+        private int position;
+
+        private final int end;
+
+        Scanner(CharBuffer chars) {
+            this.chars = chars;
+            position = chars.position();
+            end = chars.limit();
+        }
+
+        /**
+         * Scans the prolog and the start tag of the document element.
+         *
+         * @return <code>false</code> if the end of the input was reached
+         *         before the start tag ended
+         */
+        boolean scan(Result result) {
+            while (true) {
+                skipWhitespace();
+                if (position >= end) {
+                    return false;
+                } else if (startsWith("<?")) {
+                    if (!skipPast("?>")) {
+                        return false;
+                    }
+                } else if (startsWith("<!--")) {
+                    if (!skipPast("-->")) {
+                        return false;
+                    }
+                } else if (startsWith("<!DOCTYPE")) {
+                    position += 9;
+                    if (!doctype(result)) {
+                        return false;
+                    }
+                } else if (chars.get(position) == '<') {
+                    position++;
+                    return element(result);
+                } else {
+                    // not an XML document
+                    return true;
+                }
+            }
+        }
+
+        private boolean doctype(Result result) {
+            skipWhitespace();
+            if (name() == null) {
+                return false;
+            }
+            skipWhitespace();
+            if (startsWith("PUBLIC")) {
+                position += 6;
+                skipWhitespace();
+                result.publicId = quoted();
+                skipWhitespace();
+                result.systemId = quoted();
+            } else if (startsWith("SYSTEM")) {
+                position += 6;
+                skipWhitespace();
+                result.systemId = quoted();
+            }
+
+            skipWhitespace();
+            if (position < end && chars.get(position) == '[') {
+                // internal subset: skip declarations and comments
+                while (true) {
+                    if (position >= end) {
+                        return false;
+                    }
+                    char c = chars.get(position);
+                    if (c == ']') {
+                        position++;
+                        break;
+                    } else if (startsWith("<!--")) {
+                        if (!skipPast("-->")) {
+                            return false;
+                        }
+                    } else if (c == '"' || c == '\'') {
+                        if (quoted() == null) {
+                            return false;
+                        }
+                    } else {
+                        position++;
+                    }
+                }
+            }
+            return skipPast(">");
+        }
+
+        private boolean element(Result result) {
+            String qName = name();
+            if (qName == null) {
+                return false;
+            }
+
+            int colon = qName.indexOf(':');
+            String declaration = (colon == -1) ? "xmlns" : "xmlns:"
+                    + qName.substring(0, colon);
+
+            while (true) {
+                skipWhitespace();
+                if (position >= end) {
+                    return false;
+                }
+                char c = chars.get(position);
+                if (c == '>' || c == '/') {
+                    result.rootElement = qName;
+                    return true;
+                }
+
+                String attribute = name();
+                if (attribute == null) {
+                    return false;
+                }
+                skipWhitespace();
+                if (position >= end || chars.get(position) != '=') {
+                    return false;
+                }
+                position++;
+                skipWhitespace();
+                String value = quoted();
+                if (value == null) {
+                    return false;
+                }
+
+                if (attribute.equals(declaration)) {
+                    result.namespaceURI = value.isEmpty() ? null : value;
+                }
+            }
+        }
+
+        /**
+         * Returns the value of the given pseudo-attribute, as found in the XML
+         * declaration.
+         */
+        String attribute(String name) {
+            while (position < end) {
+                skipWhitespace();
+                String attribute = name();
+                if (attribute == null) {
+                    return null;
+                }
+                skipWhitespace();
+                if (position >= end || chars.get(position) != '=') {
+                    return null;
+                }
+                position++;
+                skipWhitespace();
+                String value = quoted();
+                if (attribute.equals(name)) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        private String name() {
+            int start = position;
+            while (position < end) {
+                char c = chars.get(position);
+                if (Character.isWhitespace(c) || c == '=' || c == '>'
+                        || c == '/' || c == '[' || c == '"' || c == '\'') {
+                    break;
+                }
+                position++;
+            }
+            return (position == start || position >= end) ? null : chars
+                    .subSequence(start - chars.position(),
+                            position - chars.position()).toString();
+        }
+
+        private String quoted() {
+            if (position >= end) {
+                return null;
+            }
+            char quote = chars.get(position);
+            if (quote != '"' && quote != '\'') {
+                return null;
+            }
+            int start = ++position;
+            while (position < end) {
+                if (chars.get(position) == quote) {
+                    String value = chars.subSequence(start - chars.position(),
+                            position - chars.position()).toString();
+                    position++;
+                    return value;
+                }
+                position++;
+            }
+            return null;
+        }
+
+        private void skipWhitespace() {
+            while (position < end && Character.isWhitespace(chars.get(position))) {
+                position++;
+            }
+        }
+
+        private boolean startsWith(String prefix) {
+            if (end - position < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (chars.get(position + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean skipPast(String delimiter) {
+            while (position < end) {
+                if (startsWith(delimiter)) {
+                    position += delimiter.length();
+                    return true;
+                }
+                position++;
+            }
+            return false;
+        }
+    }
+}
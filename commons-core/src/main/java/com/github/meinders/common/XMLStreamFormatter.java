@@ -0,0 +1,431 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.util.*;
+import javax.xml.stream.*;
+
+/**
+ * Formats XML documents such that they become humanly-readable by adding
+ * whitespace, while streaming from an {@link XMLStreamReader} to an
+ * {@link XMLStreamWriter}. The document is never held in memory: only the
+ * current text node and a single bit per level of nesting are kept, so
+ * documents of any size can be formatted.
+ *
+ * <p>
+ * Whitespace is added in the same way as {@link XMLFormatter} adds it to a
+ * DOM document: every node within the document element is put on a new line,
+ * indented by two spaces per level, and elements that contain elements end
+ * on a new line. Text that doesn't fit within the line length is wrapped at
+ * spaces. Like {@link XMLFormatter}, this is intended for documents without
+ * whitespace; see {@link #setStripWhitespace(boolean)} to format documents
+ * that are already formatted.
+ *
+ * <p>
+ * Instances may be shared between threads, as long as they aren't
+ * reconfigured while in use.
+ *
+ * @author Gerrit Meinders
+ */
+public class XMLStreamFormatter {
+    /**
+     * Default length of lines containing text.
+     */
+    public static final int DEFAULT_LINE_LENGTH = 80;
+
+    /**
+     * A newline followed by enough spaces for most levels of indentation.
+     */
+    private static final char[] INDENTATION;
+
+    static {
+        INDENTATION = new char[129];
+        Arrays.fill(INDENTATION, ' ');
+        INDENTATION[0] = '\n';
+    }
+
+    private final XMLInputFactory inputFactory;
+
+    private final XMLOutputFactory outputFactory;
+
+    private boolean formatText = true;
+
+    private boolean stripWhitespace = false;
+
+    private int lineLength = DEFAULT_LINE_LENGTH;
+
+    /**
+     * Constructs a new formatter.
+     */
+    public XMLStreamFormatter() {
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        outputFactory = XMLOutputFactory.newFactory();
+    }
+
+    /**
+     * Returns whether text is wrapped at the line length.
+     *
+     * @return <code>true</code> if text is formatted
+     */
+    public boolean isFormatText() {
+        return formatText;
+    }
+
+    /**
+     * Sets whether text is wrapped at the line length.
+     *
+     * @param formatText <code>true</code> to format text
+     */
+    public void setFormatText(boolean formatText) {
+        this.formatText = formatText;
+    }
+
+    /**
+     * Returns whether whitespace that may have been added by formatting is
+     * removed.
+     *
+     * @return <code>true</code> if whitespace is removed
+     */
+    public boolean isStripWhitespace() {
+        return stripWhitespace;
+    }
+
+    /**
+     * Sets whether whitespace that may have been added by formatting is
+     * removed, such that formatting an already formatted document doesn't
+     * add more whitespace. Text is trimmed and line breaks within text,
+     * along with the surrounding whitespace, are replaced by a single space.
+     * This also removes whitespace between elements in mixed content.
+     *
+     * @param stripWhitespace <code>true</code> to remove whitespace
+     */
+    public void setStripWhitespace(boolean stripWhitespace) {
+        this.stripWhitespace = stripWhitespace;
+    }
+
+    /**
+     * Returns the length of lines containing text, including indentation.
+     *
+     * @return the line length
+     */
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    /**
+     * Sets the length of lines containing text, including indentation.
+     *
+     * @param lineLength the line length
+     */
+    public void setLineLength(int lineLength) {
+        if (lineLength <= 0) {
+            throw new IllegalArgumentException("lineLength: " + lineLength);
+        }
+        this.lineLength = lineLength;
+    }
+
+    /**
+     * Formats the XML document read from the given stream, writing it to the
+     * given stream using the UTF-8 encoding. Neither stream is closed.
+     *
+     * @param in the stream to read from
+     * @param out the stream to write to
+     * @throws XMLStreamException if the document isn't well-formed or can't
+     *             be read or written
+     */
+    public void format(InputStream in, OutputStream out)
+            throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out,
+                    "UTF-8");
+            try {
+                format(reader, writer, "UTF-8");
+            } finally {
+                writer.close();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Formats the XML document read from the given reader, writing it to the
+     * given writer. Neither of them is closed.
+     *
+     * @param in the reader to read from
+     * @param out the writer to write to
+     * @throws XMLStreamException if the document isn't well-formed or can't
+     *             be read or written
+     */
+    public void format(Reader in, Writer out) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out);
+            try {
+                format(reader, writer, null);
+            } finally {
+                writer.close();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Formats the XML document read from the given reader, which must be
+     * positioned at the start of the document, writing it to the given
+     * writer. The reader should be namespace aware and coalescing, such that
+     * text is wrapped in the same way regardless of how the parser splits
+     * it up.
+     *
+     * @param reader the reader to read from
+     * @param writer the writer to write to
+     * @throws XMLStreamException if the document isn't well-formed or can't
+     *             be read or written
+     */
+    public void format(XMLStreamReader reader, XMLStreamWriter writer)
+            throws XMLStreamException {
+        format(reader, writer, null);
+    }
+
+    private void format(XMLStreamReader reader, XMLStreamWriter writer,
+            String encoding) throws XMLStreamException {
+        // depth of the current element, where the document element is at 0
+        int depth = -1;
+        BitSet containsElements = new BitSet();
+
+        for (int event = reader.getEventType();; event = reader.next()) {
+            switch (event) {
+            case XMLStreamConstants.START_DOCUMENT:
+                String version = reader.getVersion();
+                if (version == null) {
+                    version = "1.0";
+                }
+                if (encoding == null) {
+                    writer.writeStartDocument(version);
+                } else {
+                    writer.writeStartDocument(encoding, version);
+                }
+                writer.writeCharacters("\n");
+                break;
+
+            case XMLStreamConstants.END_DOCUMENT:
+                writer.writeEndDocument();
+                writer.flush();
+                return;
+
+            case XMLStreamConstants.START_ELEMENT:
+                if (depth >= 0) {
+                    containsElements.set(depth);
+                    indent(writer, depth + 1);
+                }
+                depth++;
+                containsElements.clear(depth);
+                writeStartElement(reader, writer);
+                break;
+
+            case XMLStreamConstants.END_ELEMENT:
+                if (containsElements.get(depth)) {
+                    indent(writer, depth);
+                }
+                writer.writeEndElement();
+                depth--;
+                if (depth < 0) {
+                    writer.writeCharacters("\n");
+                }
+                break;
+
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                // whitespace outside the document element is replaced
+                if (depth >= 0 && !(stripWhitespace && reader.isWhiteSpace())) {
+                    indent(writer, depth + 1);
+                    String text = reader.getText();
+                    if (stripWhitespace) {
+                        text = unwrap(text);
+                    }
+                    if (event == XMLStreamConstants.CDATA) {
+                        writer.writeCData(text);
+                    } else {
+                        writer.writeCharacters(formatText ? wrap(text, depth) : text);
+                    }
+                }
+                break;
+
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                indent(writer, depth + 1);
+                writer.writeEntityRef(reader.getLocalName());
+                break;
+
+            case XMLStreamConstants.COMMENT:
+                if (depth >= 0) {
+                    indent(writer, depth + 1);
+                }
+                writer.writeComment(reader.getText());
+                if (depth < 0) {
+                    writer.writeCharacters("\n");
+                }
+                break;
+
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                if (depth >= 0) {
+                    indent(writer, depth + 1);
+                }
+                String data = reader.getPIData();
+                if (data == null) {
+                    writer.writeProcessingInstruction(reader.getPITarget());
+                } else {
+                    writer.writeProcessingInstruction(reader.getPITarget(), data);
+                }
+                if (depth < 0) {
+                    writer.writeCharacters("\n");
+                }
+                break;
+
+            case XMLStreamConstants.DTD:
+                writer.writeDTD(reader.getText());
+                writer.writeCharacters("\n");
+                break;
+
+            default:
+                // entity and notation declarations are part of the DTD
+                break;
+            }
+        }
+    }
+
+    /**
+     * Writes the start tag of the current element, including its namespace
+     * declarations and attributes.
+     */
+    private static void writeStartElement(XMLStreamReader reader,
+            XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement(nonNull(reader.getPrefix()),
+                reader.getLocalName(), nonNull(reader.getNamespaceURI()));
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String namespaceURI = nonNull(reader.getNamespaceURI(i));
+            if (prefix == null || prefix.isEmpty()) {
+                writer.writeDefaultNamespace(namespaceURI);
+            } else {
+                writer.writeNamespace(prefix, namespaceURI);
+            }
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String namespaceURI = reader.getAttributeNamespace(i);
+            if (namespaceURI == null || namespaceURI.isEmpty()) {
+                writer.writeAttribute(reader.getAttributeLocalName(i),
+                        reader.getAttributeValue(i));
+            } else {
+                writer.writeAttribute(nonNull(reader.getAttributePrefix(i)),
+                        namespaceURI, reader.getAttributeLocalName(i),
+                        reader.getAttributeValue(i));
+            }
+        }
+    }
+
+    private static String nonNull(String s) {
+        return (s == null) ? "" : s;
+    }
+
+    /**
+     * Writes a newline, followed by the indentation for the given level.
+     */
+    private static void indent(XMLStreamWriter writer, int level)
+            throws XMLStreamException {
+        int length = 1 + 2 * level;
+        if (length <= INDENTATION.length) {
+            writer.writeCharacters(INDENTATION, 0, length);
+        } else {
+            writer.writeCharacters(INDENTATION, 0, 1);
+            for (int i = 0; i < level; i++) {
+                writer.writeCharacters(INDENTATION, 1, 2);
+            }
+        }
+    }
+
+    /**
+     * Trims the given text and replaces each line break, along with the
+     * surrounding whitespace, by a single space.
+     */
+    private static String unwrap(String text) {
+        text = text.trim();
+        if (text.indexOf('\n') == -1 && text.indexOf('\r') == -1) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                int end = i;
+                boolean lineBreak = false;
+                while (end < text.length() && Character.isWhitespace(text.charAt(end))) {
+                    lineBreak |= text.charAt(end) == '\n' || text.charAt(end) == '\r';
+                    end++;
+                }
+                result.append(lineBreak ? " " : text.substring(i, end));
+                i = end;
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Breaks up text within an element at the given depth in lines that fit
+     * within the line length, in the same way as {@link XMLFormatter}.
+     */
+    private String wrap(String text, int depth) {
+        int maxTextLength = lineLength - 2 * (depth + 1);
+        if (text.length() <= maxTextLength) {
+            return text;
+        }
+
+        StringBuilder lineBuffer = new StringBuilder(text.length() + text.length() / 8);
+        int currentLength = 0;
+        for (String word : text.split(" ")) {
+            if (currentLength > 0) {
+                currentLength++;
+            }
+            currentLength += word.length();
+            if (currentLength > maxTextLength) {
+                // newline and indent
+                lineBuffer.append('\n');
+                for (int j = 0; j <= depth; j++) {
+                    lineBuffer.append("  ");
+                }
+                currentLength = word.length();
+            } else if (currentLength > word.length()) {
+                lineBuffer.append(' ');
+            }
+            lineBuffer.append(word);
+        }
+        return lineBuffer.toString();
+    }
+}
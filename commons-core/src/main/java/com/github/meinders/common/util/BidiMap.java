@@ -19,8 +19,36 @@ package com.github.meinders.common.util;
 
 import java.util.*;
 
+/**
+ * A map that maintains a one-to-one relation between its keys and values, such
+ * that keys can also be looked up by value. Associating a value with a key
+ * removes any existing mapping for that value.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ *
+ * @author Gerrit Meinders
+ */
 public interface BidiMap<K,V> extends Map<K,V> {
 
+	/**
+	 * Returns the key that is mapped to the given value.
+	 *
+	 * @param value Value to look up.
+	 *
+	 * @return Key mapped to the value, or <code>null</code> if the value is
+	 *         not present.
+	 */
 	K getKey(V value);
 
+	/**
+	 * Removes the mapping for the given value, if present.
+	 *
+	 * @param value Value to be removed.
+	 *
+	 * @return Key that was mapped to the value, or <code>null</code> if the
+	 *         value was not present.
+	 */
+	K removeValue(Object value);
+
 }
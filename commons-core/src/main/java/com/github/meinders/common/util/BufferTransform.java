@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.*;
+
+/**
+ * A transformation stage in a {@link Pipeline}, which processes the data that
+ * flows through the pipeline one buffer at a time. A transform may pass its
+ * input on unchanged (e.g. to calculate a checksum) or produce new output
+ * (e.g. to compress the data).
+ *
+ * <p>
+ * Each transform is called from a single thread, so implementations don't need
+ * to be thread-safe. Results computed by a transform, such as a checksum, may
+ * be retrieved after the pipeline has completed.
+ *
+ * @author Gerrit Meinders
+ */
+public interface BufferTransform {
+	/**
+	 * Processes the data between the position and limit of the given buffer.
+	 * The buffer is shared with other stages and must not be modified, except
+	 * for its position. It may only be used until this method returns, unless
+	 * it's passed on to {@link Output#write(ByteBuffer)}.
+	 *
+	 * @param input Buffer containing input data.
+	 * @param output Receives the output of the transform.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void transform(ByteBuffer input, Output output) throws IOException;
+
+	/**
+	 * Called when the end of the input is reached, allowing the transform to
+	 * write any remaining output.
+	 *
+	 * @param output Receives the output of the transform.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void finish(Output output) throws IOException;
+
+	/**
+	 * Receives the output of a transform and passes it on to the next stage of
+	 * the pipeline.
+	 */
+	interface Output {
+		/**
+		 * Returns an empty buffer from the pipeline's pool, to be filled and
+		 * then passed to {@link #write(ByteBuffer)}.
+		 *
+		 * @return Empty buffer, ready to be written into.
+		 */
+		ByteBuffer allocate();
+
+		/**
+		 * Passes the data between the position and limit of the given buffer
+		 * on to the next stage. The buffer must either be the input buffer of
+		 * the transform, which is passed on by reference, or a buffer obtained
+		 * from {@link #allocate()}. In the latter case, ownership of the
+		 * buffer is transferred to the pipeline.
+		 *
+		 * @param buffer Buffer containing output data.
+		 *
+		 * @throws IOException if the pipeline was aborted.
+		 */
+		void write(ByteBuffer buffer) throws IOException;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.*;
+import java.util.zip.*;
+
+/**
+ * Calculates a checksum, such as {@link CRC32C}, of the data passing through a
+ * {@link Pipeline}. The data itself is passed on unchanged.
+ *
+ * @author Gerrit Meinders
+ */
+public class ChecksumTransform implements BufferTransform {
+	private final Checksum checksum;
+
+	/**
+	 * Constructs a new transform that updates the given checksum.
+	 *
+	 * @param checksum Checksum to be updated.
+	 */
+	public ChecksumTransform(Checksum checksum) {
+		if (checksum == null) {
+			throw new NullPointerException("checksum");
+		}
+		this.checksum = checksum;
+	}
+
+	@Override
+	public void transform(ByteBuffer input, Output output) throws IOException {
+		checksum.update(input.duplicate());
+		output.write(input);
+	}
+
+	@Override
+	public void finish(Output output) {
+	}
+
+	/**
+	 * Returns the checksum of the data that passed through the transform.
+	 *
+	 * @return Checksum value.
+	 */
+	public long getValue() {
+		return checksum.getValue();
+	}
+}
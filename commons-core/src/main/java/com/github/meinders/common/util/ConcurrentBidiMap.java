@@ -0,0 +1,503 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * A thread-safe {@link BidiMap}, intended for shared tables that are read far
+ * more often than they are written, such as symbol or interning tables.
+ *
+ * <p>
+ * Lookups in either direction are lock-free. Modifications are serialized on
+ * a single lock, which guarantees that both directions stay consistent: a
+ * mapping becomes visible to {@link #get(Object)} and {@link #getKey(Object)}
+ * at the same time, and so does its removal. The forward map is the point of
+ * truth; a reverse lookup is only reported if the forward map confirms it.
+ * If it doesn't, a modification is in progress and the lookup waits for it to
+ * complete. A value that moves from one key to another is never absent in
+ * between.
+ *
+ * <p>
+ * {@link #putIfAbsent(Object, Object)} and
+ * {@link #computeIfAbsent(Object, Function)} are atomic and return the
+ * existing value if the key is already present, without acquiring the lock.
+ * Neither keys nor values may be <code>null</code>. Iterators of the
+ * collection views are weakly consistent, as those of
+ * {@link ConcurrentHashMap}.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ *
+ * @author Gerrit Meinders
+ */
+public class ConcurrentBidiMap<K, V> extends AbstractMap<K, V> implements BidiMap<K, V>, ConcurrentMap<K, V> {
+	private final ConcurrentHashMap<K, V> forward;
+
+	private final ConcurrentHashMap<V, K> reverse;
+
+	/**
+	 * Serializes all modifications.
+	 */
+	private final Object lock = new Object();
+
+	private transient Set<Map.Entry<K, V>> entrySet;
+
+	private transient Set<K> keySet;
+
+	private transient Set<V> values;
+
+	/**
+	 * Constructs a new, empty map.
+	 */
+	public ConcurrentBidiMap() {
+		forward = new ConcurrentHashMap<K, V>();
+		reverse = new ConcurrentHashMap<V, K>();
+	}
+
+	/**
+	 * Constructs a new, empty map with the given initial capacity.
+	 *
+	 * @param initialCapacity The initial capacity.
+	 */
+	public ConcurrentBidiMap(int initialCapacity) {
+		forward = new ConcurrentHashMap<K, V>(initialCapacity);
+		reverse = new ConcurrentHashMap<V, K>(initialCapacity);
+	}
+
+	@Override
+	public int size() {
+		return forward.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return forward.isEmpty();
+	}
+
+	@Override
+	public V get(Object key) {
+		return forward.get(key);
+	}
+
+	@Override
+	public K getKey(V value) {
+		K key = reverse.get(value);
+		if (key == null || value.equals(forward.get(key))) {
+			return key;
+		}
+		synchronized (lock) {
+			return reverse.get(value);
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return forward.containsKey(key);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean containsValue(Object value) {
+		return getKey((V) value) != null;
+	}
+
+	/**
+	 * Associates the given value with the given key. Any existing mappings for
+	 * the key and for the value are replaced.
+	 *
+	 * @param key Key with which the value is to be associated.
+	 * @param value Value to be associated with the key.
+	 *
+	 * @return Previous value associated with the key, or <code>null</code> if
+	 *         there was no mapping for the key.
+	 */
+	@Override
+	public V put(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		synchronized (lock) {
+			V oldValue = forward.get(key);
+			if (value.equals(oldValue)) {
+				return oldValue;
+			}
+
+			add(key, value, reverse.get(value), oldValue);
+			return oldValue;
+		}
+	}
+
+	/**
+	 * Associates the given value with the given key, unless the key is already
+	 * present.
+	 *
+	 * @param key Key with which the value is to be associated.
+	 * @param value Value to be associated with the key.
+	 *
+	 * @return Value that is associated with the key, or <code>null</code> if
+	 *         there was no mapping for the key and the given value was added.
+	 *
+	 * @throws IllegalArgumentException if the key is absent, but the value is
+	 *             already mapped to another key.
+	 */
+	@Override
+	public V putIfAbsent(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		V existing = forward.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		synchronized (lock) {
+			existing = forward.get(key);
+			if (existing == null) {
+				checkAbsentValue(value);
+				add(key, value, null, null);
+			}
+			return existing;
+		}
+	}
+
+	/**
+	 * Returns the value associated with the given key, computing and adding it
+	 * if the key is absent. Unlike the default implementation in
+	 * {@link ConcurrentMap}, the function is applied at most once per key,
+	 * which makes this method suitable for assigning sequential identifiers.
+	 * The function is applied while holding the map's write lock and must not
+	 * modify this map.
+	 *
+	 * @throws IllegalArgumentException if the computed value is already mapped
+	 *             to another key.
+	 */
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		if (key == null || mappingFunction == null) {
+			throw new NullPointerException();
+		}
+		V existing = forward.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		synchronized (lock) {
+			existing = forward.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			V value = mappingFunction.apply(key);
+			if (value != null) {
+				checkAbsentValue(value);
+				add(key, value, null, null);
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (key == null) {
+			throw new NullPointerException();
+		}
+		synchronized (lock) {
+			V value = forward.remove(key);
+			if (value != null) {
+				reverse.remove(value);
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (key == null) {
+			throw new NullPointerException();
+		}
+		synchronized (lock) {
+			if (value != null && forward.remove(key, value)) {
+				reverse.remove(value);
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+
+	@Override
+	public K removeValue(Object value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		synchronized (lock) {
+			K key = reverse.get(value);
+			if (key != null) {
+				forward.remove(key);
+				reverse.remove(value);
+			}
+			return key;
+		}
+	}
+
+	/**
+	 * Replaces the value for the given key, only if it's currently mapped to
+	 * some value.
+	 *
+	 * @throws IllegalArgumentException if the new value is already mapped to
+	 *             another key.
+	 */
+	@Override
+	public V replace(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		synchronized (lock) {
+			V oldValue = forward.get(key);
+			if (oldValue != null && !oldValue.equals(value)) {
+				checkAbsentValue(value);
+				add(key, value, null, oldValue);
+			}
+			return oldValue;
+		}
+	}
+
+	/**
+	 * Replaces the value for the given key, only if it's currently mapped to
+	 * the given value.
+	 *
+	 * @throws IllegalArgumentException if the new value is already mapped to
+	 *             another key.
+	 */
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (key == null || oldValue == null || newValue == null) {
+			throw new NullPointerException();
+		}
+		synchronized (lock) {
+			if (!oldValue.equals(forward.get(key))) {
+				return false;
+			}
+			if (!oldValue.equals(newValue)) {
+				checkAbsentValue(newValue);
+				add(key, newValue, null, oldValue);
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (lock) {
+			forward.clear();
+			reverse.clear();
+		}
+	}
+
+	private void checkAbsentValue(V value) {
+		K other = reverse.get(value);
+		if (other != null) {
+			throw new IllegalArgumentException("value already mapped to "
+			        + other + ": " + value);
+		}
+	}
+
+	/**
+	 * Adds the given mapping, replacing the given old key of the value and old
+	 * value of the key, if any. Must be called while holding the lock.
+	 */
+	private void add(K key, V value, K oldKey, V oldValue) {
+		/*
+		 * Update the reverse map first, such that the mapping becomes visible
+		 * to both kinds of lookup when the forward map is updated. Old
+		 * mappings are removed last, so that lookups find either the old or
+		 * the new mapping, but never neither.
+		 */
+		reverse.put(value, key);
+		forward.put(key, value);
+		if (oldKey != null) {
+			forward.remove(oldKey, value);
+		}
+		if (oldValue != null) {
+			reverse.remove(oldValue, key);
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	@Override
+	public Set<K> keySet() {
+		Set<K> ks = keySet;
+		return ks != null ? ks : (keySet = new KeySet());
+	}
+
+	/**
+	 * Returns a set view of the values contained in this map. Since values are
+	 * unique, the returned collection is a set.
+	 */
+	@Override
+	public Set<V> values() {
+		Set<V> vs = values;
+		return vs != null ? vs : (values = new Values());
+	}
+
+	/**
+	 * Iterates over the forward map, while removing through this map.
+	 */
+	private abstract class ViewIterator<T> implements Iterator<T> {
+		private final Iterator<Map.Entry<K, V>> iterator = forward.entrySet().iterator();
+
+		private Map.Entry<K, V> lastReturned;
+
+		@Override
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		protected Map.Entry<K, V> nextEntry() {
+			lastReturned = iterator.next();
+			return lastReturned;
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturned == null) {
+				throw new IllegalStateException();
+			}
+			ConcurrentBidiMap.this.remove(lastReturned.getKey(),
+			        lastReturned.getValue());
+			lastReturned = null;
+		}
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new ViewIterator<Map.Entry<K, V>>() {
+				@Override
+				public Map.Entry<K, V> next() {
+					final Map.Entry<K, V> entry = nextEntry();
+					return new AbstractMap.SimpleEntry<K, V>(entry) {
+						@Override
+						public V setValue(V value) {
+							replace(getKey(), value);
+							return super.setValue(value);
+						}
+					};
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object value = forward.get(e.getKey());
+			return value != null && value.equals(e.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return ConcurrentBidiMap.this.remove(e.getKey(), e.getValue());
+		}
+
+		@Override
+		public int size() {
+			return forward.size();
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentBidiMap.this.clear();
+		}
+	}
+
+	private class KeySet extends AbstractSet<K> {
+		@Override
+		public Iterator<K> iterator() {
+			return new ViewIterator<K>() {
+				@Override
+				public K next() {
+					return nextEntry().getKey();
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return forward.containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return ConcurrentBidiMap.this.remove(o) != null;
+		}
+
+		@Override
+		public int size() {
+			return forward.size();
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentBidiMap.this.clear();
+		}
+	}
+
+	private class Values extends AbstractSet<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new ViewIterator<V>() {
+				@Override
+				public V next() {
+					return nextEntry().getValue();
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsValue(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return removeValue(o) != null;
+		}
+
+		@Override
+		public int size() {
+			return forward.size();
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentBidiMap.this.clear();
+		}
+	}
+}
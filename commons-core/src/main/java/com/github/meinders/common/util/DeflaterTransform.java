@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.*;
+import java.util.zip.*;
+
+/**
+ * Compresses the data passing through a {@link Pipeline}, producing either a
+ * raw deflate stream, a zlib stream or a GZIP stream.
+ *
+ * @author Gerrit Meinders
+ */
+public class DeflaterTransform implements BufferTransform {
+	/** The available output formats. */
+	public enum Format {
+		/** Deflate stream without header or trailer. */
+		DEFLATE,
+		/** Deflate stream with zlib header and trailer. */
+		ZLIB,
+		/** Deflate stream with GZIP header and trailer. */
+		GZIP
+	}
+
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b,
+	        Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private final Format format;
+
+	private final Deflater deflater;
+
+	/**
+	 * Checksum of the uncompressed data, if required by the format.
+	 */
+	private final CRC32 crc;
+
+	/**
+	 * Buffer that is currently being filled.
+	 */
+	private ByteBuffer pending;
+
+	private boolean started;
+
+	/**
+	 * Constructs a new transform producing a GZIP stream at the default
+	 * compression level.
+	 */
+	public DeflaterTransform() {
+		this(Format.GZIP, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Constructs a new transform.
+	 *
+	 * @param format Output format.
+	 * @param level Compression level, from 0 to 9 or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}.
+	 */
+	public DeflaterTransform(Format format, int level) {
+		if (format == null) {
+			throw new NullPointerException("format");
+		}
+		this.format = format;
+		deflater = new Deflater(level, format != Format.ZLIB);
+		crc = (format == Format.GZIP) ? new CRC32() : null;
+	}
+
+	@Override
+	public void transform(ByteBuffer input, Output output) throws IOException {
+		start(output);
+		if (crc != null) {
+			crc.update(input.duplicate());
+		}
+
+		deflater.setInput(input);
+		while (!deflater.needsInput()) {
+			deflate(output);
+		}
+	}
+
+	@Override
+	public void finish(Output output) throws IOException {
+		start(output);
+		deflater.finish();
+		while (!deflater.finished()) {
+			deflate(output);
+		}
+
+		if (crc != null) {
+			if (pending != null && pending.remaining() < 8) {
+				flush(output);
+			}
+			if (pending == null) {
+				pending = output.allocate();
+			}
+			pending.order(ByteOrder.LITTLE_ENDIAN);
+			pending.putInt((int) crc.getValue());
+			pending.putInt((int) deflater.getBytesRead());
+		}
+		if (pending != null) {
+			flush(output);
+		}
+		deflater.end();
+	}
+
+	private void start(Output output) {
+		if (!started) {
+			started = true;
+			pending = output.allocate();
+			if (format == Format.GZIP) {
+				pending.put(GZIP_HEADER);
+			}
+		}
+	}
+
+	/**
+	 * Deflates into the pending buffer, passing it on when it's full.
+	 */
+	private void deflate(Output output) throws IOException {
+		if (pending == null) {
+			pending = output.allocate();
+		}
+		deflater.deflate(pending);
+		if (!pending.hasRemaining()) {
+			flush(output);
+		}
+	}
+
+	private void flush(Output output) throws IOException {
+		ByteBuffer buffer = pending;
+		pending = null;
+		buffer.flip();
+		output.write(buffer);
+	}
+}
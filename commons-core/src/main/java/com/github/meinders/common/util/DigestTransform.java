@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.*;
+import java.security.*;
+
+/**
+ * Calculates a message digest, such as SHA-256, of the data passing through a
+ * {@link Pipeline}. The data itself is passed on unchanged.
+ *
+ * @author Gerrit Meinders
+ */
+public class DigestTransform implements BufferTransform {
+	private final MessageDigest digest;
+
+	private byte[] result;
+
+	/**
+	 * Constructs a new transform that uses the given digest algorithm.
+	 *
+	 * @param algorithm Name of the algorithm, e.g. "SHA-256".
+	 *
+	 * @throws NoSuchAlgorithmException if the algorithm is not available.
+	 */
+	public DigestTransform(String algorithm) throws NoSuchAlgorithmException {
+		this(MessageDigest.getInstance(algorithm));
+	}
+
+	/**
+	 * Constructs a new transform that updates the given digest.
+	 *
+	 * @param digest Digest to be updated.
+	 */
+	public DigestTransform(MessageDigest digest) {
+		if (digest == null) {
+			throw new NullPointerException("digest");
+		}
+		this.digest = digest;
+	}
+
+	@Override
+	public void transform(ByteBuffer input, Output output) throws IOException {
+		digest.update(input.duplicate());
+		output.write(input);
+	}
+
+	@Override
+	public void finish(Output output) {
+		result = digest.digest();
+	}
+
+	/**
+	 * Returns the digest of the data that passed through the transform.
+	 *
+	 * @return Digest, or <code>null</code> if the end of the data wasn't
+	 *         reached yet.
+	 */
+	public byte[] getDigest() {
+		return result == null ? null : result.clone();
+	}
+}
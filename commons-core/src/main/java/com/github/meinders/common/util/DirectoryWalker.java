@@ -0,0 +1,517 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.lang.ref.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Walks a directory tree in parallel. Every directory is listed by a separate
+ * task on a {@link ForkJoinPool}, such that idle threads steal the listing of
+ * subdirectories from busy ones. The number of threads is bounded by the
+ * {@linkplain #setParallelism(int) parallelism} of the walker.
+ *
+ * <p>
+ * All entries below the root directory are reported, but not the root itself.
+ * Entries can be reported to a visitor, which is called concurrently from
+ * multiple threads, or consumed from a single thread using an {@link Iterator}
+ * or a {@link Stream}. The latter two are fed through a bounded queue, which
+ * holds up the walk when the consumer can't keep up.
+ *
+ * <p>
+ * Symbolic links are not followed by default. When they are, a link that
+ * points to one of its own ancestors is reported to the error handler as a
+ * {@link FileSystemLoopException} and is not descended into.
+ *
+ * @author Gerrit Meinders
+ */
+public class DirectoryWalker implements Iterable<File> {
+	/**
+	 * Default capacity of the queue used by {@link #iterator()} and
+	 * {@link #stream()}.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Marks the end of the walk in the queue of a {@link Walk}.
+	 */
+	private static final Path END_OF_WALK = Paths.get("");
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	private final Path root;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private int maxDepth = Integer.MAX_VALUE;
+
+	private boolean followLinks = false;
+
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+	private BiPredicate<Path, BasicFileAttributes> filter = null;
+
+	private BiPredicate<Path, BasicFileAttributes> directoryFilter = null;
+
+	private BiConsumer<Path, IOException> errorHandler = null;
+
+	/**
+	 * Constructs a new walker for the given directory.
+	 *
+	 * @param root Directory to be walked.
+	 */
+	public DirectoryWalker(Path root) {
+		if (root == null) {
+			throw new NullPointerException("root");
+		}
+		this.root = root;
+	}
+
+	/**
+	 * Sets the maximum number of threads that list directories concurrently.
+	 * Defaults to the number of available processors.
+	 *
+	 * @param parallelism Number of threads.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the maximum depth of the entries that are reported. Entries in the
+	 * root directory are at depth 1. Unlimited by default.
+	 *
+	 * @param maxDepth Maximum depth.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		if (maxDepth < 1) {
+			throw new IllegalArgumentException("maxDepth: " + maxDepth);
+		}
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Sets whether symbolic links are followed. Disabled by default.
+	 *
+	 * @param followLinks <code>true</code> to follow symbolic links.
+	 */
+	public void setFollowLinks(boolean followLinks) {
+		this.followLinks = followLinks;
+	}
+
+	/**
+	 * Sets the capacity of the queue used by {@link #iterator()} and
+	 * {@link #stream()}. Defaults to {@link #DEFAULT_QUEUE_CAPACITY}.
+	 *
+	 * @param queueCapacity Queue capacity.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("queueCapacity: "
+			        + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Sets the filter that determines which entries are reported. All entries
+	 * are reported by default. The filter is called concurrently from
+	 * multiple threads.
+	 *
+	 * @param filter Filter to be applied, or <code>null</code> to report all
+	 *            entries.
+	 */
+	public void setFilter(BiPredicate<Path, BasicFileAttributes> filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Sets the filter that determines which directories are descended into,
+	 * regardless of whether they are reported. All directories are descended
+	 * into by default. The filter is called concurrently from multiple
+	 * threads.
+	 *
+	 * @param directoryFilter Filter to be applied, or <code>null</code> to
+	 *            descend into all directories.
+	 */
+	public void setDirectoryFilter(
+	        BiPredicate<Path, BasicFileAttributes> directoryFilter) {
+		this.directoryFilter = directoryFilter;
+	}
+
+	/**
+	 * Sets the handler that is notified of directories that could not be
+	 * listed, entries whose attributes could not be read and symbolic link
+	 * loops. Such errors are ignored by default.
+	 *
+	 * @param errorHandler Error handler, or <code>null</code> to ignore
+	 *            errors.
+	 */
+	public void setErrorHandler(BiConsumer<Path, IOException> errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Walks the directory tree, passing every entry to the given visitor. The
+	 * visitor is called concurrently from multiple threads. This method
+	 * returns when the entire tree has been walked.
+	 *
+	 * @param visitor Visitor to be called for every entry.
+	 *
+	 * @throws InterruptedException if the current thread is interrupted, in
+	 *             which case the walk is cancelled.
+	 */
+	public void walk(BiConsumer<Path, BasicFileAttributes> visitor)
+	        throws InterruptedException {
+		if (visitor == null) {
+			throw new NullPointerException("visitor");
+		}
+
+		Object rootKey = null;
+		if (followLinks) {
+			try {
+				rootKey = Files.readAttributes(root, BasicFileAttributes.class).fileKey();
+			} catch (IOException e) {
+				error(root, e);
+				return;
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.submit(
+			        new DirectoryTask(visitor, root, 1, new Ancestor(root,
+			                rootKey, null))).get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Starts walking the directory tree in the background and returns an
+	 * iterator over the entries. Unlike the {@link #stream()}, the iterator
+	 * can't be closed; if the iterator is abandoned before the end of the
+	 * walk, the walk is cancelled once the iterator is garbage collected.
+	 *
+	 * @return Iterator over all entries.
+	 */
+	@Override
+	public Iterator<File> iterator() {
+		final Iterator<Path> paths = new Walk().start();
+		return new Iterator<File>() {
+			@Override
+			public boolean hasNext() {
+				return paths.hasNext();
+			}
+
+			@Override
+			public File next() {
+				return paths.next().toFile();
+			}
+		};
+	}
+
+	/**
+	 * Starts walking the directory tree in the background and returns a stream
+	 * of the entries. The stream should be closed if it isn't consumed
+	 * entirely, to cancel the walk. The returned stream is sequential, but it
+	 * may be made parallel to process the entries on multiple threads.
+	 *
+	 * @return Stream of all entries.
+	 */
+	public Stream<Path> stream() {
+		Walk walk = new Walk();
+		Iterator<Path> paths = walk.start();
+		return StreamSupport.stream(
+		        Spliterators.spliteratorUnknownSize(paths, Spliterator.DISTINCT
+		                | Spliterator.NONNULL), false).onClose(walk);
+	}
+
+	private void error(Path path, IOException e) {
+		if (errorHandler != null) {
+			errorHandler.accept(path, e);
+		}
+	}
+
+	/**
+	 * Reads the attributes of the given entry, following symbolic links if
+	 * enabled. Broken links are reported as links.
+	 */
+	private BasicFileAttributes readAttributes(Path entry) throws IOException {
+		if (followLinks) {
+			try {
+				return Files.readAttributes(entry, BasicFileAttributes.class);
+			} catch (IOException e) {
+				// fall back to the attributes of the link itself
+			}
+		}
+		return Files.readAttributes(entry, BasicFileAttributes.class,
+		        LinkOption.NOFOLLOW_LINKS);
+	}
+
+	/**
+	 * Element of the chain of directories leading to a directory, used to
+	 * detect symbolic link loops.
+	 */
+	private static class Ancestor {
+		private final Path path;
+
+		private final Object key;
+
+		private final Ancestor parent;
+
+		Ancestor(Path path, Object key, Ancestor parent) {
+			this.path = path;
+			this.key = key;
+			this.parent = parent;
+		}
+
+		boolean contains(Path directory, Object directoryKey) throws IOException {
+			for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+				if (directoryKey != null && ancestor.key != null) {
+					if (directoryKey.equals(ancestor.key)) {
+						return true;
+					}
+				} else if (Files.isSameFile(directory, ancestor.path)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Lists a single directory, forking a task for each subdirectory.
+	 */
+	private class DirectoryTask extends RecursiveAction {
+		private final BiConsumer<Path, BasicFileAttributes> visitor;
+
+		private final Path directory;
+
+		/**
+		 * Depth of the entries in the directory.
+		 */
+		private final int depth;
+
+		private final Ancestor ancestors;
+
+		DirectoryTask(BiConsumer<Path, BasicFileAttributes> visitor,
+		        Path directory, int depth, Ancestor ancestors) {
+			this.visitor = visitor;
+			this.directory = directory;
+			this.depth = depth;
+			this.ancestors = ancestors;
+		}
+
+		@Override
+		protected void compute() {
+			List<DirectoryTask> subtasks = new ArrayList<DirectoryTask>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					if (Thread.currentThread().isInterrupted()) {
+						return;
+					}
+
+					BasicFileAttributes attributes;
+					try {
+						attributes = readAttributes(entry);
+					} catch (IOException e) {
+						error(entry, e);
+						continue;
+					}
+
+					if (filter == null || filter.test(entry, attributes)) {
+						visitor.accept(entry, attributes);
+					}
+
+					if (attributes.isDirectory() && depth < maxDepth) {
+						DirectoryTask subtask = subtask(entry, attributes);
+						if (subtask != null) {
+							subtask.fork();
+							subtasks.add(subtask);
+						}
+					}
+				}
+			} catch (IOException e) {
+				error(directory, e);
+			} catch (DirectoryIteratorException e) {
+				error(directory, e.getCause());
+			}
+
+			for (DirectoryTask subtask : subtasks) {
+				subtask.join();
+			}
+		}
+
+		private DirectoryTask subtask(Path entry, BasicFileAttributes attributes)
+		        throws IOException {
+			if (directoryFilter != null
+			        && !directoryFilter.test(entry, attributes)) {
+				return null;
+			}
+
+			Ancestor chain = null;
+			if (followLinks) {
+				Object key = attributes.fileKey();
+				if (attributes.isOther() || ancestors.contains(entry, key)) {
+					error(entry, new FileSystemLoopException(entry.toString()));
+					return null;
+				}
+				chain = new Ancestor(entry, key, ancestors);
+			}
+			return new DirectoryTask(visitor, entry, depth + 1, chain);
+		}
+	}
+
+	/**
+	 * Walks the tree in the background, feeding entries into a bounded queue.
+	 * Running the walk (as a {@link Runnable}) cancels it.
+	 */
+	private class Walk implements Runnable {
+		private final BlockingQueue<Path> queue = new ArrayBlockingQueue<Path>(
+		        queueCapacity);
+
+		private volatile Thread thread;
+
+		private volatile Throwable failure;
+
+		private volatile boolean cancelled;
+
+		Iterator<Path> start() {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						walk(new BiConsumer<Path, BasicFileAttributes>() {
+							@Override
+							public void accept(Path path,
+							        BasicFileAttributes attributes) {
+								try {
+									queue.put(path);
+								} catch (InterruptedException e) {
+									throw new CancellationException();
+								}
+							}
+						});
+					} catch (InterruptedException e) {
+						// cancelled
+					} catch (CancellationException e) {
+						// cancelled
+					} catch (Throwable e) {
+						failure = e;
+					} finally {
+						thread = null;
+						finish();
+					}
+				}
+			}, "Directory walker");
+			worker.setDaemon(true);
+			thread = worker;
+			worker.start();
+
+			Results results = new Results();
+			CLEANER.register(results, this);
+			return results;
+		}
+
+		/**
+		 * Appends the end marker to the queue. If the queue is full, the
+		 * consumer is either still running and will make room, or it has
+		 * abandoned the walk; in the latter case, the marker is never needed.
+		 */
+		private void finish() {
+			try {
+				while (!queue.offer(END_OF_WALK, 1, TimeUnit.SECONDS)) {
+					if (cancelled) {
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				// cancelled
+			}
+		}
+
+		@Override
+		public void run() {
+			cancelled = true;
+			Thread thread = this.thread;
+			if (thread != null) {
+				thread.interrupt();
+			}
+		}
+
+		/**
+		 * Iterator over the queue. Holds no references that the walking
+		 * threads can reach, such that it can be garbage collected when
+		 * abandoned.
+		 */
+		private class Results implements Iterator<Path> {
+			private Path next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = queue.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new CancellationException();
+					}
+				}
+				if (next == END_OF_WALK) {
+					Throwable failure = Walk.this.failure;
+					if (failure instanceof RuntimeException) {
+						throw (RuntimeException) failure;
+					} else if (failure instanceof Error) {
+						throw (Error) failure;
+					}
+					return false;
+				}
+				return true;
+			}
+
+			@Override
+			public Path next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Path result = next;
+				next = null;
+				return result;
+			}
+		}
+	}
+}
@@ -0,0 +1,826 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+
+/**
+ * A persistent index of the files in a directory tree, recording the size and
+ * modification time of every entry and whether it's accepted by each of a set
+ * of named filters. The index is stored in a compact binary file, which is
+ * memory-mapped when loaded.
+ *
+ * <p>
+ * Loading an index doesn't read its records. Instead, the records of the
+ * directories are stored in order of their path, followed by a table of their
+ * offsets, such that a directory is found using a binary search of the mapped
+ * file. Queries scan the mapped records, skipping directories without
+ * matching files based on the combined filter results that are stored with
+ * each directory. Only directories that are listed again are held in memory,
+ * until the index is saved.
+ *
+ * <p>
+ * An {@linkplain #update() update} only lists the directories whose
+ * modification time has changed since they were last listed. Since a
+ * directory's modification time changes when entries are added, removed or
+ * renamed, but not when the contents of a file change, files are only checked
+ * for changes when their directory is listed. Filters are only applied to new
+ * entries and to entries whose size or modification time changed. To detect
+ * all changes as they occur, the index can also {@linkplain #startWatching()
+ * watch} the tree using a {@link WatchService}.
+ *
+ * <p>
+ * For example, to find all XML files of a particular type:
+ *
+ * <pre>
+ * FileIndex index = new FileIndex(root, indexFile);
+ * index.addFilter(&quot;settings&quot;, new XMLFileFilter(&quot;Settings&quot;,
+ *         &quot;-//Example//DTD Settings 1.0//EN&quot;));
+ * index.load();
+ * index.update();
+ * index.save();
+ * List&lt;File&gt; files = index.getFiles(&quot;settings&quot;);
+ * </pre>
+ *
+ * @author Gerrit Meinders
+ */
+public class FileIndex implements Closeable {
+	/**
+	 * Identifies index files.
+	 */
+	private static final int MAGIC = 0x46494458;
+
+	private static final int VERSION = 2;
+
+	/**
+	 * Maximum number of filters, determined by the size of the bit mask used
+	 * to store filter results.
+	 */
+	public static final int MAX_FILTERS = 64;
+
+	/**
+	 * Directories that were modified less than this number of milliseconds
+	 * before being listed may be modified again without their modification
+	 * time changing, given the resolution of some file systems. Such
+	 * directories are listed again on the next update.
+	 */
+	private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+	private static final long UNKNOWN = Long.MIN_VALUE;
+
+	private static final byte DIRECTORY = 1;
+
+	/**
+	 * Orders paths by their UTF-8 encoding, as in the index file.
+	 */
+	private static final Comparator<byte[]> UNSIGNED = new Comparator<byte[]>() {
+		@Override
+		public int compare(byte[] o1, byte[] o2) {
+			return Arrays.compareUnsigned(o1, o2);
+		}
+	};
+
+	private final Path root;
+
+	private final Path indexFile;
+
+	private final Map<String, FileFilter> filters = new LinkedHashMap<String, FileFilter>();
+
+	/**
+	 * Contents of the index file, if loaded.
+	 */
+	private ByteBuffer mapped;
+
+	/**
+	 * Position of the table with the offsets of the directory records in the
+	 * index file, sorted by path.
+	 */
+	private int table;
+
+	private int mappedCount;
+
+	/**
+	 * Records of directories that were listed since the index file was
+	 * loaded, by absolute path. These take precedence over the index file. A
+	 * <code>null</code> value marks a directory in the index file that no
+	 * longer exists.
+	 */
+	private final Map<Path, Directory> directories = new HashMap<Path, Directory>();
+
+	private WatchService watchService;
+
+	private final Map<WatchKey, Path> watchKeys = new HashMap<WatchKey, Path>();
+
+	private final Set<Path> watched = new HashSet<Path>();
+
+	private Thread watcher;
+
+	private int listed;
+
+	/**
+	 * Constructs a new, empty index.
+	 *
+	 * @param root Directory to be indexed.
+	 * @param indexFile File that the index is loaded from and saved to.
+	 */
+	public FileIndex(Path root, Path indexFile) {
+		if (root == null) {
+			throw new NullPointerException("root");
+		}
+		if (indexFile == null) {
+			throw new NullPointerException("indexFile");
+		}
+		this.root = root.toAbsolutePath();
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Adds a filter, whose results are recorded for every entry. Filters must
+	 * be added before the index is loaded; an index file that was saved with a
+	 * different set of filters is ignored.
+	 *
+	 * @param name Name of the filter.
+	 * @param filter Filter to be added.
+	 */
+	public synchronized void addFilter(String name, FileFilter filter) {
+		if (name == null) {
+			throw new NullPointerException("name");
+		}
+		if (filter == null) {
+			throw new NullPointerException("filter");
+		}
+		if (mapped != null || !directories.isEmpty()) {
+			throw new IllegalStateException("index not empty");
+		}
+		if (filters.size() == MAX_FILTERS && !filters.containsKey(name)) {
+			throw new IllegalArgumentException("too many filters: " + name);
+		}
+		filters.put(name, filter);
+	}
+
+	/**
+	 * Loads the index file, if it exists and was saved with the same filters.
+	 *
+	 * @return <code>true</code> if the index file was loaded.
+	 *
+	 * @throws IOException if the index file can't be read.
+	 */
+	public synchronized boolean load() throws IOException {
+		directories.clear();
+		mapped = null;
+		mappedCount = 0;
+		if (!Files.exists(indexFile)) {
+			return false;
+		}
+
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return false;
+			}
+			if (!root.toString().equals(getString(buffer))) {
+				return false;
+			}
+
+			int filterCount = buffer.getInt();
+			if (filterCount != filters.size()) {
+				return false;
+			}
+			for (String name : filters.keySet()) {
+				if (!name.equals(getString(buffer))) {
+					return false;
+				}
+			}
+
+			// the offset table is located using the trailer
+			int trailer = buffer.limit() - 8;
+			if (trailer < buffer.position()) {
+				throw new BufferUnderflowException();
+			}
+			int table = buffer.getInt(trailer);
+			int count = buffer.getInt(trailer + 4);
+			if (table < buffer.position() || count < 0 || (long) table + 4L * count != trailer) {
+				throw new IOException("corrupt index file: " + indexFile);
+			}
+			this.table = table;
+			mappedCount = count;
+			mapped = buffer;
+			return true;
+
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated index file: " + indexFile, e);
+		}
+	}
+
+	/**
+	 * Saves the index file. The file is replaced atomically, if supported by
+	 * the file system.
+	 *
+	 * @throws IOException if the index file can't be written.
+	 */
+	public synchronized void save() throws IOException {
+		Path parent = indexFile.toAbsolutePath().getParent();
+		Path temporary = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 0x10000))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				putString(out, root.toString());
+				out.writeInt(filters.size());
+				for (String name : filters.keySet()) {
+					putString(out, name);
+				}
+
+				/*
+				 * Records are written in order of their path, followed by a
+				 * table of their offsets and a trailer pointing to the table.
+				 * Records that weren't changed are copied from the index file
+				 * as is.
+				 */
+				SortedMap<byte[], Object> records = new TreeMap<byte[], Object>(UNSIGNED);
+				for (int i = 0; i < mappedCount; i++) {
+					int record = mappedRecord(i);
+					byte[] key = getPath(record);
+					if (!directories.containsKey(root.resolve(new String(key, StandardCharsets.UTF_8)))) {
+						records.put(key, record);
+					}
+				}
+				for (Map.Entry<Path, Directory> record : directories.entrySet()) {
+					if (record.getValue() != null) {
+						records.put(root.relativize(record.getKey()).toString().getBytes(StandardCharsets.UTF_8), record.getValue());
+					}
+				}
+
+				int[] offsets = new int[records.size()];
+				int index = 0;
+				for (Map.Entry<byte[], Object> record : records.entrySet()) {
+					offsets[index++] = out.size();
+					if (record.getValue() instanceof Directory) {
+						putDirectory(out, record.getKey(), (Directory) record.getValue());
+					} else {
+						int offset = (Integer) record.getValue();
+						ByteBuffer bytes = mapped.duplicate();
+						bytes.position(offset);
+						skipDirectory(bytes);
+						byte[] copy = new byte[bytes.position() - offset];
+						bytes.position(offset);
+						bytes.get(copy);
+						out.write(copy);
+					}
+				}
+
+				int table = out.size();
+				for (int offset : offsets) {
+					out.writeInt(offset);
+				}
+				out.writeInt(table);
+				out.writeInt(offsets.length);
+				if (out.size() == Integer.MAX_VALUE) {
+					// the size is no longer counted, so offsets may be wrong
+					throw new IOException("index too large");
+				}
+			}
+
+			try {
+				Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+
+		// releases the records that were listed since the index was loaded
+		load();
+	}
+
+	/**
+	 * Brings the index up to date, listing only those directories that were
+	 * modified since they were last listed.
+	 *
+	 * @return Number of directories that were listed.
+	 *
+	 * @throws IOException if the root directory can't be read.
+	 */
+	public synchronized int update() throws IOException {
+		listed = 0;
+		if (!Files.isDirectory(root)) {
+			throw new NotDirectoryException(root.toString());
+		}
+		update(root, false);
+		registerWatches();
+		return listed;
+	}
+
+	/**
+	 * Returns the files that are accepted by the given filter.
+	 *
+	 * @param filterName Name of the filter.
+	 *
+	 * @return Matching files, in no particular order.
+	 */
+	public synchronized List<File> getFiles(String filterName) {
+		long mask = 1L << filterIndex(filterName);
+		List<File> result = new ArrayList<File>();
+		for (int i = 0; i < mappedCount; i++) {
+			ByteBuffer record = mapped.duplicate();
+			record.position(mappedRecord(i));
+			record.getLong();
+			if ((record.getLong() & mask) == 0) {
+				continue;
+			}
+			int entryCount = record.getInt();
+			Path path = root.resolve(getString(record));
+			if (directories.containsKey(path)) {
+				continue;
+			}
+			for (int j = 0; j < entryCount; j++) {
+				String name = getString(record);
+				record.position(record.position() + 17);
+				if ((record.getLong() & mask) != 0) {
+					result.add(path.resolve(name).toFile());
+				}
+			}
+		}
+		for (Map.Entry<Path, Directory> record : directories.entrySet()) {
+			if (record.getValue() == null) {
+				continue;
+			}
+			for (Map.Entry<String, Entry> entry : record.getValue().entries.entrySet()) {
+				if ((entry.getValue().matches & mask) != 0) {
+					result.add(record.getKey().resolve(entry.getKey()).toFile());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the total number of entries in the index.
+	 *
+	 * @return Number of entries.
+	 */
+	public synchronized int size() {
+		int result = 0;
+		for (int i = 0; i < mappedCount; i++) {
+			int record = mappedRecord(i);
+			if (directories.isEmpty() || !directories.containsKey(root.resolve(new String(getPath(record), StandardCharsets.UTF_8)))) {
+				result += mapped.getInt(record + 16);
+			}
+		}
+		for (Directory directory : directories.values()) {
+			if (directory != null) {
+				result += directory.entries.size();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Starts watching the tree for changes, keeping the index up to date as
+	 * they occur. Changes are processed on a background thread.
+	 *
+	 * @throws IOException if the tree can't be watched.
+	 */
+	public synchronized void startWatching() throws IOException {
+		if (watchService != null) {
+			return;
+		}
+		final WatchService watchService = root.getFileSystem().newWatchService();
+		this.watchService = watchService;
+		registerWatches();
+
+		watcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						WatchKey key = watchService.take();
+						processEvents(key);
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				} catch (ClosedWatchServiceException e) {
+					// stopped
+				}
+			}
+		}, "File index watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Stops watching the tree for changes.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public synchronized void stopWatching() throws IOException {
+		if (watchService != null) {
+			watcher.interrupt();
+			watchService.close();
+			watchService = null;
+			watcher = null;
+			watchKeys.clear();
+			watched.clear();
+		}
+	}
+
+	/**
+	 * Stops watching the tree for changes, if applicable.
+	 */
+	@Override
+	public void close() throws IOException {
+		stopWatching();
+	}
+
+	private synchronized void processEvents(WatchKey key) {
+		Path directory = watchKeys.get(key);
+		boolean overflow = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			overflow |= (event.kind() == StandardWatchEventKinds.OVERFLOW);
+		}
+		if (!key.reset()) {
+			watchKeys.remove(key);
+			watched.remove(directory);
+		}
+
+		try {
+			if (overflow || directory == null) {
+				update(root, false);
+			} else if (Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+				/*
+				 * Modified files don't change the modification time of their
+				 * directory, so the directory must be listed regardless.
+				 */
+				update(directory, true);
+			}
+			registerWatches();
+		} catch (IOException e) {
+			// the directory is updated on the next event or update
+		}
+	}
+
+	private void registerWatches() throws IOException {
+		if (watchService == null) {
+			return;
+		}
+		for (Path directory : getDirectories()) {
+			if (watched.add(directory)) {
+				WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+				        StandardWatchEventKinds.ENTRY_MODIFY);
+				watchKeys.put(key, directory);
+			}
+		}
+		for (Iterator<Map.Entry<WatchKey, Path>> i = watchKeys.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<WatchKey, Path> key = i.next();
+			if (getDirectory(key.getValue()) == null) {
+				key.getKey().cancel();
+				watched.remove(key.getValue());
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Updates the given directory and its subdirectories.
+	 *
+	 * @param path Directory to be updated.
+	 * @param force Whether to list the directory even if it wasn't modified.
+	 */
+	private void update(Path path, boolean force) throws IOException {
+		Directory directory = getDirectory(path);
+		long modified;
+		try {
+			modified = Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS).toMillis();
+		} catch (IOException e) {
+			remove(path);
+			return;
+		}
+
+		if (force || directory == null || directory.modified != modified) {
+			try {
+				directory = list(path, directory, modified);
+			} catch (IOException e) {
+				if (path.equals(root)) {
+					throw e;
+				}
+				remove(path);
+				return;
+			}
+		}
+
+		for (Map.Entry<String, Entry> entry : directory.entries.entrySet()) {
+			if (entry.getValue().directory) {
+				update(path.resolve(entry.getKey()), false);
+			}
+		}
+	}
+
+	/**
+	 * Lists the given directory, reusing the filter results of unmodified
+	 * entries from the given previous record.
+	 */
+	private Directory list(Path path, Directory previous, long modified) throws IOException {
+		listed++;
+		long now = System.currentTimeMillis();
+		Directory directory = new Directory(now - modified < MODIFICATION_TIME_RESOLUTION ? UNKNOWN : modified);
+
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+			for (Path child : entries) {
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				} catch (IOException e) {
+					continue;
+				}
+
+				String name = child.getFileName().toString();
+				Entry entry = new Entry(attributes.isDirectory(), attributes.size(), attributes.lastModifiedTime().toMillis());
+				Entry old = (previous == null) ? null : previous.entries.get(name);
+				if (old != null && old.directory == entry.directory && old.size == entry.size && old.modified == entry.modified) {
+					entry.matches = old.matches;
+				} else {
+					entry.matches = match(child.toFile());
+				}
+				directory.entries.put(name, entry);
+			}
+		} catch (DirectoryIteratorException e) {
+			throw e.getCause();
+		}
+
+		if (previous != null) {
+			for (Map.Entry<String, Entry> entry : previous.entries.entrySet()) {
+				if (entry.getValue().directory) {
+					Entry current = directory.entries.get(entry.getKey());
+					if (current == null || !current.directory) {
+						remove(path.resolve(entry.getKey()));
+					}
+				}
+			}
+		}
+
+		directories.put(path, directory);
+		return directory;
+	}
+
+	/**
+	 * Removes the given directory and its subdirectories from the index.
+	 */
+	private void remove(Path path) {
+		Directory directory = getDirectory(path);
+		if (directory != null) {
+			if (findRecord(path) >= 0) {
+				directories.put(path, null);
+			} else {
+				directories.remove(path);
+			}
+			for (Map.Entry<String, Entry> entry : directory.entries.entrySet()) {
+				if (entry.getValue().directory) {
+					remove(path.resolve(entry.getKey()));
+				}
+			}
+		}
+	}
+
+	private long match(File file) {
+		long result = 0;
+		long mask = 1;
+		for (FileFilter filter : filters.values()) {
+			if (filter.accept(file)) {
+				result |= mask;
+			}
+			mask <<= 1;
+		}
+		return result;
+	}
+
+	private int filterIndex(String filterName) {
+		int index = 0;
+		for (String name : filters.keySet()) {
+			if (name.equals(filterName)) {
+				return index;
+			}
+			index++;
+		}
+		throw new IllegalArgumentException("filterName: " + filterName);
+	}
+
+	/**
+	 * Returns the record of the given directory, which is read from the index
+	 * file if the directory wasn't listed since.
+	 */
+	private Directory getDirectory(Path path) {
+		Directory result = directories.get(path);
+		if (result == null && !directories.containsKey(path)) {
+			int record = findRecord(path);
+			if (record >= 0) {
+				result = readDirectory(record);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the paths of all directories in the index.
+	 */
+	private Set<Path> getDirectories() {
+		Set<Path> result = new HashSet<Path>();
+		for (int i = 0; i < mappedCount; i++) {
+			result.add(root.resolve(new String(getPath(mappedRecord(i)), StandardCharsets.UTF_8)));
+		}
+		for (Map.Entry<Path, Directory> record : directories.entrySet()) {
+			if (record.getValue() == null) {
+				result.remove(record.getKey());
+			} else {
+				result.add(record.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the offset of the record of the given directory in the index
+	 * file, or <code>-1</code> if there is none.
+	 */
+	private int findRecord(Path path) {
+		byte[] key = root.relativize(path).toString().getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = mappedCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int record = mappedRecord(middle);
+			int compare = compareToPath(key, record);
+			if (compare > 0) {
+				low = middle + 1;
+			} else if (compare < 0) {
+				high = middle - 1;
+			} else {
+				return record;
+			}
+		}
+		return -1;
+	}
+
+	private int mappedRecord(int index) {
+		return mapped.getInt(table + 4 * index);
+	}
+
+	/**
+	 * Compares the given path to the path of a record, without copying the
+	 * latter.
+	 */
+	private int compareToPath(byte[] key, int record) {
+		int length = mapped.getInt(record + 20);
+		int offset = record + 24;
+		for (int i = 0; i < Math.min(key.length, length); i++) {
+			int compare = (key[i] & 0xff) - (mapped.get(offset + i) & 0xff);
+			if (compare != 0) {
+				return compare;
+			}
+		}
+		return key.length - length;
+	}
+
+	private byte[] getPath(int record) {
+		ByteBuffer buffer = mapped.duplicate();
+		buffer.position(record + 20);
+		byte[] result = new byte[buffer.getInt()];
+		buffer.get(result);
+		return result;
+	}
+
+	private Directory readDirectory(int record) {
+		ByteBuffer buffer = mapped.duplicate();
+		buffer.position(record);
+		Directory directory = new Directory(buffer.getLong());
+		buffer.getLong();
+		int entryCount = buffer.getInt();
+		skipString(buffer);
+		for (int j = 0; j < entryCount; j++) {
+			String name = getString(buffer);
+			Entry entry = new Entry(buffer.get() == DIRECTORY, buffer.getLong(), buffer.getLong());
+			entry.matches = buffer.getLong();
+			directory.entries.put(name, entry);
+		}
+		return directory;
+	}
+
+	/**
+	 * Moves the given buffer past the directory record at its position.
+	 */
+	private static void skipDirectory(ByteBuffer buffer) {
+		buffer.position(buffer.position() + 16);
+		int entryCount = buffer.getInt();
+		skipString(buffer);
+		for (int j = 0; j < entryCount; j++) {
+			skipString(buffer);
+			buffer.position(buffer.position() + 25);
+		}
+	}
+
+	/**
+	 * Writes a directory record: its modification time, the combined filter
+	 * results of its entries, the number of entries, its path and then the
+	 * entries themselves.
+	 */
+	private static void putDirectory(DataOutputStream out, byte[] path, Directory directory) throws IOException {
+		long matches = 0;
+		for (Entry entry : directory.entries.values()) {
+			matches |= entry.matches;
+		}
+		out.writeLong(directory.modified);
+		out.writeLong(matches);
+		out.writeInt(directory.entries.size());
+		out.writeInt(path.length);
+		out.write(path);
+		for (Map.Entry<String, Entry> entryRecord : directory.entries.entrySet()) {
+			Entry entry = entryRecord.getValue();
+			putString(out, entryRecord.getKey());
+			out.writeByte(entry.directory ? DIRECTORY : 0);
+			out.writeLong(entry.size);
+			out.writeLong(entry.modified);
+			out.writeLong(entry.matches);
+		}
+	}
+
+	private static void putString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		buffer.position(buffer.position() + length);
+	}
+
+	/**
+	 * The recorded state of a directory.
+	 */
+	private static class Directory {
+		/**
+		 * Modification time when the directory was last listed, or
+		 * {@link FileIndex#UNKNOWN} to list it on the next update.
+		 */
+		private final long modified;
+
+		private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+		Directory(long modified) {
+			this.modified = modified;
+		}
+	}
+
+	/**
+	 * The recorded state of an entry in a directory.
+	 */
+	private static class Entry {
+		private final boolean directory;
+
+		private final long size;
+
+		private final long modified;
+
+		/**
+		 * Bit mask of the filters that accept the entry.
+		 */
+		private long matches;
+
+		Entry(boolean directory, long size, long modified) {
+			this.directory = directory;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+}
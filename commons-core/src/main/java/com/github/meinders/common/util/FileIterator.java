@@ -18,86 +18,265 @@
 package com.github.meinders.common.util;
 
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.regex.*;
+import java.util.function.*;
+import java.util.stream.*;
 
-public class FileIterator implements Iterator<File>, FileFilter, Runnable
+/**
+ * Iterates over all files below a folder that are accepted by a filter. The
+ * folder is walked in the background by a {@link DirectoryWalker}, which lists
+ * multiple folders in parallel. As a result, the filter may be called
+ * concurrently from multiple threads.
+ *
+ * <p>
+ * By default, matching files are buffered until they are consumed, without
+ * limit. If a capacity is specified, the walk is held up whenever the buffer
+ * is full, such that a slow consumer doesn't cause memory to fill up. An
+ * iterator that isn't consumed until the end should be {@linkplain #close()
+ * closed}, to stop the walk. Exceptions thrown by the filter end the walk and
+ * are rethrown by {@link #hasNext()}.
+ *
+ * <p>
+ * To process the matching files in parallel, use {@link #stream(File,
+ * FileFilter)} or {@link #spliterator(File, FileFilter)} instead. These don't
+ * use a background thread or a buffer at all: the tree is split across the
+ * threads that process it.
+ *
+ * <p>
+ * Symbolic links to folders are followed, like {@link File#isDirectory()}
+ * does. A link that points to one of the folders containing it is not
+ * descended into, so the iteration always terminates.
+ *
+ * <p>
+ * If the filter is a {@link PruningFileFilter}, folders that it prunes are
+ * not listed at all.
+ *
+ * @author Gerrit Meinders
+ */
+public class FileIterator implements Iterator<File>, FileFilter, Runnable,
+        AutoCloseable
 {
-	public static void main(String[] args)
-	{
-		FileIterator i = new FileIterator(new File("E:\\asdf\\"),
-		        new FileFilter()
-		        {
-			        final Pattern pattern = Pattern.compile("(jpe?g)$");
+	/**
+	 * Marks the end of the iteration in the buffer.
+	 */
+	private static final File END_OF_ITERATION = new File("");
 
-			        @Override
-			        public boolean accept(File pathname)
-			        {
-				        return pattern.matcher(pathname.getName()).find();
-			        }
-		        });
+	private final FileFilter filter;
+
+	private final DirectoryWalker walker;
 
-		System.out.println("Busy..");
-		int j = 0;
-		while (i.hasNext())
+	private final BlockingQueue<File> buffer;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r)
 		{
-			i.next();
-			j++;
+			Thread thread = new Thread(r, "File iterator");
+			thread.setDaemon(true);
+			return thread;
 		}
-		System.out.println(j + " <- j");
-		i.dispose();
-	}
+	});
 
-	private final FileFilter filter;
+	private boolean submitted = false;
 
-	private final LinkedList<File> folders = new LinkedList<File>();
+	private volatile boolean closed = false;
 
-	private final ConcurrentLinkedQueue<File> buffer = new ConcurrentLinkedQueue<File>();
+	/**
+	 * Exception thrown by the filter, which ended the walk.
+	 */
+	private volatile Throwable failure = null;
 
-	private ExecutorService executor = Executors.newSingleThreadExecutor();
+	private File next = null;
 
-	private volatile boolean submitted = false;
+	/**
+	 * Constructs a new iterator with an unbounded buffer.
+	 *
+	 * @param folder Folder to iterate over.
+	 * @param filter Filter that determines which files are returned.
+	 */
+	public FileIterator(File folder, FileFilter filter)
+	{
+		this(folder, filter, 0);
+	}
 
-	private volatile boolean finished = false;
+	/**
+	 * Constructs a new iterator with a buffer of the given capacity.
+	 *
+	 * @param folder Folder to iterate over.
+	 * @param filter Filter that determines which files are returned.
+	 * @param capacity Maximum number of files that are buffered, or
+	 *            <code>0</code> for an unbounded buffer.
+	 */
+	public FileIterator(File folder, FileFilter filter, int capacity)
+	{
+		if (capacity < 0)
+		{
+			throw new IllegalArgumentException("capacity: " + capacity);
+		}
+		this.filter = filter;
+		walker = new DirectoryWalker(folder.toPath());
+		walker.setFollowLinks(true);
+		if (filter instanceof PruningFileFilter)
+		{
+			final PruningFileFilter pruning = (PruningFileFilter) filter;
+			walker.setDirectoryFilter(new BiPredicate<Path, BasicFileAttributes>()
+			{
+				@Override
+				public boolean test(Path path, BasicFileAttributes attributes)
+				{
+					return !pruning.isPruned(path.toFile());
+				}
+			});
+		}
+		buffer = (capacity == 0) ? new LinkedBlockingQueue<File>()
+		        : new ArrayBlockingQueue<File>(capacity);
+	}
 
-	private Semaphore semaphore = new Semaphore(0);
+	/**
+	 * Returns a stream of the files below the given folder that are accepted
+	 * by the given filter. The returned stream is sequential, but it can be
+	 * made parallel, in which case the tree is split across threads by
+	 * subtree.
+	 *
+	 * @param folder Folder to iterate over.
+	 * @param filter Filter that determines which files are included.
+	 *
+	 * @return Stream of matching files.
+	 */
+	public static Stream<File> stream(File folder, FileFilter filter)
+	{
+		return StreamSupport.stream(spliterator(folder, filter), false);
+	}
 
-	public FileIterator(File folder, FileFilter filter)
+	/**
+	 * Returns a spliterator over the files below the given folder that are
+	 * accepted by the given filter. When split, the folders that remain to be
+	 * listed are divided between both halves. Only the current folder and the
+	 * folders that remain to be listed are held in memory.
+	 *
+	 * @param folder Folder to iterate over.
+	 * @param filter Filter that determines which files are included.
+	 *
+	 * @return Spliterator over matching files.
+	 */
+	public static Spliterator<File> spliterator(File folder, FileFilter filter)
 	{
-		this.filter = filter;
-		folders.add(folder);
+		if (folder == null)
+		{
+			throw new NullPointerException("folder");
+		}
+		if (filter == null)
+		{
+			throw new NullPointerException("filter");
+		}
+		FileSpliterator result = new FileSpliterator(filter);
+		Path path = folder.toPath();
+		result.folders.add(new Folder(path, fileKey(path), null));
+		return result;
+	}
+
+	/**
+	 * Returns a stream of the files returned by this iterator. Closing the
+	 * stream closes the iterator, which should be done if the stream isn't
+	 * consumed entirely.
+	 *
+	 * @return Stream of matching files.
+	 */
+	public Stream<File> stream()
+	{
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+		        Spliterator.DISTINCT | Spliterator.NONNULL), false).onClose(
+		        new Runnable()
+		        {
+			        @Override
+			        public void run()
+			        {
+				        close();
+			        }
+		        });
 	}
 
 	@Override
 	public void run()
 	{
-		while (!folders.isEmpty())
+		try
+		{
+			walker.walk(new BiConsumer<Path, BasicFileAttributes>()
+			{
+				@Override
+				public void accept(Path path, BasicFileAttributes attributes)
+				{
+					FileIterator.this.accept(path.toFile());
+				}
+			});
+			buffer.put(END_OF_ITERATION);
+		}
+		catch (InterruptedException e)
+		{
+			// closed
+			buffer.offer(END_OF_ITERATION);
+		}
+		catch (CancellationException e)
+		{
+			// closed
+			buffer.offer(END_OF_ITERATION);
+		}
+		catch (RuntimeException e)
 		{
-			File folder = folders.removeFirst();
-			folder.listFiles(this);
+			failure = e;
+			end();
+		}
+		catch (Error e)
+		{
+			failure = e;
+			end();
 		}
-		finished = true;
-		semaphore.release();
 	}
 
-	private void dispose()
+	/**
+	 * Ends the iteration after a failure, waiting for room in the buffer
+	 * unless the iterator is closed.
+	 */
+	private void end()
 	{
-		executor.shutdown();
+		try
+		{
+			buffer.put(END_OF_ITERATION);
+		}
+		catch (InterruptedException e)
+		{
+			buffer.offer(END_OF_ITERATION);
+		}
 	}
 
+	/**
+	 * Stops the walk, if it's still in progress. Afterwards, the iterator
+	 * returns no more files.
+	 */
 	@Override
-	public boolean accept(File file)
+	public void close()
 	{
-		if (file.isDirectory())
-		{
-			folders.add(file);
-		}
+		closed = true;
+		executor.shutdownNow();
+	}
 
+	@Override
+	public boolean accept(File file)
+	{
 		if (filter.accept(file))
 		{
-			buffer.add(file);
-			semaphore.release();
+			try
+			{
+				buffer.put(file);
+			}
+			catch (InterruptedException e)
+			{
+				throw new CancellationException();
+			}
 		}
 
 		return false;
@@ -107,51 +286,289 @@ public class FileIterator implements Iterator<File>, FileFilter, Runnable
 	{
 		if (!submitted)
 		{
-			executor.submit(this);
+			try
+			{
+				executor.submit(this);
+				executor.shutdown();
+			}
+			catch (RejectedExecutionException e)
+			{
+				// closed concurrently
+				buffer.offer(END_OF_ITERATION);
+			}
 			submitted = true;
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws RuntimeException if the filter threw an exception, which ended
+	 *             the walk; errors are rethrown as is.
+	 */
 	@Override
 	public boolean hasNext()
 	{
+		if (closed)
+		{
+			return false;
+		}
 		ensureSubmitted();
 
-		try
+		if (next == null)
 		{
-			semaphore.acquire();
+			try
+			{
+				next = buffer.take();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
 		}
-		catch (InterruptedException e)
+		if (next == END_OF_ITERATION)
 		{
+			Throwable e = failure;
+			if (e instanceof Error)
+			{
+				throw (Error) e;
+			}
+			else if (e != null)
+			{
+				throw (RuntimeException) e;
+			}
 			return false;
 		}
-		semaphore.release();
-		return !buffer.isEmpty();
+		return !closed;
 	}
 
 	@Override
 	public File next()
 	{
-		ensureSubmitted();
+		if (!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		File result = next;
+		next = null;
+		return result;
+	}
 
-		if (!finished)
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns the key that uniquely identifies the given file, if available.
+	 */
+	private static Object fileKey(Path path)
+	{
+		try
 		{
-			try
+			return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * A folder to be listed, along with the folders containing it, which are
+	 * used to detect symbolic link loops.
+	 */
+	private static class Folder
+	{
+		private final Path path;
+
+		private final Object key;
+
+		private final Folder parent;
+
+		Folder(Path path, Object key, Folder parent)
+		{
+			this.path = path;
+			this.key = key;
+			this.parent = parent;
+		}
+
+		/**
+		 * Returns whether the given folder is this folder or one of the
+		 * folders containing it.
+		 */
+		boolean isWithin(Path folder, Object folderKey)
+		{
+			for (Folder ancestor = this; ancestor != null; ancestor = ancestor.parent)
 			{
-				semaphore.acquire();
+				if (folderKey != null && ancestor.key != null)
+				{
+					if (folderKey.equals(ancestor.key))
+					{
+						return true;
+					}
+				}
+				else
+				{
+					try
+					{
+						if (Files.isSameFile(folder, ancestor.path))
+						{
+							return true;
+						}
+					}
+					catch (IOException e)
+					{
+						// can't be the same folder
+					}
+				}
 			}
-			catch (InterruptedException e)
+			return false;
+		}
+	}
+
+	/**
+	 * Lists folders on demand, splitting off half of the folders that remain
+	 * to be listed.
+	 */
+	private static class FileSpliterator implements Spliterator<File>
+	{
+		private final FileFilter filter;
+
+		/**
+		 * Folders that remain to be listed, shallowest first.
+		 */
+		private final Deque<Folder> folders = new ArrayDeque<Folder>();
+
+		/**
+		 * Matching files in the folder that was listed last.
+		 */
+		private final Deque<File> files = new ArrayDeque<File>();
+
+		FileSpliterator(FileFilter filter)
+		{
+			this.filter = filter;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super File> action)
+		{
+			while (files.isEmpty())
 			{
-				throw new NoSuchElementException();
+				if (folders.isEmpty())
+				{
+					return false;
+				}
+				list(folders.removeLast());
 			}
+			action.accept(files.removeFirst());
+			return true;
 		}
 
-		return buffer.remove();
-	}
+		@Override
+		public void forEachRemaining(Consumer<? super File> action)
+		{
+			while (true)
+			{
+				while (!files.isEmpty())
+				{
+					action.accept(files.removeFirst());
+				}
+				if (folders.isEmpty())
+				{
+					break;
+				}
+				list(folders.removeLast());
+			}
+		}
 
-	@Override
-	public void remove()
-	{
-		throw new UnsupportedOperationException();
+		@Override
+		public Spliterator<File> trySplit()
+		{
+			if (folders.size() == 1 && files.isEmpty())
+			{
+				list(folders.removeLast());
+			}
+
+			int count = folders.size() / 2;
+			if (count == 0)
+			{
+				return null;
+			}
+
+			/*
+			 * The shallowest folders are most likely to contain large
+			 * subtrees.
+			 */
+			FileSpliterator result = new FileSpliterator(filter);
+			for (int i = 0; i < count; i++)
+			{
+				result.folders.add(folders.removeFirst());
+			}
+			return result;
+		}
+
+		/**
+		 * Lists the given folder, adding its subfolders to the folders to be
+		 * listed and its matching files to the files to be returned.
+		 */
+		private void list(Folder folder)
+		{
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder.path))
+			{
+				for (Path entry : entries)
+				{
+					File file = entry.toFile();
+					if (filter.accept(file))
+					{
+						files.add(file);
+					}
+
+					BasicFileAttributes attributes;
+					try
+					{
+						attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+					}
+					catch (IOException e)
+					{
+						// broken link or removed in the meantime
+						continue;
+					}
+					if (attributes.isDirectory() && !isPruned(file)
+					        && !folder.isWithin(entry, attributes.fileKey()))
+					{
+						folders.add(new Folder(entry, attributes.fileKey(), folder));
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				// skip folders that can't be listed, as File.listFiles does
+			}
+			catch (DirectoryIteratorException e)
+			{
+				// idem
+			}
+		}
+
+		private boolean isPruned(File folder)
+		{
+			return (filter instanceof PruningFileFilter)
+			        && ((PruningFileFilter) filter).isPruned(folder);
+		}
+
+		@Override
+		public long estimateSize()
+		{
+			return folders.isEmpty() ? files.size() : Long.MAX_VALUE;
+		}
+
+		@Override
+		public int characteristics()
+		{
+			return DISTINCT | NONNULL;
+		}
 	}
 }
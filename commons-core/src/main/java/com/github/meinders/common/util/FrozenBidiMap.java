@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+
+/**
+ * A read-only {@link BidiMap} with a compact memory layout. Keys and values are
+ * stored in two flat arrays, indexed by two open addressing hash tables of
+ * <code>int</code>s. No objects are allocated per mapping, which makes this
+ * class suitable for very large dictionaries that are built once and then
+ * only queried.
+ *
+ * <p>
+ * Instances are typically obtained from {@link HashBidiMap#freeze()}. All
+ * mutating operations throw {@link UnsupportedOperationException}.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ *
+ * @author Gerrit Meinders
+ */
+public class FrozenBidiMap<K, V> extends AbstractMap<K, V> implements BidiMap<K, V> {
+	private final Object[] keys;
+
+	private final Object[] values;
+
+	/**
+	 * Hash table indexed by key hash, containing indices into {@link #keys}
+	 * plus one; zero marks an empty slot. Length is a power of two.
+	 */
+	private final int[] keyTable;
+
+	/**
+	 * Hash table indexed by value hash, as {@link #keyTable}.
+	 */
+	private final int[] valueTable;
+
+	private transient Set<Map.Entry<K, V>> entrySet;
+
+	private transient Set<K> keySet;
+
+	private transient Set<V> valueSet;
+
+	/**
+	 * Constructs a new map with the same mappings as the given map.
+	 *
+	 * @param m Map whose mappings are to be placed in this map.
+	 *
+	 * @throws IllegalArgumentException if the given map contains duplicate
+	 *             values.
+	 */
+	public FrozenBidiMap(Map<? extends K, ? extends V> m) {
+		int size = m.size();
+		keys = new Object[size];
+		values = new Object[size];
+
+		int capacity = 1;
+		while (capacity <= size + (size >> 1)) {
+			capacity <<= 1;
+		}
+		keyTable = new int[capacity];
+		valueTable = new int[capacity];
+
+		int index = 0;
+		for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+			K key = entry.getKey();
+			V value = entry.getValue();
+			if (indexOfValue(value) != -1) {
+				throw new IllegalArgumentException("duplicate value: " + value);
+			}
+			keys[index] = key;
+			values[index] = value;
+			keyTable[emptySlot(keyTable, key)] = index + 1;
+			valueTable[emptySlot(valueTable, value)] = index + 1;
+			index++;
+		}
+	}
+
+	private static int emptySlot(int[] table, Object o) {
+		int mask = table.length - 1;
+		int i = HashBidiMap.hash(o) & mask;
+		while (table[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private int indexOfKey(Object key) {
+		return indexOf(keyTable, keys, key);
+	}
+
+	private int indexOfValue(Object value) {
+		return indexOf(valueTable, values, value);
+	}
+
+	private static int indexOf(int[] table, Object[] elements, Object o) {
+		int mask = table.length - 1;
+		int i = HashBidiMap.hash(o) & mask;
+		int index;
+		while ((index = table[i]) != 0) {
+			if (HashBidiMap.eq(o, elements[index - 1])) {
+				return index - 1;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return keys.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return keys.length == 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int index = indexOfKey(key);
+		return index == -1 ? null : (V) values[index];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public K getKey(V value) {
+		int index = indexOfValue(value);
+		return index == -1 ? null : (K) keys[index];
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOfKey(key) != -1;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return indexOfValue(value) != -1;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public V remove(Object key) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public K removeValue(Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new View<Map.Entry<K, V>>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			protected Map.Entry<K, V> get(int index) {
+				return new AbstractMap.SimpleImmutableEntry<K, V>(
+				        (K) keys[index], (V) values[index]);
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry)) {
+					return false;
+				}
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				int index = indexOfKey(e.getKey());
+				return index != -1 && HashBidiMap.eq(values[index], e.getValue());
+			}
+		});
+	}
+
+	@Override
+	public Set<K> keySet() {
+		Set<K> ks = keySet;
+		return ks != null ? ks : (keySet = new View<K>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			protected K get(int index) {
+				return (K) keys[index];
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+		});
+	}
+
+	/**
+	 * Returns a set view of the values contained in this map. Since values are
+	 * unique, the returned collection is a set.
+	 */
+	@Override
+	public Set<V> values() {
+		Set<V> vs = valueSet;
+		return vs != null ? vs : (valueSet = new View<V>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			protected V get(int index) {
+				return (V) values[index];
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsValue(o);
+			}
+		});
+	}
+
+	/**
+	 * Read-only view of the mappings in the map.
+	 */
+	private abstract class View<T> extends AbstractSet<T> {
+		protected abstract T get(int index);
+
+		@Override
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				private int index = 0;
+
+				@Override
+				public boolean hasNext() {
+					return index < keys.length;
+				}
+
+				@Override
+				public T next() {
+					if (index >= keys.length) {
+						throw new NoSuchElementException();
+					}
+					return get(index++);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return keys.length;
+		}
+	}
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+
+/**
+ * A set of include and exclude globs that is matched against paths in a
+ * single pass. A path matches if it matches any of the includes (or if there
+ * are no includes) and none of the excludes. In a glob, <code>?</code> matches
+ * any character, <code>*</code> matches any sequence of characters other than
+ * the separator and <code>**</code> matches any sequence of characters. All
+ * other characters match themselves.
+ *
+ * <p>
+ * All globs are combined into a single nondeterministic automaton, which is
+ * converted to a deterministic automaton as paths are matched. Each state of
+ * the deterministic automaton is created only once, so matching a path takes a
+ * single table lookup per character, regardless of the number of globs.
+ * Because the automaton is matched from left to right, it also determines
+ * whether any path inside a directory could match at all; see
+ * {@link #isPruned(CharSequence)}.
+ *
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Gerrit Meinders
+ */
+public class GlobSet {
+	/** Token matching any sequence of characters other than the separator. */
+	private static final int STAR = -1;
+
+	/** Token matching any sequence of characters. */
+	private static final int DOUBLE_STAR = -2;
+
+	/** Token matching any single character. */
+	private static final int ANY = -3;
+
+	private final char separator;
+
+	/**
+	 * Tokens of all globs: wildcards or literal characters.
+	 */
+	private final List<int[]> globs = new ArrayList<int[]>();
+
+	/**
+	 * Indices of the globs that are excludes.
+	 */
+	private final BitSet excludes = new BitSet();
+
+	private boolean hasIncludes = false;
+
+	/**
+	 * States of the deterministic automaton, by their set of positions.
+	 */
+	private final Map<Positions, State> states = new HashMap<Positions, State>();
+
+	private volatile State initial;
+
+	/**
+	 * Constructs a new, empty glob set.
+	 *
+	 * @param separator Separator between path segments.
+	 */
+	public GlobSet(char separator) {
+		this.separator = separator;
+	}
+
+	/**
+	 * Adds a glob that paths may match to be accepted.
+	 *
+	 * @param glob Glob to be added.
+	 */
+	public synchronized void addInclude(String glob) {
+		add(glob);
+		hasIncludes = true;
+	}
+
+	/**
+	 * Adds a glob that paths may not match to be accepted.
+	 *
+	 * @param glob Glob to be added.
+	 */
+	public synchronized void addExclude(String glob) {
+		excludes.set(globs.size());
+		add(glob);
+	}
+
+	private void add(String glob) {
+		if (glob == null) {
+			throw new NullPointerException("glob");
+		}
+		int[] tokens = new int[glob.length()];
+		int length = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '?') {
+				tokens[length++] = ANY;
+			} else if (c == '*') {
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					tokens[length++] = DOUBLE_STAR;
+					i++;
+				} else {
+					tokens[length++] = STAR;
+				}
+			} else {
+				tokens[length++] = c;
+			}
+		}
+		globs.add(Arrays.copyOf(tokens, length));
+
+		states.clear();
+		initial = null;
+	}
+
+	/**
+	 * Returns whether the given path is accepted.
+	 *
+	 * @param path Path to be matched.
+	 *
+	 * @return <code>true</code> if the path matches any include, or if there
+	 *         are no includes, and no exclude.
+	 */
+	public boolean matches(CharSequence path) {
+		State state = initial();
+		for (int i = 0; i < path.length(); i++) {
+			if (state.exhausted || state.excludesAll
+			        || (hasIncludes && !state.includeLive)) {
+				break;
+			}
+			state = state.next(path.charAt(i));
+		}
+		return state.included && !state.excluded && !state.excludesAll;
+	}
+
+	/**
+	 * Returns whether no path inside the given directory can be accepted,
+	 * such that the directory doesn't need to be listed at all. This is the
+	 * case if every path inside the directory matches an exclude, or if there
+	 * are includes and none of them can match a path inside the directory.
+	 *
+	 * @param directory Path of the directory, or an empty string for the
+	 *            directory that paths are relative to.
+	 *
+	 * @return <code>true</code> if no path inside the directory can match.
+	 */
+	public boolean isPruned(CharSequence directory) {
+		State state = initial();
+		for (int i = 0; i < directory.length(); i++) {
+			state = state.next(directory.charAt(i));
+		}
+		if (directory.length() > 0) {
+			state = state.next(separator);
+		}
+		return state.excludesAll || (hasIncludes && !state.includeLive);
+	}
+
+	/**
+	 * Returns the number of states of the deterministic automaton that were
+	 * created so far.
+	 *
+	 * @return Number of states.
+	 */
+	public synchronized int getStateCount() {
+		return states.size();
+	}
+
+	private State initial() {
+		State result = initial;
+		if (result == null) {
+			synchronized (this) {
+				result = initial;
+				if (result == null) {
+					Positions positions = new Positions();
+					for (int glob = 0; glob < globs.size(); glob++) {
+						positions.addClosure(glob, 0);
+					}
+					result = state(positions);
+					initial = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the state for the given set of positions, creating it if
+	 * needed. Must be called while holding the lock.
+	 */
+	private State state(Positions positions) {
+		positions.normalize();
+		State result = states.get(positions);
+		if (result == null) {
+			result = new State(positions);
+			states.put(positions, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the transition from the given state on the given character.
+	 */
+	private synchronized State transition(State state, char c) {
+		State result = state.cached(c);
+		if (result != null) {
+			return result;
+		}
+
+		Positions next = new Positions();
+		long[] positions = state.positions.values;
+		for (int k = 0; k < state.positions.size; k++) {
+			int glob = (int) (positions[k] >>> 32);
+			int index = (int) positions[k];
+			int[] tokens = globs.get(glob);
+			if (index == tokens.length) {
+				continue;
+			}
+			int token = tokens[index];
+			if (token == DOUBLE_STAR || (token == STAR && c != separator)) {
+				next.addClosure(glob, index);
+			} else if (token == ANY || token == c) {
+				next.addClosure(glob, index + 1);
+			}
+		}
+
+		result = state(next);
+		state.cache(c, result);
+		return result;
+	}
+
+	/**
+	 * A set of positions in the globs, encoded as the glob index in the upper
+	 * half and the token index in the lower half of a long.
+	 */
+	private final class Positions {
+		private long[] values = new long[16];
+
+		private int size = 0;
+
+		private int hashCode;
+
+		/**
+		 * Adds the given position and, for wildcards that match empty
+		 * sequences, the positions that follow them.
+		 */
+		void addClosure(int glob, int index) {
+			int[] tokens = globs.get(glob);
+			while (true) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = ((long) glob << 32) | index;
+				if (index < tokens.length
+				        && (tokens[index] == STAR || tokens[index] == DOUBLE_STAR)) {
+					index++;
+				} else {
+					break;
+				}
+			}
+		}
+
+		void normalize() {
+			Arrays.sort(values, 0, size);
+			int length = 0;
+			for (int i = 0; i < size; i++) {
+				if (length == 0 || values[length - 1] != values[i]) {
+					values[length++] = values[i];
+				}
+			}
+			size = length;
+			values = Arrays.copyOf(values, size);
+			hashCode = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Positions
+			        && Arrays.equals(values, ((Positions) obj).values);
+		}
+	}
+
+	/**
+	 * A state of the deterministic automaton.
+	 */
+	private final class State {
+		private final Positions positions;
+
+		/** Whether the path so far matches an include. */
+		private final boolean included;
+
+		/** Whether the path so far matches an exclude. */
+		private final boolean excluded;
+
+		/** Whether any continuation of the path matches an exclude. */
+		private final boolean excludesAll;
+
+		/** Whether no continuation of the path matches any glob. */
+		private final boolean exhausted;
+
+		/**
+		 * Whether any continuation of the path may still match an include.
+		 * Excludes starting with <code>**</code> never run out of positions,
+		 * so this is tracked separately from {@link #exhausted}.
+		 */
+		private final boolean includeLive;
+
+		/**
+		 * Transitions on ASCII characters. Written while holding the lock,
+		 * but read without it; a missing transition is simply computed again.
+		 */
+		private final State[] ascii = new State[128];
+
+		/**
+		 * Transitions on other characters, guarded by the lock.
+		 */
+		private Map<Character, State> other = null;
+
+		State(Positions positions) {
+			this.positions = positions;
+
+			boolean included = !hasIncludes;
+			boolean excluded = false;
+			boolean excludesAll = false;
+			boolean includeLive = false;
+			for (int k = 0; k < positions.size; k++) {
+				int glob = (int) (positions.values[k] >>> 32);
+				int index = (int) positions.values[k];
+				int[] tokens = globs.get(glob);
+				boolean exclude = excludes.get(glob);
+				includeLive |= !exclude;
+				if (index == tokens.length) {
+					if (exclude) {
+						excluded = true;
+					} else {
+						included = true;
+					}
+				} else if (exclude && tokens[index] == DOUBLE_STAR) {
+					boolean rest = true;
+					for (int i = index; i < tokens.length && rest; i++) {
+						rest = (tokens[i] == DOUBLE_STAR || tokens[i] == STAR);
+					}
+					excludesAll |= rest;
+				}
+			}
+			this.included = included;
+			this.excluded = excluded;
+			this.excludesAll = excludesAll;
+			this.includeLive = includeLive;
+			exhausted = (positions.size == 0);
+		}
+
+		State next(char c) {
+			if (c < 128) {
+				State result = ascii[c];
+				if (result != null) {
+					return result;
+				}
+			}
+			return transition(this, c);
+		}
+
+		State cached(char c) {
+			if (c < 128) {
+				return ascii[c];
+			} else {
+				return (other == null) ? null : other.get(c);
+			}
+		}
+
+		void cache(char c, State state) {
+			if (c < 128) {
+				ascii[c] = state;
+			} else {
+				if (other == null) {
+					other = new HashMap<Character, State>();
+				}
+				other.put(c, state);
+			}
+		}
+	}
+}
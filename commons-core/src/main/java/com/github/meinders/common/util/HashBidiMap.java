@@ -19,89 +19,661 @@ package com.github.meinders.common.util;
 
 import java.util.*;
 
-public class HashBidiMap<K, V> implements BidiMap<K, V> {
-	private Map<K, V> left;
-	private Map<V, K> right;
+/**
+ * Hash table based implementation of {@link BidiMap}. Each mapping is stored
+ * as a single entry, which is linked into both a chain of entries with the
+ * same key hash and a chain of entries with the same value hash. This makes
+ * lookups in either direction as fast as a lookup in a {@link HashMap}, while
+ * using about half the memory of two separate maps.
+ *
+ * <p>
+ * Both <code>null</code> keys and <code>null</code> values are permitted. The
+ * collection views returned by {@link #entrySet()}, {@link #keySet()} and
+ * {@link #values()} are backed by the map, and their iterators are fail-fast.
+ * This implementation is not synchronized.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ *
+ * @author Gerrit Meinders
+ */
+public class HashBidiMap<K, V> extends AbstractMap<K, V> implements BidiMap<K, V> {
+	/**
+	 * The default initial capacity -- MUST be a power of two.
+	 */
+	private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+	/**
+	 * The maximum capacity. MUST be a power of two <= 1<<30.
+	 */
+	private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+	/**
+	 * The load factor used when none specified in constructor.
+	 */
+	private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+	/**
+	 * Hash table indexed by key hash. Length MUST always be a power of two.
+	 */
+	private Entry<K, V>[] keyTable;
+
+	/**
+	 * Hash table indexed by value hash, always of the same length as the key
+	 * table.
+	 */
+	private Entry<K, V>[] valueTable;
+
+	/**
+	 * The number of mappings in the map.
+	 */
+	private int size;
+
+	/**
+	 * The next size value at which to resize (capacity * load factor).
+	 */
+	private int threshold;
+
+	/**
+	 * The load factor for the hash tables.
+	 */
+	private final float loadFactor;
+
+	/**
+	 * The number of times the map has been structurally modified, used to make
+	 * iterators fail-fast.
+	 */
+	private int modCount;
+
+	private transient Set<Map.Entry<K, V>> entrySet;
+
+	private transient Set<K> keySet;
+
+	private transient Set<V> values;
+
+	/**
+	 * Constructs a new, empty map with the given initial capacity and load
+	 * factor.
+	 *
+	 * @param initialCapacity The initial capacity.
+	 * @param loadFactor The load factor.
+	 *
+	 * @throws IllegalArgumentException if the initial capacity is negative, or
+	 *             if the load factor is nonpositive.
+	 */
+	public HashBidiMap(int initialCapacity, float loadFactor) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal initial capacity: "
+			        + initialCapacity);
+		}
+		if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+			throw new IllegalArgumentException("Illegal load factor: "
+			        + loadFactor);
+		}
+
+		int capacity = 1;
+		while (capacity < Math.min(initialCapacity, MAXIMUM_CAPACITY)) {
+			capacity <<= 1;
+		}
+
+		this.loadFactor = loadFactor;
+		createTables(capacity);
+	}
 
+	/**
+	 * Constructs a new, empty map with the given initial capacity and the
+	 * default load factor (0.75).
+	 *
+	 * @param initialCapacity The initial capacity.
+	 */
+	public HashBidiMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	/**
+	 * Constructs a new, empty map with the default initial capacity (16) and
+	 * load factor (0.75).
+	 */
 	public HashBidiMap() {
-		left = new HashMap<K, V>();
-		right = new HashMap<V, K>();
+		this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
 	}
 
-	@Override
-	public void clear() {
-		left.clear();
-		right.clear();
+	/**
+	 * Constructs a new map with the same mappings as the given map. If the
+	 * given map contains duplicate values, only the last mapping for each
+	 * value (in iteration order) is retained.
+	 *
+	 * @param m Map whose mappings are to be placed in this map.
+	 */
+	public HashBidiMap(Map<? extends K, ? extends V> m) {
+		this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1,
+		        DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+		putAll(m);
 	}
 
-	@Override
-	public boolean containsKey(Object key) {
-		return left.containsKey(key);
+	@SuppressWarnings("unchecked")
+	private void createTables(int capacity) {
+		keyTable = new Entry[capacity];
+		valueTable = new Entry[capacity];
+		threshold = (int) (capacity * loadFactor);
+	}
+
+	/**
+	 * Applies a supplemental hash function to the hash code of the given
+	 * object, which defends against poor quality hash functions.
+	 */
+	static int hash(Object o) {
+		if (o == null) {
+			return 0;
+		}
+		int h = o.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Checks for equality of possibly-null references.
+	 */
+	static boolean eq(Object x, Object y) {
+		return x == y || (x != null && x.equals(y));
+	}
+
+	/**
+	 * Returns index for hash code h.
+	 */
+	static int indexFor(int h, int length) {
+		return h & (length - 1);
+	}
+
+	private Entry<K, V> getEntryByKey(Object key) {
+		int h = hash(key);
+		Entry<K, V> e = keyTable[indexFor(h, keyTable.length)];
+		while (e != null && !(e.keyHash == h && eq(key, e.key))) {
+			e = e.nextByKey;
+		}
+		return e;
+	}
+
+	private Entry<K, V> getEntryByValue(Object value) {
+		int h = hash(value);
+		Entry<K, V> e = valueTable[indexFor(h, valueTable.length)];
+		while (e != null && !(e.valueHash == h && eq(value, e.value))) {
+			e = e.nextByValue;
+		}
+		return e;
 	}
 
 	@Override
-	public boolean containsValue(Object value) {
-		return right.containsKey(value);
+	public int size() {
+		return size;
 	}
 
 	@Override
-	public Set<Map.Entry<K, V>> entrySet() {
-		throw new UnsupportedOperationException("not implemented");
+	public boolean isEmpty() {
+		return size == 0;
 	}
 
 	@Override
 	public V get(Object key) {
-		return left.get(key);
+		Entry<K, V> e = getEntryByKey(key);
+		return e == null ? null : e.value;
 	}
 
 	@Override
 	public K getKey(V value) {
-		return right.get(value);
+		Entry<K, V> e = getEntryByValue(value);
+		return e == null ? null : e.key;
 	}
 
 	@Override
-	public boolean isEmpty() {
-		return left.isEmpty();
+	public boolean containsKey(Object key) {
+		return getEntryByKey(key) != null;
 	}
 
 	@Override
-	public Set<K> keySet() {
-		throw new UnsupportedOperationException("not implemented");
+	public boolean containsValue(Object value) {
+		return getEntryByValue(value) != null;
 	}
 
+	/**
+	 * Associates the given value with the given key. Any existing mappings for
+	 * the key and for the value are replaced.
+	 *
+	 * @param key Key with which the value is to be associated.
+	 * @param value Value to be associated with the key.
+	 *
+	 * @return Previous value associated with the key, or <code>null</code> if
+	 *         there was no mapping for the key.
+	 */
 	@Override
 	public V put(K key, V value) {
-		V result = left.put(key, value);
-		right.put(value, key);
-		return result;
-	}
+		Entry<K, V> byKey = getEntryByKey(key);
+		Entry<K, V> byValue = getEntryByValue(value);
 
-	@Override
-	public void putAll(Map<? extends K, ? extends V> m) {
-		left.putAll(m);
-		for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
-			right.put(entry.getValue(), entry.getKey());
+		if (byKey != null && byKey == byValue) {
+			return value;
+		}
+
+		if (byValue != null) {
+			removeEntry(byValue);
+		}
+
+		if (byKey == null) {
+			addEntry(key, value);
+			return null;
+		} else {
+			V oldValue = byKey.value;
+			unlinkValue(byKey);
+			byKey.value = value;
+			byKey.valueHash = hash(value);
+			linkValue(byKey);
+			return oldValue;
 		}
 	}
 
 	@Override
 	public V remove(Object key) {
-		if (left.containsKey(key)) {
-			V result = left.remove(key);
-			right.remove(result);
-			return result;
+		Entry<K, V> e = getEntryByKey(key);
+		if (e == null) {
+			return null;
 		} else {
+			removeEntry(e);
+			return e.value;
+		}
+	}
+
+	@Override
+	public K removeValue(Object value) {
+		Entry<K, V> e = getEntryByValue(value);
+		if (e == null) {
 			return null;
+		} else {
+			removeEntry(e);
+			return e.key;
 		}
 	}
 
 	@Override
-	public int size() {
-		return left.size();
+	public void clear() {
+		modCount++;
+		Arrays.fill(keyTable, null);
+		Arrays.fill(valueTable, null);
+		size = 0;
+	}
+
+	/**
+	 * Returns a compact, read-only copy of this map. The copy stores its
+	 * mappings in flat arrays, rather than one object per mapping, and is
+	 * therefore better suited for large dictionaries that no longer change.
+	 *
+	 * @return Read-only copy of the map.
+	 */
+	public BidiMap<K, V> freeze() {
+		return new FrozenBidiMap<K, V>(this);
+	}
+
+	private void addEntry(K key, V value) {
+		Entry<K, V> e = new Entry<K, V>(key, hash(key), value, hash(value));
+		linkKey(e);
+		linkValue(e);
+		modCount++;
+		if (++size > threshold) {
+			resize();
+		}
+	}
+
+	private void removeEntry(Entry<K, V> e) {
+		unlinkKey(e);
+		unlinkValue(e);
+		modCount++;
+		size--;
+	}
+
+	private void linkKey(Entry<K, V> e) {
+		int i = indexFor(e.keyHash, keyTable.length);
+		e.nextByKey = keyTable[i];
+		keyTable[i] = e;
+	}
+
+	private void linkValue(Entry<K, V> e) {
+		int i = indexFor(e.valueHash, valueTable.length);
+		e.nextByValue = valueTable[i];
+		valueTable[i] = e;
+	}
+
+	private void unlinkKey(Entry<K, V> e) {
+		int i = indexFor(e.keyHash, keyTable.length);
+		Entry<K, V> p = keyTable[i];
+		if (p == e) {
+			keyTable[i] = e.nextByKey;
+		} else {
+			while (p.nextByKey != e) {
+				p = p.nextByKey;
+			}
+			p.nextByKey = e.nextByKey;
+		}
+		e.nextByKey = null;
 	}
 
+	private void unlinkValue(Entry<K, V> e) {
+		int i = indexFor(e.valueHash, valueTable.length);
+		Entry<K, V> p = valueTable[i];
+		if (p == e) {
+			valueTable[i] = e.nextByValue;
+		} else {
+			while (p.nextByValue != e) {
+				p = p.nextByValue;
+			}
+			p.nextByValue = e.nextByValue;
+		}
+		e.nextByValue = null;
+	}
+
+	/**
+	 * Doubles the capacity of both hash tables.
+	 */
+	private void resize() {
+		Entry<K, V>[] oldTable = keyTable;
+		if (oldTable.length == MAXIMUM_CAPACITY) {
+			threshold = Integer.MAX_VALUE;
+			return;
+		}
+
+		createTables(oldTable.length * 2);
+		for (Entry<K, V> e : oldTable) {
+			while (e != null) {
+				Entry<K, V> next = e.nextByKey;
+				linkKey(e);
+				linkValue(e);
+				e = next;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the value of the given entry, keeping the value table
+	 * consistent.
+	 */
+	private V setValue(Entry<K, V> e, V value) {
+		V oldValue = e.value;
+		Entry<K, V> byValue = getEntryByValue(value);
+		if (byValue == null) {
+			unlinkValue(e);
+			e.value = value;
+			e.valueHash = hash(value);
+			linkValue(e);
+		} else if (byValue != e) {
+			throw new IllegalArgumentException("value already present: "
+			        + value);
+		}
+		return oldValue;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	@Override
+	public Set<K> keySet() {
+		Set<K> ks = keySet;
+		return ks != null ? ks : (keySet = new KeySet());
+	}
+
+	/**
+	 * Returns a set view of the values contained in this map. Since values are
+	 * unique, the returned collection is a set.
+	 */
 	@Override
-	public Collection<V> values() {
-		throw new UnsupportedOperationException("not implemented");
+	public Set<V> values() {
+		Set<V> vs = values;
+		return vs != null ? vs : (values = new Values());
+	}
+
+	private static class Entry<K, V> {
+		private final K key;
+
+		private final int keyHash;
+
+		private V value;
+
+		private int valueHash;
+
+		private Entry<K, V> nextByKey;
+
+		private Entry<K, V> nextByValue;
+
+		Entry(K key, int keyHash, V value, int valueHash) {
+			this.key = key;
+			this.keyHash = keyHash;
+			this.value = value;
+			this.valueHash = valueHash;
+		}
+	}
+
+	/**
+	 * Entry as exposed by the entry set, which writes through to the map.
+	 */
+	private class EntryView implements Map.Entry<K, V> {
+		private final Entry<K, V> entry;
+
+		EntryView(Entry<K, V> entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public K getKey() {
+			return entry.key;
+		}
+
+		@Override
+		public V getValue() {
+			return entry.value;
+		}
+
+		/**
+		 * Replaces the value of the entry.
+		 *
+		 * @throws IllegalArgumentException if the value is already mapped to
+		 *             another key.
+		 */
+		@Override
+		public V setValue(V value) {
+			return HashBidiMap.this.setValue(entry, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return eq(entry.key, e.getKey()) && eq(entry.value, e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(entry.key)
+			        ^ Objects.hashCode(entry.value);
+		}
+
+		@Override
+		public String toString() {
+			return entry.key + "=" + entry.value;
+		}
+	}
+
+	private abstract class HashIterator<T> implements Iterator<T> {
+		private int index;
+
+		private Entry<K, V> next;
+
+		private Entry<K, V> lastReturned;
+
+		private int expectedModCount = modCount;
+
+		HashIterator() {
+			index = 0;
+			next = null;
+			advance();
+		}
+
+		private void advance() {
+			Entry<K, V>[] table = keyTable;
+			while (next == null && index < table.length) {
+				next = table[index++];
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		protected Entry<K, V> nextEntry() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+
+			lastReturned = next;
+			next = next.nextByKey;
+			advance();
+			return lastReturned;
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturned == null) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			removeEntry(lastReturned);
+			expectedModCount = modCount;
+			lastReturned = null;
+		}
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new HashIterator<Map.Entry<K, V>>() {
+				@Override
+				public Map.Entry<K, V> next() {
+					return new EntryView(nextEntry());
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Entry<K, V> candidate = getEntryByKey(e.getKey());
+			return candidate != null && eq(candidate.value, e.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (contains(o)) {
+				HashBidiMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			HashBidiMap.this.clear();
+		}
+	}
+
+	private class KeySet extends AbstractSet<K> {
+		@Override
+		public Iterator<K> iterator() {
+			return new HashIterator<K>() {
+				@Override
+				public K next() {
+					return nextEntry().key;
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			Entry<K, V> e = getEntryByKey(o);
+			if (e == null) {
+				return false;
+			} else {
+				removeEntry(e);
+				return true;
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			HashBidiMap.this.clear();
+		}
+	}
+
+	private class Values extends AbstractSet<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new HashIterator<V>() {
+				@Override
+				public V next() {
+					return nextEntry().value;
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsValue(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			Entry<K, V> e = getEntryByValue(o);
+			if (e == null) {
+				return false;
+			} else {
+				removeEntry(e);
+				return true;
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			HashBidiMap.this.clear();
+		}
 	}
 }
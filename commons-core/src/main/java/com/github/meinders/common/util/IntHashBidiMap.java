@@ -0,0 +1,696 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+
+/**
+ * A {@link BidiMap} with primitive <code>int</code> keys, such as a dictionary
+ * between identifiers and names. Like {@link HashBidiMap}, each mapping is
+ * linked into both a key hash chain and a value hash chain, but the mappings
+ * are stored in parallel arrays instead of entry objects, so keys are never
+ * boxed and no objects are allocated per mapping.
+ *
+ * <p>
+ * The primitive methods, such as {@link #get(int)} and
+ * {@link #getKeyOrDefault(Object, int)}, should be preferred over their boxed
+ * {@link Map} counterparts. <code>null</code> values are permitted. The
+ * collection views are backed by the map, and their iterators are fail-fast.
+ * This implementation is not synchronized.
+ *
+ * @param <V> Type of the values.
+ *
+ * @author Gerrit Meinders
+ */
+public class IntHashBidiMap<V> extends AbstractMap<Integer, V> implements BidiMap<Integer, V> {
+	/**
+	 * The default initial capacity -- MUST be a power of two.
+	 */
+	private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+	/**
+	 * Marks unused slots in the value array.
+	 */
+	private static final Object FREE = new Object();
+
+	/**
+	 * End of a chain.
+	 */
+	private static final int NONE = -1;
+
+	private int[] keys;
+
+	private Object[] values;
+
+	private int[] valueHashes;
+
+	private int[] nextByKey;
+
+	private int[] nextByValue;
+
+	/**
+	 * First slot of each key hash chain. Length MUST be a power of two.
+	 */
+	private int[] keyHeads;
+
+	/**
+	 * First slot of each value hash chain, as {@link #keyHeads}.
+	 */
+	private int[] valueHeads;
+
+	/**
+	 * Number of slots that have ever been used.
+	 */
+	private int used;
+
+	/**
+	 * First slot on the list of free slots, linked through {@link #nextByKey}.
+	 */
+	private int free;
+
+	/**
+	 * The number of mappings in the map.
+	 */
+	private int size;
+
+	/**
+	 * The number of times the map has been structurally modified, used to make
+	 * iterators fail-fast.
+	 */
+	private int modCount;
+
+	/**
+	 * Whether the map is read-only.
+	 */
+	private final boolean frozen;
+
+	private transient Set<Map.Entry<Integer, V>> entrySet;
+
+	private transient Set<Integer> keySet;
+
+	private transient Set<V> valueSet;
+
+	/**
+	 * Constructs a new, empty map with the default initial capacity (16).
+	 */
+	public IntHashBidiMap() {
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new, empty map with the given initial capacity.
+	 *
+	 * @param initialCapacity The initial capacity.
+	 *
+	 * @throws IllegalArgumentException if the initial capacity is negative.
+	 */
+	public IntHashBidiMap(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal initial capacity: "
+			        + initialCapacity);
+		}
+		frozen = false;
+		createSlots(Math.max(initialCapacity, 1));
+		createHeads(tableSizeFor(initialCapacity));
+	}
+
+	/**
+	 * Constructs a compact, read-only copy of the given map.
+	 */
+	private IntHashBidiMap(IntHashBidiMap<V> m) {
+		frozen = true;
+		createSlots(m.size);
+		createHeads(tableSizeFor(m.size));
+		for (int i = 0; i < m.used; i++) {
+			if (m.values[i] != FREE) {
+				addSlot(m.keys[i], m.values[i]);
+			}
+		}
+	}
+
+	private static int tableSizeFor(int capacity) {
+		int result = 1;
+		while (result < capacity) {
+			result <<= 1;
+		}
+		return result;
+	}
+
+	private void createSlots(int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		valueHashes = new int[capacity];
+		nextByKey = new int[capacity];
+		nextByValue = new int[capacity];
+		used = 0;
+		free = NONE;
+	}
+
+	private void createHeads(int length) {
+		keyHeads = new int[length];
+		valueHeads = new int[length];
+		Arrays.fill(keyHeads, NONE);
+		Arrays.fill(valueHeads, NONE);
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	private void checkMutable() {
+		if (frozen) {
+			throw new UnsupportedOperationException("map is frozen");
+		}
+	}
+
+	private int slotOfKey(int key) {
+		int slot = keyHeads[hash(key) & (keyHeads.length - 1)];
+		while (slot != NONE && keys[slot] != key) {
+			slot = nextByKey[slot];
+		}
+		return slot;
+	}
+
+	private int slotOfValue(Object value) {
+		int h = HashBidiMap.hash(value);
+		int slot = valueHeads[h & (valueHeads.length - 1)];
+		while (slot != NONE
+		        && !(valueHashes[slot] == h && HashBidiMap.eq(value, values[slot]))) {
+			slot = nextByValue[slot];
+		}
+		return slot;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns whether the map contains a mapping for the given key.
+	 *
+	 * @param key Key to look up.
+	 *
+	 * @return <code>true</code> if the key is present.
+	 */
+	public boolean containsKey(int key) {
+		return slotOfKey(key) != NONE;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return (key instanceof Integer) && containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return slotOfValue(value) != NONE;
+	}
+
+	/**
+	 * Returns the value mapped to the given key.
+	 *
+	 * @param key Key to look up.
+	 *
+	 * @return Value mapped to the key, or <code>null</code> if the key is not
+	 *         present.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int slot = slotOfKey(key);
+		return slot == NONE ? null : (V) values[slot];
+	}
+
+	@Override
+	public V get(Object key) {
+		return (key instanceof Integer) ? get(((Integer) key).intValue()) : null;
+	}
+
+	/**
+	 * Returns the key mapped to the given value, without boxing it.
+	 *
+	 * @param value Value to look up.
+	 * @param defaultKey Key to be returned if the value is not present.
+	 *
+	 * @return Key mapped to the value, or <code>defaultKey</code> if the value
+	 *         is not present.
+	 */
+	public int getKeyOrDefault(Object value, int defaultKey) {
+		int slot = slotOfValue(value);
+		return slot == NONE ? defaultKey : keys[slot];
+	}
+
+	@Override
+	public Integer getKey(V value) {
+		int slot = slotOfValue(value);
+		return slot == NONE ? null : Integer.valueOf(keys[slot]);
+	}
+
+	/**
+	 * Associates the given value with the given key. Any existing mappings for
+	 * the key and for the value are replaced.
+	 *
+	 * @param key Key with which the value is to be associated.
+	 * @param value Value to be associated with the key.
+	 *
+	 * @return Previous value associated with the key, or <code>null</code> if
+	 *         there was no mapping for the key.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		checkMutable();
+
+		int byKey = slotOfKey(key);
+		int byValue = slotOfValue(value);
+
+		if (byKey != NONE && byKey == byValue) {
+			return value;
+		}
+
+		if (byValue != NONE) {
+			removeSlot(byValue);
+		}
+
+		if (byKey == NONE) {
+			if (used == keys.length && free == NONE) {
+				resize();
+			}
+			addSlot(key, value);
+			return null;
+		} else {
+			V oldValue = (V) values[byKey];
+			unlinkValue(byKey);
+			values[byKey] = value;
+			linkValue(byKey);
+			return oldValue;
+		}
+	}
+
+	@Override
+	public V put(Integer key, V value) {
+		return put(key.intValue(), value);
+	}
+
+	/**
+	 * Removes the mapping for the given key, if present.
+	 *
+	 * @param key Key to be removed.
+	 *
+	 * @return Value that was mapped to the key, or <code>null</code> if the key
+	 *         was not present.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		checkMutable();
+		int slot = slotOfKey(key);
+		if (slot == NONE) {
+			return null;
+		} else {
+			V result = (V) values[slot];
+			removeSlot(slot);
+			return result;
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		checkMutable();
+		return (key instanceof Integer) ? remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public Integer removeValue(Object value) {
+		checkMutable();
+		int slot = slotOfValue(value);
+		if (slot == NONE) {
+			return null;
+		} else {
+			int result = keys[slot];
+			removeSlot(slot);
+			return result;
+		}
+	}
+
+	@Override
+	public void clear() {
+		checkMutable();
+		modCount++;
+		Arrays.fill(values, 0, used, null);
+		Arrays.fill(keyHeads, NONE);
+		Arrays.fill(valueHeads, NONE);
+		used = 0;
+		free = NONE;
+		size = 0;
+	}
+
+	/**
+	 * Returns a compact, read-only copy of this map, without any spare
+	 * capacity. All mutating operations on the copy throw
+	 * {@link UnsupportedOperationException}.
+	 *
+	 * @return Read-only copy of the map.
+	 */
+	public IntHashBidiMap<V> freeze() {
+		return new IntHashBidiMap<V>(this);
+	}
+
+	/**
+	 * Returns whether the map is read-only, i.e. was created by
+	 * {@link #freeze()}.
+	 *
+	 * @return <code>true</code> if the map is read-only.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Adds a mapping in a new slot, which must be available.
+	 */
+	private void addSlot(int key, Object value) {
+		int slot;
+		if (free == NONE) {
+			slot = used++;
+		} else {
+			slot = free;
+			free = nextByKey[slot];
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+		linkKey(slot);
+		linkValue(slot);
+		modCount++;
+		size++;
+	}
+
+	private void removeSlot(int slot) {
+		checkMutable();
+		unlinkKey(slot);
+		unlinkValue(slot);
+		values[slot] = FREE;
+		nextByKey[slot] = free;
+		free = slot;
+		modCount++;
+		size--;
+	}
+
+	private void linkKey(int slot) {
+		int i = hash(keys[slot]) & (keyHeads.length - 1);
+		nextByKey[slot] = keyHeads[i];
+		keyHeads[i] = slot;
+	}
+
+	private void linkValue(int slot) {
+		int h = HashBidiMap.hash(values[slot]);
+		int i = h & (valueHeads.length - 1);
+		valueHashes[slot] = h;
+		nextByValue[slot] = valueHeads[i];
+		valueHeads[i] = slot;
+	}
+
+	private void unlinkKey(int slot) {
+		int i = hash(keys[slot]) & (keyHeads.length - 1);
+		int p = keyHeads[i];
+		if (p == slot) {
+			keyHeads[i] = nextByKey[slot];
+		} else {
+			while (nextByKey[p] != slot) {
+				p = nextByKey[p];
+			}
+			nextByKey[p] = nextByKey[slot];
+		}
+	}
+
+	private void unlinkValue(int slot) {
+		int i = valueHashes[slot] & (valueHeads.length - 1);
+		int p = valueHeads[i];
+		if (p == slot) {
+			valueHeads[i] = nextByValue[slot];
+		} else {
+			while (nextByValue[p] != slot) {
+				p = nextByValue[p];
+			}
+			nextByValue[p] = nextByValue[slot];
+		}
+	}
+
+	/**
+	 * Doubles the capacity of the map. Only called when all slots are in use.
+	 */
+	private void resize() {
+		int capacity = keys.length * 2;
+		keys = Arrays.copyOf(keys, capacity);
+		values = Arrays.copyOf(values, capacity);
+		valueHashes = Arrays.copyOf(valueHashes, capacity);
+		nextByKey = Arrays.copyOf(nextByKey, capacity);
+		nextByValue = Arrays.copyOf(nextByValue, capacity);
+
+		createHeads(tableSizeFor(capacity));
+		for (int slot = 0; slot < used; slot++) {
+			linkKey(slot);
+			linkValue(slot);
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, V>> entrySet() {
+		Set<Map.Entry<Integer, V>> es = entrySet;
+		return es != null ? es : (entrySet = new View<Map.Entry<Integer, V>>() {
+			@Override
+			protected Map.Entry<Integer, V> get(int slot) {
+				return new EntryView(slot);
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry)) {
+					return false;
+				}
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				if (!(e.getKey() instanceof Integer)) {
+					return false;
+				}
+				int slot = slotOfKey((Integer) e.getKey());
+				return slot != NONE && HashBidiMap.eq(values[slot], e.getValue());
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if (contains(o)) {
+					IntHashBidiMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+					return true;
+				} else {
+					return false;
+				}
+			}
+		});
+	}
+
+	@Override
+	public Set<Integer> keySet() {
+		Set<Integer> ks = keySet;
+		return ks != null ? ks : (keySet = new View<Integer>() {
+			@Override
+			protected Integer get(int slot) {
+				return keys[slot];
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if (containsKey(o)) {
+					IntHashBidiMap.this.remove(o);
+					return true;
+				} else {
+					return false;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns a set view of the values contained in this map. Since values are
+	 * unique, the returned collection is a set.
+	 */
+	@Override
+	public Set<V> values() {
+		Set<V> vs = valueSet;
+		return vs != null ? vs : (valueSet = new View<V>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			protected V get(int slot) {
+				return (V) values[slot];
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsValue(o);
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if (containsValue(o)) {
+					removeValue(o);
+					return true;
+				} else {
+					return false;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Entry as exposed by the entry set, which writes through to the map.
+	 */
+	private class EntryView implements Map.Entry<Integer, V> {
+		private final int slot;
+
+		EntryView(int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		public Integer getKey() {
+			return keys[slot];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			return (V) values[slot];
+		}
+
+		/**
+		 * Replaces the value of the entry.
+		 *
+		 * @throws IllegalArgumentException if the value is already mapped to
+		 *             another key.
+		 */
+		@Override
+		public V setValue(V value) {
+			checkMutable();
+			int byValue = slotOfValue(value);
+			if (byValue != NONE && byValue != slot) {
+				throw new IllegalArgumentException("value already present: "
+				        + value);
+			}
+			V oldValue = getValue();
+			unlinkValue(slot);
+			values[slot] = value;
+			linkValue(slot);
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return getKey().equals(e.getKey())
+			        && HashBidiMap.eq(values[slot], e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return keys[slot] ^ Objects.hashCode(values[slot]);
+		}
+
+		@Override
+		public String toString() {
+			return keys[slot] + "=" + values[slot];
+		}
+	}
+
+	/**
+	 * View of the mappings in the map, iterating over the used slots.
+	 */
+	private abstract class View<T> extends AbstractSet<T> {
+		protected abstract T get(int slot);
+
+		@Override
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				private int next = advance(0);
+
+				private int lastReturned = NONE;
+
+				private int expectedModCount = modCount;
+
+				private int advance(int slot) {
+					while (slot < used && values[slot] == FREE) {
+						slot++;
+					}
+					return slot;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return next < used;
+				}
+
+				@Override
+				public T next() {
+					if (modCount != expectedModCount) {
+						throw new ConcurrentModificationException();
+					}
+					if (next >= used) {
+						throw new NoSuchElementException();
+					}
+					lastReturned = next;
+					next = advance(next + 1);
+					return get(lastReturned);
+				}
+
+				@Override
+				public void remove() {
+					if (lastReturned == NONE) {
+						throw new IllegalStateException();
+					}
+					if (modCount != expectedModCount) {
+						throw new ConcurrentModificationException();
+					}
+					removeSlot(lastReturned);
+					expectedModCount = modCount;
+					lastReturned = NONE;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			IntHashBidiMap.this.clear();
+		}
+	}
+}
@@ -19,190 +19,421 @@ package com.github.meinders.common.util;
 
 import java.util.*;
 
-//A..Z = forward
-//a..z = backward
-//*    = sentinel
-//---
-//
-//* -> A -> B -> C -> D -> E
-//* <- A <- B <- C <- D <- E
-//
-//* <- A -> B
-//A <- B -> C
-//B <- C -> D
-//C <- D -> E
-//D <- E -> *
-//
-//---flip(B..D):
-//
-//* -> A -> D -> C -> B -> E
-//* <- A <- D <- C <- B <- E
-//
-//* <- A -> D
-//A <- D -> C
-//D <- C -> B
-//C <- B -> E
-//B <- E -> *
-//
-//---flip(first:B .. last:D) preserving C:
-//
-//* <- A -> d // next = last
-//E <- b -> C // previous = last.next
-//b <- C -> d // unchanged
-//C <- d -> A // next = first.previous
-//b <- E -> * // previous = first
-
-// flip before, restore after
-
-public class InvertibleList<E> extends AbstractSequentialList<E> {
-	public static void main(String[] args) {
-		InvertibleList<Integer> list = new InvertibleList<Integer>();
-		ListIterator<Integer> iterator = list.listIterator();
-		iterator.add(1);
-		iterator.add(2);
-		iterator.add(3);
-	}
-
-	private Node<E> first;
-
-	private Node<E> last;
-
+/**
+ * A list that supports reversal of any segment in logarithmic time, intended
+ * for local search algorithms such as 2-opt that repeatedly reverse parts of a
+ * tour.
+ *
+ * <p>
+ * The list is stored as an implicit treap: a randomized balanced binary tree
+ * ordered by position instead of by key. Each node stores the size of its
+ * subtree and a lazy 'reversed' flag, so that a segment can be reversed by
+ * splitting it off, toggling the flag on the root of the segment and merging
+ * it back. The flag is only pushed down to the children when a node is
+ * visited. As a result, {@link #reverse(int, int)}, {@link #get(int)},
+ * {@link #set(int, Object)}, {@link #add(int, Object)} and
+ * {@link #remove(int)} all run in <i>O(log n)</i> expected time.
+ *
+ * <p>
+ * In addition, each element is indexed by a hash table, which allows
+ * {@link #indexOf(Object)}, {@link #lastIndexOf(Object)} and
+ * {@link #contains(Object)} to run in <i>O(log n)</i> expected time as well,
+ * provided that the elements are (mostly) distinct and have a proper hash
+ * code. Elements that are equal to each other are chained together, so lists
+ * with many duplicates degrade to linear time for these methods.
+ *
+ * @param <E> Type of the elements in the list.
+ *
+ * @author Gerrit Meinders
+ */
+public class InvertibleList<E> extends AbstractList<E> {
+	/**
+	 * Root of the treap, or <code>null</code> if the list is empty.
+	 */
+	private Node<E> root;
+
+	/**
+	 * Maps each distinct element to (a chain of) the nodes containing it.
+	 */
+	private final Map<Object, Node<E>> nodesByValue;
+
+	/**
+	 * State of the pseudo-random generator used for node priorities.
+	 */
+	private int seed;
+
+	/**
+	 * Constructs a new, empty list.
+	 */
 	public InvertibleList() {
-		first = new Node<E>();
-		first.next = last;
-
-		last = new Node<E>();
-		last.previous = first;
+		nodesByValue = new HashMap<Object, Node<E>>();
+		seed = 0x2545f491;
 	}
 
-	@Override
-	public ListIterator<E> listIterator(int index) {
-		ListIterator<E> result = new ListIteratorImpl(first);
-		for (int i = 0; i < index; i++) {
-			result.next();
-		}
-		return result;
+	/**
+	 * Constructs a new list containing the elements of the given collection,
+	 * in the order they are returned by its iterator.
+	 *
+	 * @param elements Elements to be added to the list.
+	 */
+	public InvertibleList(Collection<? extends E> elements) {
+		this();
+		addAll(elements);
 	}
 
 	@Override
 	public int size() {
-		// TODO Auto-generated method stub
-		return 0;
+		return size(root);
 	}
 
-	private class ListIteratorImpl implements ListIterator<E> {
-		private Node<E> current;
+	@Override
+	public E get(int index) {
+		checkIndex(index, size());
+		return nodeAt(index).value;
+	}
 
-		private IteratorState state;
+	@Override
+	public E set(int index, E element) {
+		checkIndex(index, size());
+		Node<E> node = nodeAt(index);
+		E result = node.value;
+		unindex(node);
+		node.value = element;
+		index(node);
+		return result;
+	}
 
-		public ListIteratorImpl(Node<E> current) {
-			super();
-			this.current = current;
+	@Override
+	public void add(int index, E element) {
+		checkIndex(index, size() + 1);
+		Node<E> node = new Node<E>(element, nextPriority());
+		index(node);
+
+		Node<E>[] parts = split(root, index);
+		root = merge(merge(parts[0], node), parts[1]);
+		root.parent = null;
+		modCount++;
+	}
 
-			state = new IteratorState(true);
+	@Override
+	public E remove(int index) {
+		checkIndex(index, size());
+		Node<E>[] parts = split(root, index);
+		Node<E>[] rest = split(parts[1], 1);
+		Node<E> node = rest[0];
+		unindex(node);
+
+		root = merge(parts[0], rest[1]);
+		if (root != null) {
+			root.parent = null;
 		}
+		modCount++;
+		return node.value;
+	}
 
-		@Override
-		public void add(E e) {
-			Node<E> node = new Node<E>(e);
-//			boolean forward = state.get(current.forward);
-			node.previous = current;
-			node.next = current.next;
-			current.next = node;
-			node.next.previous = node;
-			current = node;
-		}
+	@Override
+	public void clear() {
+		root = null;
+		nodesByValue.clear();
+		modCount++;
+	}
 
-		@Override
-		public boolean hasNext() {
-			// TODO Auto-generated method stub
+	@Override
+	public boolean addAll(Collection<? extends E> elements) {
+		if (elements.isEmpty()) {
 			return false;
 		}
 
-		@Override
-		public boolean hasPrevious() {
-			// TODO Auto-generated method stub
-			return false;
+		/*
+		 * Build the new elements into a treap of their own and merge it with
+		 * the existing one, which takes linear time for the new elements.
+		 */
+		Node<E> added = null;
+		for (E element : elements) {
+			Node<E> node = new Node<E>(element, nextPriority());
+			index(node);
+			added = merge(added, node);
 		}
+		root = merge(root, added);
+		root.parent = null;
+		modCount++;
+		return true;
+	}
 
-		@Override
-		public E next() {
-			// TODO Auto-generated method stub
-			return null;
+	@Override
+	public boolean contains(Object o) {
+		return nodesByValue.containsKey(o);
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		int result = -1;
+		for (Node<E> node = nodesByValue.get(o); node != null; node = node.nextEqual) {
+			int index = indexOf(node);
+			if ((result == -1) || (index < result)) {
+				result = index;
+			}
 		}
+		return result;
+	}
 
-		@Override
-		public int nextIndex() {
-			// TODO Auto-generated method stub
-			return 0;
+	@Override
+	public int lastIndexOf(Object o) {
+		int result = -1;
+		for (Node<E> node = nodesByValue.get(o); node != null; node = node.nextEqual) {
+			result = Math.max(result, indexOf(node));
 		}
+		return result;
+	}
 
-		@Override
-		public E previous() {
-			// TODO Auto-generated method stub
-			return null;
+	/**
+	 * Reverses the order of the elements between the specified
+	 * <code>fromIndex</code>, inclusive, and <code>toIndex</code>, exclusive.
+	 * Runs in <i>O(log n)</i> expected time, regardless of the length of the
+	 * reversed segment.
+	 *
+	 * @param fromIndex Index of the first element to be reversed.
+	 * @param toIndex Index after the last element to be reversed.
+	 *
+	 * @throws IndexOutOfBoundsException if <code>fromIndex &lt; 0</code>,
+	 *             <code>toIndex &gt; size()</code> or
+	 *             <code>fromIndex &gt; toIndex</code>.
+	 */
+	public void reverse(int fromIndex, int toIndex) {
+		if ((fromIndex < 0) || (toIndex > size()) || (fromIndex > toIndex)) {
+			throw new IndexOutOfBoundsException("fromIndex: " + fromIndex
+			        + ", toIndex: " + toIndex + ", size: " + size());
 		}
 
-		@Override
-		public int previousIndex() {
-			// TODO Auto-generated method stub
-			return 0;
+		if (toIndex - fromIndex > 1) {
+			Node<E>[] parts = split(root, fromIndex);
+			Node<E>[] middle = split(parts[1], toIndex - fromIndex);
+			middle[0].reversed = !middle[0].reversed;
+			root = merge(merge(parts[0], middle[0]), middle[1]);
+			root.parent = null;
+			modCount++;
 		}
+	}
 
-		@Override
-		public void remove() {
-			// TODO Auto-generated method stub
+	/**
+	 * Reverses the order of all elements in the list.
+	 */
+	public void reverse() {
+		if (root != null) {
+			root.reversed = !root.reversed;
+			modCount++;
+		}
+	}
 
+	private static void checkIndex(int index, int size) {
+		if ((index < 0) || (index >= size)) {
+			throw new IndexOutOfBoundsException("index: " + index
+			        + ", size: " + size);
 		}
+	}
 
-		@Override
-		public void set(E e) {
-			// TODO Auto-generated method stub
+	private int nextPriority() {
+		// xorshift; more than random enough for balancing purposes
+		int x = seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		seed = x;
+		return x;
+	}
+
+	/**
+	 * Adds the given node to the chain of nodes with an equal value.
+	 */
+	private void index(Node<E> node) {
+		node.nextEqual = nodesByValue.put(node.value, node);
+	}
 
+	/**
+	 * Removes the given node from the chain of nodes with an equal value.
+	 */
+	private void unindex(Node<E> node) {
+		Node<E> head = nodesByValue.get(node.value);
+		if (head == node) {
+			if (node.nextEqual == null) {
+				nodesByValue.remove(node.value);
+			} else {
+				nodesByValue.put(node.value, node.nextEqual);
+			}
+		} else {
+			Node<E> previous = head;
+			while (previous.nextEqual != node) {
+				previous = previous.nextEqual;
+			}
+			previous.nextEqual = node.nextEqual;
 		}
+		node.nextEqual = null;
 	}
 
-	private static class IteratorState {
-		private boolean forward;
+	private Node<E> nodeAt(int index) {
+		Node<E> node = root;
+		while (true) {
+			node.push();
+			int leftSize = size(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index == leftSize) {
+				return node;
+			} else {
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Returns the current index of the given node.
+	 */
+	private int indexOf(Node<E> node) {
+		/*
+		 * Pending reversals above the node determine whether it's in the left
+		 * or right subtree of its ancestors, so push them down first.
+		 */
+		pushPath(node);
+
+		int result = size(node.left);
+		for (Node<E> child = node, parent = node.parent; parent != null; child = parent, parent = parent.parent) {
+			if (parent.right == child) {
+				result += size(parent.left) + 1;
+			}
+		}
+		return result;
+	}
 
-		public IteratorState(boolean forward) {
-			super();
-			this.forward = forward;
+	private static <E> void pushPath(Node<E> node) {
+		if (node.parent != null) {
+			pushPath(node.parent);
 		}
+		node.push();
+	}
+
+	private static int size(Node<?> node) {
+		return (node == null) ? 0 : node.size;
+	}
 
-		public boolean get(boolean forward) {
-			return this.forward == forward;
+	/**
+	 * Splits the given treap such that the first <code>count</code> elements
+	 * end up in the first treap and the others in the second.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E> Node<E>[] split(Node<E> node, int count) {
+		Node<E>[] result = new Node[2];
+		if (node != null) {
+			node.push();
+			int leftSize = size(node.left);
+			if (count <= leftSize) {
+				Node<E>[] parts = split(node.left, count);
+				node.setLeft(parts[1]);
+				result[0] = parts[0];
+				result[1] = node;
+			} else {
+				Node<E>[] parts = split(node.right, count - leftSize - 1);
+				node.setRight(parts[0]);
+				result[0] = node;
+				result[1] = parts[1];
+			}
+			node.update();
+			if (result[0] != null) {
+				result[0].parent = null;
+			}
+			if (result[1] != null) {
+				result[1].parent = null;
+			}
 		}
+		return result;
+	}
 
-		public boolean update(boolean forward) {
-			return this.forward = get(forward);
+	/**
+	 * Concatenates the given treaps.
+	 */
+	private static <E> Node<E> merge(Node<E> first, Node<E> second) {
+		if (first == null) {
+			return second;
+		} else if (second == null) {
+			return first;
+		} else if (first.priority > second.priority) {
+			first.push();
+			first.setRight(merge(first.right, second));
+			first.update();
+			return first;
+		} else {
+			second.push();
+			second.setLeft(merge(first, second.left));
+			second.update();
+			return second;
 		}
 	}
 
 	private static class Node<E> {
 		private E value;
 
-		private Node<E> previous;
+		private final int priority;
 
-		private Node<E> next;
+		private int size;
 
-		private boolean forward;
+		/**
+		 * Indicates that the subtree rooted at this node must be reversed,
+		 * i.e. that its children need to be swapped and the flag propagated to
+		 * them.
+		 */
+		private boolean reversed;
 
-		public Node() {
-			forward = true;
-		}
+		private Node<E> left;
 
-		public Node(E value) {
-			this();
+		private Node<E> right;
+
+		private Node<E> parent;
+
+		/**
+		 * Next node with an equal value.
+		 */
+		private Node<E> nextEqual;
+
+		public Node(E value, int priority) {
 			this.value = value;
+			this.priority = priority;
+			size = 1;
+		}
+
+		public void setLeft(Node<E> left) {
+			this.left = left;
+			if (left != null) {
+				left.parent = this;
+			}
+		}
+
+		public void setRight(Node<E> right) {
+			this.right = right;
+			if (right != null) {
+				right.parent = this;
+			}
 		}
 
-		public Node<E> next(IteratorState state) {
-			return state.update(forward) ? previous : next;
+		/**
+		 * Applies a pending reversal to the children of this node.
+		 */
+		public void push() {
+			if (reversed) {
+				Node<E> swap = left;
+				left = right;
+				right = swap;
+				if (left != null) {
+					left.reversed = !left.reversed;
+				}
+				if (right != null) {
+					right.reversed = !right.reversed;
+				}
+				reversed = false;
+			}
 		}
 
-		public boolean isSentinel() {
-			return (previous == null) || (next == null);
+		public void update() {
+			size = 1 + InvertibleList.size(left) + InvertibleList.size(right);
 		}
 	}
 }
@@ -18,24 +18,119 @@
 package com.github.meinders.common.util;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Implements a pipe (as available in UNIX environments) in pure Java code, by
  * transferring data between two streams on an encapsulated thread.
  *
+ * <p>
+ * If either end of the pipe is a file, i.e. a {@link FileInputStream},
+ * {@link FileOutputStream} or {@link FileChannel}, data is transferred using
+ * {@link FileChannel#transferTo} or {@link FileChannel#transferFrom}, which
+ * allows the operating system to copy the data without passing it through the
+ * Java heap (e.g. using <code>sendfile</code> on Linux). This only applies to
+ * seekable files: file streams that wrap a pipe, FIFO or terminal, such as
+ * {@link FileDescriptor#out} when redirected, are treated like any other
+ * stream. If both ends are channels of another kind, such as a
+ * {@link SocketChannel}, a reusable direct buffer is used. Otherwise, data is
+ * copied through a heap buffer. Detection of file streams can be disabled
+ * using {@link #setChannelsEnabled(boolean)}.
+ *
+ * <p>
+ * In {@link #setAsynchronous(boolean) asynchronous} mode, data is read on a
+ * separate thread into a bounded ring of pooled buffers, while the calling
+ * thread writes the filled buffers. This allows reading and writing to overlap,
+ * such that a slow source doesn't stall the sink and vice versa. When all
+ * buffers are filled, the reading thread waits for the writer to catch up.
+ * Interrupting the calling thread, e.g. by cancelling the {@link Future} the
+ * pipe was submitted as, stops both threads. The pipe waits briefly for the
+ * reading thread to terminate before returning.
+ *
+ * <p>
+ * The pipe keeps track of the number of bytes transferred and, in
+ * asynchronous mode, of the time spent waiting on either end, which is
+ * available while the pipe is running.
+ *
  * TODO: This class should probably be move to an 'io' package.
  *
  * @author Gerrit Meinders
  */
 public class Pipe implements Runnable, Callable<Object> {
-	private InputStream in;
+	/**
+	 * Default size of the buffer used when data can't be transferred directly
+	 * between channels.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 0x10000;
+
+	/**
+	 * Default number of buffers used in asynchronous mode.
+	 */
+	public static final int DEFAULT_BUFFER_COUNT = 4;
+
+	/**
+	 * Marks the end of the input in asynchronous mode.
+	 */
+	private static final ByteBuffer END_OF_INPUT = ByteBuffer.allocate(0);
+
+	/**
+	 * Time to wait for the reading thread to terminate in asynchronous mode,
+	 * in milliseconds.
+	 */
+	private static final long READER_JOIN_TIMEOUT = 100;
 
-	private OutputStream out;
+	private final InputStream in;
+
+	private final OutputStream out;
+
+	private final ReadableByteChannel inChannel;
+
+	private final WritableByteChannel outChannel;
 
 	private final boolean closeOutputStream;
 
-	private boolean yielding = true;
+	private boolean yielding = false;
+
+	private boolean channelsEnabled = true;
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * Direct buffer, reused when the pipe is called more than once.
+	 */
+	private ByteBuffer directBuffer;
+
+	private boolean asynchronous = false;
+
+	private int bufferCount = DEFAULT_BUFFER_COUNT;
+
+	private ThreadFactory threadFactory = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Pipe reader");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	/**
+	 * Buffers used in asynchronous mode, reused when the pipe is called more
+	 * than once.
+	 */
+	private ByteBuffer[] bufferPool;
+
+	private volatile long startTime;
+
+	private volatile long endTime;
+
+	private volatile long bytesTransferred;
+
+	private volatile long inputStallTime;
+
+	private volatile long outputStallTime;
 
 	/**
 	 * Constructs a new pipe between the given streams. The output stream will
@@ -46,11 +141,7 @@ public class Pipe implements Runnable, Callable<Object> {
 	 * @param out Stream to write data to.
 	 */
 	public Pipe(InputStream in, OutputStream out) {
-		super();
-		this.in = in;
-		this.out = out;
-
-		closeOutputStream = true;
+		this(in, out, true);
 	}
 
 	/**
@@ -68,9 +159,212 @@ public class Pipe implements Runnable, Callable<Object> {
 		super();
 		this.in = in;
 		this.out = out;
+		inChannel = null;
+		outChannel = null;
 		this.closeOutputStream = closeOutputStream;
 	}
 
+	/**
+	 * Constructs a new pipe between the given channels. The output channel
+	 * will be closed when the end of the input channel is reached, or if an
+	 * error occurs while reading from the input channel.
+	 *
+	 * @param in Channel to read data from.
+	 * @param out Channel to write data to.
+	 */
+	public Pipe(ReadableByteChannel in, WritableByteChannel out) {
+		this(in, out, true);
+	}
+
+	/**
+	 * Constructs a new pipe between the given channels. If
+	 * <code>closeOutputChannel</code> is set, the output channel will be
+	 * closed when the end of the input channel is reached, or if an error
+	 * occurs while reading from the input channel.
+	 *
+	 * @param in Channel to read data from.
+	 * @param out Channel to write data to.
+	 * @param closeOutputChannel Whether the output channel will be closed when
+	 *            the pipe terminates.
+	 */
+	public Pipe(ReadableByteChannel in, WritableByteChannel out,
+	        boolean closeOutputChannel) {
+		super();
+		this.in = null;
+		this.out = null;
+		inChannel = in;
+		outChannel = out;
+		closeOutputStream = closeOutputChannel;
+	}
+
+	/**
+	 * Returns whether the pipe yields to other threads after each chunk of
+	 * data copied through its buffer.
+	 *
+	 * @return <code>true</code> if the pipe yields.
+	 */
+	public boolean isYielding() {
+		return yielding;
+	}
+
+	/**
+	 * Sets whether the pipe yields to other threads after each chunk of data
+	 * copied through its buffer. Disabled by default.
+	 *
+	 * @param yielding <code>true</code> to yield.
+	 */
+	public void setYielding(boolean yielding) {
+		this.yielding = yielding;
+	}
+
+	/**
+	 * Returns whether file streams are detected and accessed through their
+	 * channels.
+	 *
+	 * @return <code>true</code> if channels are used.
+	 */
+	public boolean isChannelsEnabled() {
+		return channelsEnabled;
+	}
+
+	/**
+	 * Sets whether file streams are detected and accessed through their
+	 * channels. Enabled by default. Has no effect on pipes that are
+	 * constructed with channels.
+	 *
+	 * @param channelsEnabled <code>true</code> to use channels.
+	 */
+	public void setChannelsEnabled(boolean channelsEnabled) {
+		this.channelsEnabled = channelsEnabled;
+	}
+
+	/**
+	 * Returns the size of the buffer used when data can't be transferred
+	 * directly between channels.
+	 *
+	 * @return Buffer size, in bytes.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Sets the size of the buffer used when data can't be transferred directly
+	 * between channels. Defaults to {@link #DEFAULT_BUFFER_SIZE}.
+	 *
+	 * @param bufferSize Buffer size, in bytes.
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize: " + bufferSize);
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Returns whether data is read and written on separate threads.
+	 *
+	 * @return <code>true</code> if the pipe is asynchronous.
+	 */
+	public boolean isAsynchronous() {
+		return asynchronous;
+	}
+
+	/**
+	 * Sets whether data is read and written on separate threads. Disabled by
+	 * default. Asynchronous mode doesn't use direct transfers between
+	 * channels, which leave nothing to overlap.
+	 *
+	 * @param asynchronous <code>true</code> to read and write concurrently.
+	 */
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
+	/**
+	 * Returns the number of buffers used in asynchronous mode.
+	 *
+	 * @return Number of buffers.
+	 */
+	public int getBufferCount() {
+		return bufferCount;
+	}
+
+	/**
+	 * Sets the number of buffers used in asynchronous mode, each of which has
+	 * the size given by {@link #getBufferSize()}. Defaults to
+	 * {@link #DEFAULT_BUFFER_COUNT}.
+	 *
+	 * @param bufferCount Number of buffers.
+	 */
+	public void setBufferCount(int bufferCount) {
+		if (bufferCount < 2) {
+			throw new IllegalArgumentException("bufferCount: " + bufferCount);
+		}
+		this.bufferCount = bufferCount;
+	}
+
+	/**
+	 * Sets the factory used to create the reading thread in asynchronous
+	 * mode. By default, a daemon thread is created. To use virtual threads,
+	 * specify <code>Thread.ofVirtual().factory()</code>.
+	 *
+	 * @param threadFactory Thread factory to be used.
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		if (threadFactory == null) {
+			throw new NullPointerException("threadFactory");
+		}
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Returns the number of bytes written since the pipe was last called.
+	 *
+	 * @return Number of bytes.
+	 */
+	public long getBytesTransferred() {
+		return bytesTransferred;
+	}
+
+	/**
+	 * Returns the average throughput since the pipe was last called, up to
+	 * now or until it terminated.
+	 *
+	 * @return Number of bytes per second, or <code>0.0</code> if the pipe
+	 *         wasn't called yet.
+	 */
+	public double getBytesPerSecond() {
+		long start = startTime;
+		if (start == 0) {
+			return 0.0;
+		}
+		long end = endTime;
+		long elapsed = ((end == 0) ? System.nanoTime() : end) - start;
+		return (elapsed > 0) ? bytesTransferred * 1e9 / elapsed : 0.0;
+	}
+
+	/**
+	 * Returns the time spent waiting for input, i.e. the time that the writing
+	 * thread had no data to write, in asynchronous mode.
+	 *
+	 * @return Stall time, in nanoseconds.
+	 */
+	public long getInputStallTime() {
+		return inputStallTime;
+	}
+
+	/**
+	 * Returns the time spent waiting for output, i.e. the time that the
+	 * reading thread had no free buffers to read into because all buffers
+	 * were waiting to be written, in asynchronous mode.
+	 *
+	 * @return Stall time, in nanoseconds.
+	 */
+	public long getOutputStallTime() {
+		return outputStallTime;
+	}
+
 	@Override
 	public void run() {
 		try {
@@ -82,22 +376,321 @@ public class Pipe implements Runnable, Callable<Object> {
 
 	@Override
 	public Object call() throws IOException {
-		System.out.println("Pipe running...");
+		bytesTransferred = 0;
+		inputStallTime = 0;
+		outputStallTime = 0;
+		endTime = 0;
+		startTime = System.nanoTime();
+
 		try {
-			int read;
-			byte[] buffer = new byte[0x1000];
-			while ((read = in.read(buffer)) != -1) {
-				out.write(buffer, 0, read);
-				if (yielding) {
-					Thread.yield();
+			ReadableByteChannel source = getSourceChannel();
+			WritableByteChannel target = getTargetChannel();
+
+			if (asynchronous) {
+				transferAsynchronously(source, target);
+
+			} else if (isSeekable(source)) {
+				if (target == null) {
+					target = Channels.newChannel(out);
+				}
+				transferTo((FileChannel) source, target);
+
+			} else if (isSeekable(target)) {
+				if (source == null) {
+					source = Channels.newChannel(in);
 				}
+				transferFrom(source, (FileChannel) target);
+
+			} else if (source != null && target != null) {
+				copy(source, target);
+
+			} else {
+				copy(in, out);
 			}
+
 		} finally {
+			endTime = System.nanoTime();
 			if (closeOutputStream) {
-				System.out.println("Output stream closed.");
-				out.close();
+				if (out == null) {
+					outChannel.close();
+				} else {
+					out.close();
+				}
 			}
 		}
 		return null;
 	}
+
+	private ReadableByteChannel getSourceChannel() {
+		if (inChannel != null) {
+			return inChannel;
+		} else if (channelsEnabled && (in instanceof FileInputStream)) {
+			return ((FileInputStream) in).getChannel();
+		} else {
+			return null;
+		}
+	}
+
+	private WritableByteChannel getTargetChannel() {
+		if (outChannel != null) {
+			return outChannel;
+		} else if (channelsEnabled && (out instanceof FileOutputStream)) {
+			return ((FileOutputStream) out).getChannel();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether the given channel is a file that supports positioned
+	 * transfers. Channels of file streams that wrap a pipe, FIFO or terminal
+	 * fail to report their position with an 'Illegal seek' error.
+	 */
+	private static boolean isSeekable(Channel channel) {
+		if (channel instanceof FileChannel) {
+			try {
+				((FileChannel) channel).position();
+				return true;
+			} catch (IOException e) {
+				// not seekable
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Transfers the remainder of the given file to the target channel.
+	 */
+	private void transferTo(FileChannel source, WritableByteChannel target)
+	        throws IOException {
+		long position = source.position();
+		long size = source.size();
+		while (position < size) {
+			long transferred = source.transferTo(position, size - position,
+			        target);
+			if (transferred <= 0) {
+				break;
+			}
+			position += transferred;
+			bytesTransferred += transferred;
+		}
+		source.position(position);
+
+		// pick up anything that was appended or couldn't be transferred
+		copy(source, target);
+	}
+
+	/**
+	 * Transfers the given source channel to the target file, starting at the
+	 * file's current position.
+	 */
+	private void transferFrom(ReadableByteChannel source, FileChannel target)
+	        throws IOException {
+		long position = target.position();
+		while (true) {
+			long transferred = target.transferFrom(source, position,
+			        Integer.MAX_VALUE);
+			if (transferred <= 0) {
+				break;
+			}
+			position += transferred;
+			bytesTransferred += transferred;
+		}
+		target.position(position);
+
+		/*
+		 * A transfer count of zero doesn't necessarily indicate the end of the
+		 * source channel, so drain it normally.
+		 */
+		copy(source, target);
+	}
+
+	/**
+	 * Copies data between channels through a direct buffer.
+	 */
+	private void copy(ReadableByteChannel source, WritableByteChannel target)
+	        throws IOException {
+		ByteBuffer buffer = directBuffer;
+		if (buffer == null || buffer.capacity() != bufferSize) {
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+			directBuffer = buffer;
+		}
+
+		buffer.clear();
+		while (source.read(buffer) != -1) {
+			buffer.flip();
+			bytesTransferred += write(buffer, target, null);
+			buffer.clear();
+			if (yielding) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Copies data between streams through a heap buffer.
+	 */
+	private void copy(InputStream in, OutputStream out) throws IOException {
+		int read;
+		byte[] buffer = new byte[bufferSize];
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+			bytesTransferred += read;
+			if (yielding) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Reads from the source on a separate thread, while writing to the target
+	 * on the current thread.
+	 */
+	private void transferAsynchronously(final ReadableByteChannel source,
+	        final WritableByteChannel target) throws IOException {
+		final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(
+		        bufferCount);
+		final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<ByteBuffer>(
+		        bufferCount + 1);
+		free.addAll(Arrays.asList(getBufferPool(source != null && target != null)));
+
+		final AtomicReference<Throwable> readError = new AtomicReference<Throwable>();
+
+		Thread reader = threadFactory.newThread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						long waitStart = System.nanoTime();
+						ByteBuffer buffer = free.take();
+						outputStallTime += System.nanoTime() - waitStart;
+
+						buffer.clear();
+						if (read(buffer, source) == -1) {
+							break;
+						}
+						buffer.flip();
+						filled.put(buffer);
+					}
+				} catch (InterruptedException e) {
+					// cancelled by the writing thread
+				} catch (Throwable e) {
+					readError.set(e);
+				} finally {
+					// there's always room for the marker
+					filled.offer(END_OF_INPUT);
+				}
+			}
+		});
+		reader.start();
+
+		try {
+			while (true) {
+				long waitStart = System.nanoTime();
+				ByteBuffer buffer = filled.take();
+				inputStallTime += System.nanoTime() - waitStart;
+
+				if (buffer == END_OF_INPUT) {
+					break;
+				}
+				bytesTransferred += write(buffer, target, out);
+				free.put(buffer);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("pipe cancelled");
+		} finally {
+			reader.interrupt();
+			if (!join(reader)) {
+				/*
+				 * The reader is stuck in a read that can't be interrupted and
+				 * may still fill one of the buffers, so they can't be reused.
+				 */
+				bufferPool = null;
+			}
+		}
+
+		Throwable error = readError.get();
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		} else if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		} else if (error != null) {
+			throw (Error) error;
+		}
+	}
+
+	/**
+	 * Waits for the given thread to terminate, for at most
+	 * {@link #READER_JOIN_TIMEOUT}, preserving the interrupted status of the
+	 * current thread.
+	 *
+	 * @return <code>true</code> if the thread terminated.
+	 */
+	private static boolean join(Thread thread) {
+		boolean interrupted = Thread.interrupted();
+		try {
+			thread.join(READER_JOIN_TIMEOUT);
+		} catch (InterruptedException e) {
+			interrupted = true;
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return !thread.isAlive();
+	}
+
+	private ByteBuffer[] getBufferPool(boolean direct) {
+		ByteBuffer[] result = bufferPool;
+		if (result == null || result.length != bufferCount
+		        || result[0].capacity() != bufferSize
+		        || result[0].isDirect() != direct) {
+			result = new ByteBuffer[bufferCount];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = direct ? ByteBuffer.allocateDirect(bufferSize)
+				        : ByteBuffer.allocate(bufferSize);
+			}
+			bufferPool = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Reads into the given buffer, from the given channel if not
+	 * <code>null</code> or from the input stream otherwise.
+	 */
+	private int read(ByteBuffer buffer, ReadableByteChannel source)
+	        throws IOException {
+		if (source != null) {
+			return source.read(buffer);
+		} else {
+			int read = in.read(buffer.array(), buffer.arrayOffset()
+			        + buffer.position(), buffer.remaining());
+			if (read > 0) {
+				buffer.position(buffer.position() + read);
+			}
+			return read;
+		}
+	}
+
+	/**
+	 * Writes the remaining contents of the given buffer, to the given channel
+	 * if not <code>null</code> or to the given stream otherwise.
+	 *
+	 * @return Number of bytes written.
+	 */
+	private static int write(ByteBuffer buffer, WritableByteChannel target,
+	        OutputStream out) throws IOException {
+		int remaining = buffer.remaining();
+		if (target != null) {
+			while (buffer.hasRemaining()) {
+				target.write(buffer);
+			}
+		} else {
+			out.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+			        remaining);
+			buffer.position(buffer.limit());
+		}
+		return remaining;
+	}
 }
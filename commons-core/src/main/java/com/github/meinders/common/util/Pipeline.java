@@ -0,0 +1,630 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Extends the concept of a {@link Pipe} to multiple sinks: data is read from a
+ * single source and written to any number of sinks, each of which may be
+ * preceded by a sequence of {@link BufferTransform}s, e.g. to compress the
+ * data or calculate a checksum. The source is read only once.
+ *
+ * <p>
+ * The source, every transform and every sink run on a thread of their own,
+ * connected by bounded queues. Buffers are passed through the queues by
+ * reference, so data read from the source is shared by all branches of the
+ * pipeline without being copied; buffers are returned to a pool when every
+ * stage is done with them. A slow stage only holds up the rest of the
+ * pipeline once its input queue is full.
+ *
+ * <p>
+ * The following example writes a compressed copy and an uncompressed copy of
+ * a file, while calculating checksums of the original data:
+ *
+ * <pre>
+ * ChecksumTransform crc = new ChecksumTransform(new CRC32C());
+ * DigestTransform sha = new DigestTransform(&quot;SHA-256&quot;);
+ *
+ * Pipeline pipeline = new Pipeline(new FileInputStream(file));
+ * pipeline.addSink(new FileOutputStream(archive), new DeflaterTransform());
+ * pipeline.addSink(new FileOutputStream(copy), crc, sha);
+ * pipeline.call();
+ * </pre>
+ *
+ * @author Gerrit Meinders
+ */
+public class Pipeline implements Runnable, Callable<Object> {
+	/**
+	 * Default capacity of the queue in front of each stage.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+	/**
+	 * Marks the end of the input.
+	 */
+	private static final Chunk END_OF_INPUT = new Chunk(null, null, 0);
+
+	/**
+	 * Time to wait for the stages to terminate when the pipeline is
+	 * cancelled, before closing the sinks, in milliseconds.
+	 */
+	private static final long STAGE_JOIN_TIMEOUT = 1000;
+
+	private final InputStream in;
+
+	private final ReadableByteChannel inChannel;
+
+	private final List<Branch> branches = new ArrayList<Branch>();
+
+	private int bufferSize = Pipe.DEFAULT_BUFFER_SIZE;
+
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+	private boolean closeOutputStreams = true;
+
+	private ThreadFactory threadFactory = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Pipeline stage");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	private volatile long bytesRead;
+
+	/**
+	 * Constructs a new pipeline that reads from the given stream. If the
+	 * stream is a {@link FileInputStream}, its channel is used instead.
+	 *
+	 * @param in Stream to read data from.
+	 */
+	public Pipeline(InputStream in) {
+		if (in == null) {
+			throw new NullPointerException("in");
+		}
+		if (in instanceof FileInputStream) {
+			this.in = null;
+			inChannel = ((FileInputStream) in).getChannel();
+		} else {
+			this.in = in;
+			inChannel = null;
+		}
+	}
+
+	/**
+	 * Constructs a new pipeline that reads from the given channel.
+	 *
+	 * @param in Channel to read data from.
+	 */
+	public Pipeline(ReadableByteChannel in) {
+		if (in == null) {
+			throw new NullPointerException("in");
+		}
+		this.in = null;
+		inChannel = in;
+	}
+
+	/**
+	 * Adds a sink that writes to the given stream, after applying the given
+	 * transforms in order.
+	 *
+	 * @param out Stream to write data to.
+	 * @param transforms Transforms to be applied before writing.
+	 */
+	public void addSink(OutputStream out, BufferTransform... transforms) {
+		if (out == null) {
+			throw new NullPointerException("out");
+		}
+		if (out instanceof FileOutputStream) {
+			branches.add(new Branch(transforms, out,
+			        ((FileOutputStream) out).getChannel()));
+		} else {
+			branches.add(new Branch(transforms, out, null));
+		}
+	}
+
+	/**
+	 * Adds a sink that writes to the given channel, after applying the given
+	 * transforms in order.
+	 *
+	 * @param out Channel to write data to.
+	 * @param transforms Transforms to be applied before writing.
+	 */
+	public void addSink(WritableByteChannel out, BufferTransform... transforms) {
+		if (out == null) {
+			throw new NullPointerException("out");
+		}
+		branches.add(new Branch(transforms, null, out));
+	}
+
+	/**
+	 * Adds a branch that applies the given transforms and then discards the
+	 * data, e.g. to calculate a checksum without writing the data anywhere.
+	 *
+	 * @param transforms Transforms to be applied.
+	 */
+	public void addBranch(BufferTransform... transforms) {
+		branches.add(new Branch(transforms, null, null));
+	}
+
+	/**
+	 * Sets the size of the buffers that data is read into. Defaults to
+	 * {@link Pipe#DEFAULT_BUFFER_SIZE}.
+	 *
+	 * @param bufferSize Buffer size, in bytes.
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException("bufferSize: " + bufferSize);
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Sets the number of buffers that may be queued in front of each stage.
+	 * Defaults to {@link #DEFAULT_QUEUE_CAPACITY}.
+	 *
+	 * @param queueCapacity Queue capacity.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("queueCapacity: "
+			        + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Sets whether the sinks are closed when the pipeline terminates. Enabled
+	 * by default.
+	 *
+	 * @param closeOutputStreams <code>true</code> to close the sinks.
+	 */
+	public void setCloseOutputStreams(boolean closeOutputStreams) {
+		this.closeOutputStreams = closeOutputStreams;
+	}
+
+	/**
+	 * Sets the factory used to create the threads that run the stages of the
+	 * pipeline. By default, daemon threads are created. To use virtual
+	 * threads, specify <code>Thread.ofVirtual().factory()</code>.
+	 *
+	 * @param threadFactory Thread factory to be used.
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		if (threadFactory == null) {
+			throw new NullPointerException("threadFactory");
+		}
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Returns the number of bytes read from the source since the pipeline was
+	 * last called.
+	 *
+	 * @return Number of bytes.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	@Override
+	public void run() {
+		try {
+			call();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Runs the pipeline until all data has been written to every sink. If any
+	 * stage fails, the entire pipeline is aborted. Interrupting the calling
+	 * thread, e.g. by cancelling the {@link Future} the pipeline was submitted
+	 * as, aborts the pipeline as well, after which the stages are given a
+	 * moment to terminate before the sinks are closed.
+	 *
+	 * @return <code>null</code>
+	 *
+	 * @throws IOException if any stage of the pipeline failed.
+	 */
+	@Override
+	public Object call() throws IOException {
+		if (branches.isEmpty()) {
+			throw new IllegalStateException("no sinks");
+		}
+
+		bytesRead = 0;
+		Execution execution = new Execution();
+		try {
+			execution.start();
+			execution.join();
+		} catch (InterruptedException e) {
+			execution.abort(new InterruptedIOException("pipeline cancelled"));
+			// stages may still be writing to the sinks
+			execution.join(STAGE_JOIN_TIMEOUT);
+			Thread.currentThread().interrupt();
+		} finally {
+			if (closeOutputStreams) {
+				execution.close();
+			}
+		}
+
+		Throwable failure = execution.failure.get();
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure != null) {
+			throw (Error) failure;
+		}
+		return null;
+	}
+
+	/**
+	 * A buffer shared by one or more stages, which is returned to its pool
+	 * when the last stage releases it.
+	 */
+	private static class Chunk {
+		private final ByteBuffer buffer;
+
+		private final Queue<ByteBuffer> pool;
+
+		private final AtomicInteger references;
+
+		Chunk(ByteBuffer buffer, Queue<ByteBuffer> pool, int references) {
+			this.buffer = buffer;
+			this.pool = pool;
+			this.references = new AtomicInteger(references);
+		}
+
+		/**
+		 * Returns a view of the data in the chunk, with a position of its own.
+		 */
+		ByteBuffer data() {
+			return buffer.duplicate();
+		}
+
+		void release() {
+			if (references.decrementAndGet() == 0) {
+				pool.offer(buffer);
+			}
+		}
+	}
+
+	/**
+	 * A sequence of transforms followed by a sink.
+	 */
+	private static class Branch {
+		private final BufferTransform[] transforms;
+
+		private final OutputStream out;
+
+		private final WritableByteChannel outChannel;
+
+		Branch(BufferTransform[] transforms, OutputStream out,
+		        WritableByteChannel outChannel) {
+			this.transforms = transforms.clone();
+			this.out = out;
+			this.outChannel = outChannel;
+		}
+	}
+
+	/**
+	 * The state of a single run of the pipeline.
+	 */
+	private class Execution {
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		private final List<Thread> threads = new ArrayList<Thread>();
+
+		private final List<BlockingQueue<Chunk>> branchQueues = new ArrayList<BlockingQueue<Chunk>>();
+
+		void start() {
+			Queue<ByteBuffer> sourcePool = new ConcurrentLinkedQueue<ByteBuffer>();
+			for (Branch branch : branches) {
+				BlockingQueue<Chunk> queue = new ArrayBlockingQueue<Chunk>(
+				        queueCapacity);
+				branchQueues.add(queue);
+
+				for (BufferTransform transform : branch.transforms) {
+					BlockingQueue<Chunk> next = new ArrayBlockingQueue<Chunk>(
+					        queueCapacity);
+					threads.add(threadFactory.newThread(new TransformStage(
+					        queue, transform, next)));
+					queue = next;
+				}
+				threads.add(threadFactory.newThread(new SinkStage(queue,
+				        branch)));
+			}
+			threads.add(threadFactory.newThread(new SourceStage(sourcePool)));
+
+			for (Thread thread : threads) {
+				thread.start();
+			}
+		}
+
+		void join() throws InterruptedException {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+
+		/**
+		 * Waits for all stages to terminate, for at most the given time.
+		 * Returns early if the current thread is interrupted, preserving its
+		 * interrupted status.
+		 */
+		void join(long timeout) {
+			long deadline = System.nanoTime()
+			        + TimeUnit.MILLISECONDS.toNanos(timeout);
+			try {
+				for (Thread thread : threads) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						break;
+					}
+					TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Stops all stages, recording the given cause unless another failure
+		 * was already recorded.
+		 */
+		void abort(Throwable cause) {
+			if (failure.compareAndSet(null, cause)) {
+				for (Thread thread : threads) {
+					thread.interrupt();
+				}
+			}
+		}
+
+		void close() throws IOException {
+			IOException exception = null;
+			for (Branch branch : branches) {
+				try {
+					if (branch.out != null) {
+						branch.out.close();
+					} else if (branch.outChannel != null) {
+						branch.outChannel.close();
+					}
+				} catch (IOException e) {
+					if (exception == null) {
+						exception = e;
+					}
+				}
+			}
+			if (exception != null) {
+				throw exception;
+			}
+		}
+
+		ByteBuffer allocate(Queue<ByteBuffer> pool) {
+			ByteBuffer buffer = pool.poll();
+			if (buffer == null) {
+				buffer = (inChannel == null) ? ByteBuffer.allocate(bufferSize)
+				        : ByteBuffer.allocateDirect(bufferSize);
+			}
+			buffer.clear();
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			return buffer;
+		}
+
+		/**
+		 * Reads from the source and publishes each buffer to every branch.
+		 */
+		private class SourceStage implements Runnable {
+			private final Queue<ByteBuffer> pool;
+
+			SourceStage(Queue<ByteBuffer> pool) {
+				this.pool = pool;
+			}
+
+			public void run() {
+				try {
+					while (true) {
+						ByteBuffer buffer = allocate(pool);
+						int read = read(buffer);
+						if (read == -1) {
+							break;
+						} else if (read == 0) {
+							pool.offer(buffer);
+							continue;
+						}
+						bytesRead += read;
+
+						buffer.flip();
+						Chunk chunk = new Chunk(buffer, pool, branchQueues.size());
+						for (BlockingQueue<Chunk> queue : branchQueues) {
+							queue.put(chunk);
+						}
+					}
+					for (BlockingQueue<Chunk> queue : branchQueues) {
+						queue.put(END_OF_INPUT);
+					}
+				} catch (InterruptedException e) {
+					// aborted
+				} catch (Throwable e) {
+					abort(e);
+				}
+			}
+
+			private int read(ByteBuffer buffer) throws IOException {
+				if (inChannel != null) {
+					return inChannel.read(buffer);
+				} else {
+					int read = in.read(buffer.array(), buffer.arrayOffset()
+					        + buffer.position(), buffer.remaining());
+					if (read > 0) {
+						buffer.position(buffer.position() + read);
+					}
+					return read;
+				}
+			}
+		}
+
+		/**
+		 * Base class for stages that consume chunks from a queue.
+		 */
+		private abstract class Stage implements Runnable {
+			private final BlockingQueue<Chunk> input;
+
+			Stage(BlockingQueue<Chunk> input) {
+				this.input = input;
+			}
+
+			public void run() {
+				try {
+					while (true) {
+						Chunk chunk = input.take();
+						if (chunk == END_OF_INPUT) {
+							finish();
+							break;
+						}
+						process(chunk);
+					}
+				} catch (InterruptedException e) {
+					// aborted
+				} catch (Throwable e) {
+					abort(e);
+				}
+			}
+
+			/**
+			 * Processes the given chunk and then either releases it or passes
+			 * it on.
+			 */
+			protected abstract void process(Chunk chunk) throws Exception;
+
+			protected abstract void finish() throws Exception;
+		}
+
+		private class TransformStage extends Stage implements BufferTransform.Output {
+			private final BufferTransform transform;
+
+			private final BlockingQueue<Chunk> output;
+
+			private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+
+			private Chunk current;
+
+			private ByteBuffer currentData;
+
+			private boolean forwarded;
+
+			TransformStage(BlockingQueue<Chunk> input,
+			        BufferTransform transform, BlockingQueue<Chunk> output) {
+				super(input);
+				this.transform = transform;
+				this.output = output;
+			}
+
+			@Override
+			protected void process(Chunk chunk) throws Exception {
+				current = chunk;
+				currentData = chunk.data();
+				forwarded = false;
+				try {
+					transform.transform(currentData, this);
+				} finally {
+					if (!forwarded) {
+						chunk.release();
+					}
+					current = null;
+					currentData = null;
+				}
+			}
+
+			@Override
+			protected void finish() throws Exception {
+				transform.finish(this);
+				output.put(END_OF_INPUT);
+			}
+
+			public ByteBuffer allocate() {
+				return Execution.this.allocate(pool);
+			}
+
+			public void write(ByteBuffer buffer) throws IOException {
+				try {
+					if (buffer == currentData) {
+						if (!forwarded) {
+							forwarded = true;
+							output.put(current);
+						}
+					} else if (buffer.hasRemaining()) {
+						output.put(new Chunk(buffer, pool, 1));
+					} else {
+						pool.offer(buffer);
+					}
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+		}
+
+		private class SinkStage extends Stage {
+			private final Branch branch;
+
+			SinkStage(BlockingQueue<Chunk> input, Branch branch) {
+				super(input);
+				this.branch = branch;
+			}
+
+			@Override
+			protected void process(Chunk chunk) throws IOException {
+				try {
+					ByteBuffer data = chunk.data();
+					if (branch.outChannel != null) {
+						while (data.hasRemaining()) {
+							branch.outChannel.write(data);
+						}
+					} else if (branch.out != null) {
+						if (data.hasArray()) {
+							branch.out.write(data.array(), data.arrayOffset()
+							        + data.position(), data.remaining());
+						} else {
+							byte[] bytes = new byte[data.remaining()];
+							data.get(bytes);
+							branch.out.write(bytes);
+						}
+					}
+				} finally {
+					chunk.release();
+				}
+			}
+
+			@Override
+			protected void finish() throws IOException {
+				if (branch.out != null) {
+					branch.out.flush();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+
+/**
+ * A file filter that can also tell which folders can't contain any accepted
+ * files. {@link FileIterator} doesn't descend into such folders at all, which
+ * saves listing them and applying the filter to everything inside them.
+ *
+ * @author Gerrit Meinders
+ */
+public interface PruningFileFilter extends FileFilter {
+	/**
+	 * Returns whether no file inside the given folder, at any depth, is
+	 * accepted by this filter. The folder itself is still passed to
+	 * {@link #accept(File)}. May be called concurrently from multiple
+	 * threads.
+	 *
+	 * @param folder Folder to be checked.
+	 *
+	 * @return <code>true</code> if the folder doesn't need to be listed.
+	 */
+	boolean isPruned(File folder);
+}
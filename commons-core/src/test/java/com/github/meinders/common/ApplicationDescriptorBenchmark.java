@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Measures the time needed to read an application descriptor in a cold JVM,
+ * using JAXB and using {@link ApplicationDescriptor#read(InputStream)}. Each
+ * run starts a new JVM, which reports the time from the start of its main
+ * method until the descriptor is read. The total time of the process is
+ * measured as well, and compared to a JVM that doesn't read anything.
+ *
+ * <p>
+ * Usage: <code>ApplicationDescriptorBenchmark [runs]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class ApplicationDescriptorBenchmark {
+    private static final String[] METHODS = { "none", "stax", "jaxb" };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            child(args[1], args[2]);
+            return;
+        }
+
+        int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+        Path file = Files.createTempFile("application", ".xml");
+        try {
+            Files.write(file, ApplicationDescriptorTest.DESCRIPTOR.getBytes(StandardCharsets.UTF_8));
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            String classPath = System.getProperty("java.class.path");
+
+            for (String method : METHODS) {
+                double[] processTimes = new double[runs];
+                String result = null;
+                for (int run = 0; run < runs; run++) {
+                    long start = System.nanoTime();
+                    Process process = new ProcessBuilder(java, "-cp", classPath, ApplicationDescriptorBenchmark.class.getName(), "--child", method, file.toString()).redirectErrorStream(true).start();
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    try (InputStream in = process.getInputStream()) {
+                        byte[] buffer = new byte[1024];
+                        for (int read; (read = in.read(buffer)) != -1;) {
+                            output.write(buffer, 0, read);
+                        }
+                    }
+                    process.waitFor();
+                    processTimes[run] = (System.nanoTime() - start) / 1e6;
+                    result = output.toString().trim();
+                }
+                Arrays.sort(processTimes);
+                System.out.printf("%-6s process: %7.1f ms (median)  child: %s%n", method + ":", processTimes[runs / 2], result);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Reads the given descriptor using the given method, then prints the
+     * time it took.
+     */
+    private static void child(String method, String file) throws Exception {
+        long start = System.nanoTime();
+        ApplicationDescriptor descriptor = null;
+        if (method.equals("stax")) {
+            try (InputStream in = new FileInputStream(file)) {
+                descriptor = ApplicationDescriptor.read(in);
+            }
+        } else if (method.equals("jaxb")) {
+            try {
+                descriptor = (ApplicationDescriptor) ApplicationDescriptor.getContext().createUnmarshaller().unmarshal(new File(file));
+            } catch (Exception e) {
+                // the JAXB runtime is an optional dependency
+                System.out.println("unavailable (" + e.getClass().getSimpleName() + ")");
+                return;
+            }
+        }
+        double time = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%.1f ms to first descriptor (%s)%n", time, descriptor == null ? "none" : descriptor.getTitle());
+    }
+}
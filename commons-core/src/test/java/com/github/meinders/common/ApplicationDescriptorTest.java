@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link ApplicationDescriptor} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class ApplicationDescriptorTest extends TestCase {
+    /**
+     * A descriptor as written by JAXB, with an unknown element.
+     */
+    static final String DESCRIPTOR = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<applicationDescriptor>\n"
+            + "    <copyright>Copyright 2018</copyright>\n"
+            + "    <short-name>test</short-name>\n"
+            + "    <title>Test &amp; Example</title>\n"
+            + "    <unknown><nested>ignored</nested></unknown>\n"
+            + "    <vendor>Gerrit Meinders</vendor>\n"
+            + "    <vendorEmail>someone@example.com</vendorEmail>\n"
+            + "    <vendorURL>https://github.com/meinders</vendorURL>\n"
+            + "    <version buildNumber=\"42\" major=\"2\" minor=\"1\">\n"
+            + "        <buildDate>2018-03-04T05:06:07.890+01:00</buildDate>\n"
+            + "    </version>\n"
+            + "</applicationDescriptor>\n";
+
+    public void testRead() throws Exception {
+        ApplicationDescriptor descriptor = ApplicationDescriptor.read(new ByteArrayInputStream(DESCRIPTOR.getBytes("UTF-8")));
+        assertEquals("Test & Example", descriptor.getTitle());
+        assertEquals("test", descriptor.getShortName());
+        assertEquals("Gerrit Meinders", descriptor.getVendor());
+        assertEquals("https://github.com/meinders", descriptor.getVendorURL());
+        assertEquals("someone@example.com", descriptor.getVendorEmail());
+        assertEquals("Copyright 2018", descriptor.getCopyright());
+
+        ApplicationDescriptor.Version version = descriptor.getVersion();
+        assertEquals(2, version.getMajor());
+        assertEquals(Integer.valueOf(1), version.getMinor());
+        assertNull(version.getRevision());
+        assertEquals(Integer.valueOf(42), version.getBuildNumber());
+        assertEquals(1520136367890L, version.getBuildDate().getTime());
+    }
+
+    public void testWrite() throws Exception {
+        ApplicationDescriptor descriptor = ApplicationDescriptor.read(new ByteArrayInputStream(DESCRIPTOR.getBytes("UTF-8")));
+        descriptor.setVendorEmail(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        descriptor.write(out);
+
+        ApplicationDescriptor copy = ApplicationDescriptor.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(descriptor.getTitle(), copy.getTitle());
+        assertEquals(descriptor.getShortName(), copy.getShortName());
+        assertNull(copy.getVendorEmail());
+        assertEquals(descriptor.getCopyright(), copy.getCopyright());
+        assertEquals(descriptor.getVersion().toString(), copy.getVersion().toString());
+        assertEquals(descriptor.getVersion().getBuildDate(), copy.getVersion().getBuildDate());
+    }
+
+    public void testInvalid() {
+        for (String xml : Arrays.asList("<other/>", "<applicationDescriptor><version major=\"x\"/></applicationDescriptor>", "<applicationDescriptor>")) {
+            try {
+                ApplicationDescriptor.read(new ByteArrayInputStream(xml.getBytes()));
+                fail("Expected exception for " + xml);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
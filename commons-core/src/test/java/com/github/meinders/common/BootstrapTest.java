@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link Bootstrap} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class BootstrapTest extends TestCase {
+    private static final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    protected void setUp() {
+        events.clear();
+    }
+
+    /**
+     * Checks that independent phases run in parallel, that phases run after
+     * their dependencies and that the main method is invoked last.
+     */
+    public void testPhases() {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        TestBootstrap bootstrap = new TestBootstrap() {
+            @Override
+            protected void registerPhases() {
+                Phase a = addPhase("a", new Task() {
+                    public void run() throws Exception {
+                        bothStarted.countDown();
+                        assertTrue("not run in parallel", bothStarted.await(10, TimeUnit.SECONDS));
+                        events.add("a");
+                    }
+                });
+                Phase b = addPhase("b", new Task() {
+                    public void run() throws Exception {
+                        bothStarted.countDown();
+                        assertTrue("not run in parallel", bothStarted.await(10, TimeUnit.SECONDS));
+                        events.add("b");
+                    }
+                });
+                addPhase("c", new Task() {
+                    public void run() {
+                        events.add("c");
+                    }
+                }, a, b);
+                addPhase("bundle", loadResourceBundle(TestBundle.class.getName()));
+            }
+
+            @Override
+            protected void warmUp() {
+                events.add("warm-up");
+            }
+        };
+        bootstrap.run();
+
+        assertEquals(6, events.size());
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), new HashSet<String>(events.subList(0, 2)));
+        assertEquals(Arrays.asList("c", "warm-up", "main", "x"), events.subList(2, 6));
+        for (Bootstrap.Phase phase : bootstrap.getPhases()) {
+            assertEquals(phase.getName(), Bootstrap.State.FINISHED, phase.getState());
+            assertTrue(phase.getName(), phase.getDuration() >= 0);
+            assertTrue(phase.getName(), phase.getThreadName().startsWith("Bootstrap-"));
+        }
+        List<Bootstrap.Phase> phases = bootstrap.getPhases();
+        assertEquals("main class", phases.get(phases.size() - 1).getName());
+    }
+
+    /**
+     * Checks that phases that depend on a failed phase are skipped.
+     */
+    public void testFailure() {
+        TestBootstrap bootstrap = new TestBootstrap() {
+            @Override
+            protected void registerPhases() {
+                Phase failing = addPhase("failing", preloadClasses("com.example.Missing"));
+                Phase skipped = addPhase("skipped", new Task() {
+                    public void run() {
+                        events.add("skipped");
+                    }
+                }, failing);
+                addPhase("also skipped", new Task() {
+                    public void run() {
+                        events.add("also skipped");
+                    }
+                }, skipped);
+            }
+        };
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            bootstrap.run();
+        } finally {
+            System.setErr(err);
+        }
+
+        assertEquals(Arrays.asList("main", "x"), events);
+        List<Bootstrap.Phase> phases = bootstrap.getPhases();
+        assertEquals(Bootstrap.State.FAILED, phases.get(0).getState());
+        assertTrue(phases.get(0).getFailure() instanceof ClassNotFoundException);
+        assertEquals(Bootstrap.State.SKIPPED, phases.get(1).getState());
+        assertEquals(Bootstrap.State.SKIPPED, phases.get(2).getState());
+        assertEquals(-1, phases.get(2).getStartTime());
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        bootstrap.writeReport(new PrintStream(report, true));
+        String text = report.toString();
+        assertTrue(text, text.contains("FAILED"));
+        assertTrue(text, text.contains("also skipped"));
+        assertTrue(text, text.contains("main class"));
+    }
+
+    public void testAddAfterStart() {
+        TestBootstrap bootstrap = new TestBootstrap();
+        bootstrap.run();
+        try {
+            bootstrap.addPhase("late", Bootstrap.preloadClasses(String.class.getName()));
+            fail("Expected exception.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static class TestBootstrap extends Bootstrap {
+        TestBootstrap() {
+            super(new String[] { "x" });
+        }
+
+        @Override
+        protected String getMainClassName() {
+            return Main.class.getName();
+        }
+
+        @Override
+        protected String getSplashTitle() {
+            return "Test";
+        }
+
+        @Override
+        protected URL getSplashImage() {
+            return null;
+        }
+    }
+
+    /**
+     * The main class started by the bootstrap.
+     */
+    public static class Main {
+        public static void main(String[] args) {
+            events.add("main");
+            events.addAll(Arrays.asList(args));
+        }
+    }
+
+    /**
+     * A resource bundle loaded as a phase.
+     */
+    public static class TestBundle extends ListResourceBundle {
+        @Override
+        protected Object[][] getContents() {
+            return new Object[][] { { "key", "value" } };
+        }
+    }
+}
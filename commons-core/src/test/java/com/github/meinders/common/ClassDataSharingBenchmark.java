@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.stream.*;
+import javax.swing.*;
+import javax.swing.table.*;
+import javax.swing.text.html.*;
+
+/**
+ * Measures the startup time of a small Swing application started by a
+ * {@link Bootstrap}, with and without a class data sharing archive created
+ * by {@link ClassDataSharing}. The compiled classes are packaged as JAR
+ * files first, since archives can't be used with directories on the class
+ * path. The application runs headless, so no window is shown.
+ *
+ * <p>
+ * Usage: <code>ClassDataSharingBenchmark [runs]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class ClassDataSharingBenchmark {
+    public static void main(String[] args) throws Exception {
+        int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 11;
+
+        Path folder = Files.createTempDirectory("cds");
+        try {
+            List<String> classPath = new ArrayList<String>();
+            for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                Path path = Paths.get(entry);
+                if (Files.isDirectory(path)) {
+                    Path jar = folder.resolve(path.getFileName() + ".jar");
+                    createJar(path, jar);
+                    classPath.add(jar.toString());
+                } else {
+                    classPath.add(entry);
+                }
+            }
+
+            ClassDataSharing sharing = new ClassDataSharing(folder.resolve("application.jsa"), String.join(File.pathSeparator, classPath));
+            sharing.setJvmOptions(Arrays.asList("-Djava.awt.headless=true", "-Xlog:cds=off", "-Xlog:cds+dynamic=off"));
+            sharing.recordClassList(SampleBootstrap.class.getName());
+            sharing.createArchive();
+            System.out.printf("Archived %d classes, %.1f MB%n", Files.readAllLines(sharing.getClassList()).size(), Files.size(sharing.getArchive()) / 1e6);
+
+            for (int i = 0; i < 2; i++) {
+                long without = sharing.measureStartup(false, runs, SampleBootstrap.class.getName());
+                long with = sharing.measureStartup(true, runs, SampleBootstrap.class.getName());
+                System.out.printf("Startup without archive: %8.1f ms, with archive: %8.1f ms (median of %d)%n", without / 1e6, with / 1e6, runs);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(folder)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static void createJar(Path folder, Path jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar)); Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                out.putNextEntry(new JarEntry(folder.relativize(path).toString().replace(File.separatorChar, '/')));
+                Files.copy(path, out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Starts {@link SampleMain}, preloading the Swing classes in parallel and
+     * warming up the table sorter.
+     */
+    public static class SampleBootstrap extends Bootstrap {
+        public static void main(String[] args) {
+            new SampleBootstrap(args).run();
+        }
+
+        protected SampleBootstrap(String[] args) {
+            super(args);
+        }
+
+        @Override
+        protected String getMainClassName() {
+            return SampleMain.class.getName();
+        }
+
+        @Override
+        protected String getSplashTitle() {
+            return "Sample";
+        }
+
+        @Override
+        protected URL getSplashImage() {
+            return null;
+        }
+
+        @Override
+        protected void registerPhases() {
+            addPhase("swing", preloadClasses("javax.swing.JTable", "javax.swing.JTree", "javax.swing.JEditorPane"));
+        }
+
+        @Override
+        protected void warmUp() {
+            TableSorter sorter = new TableSorter(SampleMain.createModel());
+            sorter.setSortingStatus(0, TableSorter.DESCENDING);
+            sorter.getValueAt(0, 0);
+        }
+    }
+
+    /**
+     * Creates the components of a typical window, without showing it.
+     */
+    public static class SampleMain {
+        public static void main(String[] args) {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    TableSorter sorter = new TableSorter(createModel());
+                    JTable table = new JTable(sorter);
+                    sorter.setTableHeader(table.getTableHeader());
+                    sorter.setSortingStatus(1, TableSorter.ASCENDING);
+                    JTree tree = new JTree();
+                    JEditorPane editor = new JEditorPane();
+                    editor.setEditorKit(new HTMLEditorKit());
+                    editor.setText("<html><body><h1>Sample</h1><p>Text</p></body></html>");
+                    JPanel panel = new JPanel();
+                    panel.add(new JScrollPane(table));
+                    panel.add(new JScrollPane(tree));
+                    panel.add(editor);
+                    panel.doLayout();
+                }
+            });
+        }
+
+        static TableModel createModel() {
+            DefaultTableModel model = new DefaultTableModel(new Object[] { "id", "name" }, 0);
+            for (int i = 0; i < 1000; i++) {
+                model.addRow(new Object[] { i, "row " + (i * 7919 % 1000) });
+            }
+            return model;
+        }
+    }
+}
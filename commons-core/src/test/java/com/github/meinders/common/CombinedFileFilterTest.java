@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link CombinedFileFilter} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class CombinedFileFilterTest extends TestCase {
+    public void testDeclaredCost() {
+        FileFilter expensive = new TestFilter("expensive", 1e9, false);
+        FileFilter cheap = new TestFilter("cheap", 1.0, false);
+        CombinedFileFilter combined = new CombinedFileFilter("test", CombinedFileFilter.Method.INTERSECTION, expensive, cheap);
+
+        assertFalse(combined.accept(new File("a.txt")));
+        List<CombinedFileFilter.Statistics> statistics = combined.getStatistics();
+        assertEquals("Unexpected calls to expensive filter.", 0, statistics.get(0).getCalls());
+        assertEquals("Unexpected calls to cheap filter.", 1, statistics.get(1).getCalls());
+    }
+
+    public void testPruning() {
+        File base = new File("base");
+        PatternFileFilter sources = new PatternFileFilter("sources", base);
+        sources.addInclude("src" + File.separator + "**");
+        PatternFileFilter documents = new PatternFileFilter("documents", base);
+        documents.addInclude("doc" + File.separator + "**");
+        documents.addExclude("**" + File.separator + "tmp" + File.separator + "**");
+
+        CombinedFileFilter union = new CombinedFileFilter("test", CombinedFileFilter.Method.UNION, sources, documents);
+        assertFalse(union.isPruned(new File(base, "src")));
+        assertFalse(union.isPruned(new File(base, "doc")));
+        assertTrue(union.isPruned(new File(base, "lib")));
+
+        CombinedFileFilter intersection = new CombinedFileFilter("test", CombinedFileFilter.Method.INTERSECTION, sources, documents);
+        assertTrue(intersection.isPruned(new File(base, "src")));
+        assertTrue(intersection.isPruned(new File(base, "doc")));
+        assertFalse(intersection.isPruned(base));
+    }
+
+    /**
+     * Applies two filters that take the same time, but only one of which is
+     * selective. The selective filter should soon be applied first.
+     */
+    public void testLearnedSelectivity() {
+        FileFilter acceptsAll = new TestFilter("all", 100.0, true) {
+            @Override
+            public boolean accept(File f) {
+                spin();
+                return true;
+            }
+        };
+        FileFilter acceptsXml = new TestFilter("XML", 100.0, false) {
+            @Override
+            public boolean accept(File f) {
+                spin();
+                return f.getName().endsWith(".xml");
+            }
+        };
+        CombinedFileFilter combined = new CombinedFileFilter("test", CombinedFileFilter.Method.INTERSECTION, acceptsAll, acceptsXml);
+
+        int accepted = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (combined.accept(new File("file" + i + ((i % 10 == 0) ? ".xml" : ".txt")))) {
+                accepted++;
+            }
+        }
+        assertEquals("Unexpected number of accepted files.", 1000, accepted);
+
+        List<CombinedFileFilter.Statistics> statistics = combined.getStatistics();
+        assertSame("Unexpected statistics order.", acceptsAll, statistics.get(0).getFilter());
+        assertEquals("Selective filter not applied to every file.", 10000, statistics.get(1).getCalls());
+        // after reordering, only files accepted by the selective filter reach the other one
+        assertTrue("Non-selective filter applied too often: " + statistics.get(0), statistics.get(0).getCalls() < 1500);
+    }
+
+    /**
+     * Takes about five microseconds, which dominates the time needed to
+     * evaluate the filters.
+     */
+    private static void spin() {
+        long end = System.nanoTime() + 5000;
+        while (System.nanoTime() < end) {
+            // busy wait
+        }
+    }
+
+    private static class TestFilter extends FileFilter {
+        private final double cost;
+
+        private final boolean result;
+
+        TestFilter(String description, double cost, boolean result) {
+            super(description);
+            this.cost = cost;
+            this.result = result;
+        }
+
+        @Override
+        public double getCostEstimate() {
+            return cost;
+        }
+
+        @Override
+        public boolean accept(File f) {
+            return result;
+        }
+    }
+}
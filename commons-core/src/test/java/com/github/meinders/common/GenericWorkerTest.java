@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link GenericWorker} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class GenericWorkerTest extends TestCase {
+    private static final int ITEMS = 1000000;
+
+    public void testProgressCoalesced() throws Exception {
+        List<WorkerEvent<Integer>> events = run(new CountingWorker(ITEMS, "done"));
+
+        int progressEvents = events.size() - 2;
+        assertTrue("Progress events weren't coalesced: " + progressEvents,
+                progressEvents < ITEMS / 10);
+        assertEquals(WorkerEvent.EventType.STARTED, events.get(0).getType());
+
+        WorkerEvent<Integer> lastProgress = events.get(events.size() - 2);
+        assertEquals(WorkerEvent.EventType.PROGRESS, lastProgress.getType());
+        assertEquals(ITEMS, lastProgress.getProgress());
+
+        WorkerEvent<Integer> last = events.get(events.size() - 1);
+        assertEquals(WorkerEvent.EventType.FINISHED, last.getType());
+    }
+
+    public void testProgressIncreasing() throws Exception {
+        List<WorkerEvent<Integer>> events = run(new CountingWorker(ITEMS, "done"));
+        long previous = -1;
+        for (WorkerEvent<Integer> event : events) {
+            if (event.getType() == WorkerEvent.EventType.PROGRESS) {
+                assertTrue(event.getProgress() > previous);
+                previous = event.getProgress();
+            }
+        }
+    }
+
+    public void testErrorAfterProgress() throws Exception {
+        CountingWorker worker = new CountingWorker(1000, null) {
+            public Integer construct() {
+                super.construct();
+                fireWorkerError("failed");
+                return null;
+            }
+        };
+        List<WorkerEvent<Integer>> events = run(worker);
+        WorkerEvent<Integer> lastProgress = events.get(events.size() - 2);
+        assertEquals(1000, lastProgress.getProgress());
+        assertEquals(WorkerEvent.EventType.ERROR,
+                events.get(events.size() - 1).getType());
+    }
+
+    public void testUncoalesced() throws Exception {
+        CountingWorker worker = new CountingWorker(1000, "done");
+        worker.setMinimumProgressInterval(0);
+        List<WorkerEvent<Integer>> events = run(worker);
+        assertEquals(1000 + 2, events.size());
+    }
+
+    /**
+     * Tests that events fired while the event dispatching thread is busy are
+     * delivered in the order in which they were fired, i.e. that a progress
+     * event scheduled for delivery isn't replaced by progress fired after a
+     * later event.
+     */
+    public void testEventOrder() throws Exception {
+        CountingWorker worker = new CountingWorker(0, null);
+        final List<String> events = new ArrayList<String>();
+        worker.addWorkerListener(new WorkerListener<Integer>() {
+            public void stateChanged(WorkerEvent<Integer> e) {
+                if (e.getType() == WorkerEvent.EventType.PROGRESS) {
+                    events.add("PROGRESS" + e.getProgress());
+                } else {
+                    events.add(e.getType().toString());
+                }
+            }
+        });
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        try {
+            worker.fireWorkerProgress(1);
+            worker.fireWorkerMessage("message");
+            worker.fireWorkerProgress(2);
+            worker.fireWorkerProgress(3);
+        } finally {
+            release.countDown();
+        }
+
+        // the last progress may be delayed by the minimum interval
+        Thread.sleep(100);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+        assertEquals(Arrays.asList("PROGRESS1", "MESSAGE", "PROGRESS3"), events);
+    }
+
+    /**
+     * Runs the given worker and returns all events it fired, once the last
+     * event was delivered.
+     */
+    private List<WorkerEvent<Integer>> run(GenericWorker<Integer> worker)
+            throws Exception {
+        final List<WorkerEvent<Integer>> events = new ArrayList<WorkerEvent<Integer>>();
+        final CountDownLatch done = new CountDownLatch(1);
+        worker.addWorkerListener(new WorkerListener<Integer>() {
+            public void stateChanged(WorkerEvent<Integer> e) {
+                assertTrue(SwingUtilities.isEventDispatchThread());
+                events.add(e);
+                if (e.getType() == WorkerEvent.EventType.FINISHED
+                        || e.getType() == WorkerEvent.EventType.ERROR) {
+                    done.countDown();
+                }
+            }
+        });
+        worker.start();
+        worker.get();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // wait for any remaining events
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+        return events;
+    }
+
+    private static class CountingWorker extends GenericWorker<Integer> {
+        private final int count;
+
+        private final String finishedMessage;
+
+        CountingWorker(int count, String finishedMessage) {
+            this.count = count;
+            this.finishedMessage = finishedMessage;
+        }
+
+        public Integer construct() {
+            fireWorkerStarted();
+            for (int i = 1; i <= count; i++) {
+                fireWorkerProgress(i, count);
+            }
+            if (finishedMessage != null) {
+                fireWorkerFinished(finishedMessage);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.lang.ref.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link ResourceUtilities} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class ResourceUtilitiesTest extends TestCase {
+    public void testGetString() {
+        TestBundle bundle = new TestBundle();
+        assertEquals("Hello", ResourceUtilities.getString(bundle, "greeting"));
+        assertEquals("Hello, World!", ResourceUtilities.getString(bundle, "message", "World"));
+        assertEquals("???unknown???", ResourceUtilities.getString(bundle, "unknown"));
+        assertEquals("???unknown???", ResourceUtilities.getString(bundle, "unknown", "World"));
+        assertNull(ResourceUtilities.getRawString(bundle, "unknown"));
+        assertEquals(Integer.valueOf(42), ResourceUtilities.getInteger(bundle, "answer"));
+        assertEquals(Integer.valueOf(-1), ResourceUtilities.getInteger(bundle, "greeting", -1));
+        assertEquals(Integer.valueOf('F'), ResourceUtilities.getMnemonic(bundle, "file"));
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(ResourceUtilities.getStringArray(bundle, "array")));
+    }
+
+    /**
+     * Checks that resources are only looked up once, until the cache is
+     * cleared.
+     */
+    public void testCache() {
+        TestBundle bundle = new TestBundle();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Hello, " + i + "!", ResourceUtilities.getString(bundle, "message", i));
+            assertEquals("???unknown???", ResourceUtilities.getString(bundle, "unknown"));
+            assertEquals(Integer.valueOf(42), ResourceUtilities.getInteger(bundle, "answer"));
+        }
+        assertEquals(Integer.valueOf(1), bundle.lookups.get("message"));
+        assertEquals(Integer.valueOf(1), bundle.lookups.get("unknown"));
+        assertEquals(Integer.valueOf(1), bundle.lookups.get("answer"));
+
+        ResourceUtilities.clearCache(bundle);
+        ResourceUtilities.getString(bundle, "message", "World");
+        assertEquals(Integer.valueOf(2), bundle.lookups.get("message"));
+    }
+
+    /**
+     * Checks that cached message formats follow the default format locale.
+     */
+    public void testLocale() {
+        TestBundle bundle = new TestBundle();
+        Locale defaultLocale = Locale.getDefault(Locale.Category.FORMAT);
+        try {
+            Locale.setDefault(Locale.Category.FORMAT, Locale.US);
+            assertEquals("1,234.5", ResourceUtilities.getString(bundle, "number", 1234.5));
+            Locale.setDefault(Locale.Category.FORMAT, Locale.GERMANY);
+            assertEquals("1.234,5", ResourceUtilities.getString(bundle, "number", 1234.5));
+        } finally {
+            Locale.setDefault(Locale.Category.FORMAT, defaultLocale);
+        }
+    }
+
+    /**
+     * Checks that the cached resources of a bundle don't prevent it from
+     * being garbage collected.
+     */
+    public void testBundleCollected() throws Exception {
+        WeakReference<ResourceBundle> reference = useBundle();
+        for (int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("Bundle wasn't garbage collected.", reference.get());
+    }
+
+    private static WeakReference<ResourceBundle> useBundle() {
+        TestBundle bundle = new TestBundle();
+        assertEquals("Hello, 1!", ResourceUtilities.getString(bundle, "message", 1));
+        assertEquals(Integer.valueOf(42), ResourceUtilities.getInteger(bundle, "answer"));
+        assertEquals(Integer.valueOf('F'), ResourceUtilities.getMnemonic(bundle, "file"));
+        return new WeakReference<ResourceBundle>(bundle);
+    }
+
+    /**
+     * A bundle that counts how often each key is looked up.
+     */
+    private static class TestBundle extends ResourceBundle {
+        final Map<String, Integer> lookups = new HashMap<String, Integer>();
+
+        private final Map<String, String> contents = new HashMap<String, String>();
+
+        TestBundle() {
+            contents.put("greeting", "Hello");
+            contents.put("message", "Hello, {0}!");
+            contents.put("number", "{0,number}");
+            contents.put("answer", "42");
+            contents.put("file.mnemonic", "f");
+            contents.put("array.length", "2");
+            contents.put("array[0]", "a");
+            contents.put("array[1]", "b");
+        }
+
+        @Override
+        protected synchronized Object handleGetObject(String key) {
+            Integer count = lookups.get(key);
+            lookups.put(key, (count == null) ? 1 : count + 1);
+            return contents.get(key);
+        }
+
+        @Override
+        public Enumeration<String> getKeys() {
+            return Collections.enumeration(contents.keySet());
+        }
+    }
+}
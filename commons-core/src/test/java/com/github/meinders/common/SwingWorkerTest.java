@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link SwingWorker} and {@link GenericWorker} classes.
+ *
+ * @author Gerrit Meinders
+ */
+public class SwingWorkerTest extends TestCase {
+    public void testSharedPool() throws Exception {
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        List<SwingWorker> workers = new ArrayList<SwingWorker>();
+        for (int i = 0; i < 1000; i++) {
+            final int value = i;
+            SwingWorker worker = new SwingWorker() {
+                public Object construct() {
+                    threads.add(Thread.currentThread());
+                    return value;
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            assertEquals(i, workers.get(i).get());
+        }
+        assertTrue("Too many threads: " + threads.size(),
+                threads.size() <= SwingWorker.DEFAULT_POOL_SIZE);
+    }
+
+    public void testFinishedOnEventDispatchThread() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] onEdt = new boolean[1];
+        GenericWorker<String> worker = new GenericWorker<String>() {
+            public String construct() {
+                return "done";
+            }
+
+            public void finished() {
+                onEdt[0] = SwingUtilities.isEventDispatchThread();
+                latch.countDown();
+            }
+        };
+        worker.start();
+        assertEquals("done", worker.get());
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue("finished() must be called on the EDT.", onEdt[0]);
+    }
+
+    public void testGetWithTimeout() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        GenericWorker<String> worker = new GenericWorker<String>() {
+            public String construct() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+                return "done";
+            }
+        };
+        worker.start();
+        try {
+            worker.get(10, TimeUnit.MILLISECONDS);
+            fail("Expected TimeoutException.");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        latch.countDown();
+        assertEquals("done", worker.get(10, TimeUnit.SECONDS));
+        assertEquals("done", worker.getFuture().get());
+    }
+
+    public void testInterruptBeforeStart() throws Exception {
+        final boolean[] constructed = new boolean[1];
+        SwingWorker worker = new SwingWorker() {
+            public Object construct() {
+                constructed[0] = true;
+                return "done";
+            }
+        };
+        worker.interrupt();
+        worker.start();
+        assertNull(worker.get(10, TimeUnit.SECONDS));
+        assertFalse(constructed[0]);
+    }
+
+    public void testInterruptRunning() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        SwingWorker worker = new SwingWorker() {
+            public Object construct() {
+                running.countDown();
+                try {
+                    Thread.sleep(60000);
+                    return "done";
+                } catch (InterruptedException e) {
+                    return "interrupted";
+                }
+            }
+        };
+        worker.start();
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        worker.interrupt();
+        // returns at once; the value depends on how far construct got
+        assertFalse("done".equals(worker.get(10, TimeUnit.SECONDS)));
+    }
+
+    /**
+     * Tests that an exception thrown by <code>construct</code> is reported to
+     * the uncaught exception handler of the thread before the future
+     * completes, without terminating the pooled thread.
+     */
+    public void testConstructFailure() throws Exception {
+        final List<Thread> created = Collections.synchronizedList(new ArrayList<Thread>());
+        final List<Throwable> reported = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<Boolean> doneWhenReported = Collections.synchronizedList(new ArrayList<Boolean>());
+        final IllegalStateException error = new IllegalStateException("expected by test");
+        final SwingWorker[] failing = new SwingWorker[1];
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    public void uncaughtException(Thread t, Throwable e) {
+                        reported.add(e);
+                        doneWhenReported.add(failing[0].getFuture().isDone());
+                    }
+                });
+                created.add(thread);
+                return thread;
+            }
+        });
+        try {
+            failing[0] = new SwingWorker(executor) {
+                public Object construct() {
+                    throw error;
+                }
+            };
+            failing[0].start();
+            try {
+                failing[0].getFuture().get(10, TimeUnit.SECONDS);
+                fail("Expected ExecutionException.");
+            } catch (ExecutionException e) {
+                assertSame(error, e.getCause());
+            }
+            assertNull(failing[0].get());
+            assertEquals(Arrays.asList(error), reported);
+            assertEquals(Arrays.asList(Boolean.FALSE), doneWhenReported);
+
+            SwingWorker next = new SwingWorker(executor) {
+                public Object construct() {
+                    return Thread.currentThread();
+                }
+            };
+            next.start();
+            assertSame("Pooled thread must survive the failure.",
+                    created.get(0), next.get(10, TimeUnit.SECONDS));
+            assertEquals(1, created.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testVirtualThreads() throws Exception {
+        ExecutorService executor = SwingWorker.createVirtualThreadExecutor();
+        try {
+            GenericWorker<Boolean> worker = new GenericWorker<Boolean>(executor) {
+                public Boolean construct() {
+                    return Thread.currentThread().isVirtual();
+                }
+            };
+            worker.start();
+            assertEquals(Boolean.TRUE, worker.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.table.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link TableSorter} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class TableSorterTest extends TestCase {
+    private static final int ROWS = 5000;
+
+    private static final int INTEGER = 0;
+
+    private static final int DOUBLE = 1;
+
+    private static final int STRING = 2;
+
+    private static final int OBJECT = 3;
+
+    /**
+     * Checks that sorting by keys results in the same order as sorting with
+     * the column comparators, for several combinations of sorting columns.
+     */
+    public void testSortModes() {
+        TestModel model = createModel(new Random(1), ROWS);
+        int[][] directives = {
+                { INTEGER, TableSorter.ASCENDING },
+                { DOUBLE, TableSorter.DESCENDING },
+                { STRING, TableSorter.ASCENDING },
+                { OBJECT, TableSorter.DESCENDING },
+                { STRING, TableSorter.DESCENDING, INTEGER, TableSorter.ASCENDING },
+                { OBJECT, TableSorter.ASCENDING, DOUBLE, TableSorter.ASCENDING,
+                        INTEGER, TableSorter.DESCENDING } };
+
+        for (int[] directive : directives) {
+            TableSorter keys = createSorter(model, TableSorter.SortMode.KEYS, directive);
+            TableSorter comparator = createSorter(model, TableSorter.SortMode.COMPARATOR, directive);
+            assertEquals(Arrays.toString(directive), getOrder(comparator), getOrder(keys));
+        }
+    }
+
+    /**
+     * Checks that values that a custom comparator considers equal keep their
+     * model order.
+     */
+    public void testCustomComparator() {
+        TestModel model = createModel(new Random(2), ROWS);
+        int[] directive = { STRING, TableSorter.ASCENDING };
+        Comparator caseInsensitive = String.CASE_INSENSITIVE_ORDER;
+
+        TableSorter keys = createSorter(model, TableSorter.SortMode.KEYS, directive);
+        keys.setColumnComparator(String.class, caseInsensitive);
+        TableSorter comparator = createSorter(model, TableSorter.SortMode.COMPARATOR, directive);
+        comparator.setColumnComparator(String.class, caseInsensitive);
+        assertEquals(getOrder(comparator), getOrder(keys));
+    }
+
+    /**
+     * Checks that a parallel sort off the event dispatch thread results in
+     * the same order as a sequential sort.
+     */
+    public void testParallelSort() {
+        TestModel model = createModel(new Random(3), 50000);
+        int[] directive = { STRING, TableSorter.DESCENDING, DOUBLE, TableSorter.ASCENDING };
+        TableSorter sequential = createSorter(model, TableSorter.SortMode.KEYS, directive);
+        sequential.setParallelSortThreshold(Integer.MAX_VALUE);
+        TableSorter parallel = createSorter(model, TableSorter.SortMode.KEYS, directive);
+        parallel.setParallelSortThreshold(1000);
+        assertEquals(getOrder(sequential), getOrder(parallel));
+    }
+
+    /**
+     * Checks that a sort triggered on the event dispatch thread is performed
+     * in the background, keeping the previous order until it is replaced
+     * along with a single data changed event.
+     */
+    public void testBackgroundSort() throws Exception {
+        final TestModel model = createModel(new Random(4), 50000);
+        final List<Integer> expected = getOrder(createSorter(model,
+                TableSorter.SortMode.COMPARATOR, new int[] { INTEGER, TableSorter.ASCENDING }));
+
+        final TableSorter sorter = new TableSorter(model);
+        sorter.setParallelSortThreshold(1000);
+        final CountDownLatch changed = new CountDownLatch(1);
+        final List<List<Integer>> orders = new ArrayList<List<Integer>>();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                assertEquals(0, sorter.modelIndex(0));
+                sorter.setSortingStatus(INTEGER, TableSorter.ASCENDING);
+                sorter.addTableModelListener(new TableModelListener() {
+                    public void tableChanged(TableModelEvent e) {
+                        orders.add(getOrder(sorter));
+                        changed.countDown();
+                    }
+                });
+                // the previous (unsorted) order is kept for now
+                assertEquals(0, sorter.modelIndex(0));
+            }
+        });
+        assertTrue(changed.await(10, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+        assertEquals(1, orders.size());
+        assertEquals(expected, orders.get(0));
+    }
+
+    /**
+     * Applies random inserts, deletes and updates to a sorted model, and
+     * checks that the events fired by the sorter describe the changes to
+     * the view, without falling back to a full re-sort.
+     */
+    public void testIncrementalUpdates() {
+        checkIncrementalUpdates(null);
+    }
+
+    /**
+     * Applies random changes to a sorted and filtered model, where the
+     * filter only depends on values that never change.
+     */
+    public void testIncrementalUpdatesFiltered() {
+        checkIncrementalUpdates(new TableSorter.Filter() {
+            public boolean accept(TableModel model, int row) {
+                return (Integer) model.getValueAt(row, 0) % 3 != 0;
+            }
+
+            public boolean isNarrowerThan(TableSorter.Filter filter) {
+                return false;
+            }
+        });
+    }
+
+    private void checkIncrementalUpdates(TableSorter.Filter filter) {
+        Random random = new Random(5);
+        DefaultTableModel model = new DefaultTableModel(new Object[] { "id", "group", "value" }, 0);
+        int nextId = 0;
+        for (int i = 0; i < 1000; i++) {
+            model.addRow(new Object[] { nextId++, "g" + random.nextInt(20), random.nextInt(100) });
+        }
+        final TableSorter sorter = createSorter(model, TableSorter.SortMode.KEYS,
+                new int[] { 1, TableSorter.ASCENDING, 2, TableSorter.DESCENDING });
+        sorter.setFilter(filter);
+
+        final List<Object> view = new ArrayList<Object>();
+        for (int i = 0; i < sorter.getRowCount(); i++) {
+            view.add(sorter.getValueAt(i, 0));
+        }
+        final int[] fullChanges = new int[1];
+        sorter.addTableModelListener(new TableModelListener() {
+            public void tableChanged(TableModelEvent e) {
+                if (e.getLastRow() == Integer.MAX_VALUE) {
+                    fullChanges[0]++;
+                    view.clear();
+                    for (int i = 0; i < sorter.getRowCount(); i++) {
+                        view.add(sorter.getValueAt(i, 0));
+                    }
+                    return;
+                }
+                for (int i = e.getFirstRow(); i <= e.getLastRow(); i++) {
+                    switch (e.getType()) {
+                    case TableModelEvent.INSERT:
+                        view.add(i, sorter.getValueAt(i, 0));
+                        break;
+                    case TableModelEvent.DELETE:
+                        view.remove(e.getFirstRow());
+                        break;
+                    default:
+                        view.set(i, sorter.getValueAt(i, 0));
+                        break;
+                    }
+                }
+            }
+        });
+
+        for (int step = 0; step < 500; step++) {
+            int rows = model.getRowCount();
+            switch (random.nextInt(5)) {
+            case 0:
+                model.insertRow(random.nextInt(rows + 1),
+                        new Object[] { nextId++, "g" + random.nextInt(20), random.nextInt(100) });
+                break;
+            case 1:
+                model.removeRow(random.nextInt(rows));
+                break;
+            case 2:
+                model.setValueAt(random.nextInt(100), random.nextInt(rows), 2);
+                break;
+            case 3:
+                model.setValueAt("g" + random.nextInt(20), random.nextInt(rows), 1);
+                break;
+            default:
+                // a batch update of several rows
+                int first = random.nextInt(rows - 10);
+                for (int i = first; i < first + 10; i++) {
+                    model.getDataVector().get(i).set(2, random.nextInt(100));
+                }
+                model.fireTableRowsUpdated(first, first + 9);
+                break;
+            }
+
+            TableSorter expected = createSorter(model, TableSorter.SortMode.COMPARATOR,
+                    new int[] { 1, TableSorter.ASCENDING, 2, TableSorter.DESCENDING });
+            expected.setFilter(filter);
+            assertEquals("step " + step, getOrder(expected), getOrder(sorter));
+            List<Object> actualView = new ArrayList<Object>();
+            for (int i = 0; i < sorter.getRowCount(); i++) {
+                actualView.add(sorter.getValueAt(i, 0));
+            }
+            assertEquals("step " + step, actualView, view);
+        }
+        assertEquals(0, fullChanges[0]);
+    }
+
+    /**
+     * Checks that a filter hides the rows it rejects, without affecting the
+     * order of the other rows, and that the filter can be removed again.
+     */
+    public void testFilter() {
+        TestModel model = createModel(new Random(6), ROWS);
+        int[] directive = { INTEGER, TableSorter.DESCENDING, STRING, TableSorter.ASCENDING };
+        TableSorter unfiltered = createSorter(model, TableSorter.SortMode.COMPARATOR, directive);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int row : getOrder(unfiltered)) {
+            Object value = model.getValueAt(row, STRING);
+            if (value.toString().toLowerCase().contains("a")) {
+                expected.add(row);
+            }
+        }
+
+        for (TableSorter.SortMode mode : TableSorter.SortMode.values()) {
+            TableSorter sorter = createSorter(model, mode, directive);
+            sorter.setFilter(TableSorter.createContainsFilter(STRING, "A"));
+            assertEquals(mode.toString(), expected, getOrder(sorter));
+            assertEquals(model.getValueAt(expected.get(0), STRING), sorter.getValueAt(0, STRING));
+
+            sorter.setFilter(null);
+            assertEquals(mode.toString(), getOrder(unfiltered), getOrder(sorter));
+        }
+
+        // without sorting, rows keep their model order
+        TableSorter sorter = new TableSorter(model);
+        sorter.setFilter(TableSorter.createContainsFilter(STRING, "a"));
+        List<Integer> filtered = new ArrayList<Integer>(expected);
+        Collections.sort(filtered);
+        assertEquals(filtered, getOrder(sorter));
+    }
+
+    /**
+     * Checks that a filter that narrows the current filter only tests the
+     * rows that are currently shown, and results in the same rows as a
+     * new filter.
+     */
+    public void testNarrowFilter() {
+        TestModel model = createModel(new Random(7), ROWS);
+        int[] directive = { DOUBLE, TableSorter.ASCENDING };
+        TableSorter sorter = createSorter(model, TableSorter.SortMode.KEYS, directive);
+        sorter.setFilter(TableSorter.createContainsFilter(STRING, "1"));
+        int shown = sorter.getRowCount();
+        assertTrue(shown < ROWS);
+
+        final TableSorter.Filter contains = TableSorter.createContainsFilter(STRING, "12");
+        final int[] calls = new int[1];
+        sorter.setFilter(new TableSorter.Filter() {
+            public boolean accept(TableModel model, int row) {
+                calls[0]++;
+                return contains.accept(model, row);
+            }
+
+            public boolean isNarrowerThan(TableSorter.Filter filter) {
+                return contains.isNarrowerThan(filter);
+            }
+        });
+
+        TableSorter fresh = createSorter(model, TableSorter.SortMode.KEYS, directive);
+        fresh.setFilter(contains);
+        assertEquals(getOrder(fresh), getOrder(sorter));
+        assertEquals(shown, calls[0]);
+    }
+
+    static TestModel createModel(Random random, int rows) {
+        Object[][] data = new Object[rows][4];
+        for (int i = 0; i < rows; i++) {
+            data[i][INTEGER] = random.nextInt(10) == 0 ? null : random.nextInt(100);
+            data[i][DOUBLE] = random.nextInt(10) == 0 ? null : random.nextInt(100) / 4.0;
+            String string = Integer.toString(random.nextInt(200), 36);
+            data[i][STRING] = random.nextBoolean() ? string : string.toUpperCase();
+            data[i][OBJECT] = random.nextInt(10) == 0 ? null : random.nextBoolean();
+        }
+        return new TestModel(data, new Class[] { Integer.class, Double.class,
+                String.class, Object.class });
+    }
+
+    static TableSorter createSorter(TableModel model, TableSorter.SortMode mode,
+            int[] directive) {
+        TableSorter sorter = new TableSorter(model);
+        sorter.setSortMode(mode);
+        for (int i = 0; i < directive.length; i += 2) {
+            sorter.setSortingStatus(directive[i], directive[i + 1]);
+        }
+        return sorter;
+    }
+
+    static List<Integer> getOrder(TableSorter sorter) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int i = 0; i < sorter.getRowCount(); i++) {
+            result.add(sorter.modelIndex(i));
+        }
+        return result;
+    }
+
+    /**
+     * A table model with a fixed type for each column.
+     */
+    static class TestModel extends AbstractTableModel {
+        private final Object[][] data;
+
+        private final Class[] types;
+
+        TestModel(Object[][] data, Class[] types) {
+            this.data = data;
+            this.types = types;
+        }
+
+        public int getRowCount() {
+            return data.length;
+        }
+
+        public int getColumnCount() {
+            return types.length;
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return types[column];
+        }
+
+        public Object getValueAt(int row, int column) {
+            return data[row][column];
+        }
+    }
+}
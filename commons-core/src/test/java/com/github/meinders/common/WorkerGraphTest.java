@@ -0,0 +1,219 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.swing.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link WorkerGraph} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class WorkerGraphTest extends TestCase {
+    public void testDiamond() throws Exception {
+        WorkerGraph graph = new WorkerGraph();
+        final WorkerGraph.Node<Integer> a = graph.add(new Constant(1));
+        final WorkerGraph.Node<Integer> b = graph.add(new GenericWorker<Integer>() {
+            public Integer construct() {
+                return a.getResult() + 10;
+            }
+        }, a);
+        final WorkerGraph.Node<Integer> c = graph.add(new GenericWorker<Integer>() {
+            public Integer construct() {
+                return a.getResult() + 100;
+            }
+        }, a);
+        WorkerGraph.Node<Integer> d = graph.add(new GenericWorker<Integer>() {
+            public Integer construct() {
+                return b.getResult() + c.getResult();
+            }
+        }, b, c);
+
+        List<WorkerEvent<Void>> events = run(graph);
+        assertEquals(Integer.valueOf(112), d.getResult());
+        assertEquals(WorkerEvent.EventType.FINISHED,
+                events.get(events.size() - 1).getType());
+
+        WorkerEvent<Void> progress = events.get(events.size() - 2);
+        assertEquals(WorkerEvent.EventType.PROGRESS, progress.getType());
+        assertEquals(progress.getLength(), progress.getProgress());
+    }
+
+    public void testParallelism() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maximum = new AtomicInteger();
+        WorkerGraph graph = new WorkerGraph();
+        graph.setParallelism(2);
+        for (int i = 0; i < 8; i++) {
+            graph.add(new GenericWorker<Integer>() {
+                public Integer construct() {
+                    int current = running.incrementAndGet();
+                    maximum.accumulateAndGet(current, Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        return null;
+                    }
+                    running.decrementAndGet();
+                    return current;
+                }
+            });
+        }
+        run(graph);
+        assertEquals(2, maximum.get());
+    }
+
+    public void testFailureCancelsDependents() throws Exception {
+        WorkerGraph graph = new WorkerGraph();
+        WorkerGraph.Node<Integer> failing = graph.add(new GenericWorker<Integer>() {
+            public Integer construct() {
+                throw new IllegalStateException("expected by test");
+            }
+        });
+        WorkerGraph.Node<Integer> dependent = graph.add(new Constant(1), failing);
+        WorkerGraph.Node<Integer> indirect = graph.add(new Constant(2), dependent);
+        WorkerGraph.Node<Integer> independent = graph.add(new Constant(3));
+
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread t, Throwable e) {
+                // expected by test
+            }
+        });
+        List<WorkerEvent<Void>> events;
+        try {
+            events = run(graph);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+
+        assertEquals(WorkerGraph.State.FAILED, failing.getState());
+        assertTrue(failing.getFailure() instanceof IllegalStateException);
+        assertEquals(WorkerGraph.State.CANCELLED, dependent.getState());
+        assertEquals(WorkerGraph.State.CANCELLED, indirect.getState());
+        assertEquals(WorkerGraph.State.FINISHED, independent.getState());
+        assertEquals(Integer.valueOf(3), independent.getResult());
+        assertEquals(WorkerEvent.EventType.ERROR,
+                events.get(events.size() - 1).getType());
+    }
+
+    /**
+     * Tests that interrupting a running worker cancels its dependents, which
+     * would otherwise run without a result to depend on.
+     */
+    public void testInterruptCancelsDependents() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final GenericWorker<Integer> blocking = new GenericWorker<Integer>() {
+            public Integer construct() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    return null;
+                }
+                return 1;
+            }
+        };
+        final AtomicBoolean dependentRan = new AtomicBoolean();
+        WorkerGraph graph = new WorkerGraph();
+        final WorkerGraph.Node<Integer> interrupted = graph.add(blocking);
+        WorkerGraph.Node<Integer> dependent = graph.add(new GenericWorker<Integer>() {
+            public Integer construct() {
+                dependentRan.set(true);
+                return interrupted.getResult();
+            }
+        }, interrupted);
+        WorkerGraph.Node<Integer> independent = graph.add(new Constant(3));
+
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                blocking.interrupt();
+            }
+        }.start();
+        List<WorkerEvent<Void>> events = run(graph);
+
+        assertEquals(WorkerGraph.State.CANCELLED, interrupted.getState());
+        assertEquals(WorkerGraph.State.CANCELLED, dependent.getState());
+        assertFalse("Dependent of interrupted worker must not run.", dependentRan.get());
+        assertEquals(WorkerGraph.State.FINISHED, independent.getState());
+        assertEquals(WorkerEvent.EventType.ERROR,
+                events.get(events.size() - 1).getType());
+    }
+
+    public void testAddAfterStart() throws Exception {
+        WorkerGraph graph = new WorkerGraph();
+        graph.add(new Constant(1));
+        run(graph);
+        try {
+            graph.add(new Constant(2));
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Runs the given graph and returns all events it fired, once the last
+     * event was delivered.
+     */
+    private List<WorkerEvent<Void>> run(WorkerGraph graph) throws Exception {
+        final List<WorkerEvent<Void>> events = new ArrayList<WorkerEvent<Void>>();
+        graph.addWorkerListener(new WorkerListener<Void>() {
+            public void stateChanged(WorkerEvent<Void> e) {
+                events.add(e);
+            }
+        });
+        graph.start();
+        graph.get(10, TimeUnit.SECONDS);
+
+        // wait for any remaining events
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+        Thread.sleep(GenericWorker.DEFAULT_MINIMUM_PROGRESS_INTERVAL * 2);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+        return events;
+    }
+
+    private static class Constant extends GenericWorker<Integer> {
+        private final int value;
+
+        Constant(int value) {
+            this.value = value;
+        }
+
+        public Integer construct() {
+            return value;
+        }
+    }
+}
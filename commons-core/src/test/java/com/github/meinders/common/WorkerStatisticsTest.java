@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.util.concurrent.*;
+import javax.management.*;
+import javax.management.openmbean.*;
+import javax.swing.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link WorkerStatistics} class and the metrics hook of
+ * {@link SwingWorker}.
+ *
+ * @author Gerrit Meinders
+ */
+public class WorkerStatisticsTest extends TestCase {
+    private WorkerStatistics statistics;
+
+    @Override
+    protected void setUp() throws Exception {
+        statistics = new WorkerStatistics();
+        SwingWorker.setMetricsSink(statistics);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SwingWorker.setMetricsSink(null);
+    }
+
+    public void testOutcomes() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            SleepingWorker worker = new SleepingWorker(false);
+            worker.start();
+            worker.get();
+        }
+        SleepingWorker interrupted = new SleepingWorker(false);
+        interrupted.start();
+        interrupted.interrupt();
+
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread t, Throwable e) {
+                // expected by test
+            }
+        });
+        WorkerStatistics.TypeStatistics type;
+        try {
+            SleepingWorker failing = new SleepingWorker(true);
+            failing.start();
+            failing.get();
+
+            // runs are reported on the EDT once construct returns
+            type = statistics.getStatistics(SleepingWorker.class);
+            for (int i = 0; i < 1000 && type.getCompleted() + type.getInterrupted()
+                    + type.getFailed() < 12; i++) {
+                flushEventQueue();
+                Thread.sleep(10);
+            }
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+        assertEquals(10, type.getCompleted());
+        assertEquals(1, type.getInterrupted());
+        assertEquals(1, type.getFailed());
+        assertEquals(12, type.getQueueDelay().getCount());
+        assertEquals(11, type.getDispatchDelay().getCount());
+        assertTrue(type.getConstructTime().getPercentile(0.5) >= TimeUnit.MILLISECONDS.toNanos(1) / 2);
+    }
+
+    public void testHistogram() {
+        WorkerStatistics.Histogram histogram = new WorkerStatistics.Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.add(i * 1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50500, histogram.getMean());
+        assertEquals(100000, histogram.getMaximum());
+        long median = histogram.getPercentile(0.5);
+        assertTrue("median: " + median, median >= 50000 && median < 100000);
+        assertEquals(100000, histogram.getPercentile(1.0));
+    }
+
+    public void testJmx() throws Exception {
+        SleepingWorker worker = new SleepingWorker(false);
+        worker.start();
+        worker.get();
+        flushEventQueue();
+
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = statistics.register(server,
+                new ObjectName(WorkerStatistics.DEFAULT_OBJECT_NAME));
+        TabularData summaries = (TabularData) server.getAttribute(name, "Summaries");
+        CompositeData row = summaries.get(new Object[] { SleepingWorker.class.getName() });
+        CompositeData summary = (CompositeData) row.get("value");
+        assertEquals(1L, summary.get("completed"));
+    }
+
+    private static void flushEventQueue() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+
+    private static class SleepingWorker extends SwingWorker {
+        private final boolean fail;
+
+        SleepingWorker(boolean fail) {
+            this.fail = fail;
+        }
+
+        public Object construct() {
+            if (fail) {
+                throw new IllegalStateException("expected by test");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                return null;
+            }
+            return "done";
+        }
+    }
+}
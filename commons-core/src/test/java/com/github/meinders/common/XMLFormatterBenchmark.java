@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import javax.xml.parsers.*;
+import javax.xml.stream.*;
+import javax.xml.transform.*;
+import javax.xml.transform.dom.*;
+import javax.xml.transform.stream.*;
+
+import org.w3c.dom.*;
+
+/**
+ * Compares the time and peak heap usage needed to format a generated XML file
+ * using {@link XMLFormatter}, which requires a DOM document, and using
+ * {@link XMLStreamFormatter}.
+ *
+ * <p>
+ * Usage: <code>XMLFormatterBenchmark [records] [skipDOM]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class XMLFormatterBenchmark {
+    private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.";
+
+    @SuppressWarnings("deprecation")
+    public static void main(String[] args) throws Exception {
+        int recordCount = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        boolean skipDOM = (args.length > 1) && Boolean.parseBoolean(args[1]);
+
+        Path input = Files.createTempFile("formatter", ".xml");
+        Path output = Files.createTempFile("formatter", ".xml");
+        try {
+            generate(input, recordCount);
+            System.out.printf("Generated %d records, %.1f MB%n", recordCount, Files.size(input) / 1e6);
+
+            XMLStreamFormatter formatter = new XMLStreamFormatter();
+            for (int run = 0; run < 3; run++) {
+                System.out.println("Run " + (run + 1));
+
+                if (!skipDOM) {
+                    resetPeakUsage();
+                    long start = System.nanoTime();
+                    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                    factory.setNamespaceAware(true);
+                    Document document = factory.newDocumentBuilder().parse(input.toFile());
+                    XMLFormatter.formatXML(document);
+                    TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(output.toFile()));
+                    document = null;
+                    print("DOM", start, output);
+                }
+
+                resetPeakUsage();
+                long start = System.nanoTime();
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(input));
+                        OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+                    formatter.format(in, out);
+                }
+                print("stream", start, output);
+            }
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    private static void print(String label, long start, Path output) throws IOException {
+        double time = (System.nanoTime() - start) / 1e6;
+        System.out.printf("  %-8s %10.1f ms %8.1f MB peak heap %8.1f MB output%n", label + ":", time, getPeakUsage() / 1e6, Files.size(output) / 1e6);
+    }
+
+    private static void resetPeakUsage() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getPeakUsage() {
+        long result = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                result += pool.getPeakUsage().getUsed();
+            }
+        }
+        return result;
+    }
+
+    private static void generate(Path file, int recordCount) throws IOException, XMLStreamException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("export");
+            for (int i = 0; i < recordCount; i++) {
+                writer.writeStartElement("record");
+                writer.writeAttribute("id", Integer.toString(i));
+                writer.writeStartElement("name");
+                writer.writeCharacters("Record " + i);
+                writer.writeEndElement();
+                writer.writeStartElement("description");
+                writer.writeCharacters(TEXT);
+                writer.writeEndElement();
+                writer.writeEmptyElement("flag");
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        }
+    }
+}
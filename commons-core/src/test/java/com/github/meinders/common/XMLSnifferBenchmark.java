@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import javax.xml.parsers.*;
+
+import org.xml.sax.*;
+import org.xml.sax.helpers.*;
+
+import com.github.meinders.common.util.*;
+
+/**
+ * Compares the time needed to determine the namespace of the document element
+ * for a folder of XML files, using a SAX parser that is aborted at the first
+ * start element (as {@link XMLNamespaceFileFilter} used to) and using
+ * {@link XMLSniffer}, sequentially and in parallel, with and without a warm
+ * cache.
+ *
+ * <p>
+ * Usage: <code>XMLSnifferBenchmark [files]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class XMLSnifferBenchmark {
+    private static final String[] NAMESPACES = { "urn:example:a", "urn:example:b", "urn:example:c" };
+
+    public static void main(String[] args) throws Exception {
+        int fileCount = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+        Path root = Files.createTempDirectory("sniffer");
+        try {
+            List<File> files = generate(root, fileCount);
+            System.out.println("Generated " + fileCount + " files");
+
+            for (int run = 0; run < 3; run++) {
+                System.out.println("Run " + (run + 1));
+
+                long start = System.nanoTime();
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                SAXParser parser = factory.newSAXParser();
+                int matches = 0;
+                for (File file : files) {
+                    if (NAMESPACES[0].equals(parseNamespace(parser, file))) {
+                        matches++;
+                    }
+                }
+                print("SAX parser", matches, start);
+
+                XMLSniffer uncached = new XMLSniffer(0);
+                start = System.nanoTime();
+                matches = 0;
+                for (File file : files) {
+                    if (NAMESPACES[0].equals(uncached.sniff(file).getNamespaceURI())) {
+                        matches++;
+                    }
+                }
+                print("sniffer", matches, start);
+
+                start = System.nanoTime();
+                matches = (int) files.parallelStream().filter(file -> {
+                    try {
+                        return NAMESPACES[0].equals(uncached.sniff(file).getNamespaceURI());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).count();
+                print("sniffer, parallel", matches, start);
+
+                XMLSniffer.getInstance().clearCache();
+                XMLNamespaceFileFilter filter = new XMLNamespaceFileFilter("XML", NAMESPACES[0]);
+                start = System.nanoTime();
+                matches = (int) FileIterator.stream(root.toFile(), filter).parallel().filter(File::isFile).count();
+                print("filter, parallel stream", matches, start);
+
+                start = System.nanoTime();
+                matches = (int) FileIterator.stream(root.toFile(), filter).parallel().filter(File::isFile).count();
+                print("filter, cached", matches, start);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static void print(String label, int matches, long start) {
+        System.out.printf("  %-24s %8d matches %8.1f ms%n", label + ":", matches, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static List<File> generate(Path root, int fileCount) throws IOException {
+        List<File> result = new ArrayList<File>();
+        for (int i = 0; i < fileCount; i++) {
+            Path folder = root.resolve("folder" + (i / 1000));
+            if (i % 1000 == 0) {
+                Files.createDirectory(folder);
+            }
+            Path file = folder.resolve("file" + i + ".xml");
+            String namespace = NAMESPACES[i % NAMESPACES.length];
+            StringBuilder content = new StringBuilder();
+            content.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            content.append("<!-- generated file " + i + " -->\n");
+            content.append("<document xmlns=\"" + namespace + "\" id=\"" + i + "\">\n");
+            for (int j = 0; j < 50; j++) {
+                content.append("  <item index=\"" + j + "\">Lorem ipsum dolor sit amet</item>\n");
+            }
+            content.append("</document>\n");
+            Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+            result.add(file.toFile());
+        }
+        return result;
+    }
+
+    private static String parseNamespace(SAXParser parser, File file) throws IOException {
+        final String[] namespace = new String[1];
+        try {
+            parser.parse(file, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                    namespace[0] = uri;
+                    throw new SAXException("aborting parser");
+                }
+            });
+        } catch (SAXException e) {
+            parser.reset();
+        }
+        return namespace[0];
+    }
+}
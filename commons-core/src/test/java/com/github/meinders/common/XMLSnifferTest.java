@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link XMLSniffer} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class XMLSnifferTest extends TestCase {
+    private static final String DOCUMENT = "<?xml version=\"1.0\"?>\n"
+            + "<!-- comment with <root> inside -->\n"
+            + "<!DOCTYPE a:root PUBLIC \"-//Example//DTD Test//EN\" \"test.dtd\" [\n"
+            + "  <!ENTITY x \"]>\">\n" + "]>\n"
+            + "<?pi data?>\n"
+            + "<a:root xmlns=\"urn:default\" xmlns:a='urn:a'><child/></a:root>\n";
+
+    private List<Path> files = new ArrayList<Path>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        super.tearDown();
+    }
+
+    public void testProlog() throws Exception {
+        XMLSniffer.Result result = new XMLSniffer(0).sniff(write(DOCUMENT.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("Unexpected public id.", "-//Example//DTD Test//EN", result.getPublicId());
+        assertEquals("Unexpected system id.", "test.dtd", result.getSystemId());
+        assertEquals("Unexpected root element.", "a:root", result.getRootElement());
+        assertEquals("Unexpected namespace.", "urn:a", result.getNamespaceURI());
+        assertFalse("Unexpected byte order mark.", result.hasByteOrderMark());
+    }
+
+    public void testEncodings() throws Exception {
+        XMLSniffer sniffer = new XMLSniffer(0);
+
+        XMLSniffer.Result result = sniffer.sniff(write(concat(new byte[] { (byte) 0xfe, (byte) 0xff }, DOCUMENT.getBytes(StandardCharsets.UTF_16BE))));
+        assertEquals("Unexpected encoding.", StandardCharsets.UTF_16BE, result.getEncoding());
+        assertEquals("Unexpected namespace.", "urn:a", result.getNamespaceURI());
+
+        result = sniffer.sniff(write(DOCUMENT.getBytes(StandardCharsets.UTF_16LE)));
+        assertEquals("Unexpected encoding.", StandardCharsets.UTF_16LE, result.getEncoding());
+        assertEquals("Unexpected namespace.", "urn:a", result.getNamespaceURI());
+
+        result = sniffer.sniff(write(concat(new byte[] { (byte) 0xef, (byte) 0xbb, (byte) 0xbf }, DOCUMENT.getBytes(StandardCharsets.UTF_8))));
+        assertTrue("Expected byte order mark.", result.hasByteOrderMark());
+        assertEquals("Unexpected namespace.", "urn:a", result.getNamespaceURI());
+
+        String latin = "<?xml version='1.0' encoding='ISO-8859-1'?><résumé xmlns='urn:r'/>";
+        result = sniffer.sniff(write(latin.getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals("Unexpected encoding.", StandardCharsets.ISO_8859_1, result.getEncoding());
+        assertEquals("Unexpected root element.", "résumé", result.getRootElement());
+    }
+
+    public void testLongProlog() throws Exception {
+        StringBuilder document = new StringBuilder("<?xml version=\"1.0\"?>");
+        for (int i = 0; i < 1000; i++) {
+            document.append("<!-- padding padding padding -->\n");
+        }
+        document.append("<root xmlns=\"urn:long\"/>");
+        XMLSniffer.Result result = new XMLSniffer(0).sniff(write(document.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals("Unexpected namespace.", "urn:long", result.getNamespaceURI());
+    }
+
+    public void testNotXML() throws Exception {
+        XMLSniffer.Result result = new XMLSniffer(0).sniff(write("plain text".getBytes(StandardCharsets.UTF_8)));
+        assertNull("Unexpected root element.", result.getRootElement());
+        assertNull("Unexpected namespace.", result.getNamespaceURI());
+    }
+
+    public void testCache() throws Exception {
+        XMLSniffer sniffer = new XMLSniffer();
+        Path file = write("<root xmlns=\"urn:one\"/>".getBytes(StandardCharsets.UTF_8));
+        XMLSniffer.Result result = sniffer.sniff(file);
+        assertSame("Result not cached.", result, sniffer.sniff(file));
+
+        Files.write(file, "<root xmlns=\"urn:three\"/>".getBytes(StandardCharsets.UTF_8));
+        assertEquals("Cache not invalidated.", "urn:three", sniffer.sniff(file).getNamespaceURI());
+    }
+
+    private Path write(byte[] content) throws IOException {
+        Path file = Files.createTempFile("sniffer", ".xml");
+        files.add(file);
+        Files.write(file, content);
+        return file;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common;
+
+import java.io.*;
+import javax.xml.parsers.*;
+import javax.xml.transform.*;
+import javax.xml.transform.dom.*;
+import javax.xml.transform.stream.*;
+
+import org.w3c.dom.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link XMLStreamFormatter} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class XMLStreamFormatterTest extends TestCase {
+    private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.";
+
+    public void testFormat() throws Exception {
+        String formatted = format("<a><b x=\"1\"><c>text</c><d/></b><!--note--></a>", new XMLStreamFormatter());
+        assertEquals("<a>\n  <b x=\"1\">\n    <c>\n      text</c>\n    <d></d>\n  </b>\n  <!--note-->\n</a>\n", formatted.substring(formatted.indexOf("<a>")));
+    }
+
+    /**
+     * Checks that the result is the same as that of {@link XMLFormatter}.
+     */
+    @SuppressWarnings("deprecation")
+    public void testSameAsDOM() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><r:root xmlns:r=\"urn:root\" xmlns=\"urn:default\" r:id=\"1\"><item name=\"a\">" + TEXT + "</item><group><item>short</item><item>" + TEXT + " " + TEXT + "</item><empty/><!-- comment --><?pi data?></group></r:root>";
+
+        Document expected = parse(xml);
+        XMLFormatter.formatXML(expected);
+        expected = parse(serialize(expected));
+        Document actual = parse(format(xml, new XMLStreamFormatter()));
+        assertTrue(expected.getDocumentElement().isEqualNode(actual.getDocumentElement()));
+    }
+
+    public void testFormatText() throws Exception {
+        XMLStreamFormatter formatter = new XMLStreamFormatter();
+        formatter.setFormatText(false);
+        assertTrue(format("<a>" + TEXT + "</a>", formatter).contains("<a>\n  " + TEXT + "</a>"));
+        formatter.setFormatText(true);
+        formatter.setLineLength(40);
+        assertTrue(format("<a>" + TEXT + "</a>", formatter).contains("<a>\n  Lorem ipsum dolor sit amet,\n  consectetur adipiscing elit, sed do\n"));
+    }
+
+    /**
+     * Checks that formatting a formatted document while stripping whitespace
+     * doesn't change it.
+     */
+    public void testStripWhitespace() throws Exception {
+        XMLStreamFormatter formatter = new XMLStreamFormatter();
+        String formatted = format("<a><b>" + TEXT + "</b><c><d/></c></a>", formatter);
+        formatter.setStripWhitespace(true);
+        assertEquals(formatted, format(formatted, formatter));
+    }
+
+    private static String format(String xml, XMLStreamFormatter formatter) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        formatter.format(new ByteArrayInputStream(xml.getBytes("UTF-8")), out);
+        return out.toString("UTF-8");
+    }
+
+    private static Document parse(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    private static String serialize(Document document) throws Exception {
+        StringWriter out = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(out));
+        return out.toString();
+    }
+}
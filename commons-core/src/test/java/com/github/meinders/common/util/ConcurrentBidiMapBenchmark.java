@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Measures the throughput of an interning table shared by several threads,
+ * comparing {@link ConcurrentBidiMap} with a {@link HashBidiMap} guarded by a
+ * single lock. Each operation interns a random token (assigning an identifier
+ * if it's new) and then looks the token up again by identifier.
+ *
+ * <p>
+ * Usage: <code>ConcurrentBidiMapBenchmark [tokens] [operations]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class ConcurrentBidiMapBenchmark {
+	public static void main(String[] args) throws Exception {
+		int tokens = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 4000000;
+
+		String[] vocabulary = new String[tokens];
+		for (int i = 0; i < tokens; i++) {
+			vocabulary[i] = "token" + i;
+		}
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= Math.max(processors, 8); threads *= 2) {
+			System.out.println(threads + " thread(s), " + operations + " operations");
+			System.out.printf("  synchronized HashBidiMap: %8.0f ops/ms%n",
+			        run(new SynchronizedInterner(), vocabulary, threads, operations));
+			System.out.printf("  ConcurrentBidiMap:        %8.0f ops/ms%n",
+			        run(new ConcurrentInterner(), vocabulary, threads, operations));
+		}
+	}
+
+	private static double run(final Interner interner, final String[] vocabulary, int threads, final int operations) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int t = 0; t < threads; t++) {
+			final long seed = t;
+			final int count = operations / threads;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					Random random = new Random(seed);
+					for (int i = 0; i < count; i++) {
+						// skewed towards frequent tokens, as in natural text
+						int index = (int) (vocabulary.length * Math.pow(random.nextDouble(), 3));
+						String token = vocabulary[index];
+						Integer id = interner.intern(token);
+						if (interner.lookup(id) != token) {
+							throw new AssertionError(token);
+						}
+					}
+					return null;
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		for (Future<Object> future : executor.invokeAll(tasks)) {
+			future.get();
+		}
+		long end = System.nanoTime();
+		executor.shutdown();
+
+		return operations / ((end - start) / 1e6);
+	}
+
+	private interface Interner {
+		Integer intern(String token);
+
+		String lookup(Integer id);
+	}
+
+	private static class SynchronizedInterner implements Interner {
+		private final HashBidiMap<String, Integer> map = new HashBidiMap<String, Integer>();
+
+		public synchronized Integer intern(String token) {
+			Integer id = map.get(token);
+			if (id == null) {
+				id = map.size();
+				map.put(token, id);
+			}
+			return id;
+		}
+
+		public synchronized String lookup(Integer id) {
+			return map.getKey(id);
+		}
+	}
+
+	private static class ConcurrentInterner implements Interner {
+		private final ConcurrentBidiMap<String, Integer> map = new ConcurrentBidiMap<String, Integer>();
+
+		private final AtomicInteger nextId = new AtomicInteger();
+
+		private final Function<String, Integer> idFunction = new Function<String, Integer>() {
+			public Integer apply(String token) {
+				return nextId.getAndIncrement();
+			}
+		};
+
+		public Integer intern(String token) {
+			return map.computeIfAbsent(token, idFunction);
+		}
+
+		public String lookup(Integer id) {
+			return map.getKey(id);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link ConcurrentBidiMap} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class ConcurrentBidiMapTest extends TestCase {
+	public void testPut() {
+		ConcurrentBidiMap<String, Integer> map = new ConcurrentBidiMap<String, Integer>();
+		map.put("one", 1);
+		map.put("two", 2);
+
+		assertEquals("Unexpected previous value.", Integer.valueOf(2), map.put("two", 22));
+		assertNull("Stale reverse mapping.", map.getKey(2));
+		assertEquals("Unexpected key.", "two", map.getKey(22));
+
+		map.put("uno", 1);
+		assertFalse("Stale mapping for re-mapped value.", map.containsKey("one"));
+		assertEquals("Unexpected key.", "uno", map.getKey(1));
+
+		assertEquals("Unexpected key removed.", "uno", map.removeValue(1));
+		assertEquals("Unexpected contents.", Collections.singletonMap("two", 22), map);
+	}
+
+	public void testPutIfAbsent() {
+		ConcurrentBidiMap<String, Integer> map = new ConcurrentBidiMap<String, Integer>();
+		assertNull("Expected value to be added.", map.putIfAbsent("one", 1));
+		assertEquals("Expected existing value.", Integer.valueOf(1), map.putIfAbsent("one", 2));
+		assertNull("Unexpected key for rejected value.", map.getKey(2));
+
+		try {
+			map.putIfAbsent("uno", 1);
+			fail("Expected IllegalArgumentException.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests that concurrently interning the same tokens results in a
+	 * one-to-one mapping with consecutive identifiers.
+	 */
+	public void testConcurrentInterning() throws Exception {
+		final int tokens = 10000;
+		final ConcurrentBidiMap<String, Integer> map = new ConcurrentBidiMap<String, Integer>();
+		final AtomicInteger nextId = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					Random random = new Random(seed);
+					for (int i = 0; i < tokens * 4; i++) {
+						String token = "token" + random.nextInt(tokens);
+						Integer id = map.computeIfAbsent(token, k -> nextId.getAndIncrement());
+						assertEquals("Inconsistent reverse mapping.", token, map.getKey(id));
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		assertEquals("Identifiers wasted.", map.size(), nextId.get());
+		assertEquals("Values not unique.", map.size(), new HashSet<Integer>(map.values()).size());
+	}
+
+	/**
+	 * Tests that a value that keeps moving between keys is always found by
+	 * lock-free reverse lookups.
+	 */
+	public void testConcurrentMove() throws Exception {
+		final ConcurrentBidiMap<String, Integer> map = new ConcurrentBidiMap<String, Integer>();
+		final Integer value = 42;
+		map.put("a", value);
+		final AtomicBoolean done = new AtomicBoolean();
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < 2; t++) {
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					while (!done.get()) {
+						assertNotNull("Value absent while moving.", map.getKey(value));
+						assertTrue("Value absent while moving.", map.containsValue(value));
+					}
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < 200000; i++) {
+				map.put((i % 2 == 0) ? "b" : "a", value);
+			}
+		} finally {
+			done.set(true);
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		assertEquals("Unexpected size.", 1, map.size());
+		assertEquals("Unexpected key.", "a", map.getKey(value));
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Compares the time needed to walk a generated directory tree using the
+ * original single-threaded algorithm of {@link FileIterator} (breadth-first,
+ * using {@link File#listFiles(java.io.FileFilter)}), {@link Files#walk} and
+ * {@link DirectoryWalker} at various levels of parallelism. Results depend
+ * heavily on the file system and on whether its metadata is cached, so the
+ * first run mostly serves to warm the cache.
+ *
+ * <p>
+ * Usage: <code>DirectoryWalkerBenchmark [directories] [filesPerDirectory]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class DirectoryWalkerBenchmark {
+	public static void main(String[] args) throws Exception {
+		int directories = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int filesPerDirectory = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		Path root = Files.createTempDirectory("walker");
+		try {
+			generate(root, directories, filesPerDirectory);
+			System.out.println("Generated " + directories + " directories, " + (directories * filesPerDirectory) + " files");
+
+			for (int run = 0; run < 3; run++) {
+				System.out.println("Run " + (run + 1));
+				long start = System.nanoTime();
+				long count = listFiles(root.toFile());
+				print("single thread, listFiles", count, start);
+
+				start = System.nanoTime();
+				try (Stream<Path> paths = Files.walk(root)) {
+					count = paths.count() - 1;
+				}
+				print("Files.walk", count, start);
+
+				for (int parallelism : new int[] { 1, 2, 4, 8 }) {
+					final AtomicLong counter = new AtomicLong();
+					DirectoryWalker walker = new DirectoryWalker(root);
+					walker.setParallelism(parallelism);
+					start = System.nanoTime();
+					walker.walk(new BiConsumer<Path, BasicFileAttributes>() {
+						@Override
+						public void accept(Path path, BasicFileAttributes attributes) {
+							counter.incrementAndGet();
+						}
+					});
+					print("walker, " + parallelism + " threads", counter.get(), start);
+				}
+
+				DirectoryWalker walker = new DirectoryWalker(root);
+				start = System.nanoTime();
+				try (Stream<Path> paths = walker.stream()) {
+					count = paths.count();
+				}
+				print("walker, stream", count, start);
+			}
+		} finally {
+			try (Stream<Path> paths = Files.walk(root)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	private static void print(String label, long count, long start) {
+		System.out.printf("  %-26s %8d entries %8.1f ms%n", label + ":", count, (System.nanoTime() - start) / 1e6);
+	}
+
+	/**
+	 * Generates a tree with the given number of directories, each with at most
+	 * ten subdirectories.
+	 */
+	private static void generate(Path root, int directories, int filesPerDirectory) throws IOException {
+		List<Path> created = new ArrayList<Path>();
+		created.add(root);
+		for (int i = 1; i < directories; i++) {
+			Path directory = created.get((i - 1) / 10).resolve("dir" + i);
+			Files.createDirectory(directory);
+			created.add(directory);
+		}
+		for (Path directory : created) {
+			for (int i = 0; i < filesPerDirectory; i++) {
+				Files.createFile(directory.resolve("file" + i + ".txt"));
+			}
+		}
+	}
+
+	/**
+	 * The algorithm originally used by {@link FileIterator}.
+	 */
+	private static long listFiles(File root) {
+		final LinkedList<File> folders = new LinkedList<File>();
+		final long[] count = new long[1];
+		folders.add(root);
+		while (!folders.isEmpty()) {
+			folders.removeFirst().listFiles(new java.io.FileFilter() {
+				@Override
+				public boolean accept(File file) {
+					if (file.isDirectory()) {
+						folders.add(file);
+					}
+					count[0]++;
+					return false;
+				}
+			});
+		}
+		return count[0];
+	}
+}
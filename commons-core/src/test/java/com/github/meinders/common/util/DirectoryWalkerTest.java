@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link DirectoryWalker} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class DirectoryWalkerTest extends TestCase {
+	private Path root;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = Files.createTempDirectory("walker");
+		for (String name : new String[] { "a/1.txt", "a/b/2.txt", "a/b/c/3.xml", "d/4.xml", "5.txt" }) {
+			Path file = root.resolve(name);
+			Files.createDirectories(file.getParent());
+			Files.createFile(file);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+		}
+		super.tearDown();
+	}
+
+	public void testWalk() throws Exception {
+		final Set<Path> paths = ConcurrentHashMap.newKeySet();
+		DirectoryWalker walker = new DirectoryWalker(root);
+		walker.setParallelism(3);
+		walker.walk(new BiConsumer<Path, BasicFileAttributes>() {
+			@Override
+			public void accept(Path path, BasicFileAttributes attributes) {
+				paths.add(root.relativize(path));
+			}
+		});
+		assertEquals("Unexpected entries.", relative("a", "a/1.txt", "a/b", "a/b/2.txt", "a/b/c", "a/b/c/3.xml", "d", "d/4.xml", "5.txt"), paths);
+	}
+
+	public void testMaxDepthAndFilter() throws Exception {
+		DirectoryWalker walker = new DirectoryWalker(root);
+		walker.setMaxDepth(2);
+		walker.setFilter(new BiPredicate<Path, BasicFileAttributes>() {
+			@Override
+			public boolean test(Path path, BasicFileAttributes attributes) {
+				return attributes.isRegularFile();
+			}
+		});
+		try (Stream<Path> paths = walker.stream()) {
+			assertEquals("Unexpected entries.", relative("a/1.txt", "d/4.xml", "5.txt"), paths.map(root::relativize).collect(Collectors.toSet()));
+		}
+	}
+
+	public void testIterator() {
+		DirectoryWalker walker = new DirectoryWalker(root);
+		walker.setQueueCapacity(1);
+		int count = 0;
+		for (File file : walker) {
+			assertTrue("Unexpected entry: " + file, file.exists());
+			count++;
+		}
+		assertEquals("Unexpected number of entries.", 9, count);
+	}
+
+	public void testLinkLoop() throws Exception {
+		try {
+			Files.createSymbolicLink(root.resolve("a/b/loop"), root.resolve("a"));
+		} catch (UnsupportedOperationException | IOException e) {
+			return; // symbolic links not supported
+		}
+
+		final List<Path> loops = new ArrayList<Path>();
+		DirectoryWalker walker = new DirectoryWalker(root);
+		walker.setFollowLinks(true);
+		walker.setErrorHandler(new BiConsumer<Path, IOException>() {
+			@Override
+			public void accept(Path path, IOException e) {
+				if (e instanceof FileSystemLoopException) {
+					loops.add(root.relativize(path));
+				}
+			}
+		});
+		try (Stream<Path> paths = walker.stream()) {
+			assertEquals("Unexpected number of entries.", 10, paths.count());
+		}
+		assertEquals("Unexpected loops.", Arrays.asList(Paths.get("a/b/loop")), loops);
+	}
+
+	private Set<Path> relative(String... names) {
+		Set<Path> result = new HashSet<Path>();
+		for (String name : names) {
+			result.add(Paths.get(name));
+		}
+		return result;
+	}
+}
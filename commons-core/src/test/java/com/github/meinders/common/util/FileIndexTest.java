@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link FileIndex} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class FileIndexTest extends TestCase {
+	private Path root;
+
+	private Path indexFile;
+
+	private AtomicInteger filterCalls;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = Files.createTempDirectory("index");
+		indexFile = Files.createTempFile("index", ".idx");
+		Files.delete(indexFile);
+		filterCalls = new AtomicInteger();
+
+		for (String name : new String[] { "a/1.xml", "a/2.txt", "a/b/3.xml", "c/4.xml" }) {
+			Path file = root.resolve(name);
+			Files.createDirectories(file.getParent());
+			Files.createFile(file);
+		}
+		setModifiedInPast(root);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Files.deleteIfExists(indexFile);
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+		}
+		super.tearDown();
+	}
+
+	public void testIncrementalUpdate() throws Exception {
+		FileIndex index = createIndex();
+		assertFalse("Unexpected index file.", index.load());
+		assertEquals("Unexpected number of directories listed.", 4, index.update());
+		assertEquals("Unexpected files.", files("a/1.xml", "a/b/3.xml", "c/4.xml"), new HashSet<File>(index.getFiles("xml")));
+		assertEquals("Unexpected number of entries.", 7, index.size());
+		index.save();
+
+		index = createIndex();
+		assertTrue("Expected index file.", index.load());
+		filterCalls.set(0);
+		assertEquals("Unexpected number of directories listed.", 0, index.update());
+		assertEquals("Unexpected files.", files("a/1.xml", "a/b/3.xml", "c/4.xml"), new HashSet<File>(index.getFiles("xml")));
+
+		Files.createFile(root.resolve("a/b/5.xml"));
+		deleteTree(root.resolve("c"));
+		assertEquals("Unexpected number of directories listed.", 2, index.update());
+		assertEquals("Unexpected files.", files("a/1.xml", "a/b/3.xml", "a/b/5.xml"), new HashSet<File>(index.getFiles("xml")));
+		assertEquals("Filter applied to unchanged entries.", 1, filterCalls.get());
+	}
+
+	/**
+	 * Tests that records read from the index file and records of directories
+	 * that were listed again are combined when the index is saved, and that
+	 * every directory is found in the saved index, including those whose
+	 * paths only differ in the separator.
+	 */
+	public void testSaveAfterPartialUpdate() throws Exception {
+		for (String name : new String[] { "a.b/6.xml", "Z/7.xml", "a-b/8.txt", "a/b/c/9.xml" }) {
+			Path file = root.resolve(name);
+			Files.createDirectories(file.getParent());
+			Files.createFile(file);
+		}
+		setModifiedInPast(root);
+
+		FileIndex index = createIndex();
+		assertEquals("Unexpected number of directories listed.", 8, index.update());
+		index.save();
+
+		index = createIndex();
+		assertTrue("Expected index file.", index.load());
+		assertEquals("Unexpected number of directories listed.", 0, index.update());
+		assertEquals("Unexpected number of entries.", 15, index.size());
+
+		Files.createFile(root.resolve("a/b/5.xml"));
+		Files.setLastModifiedTime(root.resolve("a/b"), FileTime.fromMillis(System.currentTimeMillis() - 60000));
+		assertEquals("Unexpected number of directories listed.", 1, index.update());
+		index.save();
+		assertEquals("Unexpected number of entries.", 16, index.size());
+
+		index = createIndex();
+		assertTrue("Expected index file.", index.load());
+		filterCalls.set(0);
+		assertEquals("Unexpected number of directories listed.", 0, index.update());
+		assertEquals("Unexpected files.", files("a/1.xml", "a/b/3.xml", "a/b/5.xml", "c/4.xml", "a.b/6.xml", "Z/7.xml", "a/b/c/9.xml"),
+		        new HashSet<File>(index.getFiles("xml")));
+		assertEquals("Unexpected number of entries.", 16, index.size());
+		assertEquals("Filter applied to unchanged entries.", 0, filterCalls.get());
+	}
+
+	public void testFilterMismatch() throws Exception {
+		FileIndex index = createIndex();
+		index.update();
+		index.save();
+
+		index = new FileIndex(root, indexFile);
+		assertFalse("Index with other filters loaded.", index.load());
+	}
+
+	private FileIndex createIndex() {
+		FileIndex index = new FileIndex(root, indexFile);
+		index.addFilter("xml", new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				filterCalls.incrementAndGet();
+				return file.getName().endsWith(".xml");
+			}
+		});
+		return index;
+	}
+
+	private Set<File> files(String... names) {
+		Set<File> result = new HashSet<File>();
+		for (String name : names) {
+			result.add(root.resolve(name).toAbsolutePath().toFile());
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the modification time of all directories to an hour ago, such that
+	 * changes are detected reliably, regardless of the time resolution of the
+	 * file system.
+	 */
+	private static void setModifiedInPast(Path root) throws IOException {
+		FileTime time = FileTime.fromMillis(System.currentTimeMillis() - 3600000);
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.filter(Files::isDirectory).collect(Collectors.toList())) {
+				Files.setLastModifiedTime(path, time);
+			}
+		}
+	}
+
+	private static void deleteTree(Path root) throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+		}
+	}
+}
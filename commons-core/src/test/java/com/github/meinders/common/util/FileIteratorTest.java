@@ -0,0 +1,252 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link FileIterator} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class FileIteratorTest extends TestCase {
+	private static final FileFilter XML_FILES = new FileFilter() {
+		@Override
+		public boolean accept(File file) {
+			return file.getName().endsWith(".xml");
+		}
+	};
+
+	private Path root;
+
+	private Set<File> expected;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = Files.createTempDirectory("iterator");
+		expected = new HashSet<File>();
+		for (int i = 0; i < 50; i++) {
+			Path file = root.resolve("a" + (i % 5) + "/b" + (i % 7) + "/" + i + ((i % 2 == 0) ? ".xml" : ".txt"));
+			Files.createDirectories(file.getParent());
+			Files.createFile(file);
+			if (i % 2 == 0) {
+				expected.add(file.toFile());
+			}
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+		}
+		super.tearDown();
+	}
+
+	public void testBoundedBuffer() {
+		Set<File> actual = new HashSet<File>();
+		for (FileIterator i = new FileIterator(root.toFile(), XML_FILES, 2); i.hasNext();) {
+			assertTrue("Duplicate file.", actual.add(i.next()));
+		}
+		assertEquals("Unexpected files.", expected, actual);
+	}
+
+	public void testParallelStream() {
+		Set<File> actual = FileIterator.stream(root.toFile(), XML_FILES).parallel().collect(Collectors.toSet());
+		assertEquals("Unexpected files.", expected, actual);
+	}
+
+	public void testSplit() {
+		Spliterator<File> first = FileIterator.spliterator(root.toFile(), XML_FILES);
+		Spliterator<File> second = first.trySplit();
+		assertNotNull("Expected split.", second);
+
+		List<File> actual = new ArrayList<File>();
+		first.forEachRemaining(actual::add);
+		second.forEachRemaining(actual::add);
+		assertEquals("Unexpected number of files.", expected.size(), actual.size());
+		assertEquals("Unexpected files.", expected, new HashSet<File>(actual));
+	}
+
+	/**
+	 * Tests that symbolic links to folders are followed, except when they
+	 * point to a folder containing the link.
+	 */
+	public void testSymbolicLinks() throws Exception {
+		Path linked = Files.createTempDirectory("linked");
+		Path file = Files.createFile(linked.resolve("linked.xml"));
+		try {
+			try {
+				Files.createSymbolicLink(root.resolve("a1/link"), linked);
+				Files.createSymbolicLink(root.resolve("a2/b3/loop"), root.resolve("a2"));
+			} catch (UnsupportedOperationException | IOException e) {
+				// symbolic links aren't supported
+				return;
+			}
+			expected.add(root.resolve("a1/link/linked.xml").toFile());
+
+			Set<File> actual = new HashSet<File>();
+			for (FileIterator i = new FileIterator(root.toFile(), XML_FILES); i.hasNext();) {
+				assertTrue("Duplicate file.", actual.add(i.next()));
+			}
+			assertEquals("Unexpected files.", expected, actual);
+
+			actual = FileIterator.stream(root.toFile(), XML_FILES).parallel().collect(Collectors.toSet());
+			assertEquals("Unexpected files from stream.", expected, actual);
+		} finally {
+			Files.delete(file);
+			Files.delete(linked);
+		}
+	}
+
+	/**
+	 * Tests that folders pruned by the filter aren't listed.
+	 */
+	public void testPruning() {
+		final File pruned = root.resolve("a1").toFile();
+		final Set<File> visited = ConcurrentHashMap.newKeySet();
+		PruningFileFilter filter = new PruningFileFilter() {
+			@Override
+			public boolean accept(File file) {
+				visited.add(file);
+				return XML_FILES.accept(file);
+			}
+
+			@Override
+			public boolean isPruned(File folder) {
+				return folder.equals(pruned);
+			}
+		};
+		for (Iterator<File> i = expected.iterator(); i.hasNext();) {
+			if (i.next().getParentFile().getParentFile().equals(pruned)) {
+				i.remove();
+			}
+		}
+
+		Set<File> actual = new HashSet<File>();
+		for (FileIterator i = new FileIterator(root.toFile(), filter); i.hasNext();) {
+			actual.add(i.next());
+		}
+		assertEquals("Unexpected files.", expected, actual);
+		assertPrunedFolderNotListed(pruned, visited);
+
+		visited.clear();
+		actual = FileIterator.stream(root.toFile(), filter).parallel().collect(Collectors.toSet());
+		assertEquals("Unexpected files from stream.", expected, actual);
+		assertPrunedFolderNotListed(pruned, visited);
+	}
+
+	private static void assertPrunedFolderNotListed(File pruned, Set<File> visited) {
+		assertTrue("Pruned folder must be passed to the filter.", visited.contains(pruned));
+		for (File file : visited) {
+			assertFalse("Pruned folder listed: " + file, pruned.equals(file.getParentFile()));
+		}
+	}
+
+	/**
+	 * Tests that closing an iterator that wasn't consumed entirely stops the
+	 * threads walking the folder, which are blocked on the full buffer.
+	 */
+	public void testClose() throws Exception {
+		ThreadRecordingFilter filter = new ThreadRecordingFilter();
+		FileIterator iterator = new FileIterator(root.toFile(), filter, 1);
+		assertTrue(iterator.hasNext());
+		assertNotNull(iterator.next());
+		iterator.close();
+		assertFalse("No files expected after close.", iterator.hasNext());
+		filter.assertTerminated();
+	}
+
+	public void testStreamClose() throws Exception {
+		ThreadRecordingFilter filter = new ThreadRecordingFilter();
+		try (Stream<File> stream = new FileIterator(root.toFile(), filter, 1).stream()) {
+			assertTrue(stream.findFirst().isPresent());
+		}
+		filter.assertTerminated();
+	}
+
+	/**
+	 * Tests that an exception thrown by the filter ends the iteration and is
+	 * rethrown to the consumer.
+	 */
+	public void testFilterFailure() throws Exception {
+		final IllegalStateException error = new IllegalStateException("filter failed");
+		final FileFilter filter = new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				if (file.getName().equals("25.txt")) {
+					throw error;
+				}
+				return XML_FILES.accept(file);
+			}
+		};
+
+		FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			@Override
+			public Object call() {
+				for (FileIterator i = new FileIterator(root.toFile(), filter, 1); i.hasNext();) {
+					i.next();
+				}
+				return null;
+			}
+		});
+		new Thread(task).start();
+		try {
+			task.get(10, TimeUnit.SECONDS);
+			fail("Expected filter failure.");
+		} catch (ExecutionException e) {
+			// joining fork/join tasks may wrap the exception in ones of the same type
+			Throwable cause = e.getCause();
+			assertTrue("Unexpected exception: " + cause, cause instanceof IllegalStateException);
+			while (cause != error && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			assertSame("Unexpected exception.", error, cause);
+		}
+	}
+
+	/**
+	 * Accepts all files, recording the threads it's called from.
+	 */
+	private static class ThreadRecordingFilter implements FileFilter {
+		private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+		@Override
+		public boolean accept(File file) {
+			threads.add(Thread.currentThread());
+			return true;
+		}
+
+		void assertTerminated() throws InterruptedException {
+			assertFalse("Expected walker threads.", threads.isEmpty());
+			for (Thread thread : threads) {
+				thread.join(10000);
+				assertFalse("Walker thread still running: " + thread, thread.isAlive());
+			}
+		}
+	}
+}
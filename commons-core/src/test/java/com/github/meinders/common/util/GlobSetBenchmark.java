@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * Compares matching paths against 10, 100 and 1000 globs using one regular
+ * expression per glob, as PatternFileFilter used to, and using a
+ * {@link GlobSet}. A tenth of the globs are excludes.
+ *
+ * <p>
+ * Usage: <code>GlobSetBenchmark [paths]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class GlobSetBenchmark {
+	public static void main(String[] args) {
+		int pathCount = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+		Random random = new Random(1);
+		String[] paths = new String[pathCount];
+		for (int i = 0; i < pathCount; i++) {
+			paths[i] = "module" + random.nextInt(100) + "/src/" + (random.nextBoolean() ? "main" : "test") + "/package" + random.nextInt(50) + "/File" + random.nextInt(1000)
+			        + (random.nextBoolean() ? ".java" : ".xml");
+		}
+
+		for (int globCount : new int[] { 10, 100, 1000 }) {
+			List<Pattern> includes = new ArrayList<Pattern>();
+			List<Pattern> excludes = new ArrayList<Pattern>();
+			GlobSet globs = new GlobSet('/');
+			for (int i = 0; i < globCount; i++) {
+				String glob;
+				if (i % 10 == 9) {
+					glob = "module" + random.nextInt(100) + "/**/package" + random.nextInt(50) + "/**";
+					excludes.add(toRegex(glob));
+					globs.addExclude(glob);
+				} else {
+					glob = "module" + random.nextInt(100) + "/src/*/package" + random.nextInt(50) + "/*.java";
+					includes.add(toRegex(glob));
+					globs.addInclude(glob);
+				}
+			}
+
+			for (int run = 0; run < 3; run++) {
+				System.out.println(globCount + " globs, run " + (run + 1));
+
+				long start = System.nanoTime();
+				int matches = 0;
+				for (String path : paths) {
+					boolean included = includes.isEmpty();
+					for (Iterator<Pattern> i = includes.iterator(); i.hasNext() && !included;) {
+						included = i.next().matcher(path).matches();
+					}
+					for (Iterator<Pattern> i = excludes.iterator(); i.hasNext() && included;) {
+						included = !i.next().matcher(path).matches();
+					}
+					if (included) {
+						matches++;
+					}
+				}
+				print("regular expressions", matches, start);
+
+				start = System.nanoTime();
+				matches = 0;
+				for (String path : paths) {
+					if (globs.matches(path)) {
+						matches++;
+					}
+				}
+				print("glob set", matches, start);
+			}
+			System.out.println("  states: " + globs.getStateCount());
+		}
+	}
+
+	private static void print(String label, int matches, long start) {
+		System.out.printf("  %-20s %8d matches %8.1f ms%n", label + ":", matches, (System.nanoTime() - start) / 1e6);
+	}
+
+	/**
+	 * Translates a glob to a regular expression, as PatternFileFilter used to.
+	 */
+	private static Pattern toRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '?') {
+				regex.append('.');
+			} else if (c == '*') {
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					regex.append(".*");
+					i++;
+				} else {
+					regex.append("[^/]*");
+				}
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+import java.util.regex.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link GlobSet} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class GlobSetTest extends TestCase {
+	public void testWildcards() {
+		GlobSet globs = new GlobSet('/');
+		globs.addInclude("src/**/*.java");
+		globs.addInclude("doc/?.txt");
+		globs.addExclude("**/generated/**");
+
+		assertTrue(globs.matches("src/a/B.java"));
+		assertTrue(globs.matches("src//B.java"));
+		assertFalse(globs.matches("src/B.java.orig"));
+		assertFalse(globs.matches("src/a/generated/B.java"));
+		assertTrue(globs.matches("doc/a.txt"));
+		assertFalse(globs.matches("doc/ab.txt"));
+		assertFalse(globs.matches("other/a.txt"));
+	}
+
+	public void testNoIncludes() {
+		GlobSet globs = new GlobSet('/');
+		assertTrue(globs.matches("anything"));
+		globs.addExclude("*.class");
+		assertTrue(globs.matches("a/B.class"));
+		assertFalse(globs.matches("B.class"));
+	}
+
+	public void testPruning() {
+		GlobSet globs = new GlobSet('/');
+		globs.addInclude("src/*/*.java");
+		globs.addExclude("src/build/**");
+
+		assertFalse("Root pruned.", globs.isPruned(""));
+		assertFalse("Included folder pruned.", globs.isPruned("src"));
+		assertFalse("Included folder pruned.", globs.isPruned("src/main"));
+		assertTrue("Excluded folder not pruned.", globs.isPruned("src/build"));
+		assertTrue("Folder beyond includes not pruned.", globs.isPruned("src/main/deeper"));
+		assertTrue("Unrelated folder not pruned.", globs.isPruned("lib"));
+	}
+
+	/**
+	 * Tests that an exclude that can match anywhere in the tree doesn't
+	 * prevent pruning of folders that no include can match.
+	 */
+	public void testPruningWithUnanchoredExclude() {
+		GlobSet globs = new GlobSet('/');
+		globs.addInclude("src/**");
+		globs.addExclude("**/tmp/**");
+
+		assertFalse("Included folder pruned.", globs.isPruned("src"));
+		assertFalse("Included folder pruned.", globs.isPruned("src/main"));
+		assertTrue("Excluded folder not pruned.", globs.isPruned("src/tmp"));
+		assertTrue("Unrelated folder not pruned.", globs.isPruned("docs"));
+		assertTrue("Unrelated folder not pruned.", globs.isPruned("docs/tmp/more"));
+		assertFalse(globs.matches("docs/x.java"));
+		assertTrue(globs.matches("src/x.java"));
+		assertFalse(globs.matches("src/tmp/x.java"));
+	}
+
+	/**
+	 * Compares the results with those of the regular expressions that were
+	 * previously used by PatternFileFilter, for random globs and paths.
+	 */
+	public void testAgainstRegex() {
+		Random random = new Random(42);
+		String alphabet = "ab/.";
+		for (int round = 0; round < 200; round++) {
+			GlobSet globs = new GlobSet('/');
+			List<Pattern> includes = new ArrayList<Pattern>();
+			List<Pattern> excludes = new ArrayList<Pattern>();
+			int count = random.nextInt(5);
+			for (int i = 0; i < count; i++) {
+				String glob = randomString(random, alphabet + "*?", 6);
+				if (random.nextBoolean()) {
+					globs.addInclude(glob);
+					includes.add(toRegex(glob));
+				} else {
+					globs.addExclude(glob);
+					excludes.add(toRegex(glob));
+				}
+			}
+
+			for (int i = 0; i < 50; i++) {
+				String path = randomString(random, alphabet, 8);
+				boolean expected = includes.isEmpty();
+				for (Pattern include : includes) {
+					expected |= include.matcher(path).matches();
+				}
+				for (Pattern exclude : excludes) {
+					expected &= !exclude.matcher(path).matches();
+				}
+				assertEquals("Unexpected result for " + path + " with includes " + includes + " and excludes " + excludes, expected, globs.matches(path));
+			}
+		}
+	}
+
+	private static String randomString(Random random, String alphabet, int maxLength) {
+		StringBuilder result = new StringBuilder();
+		int length = random.nextInt(maxLength + 1);
+		for (int i = 0; i < length; i++) {
+			result.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return result.toString();
+	}
+
+	private static Pattern toRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '?') {
+				regex.append('.');
+			} else if (c == '*') {
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					regex.append(".*");
+					i++;
+				} else {
+					regex.append("[^/]*");
+				}
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link HashBidiMap} class and its frozen form,
+ * {@link FrozenBidiMap}.
+ *
+ * @author Gerrit Meinders
+ */
+public class HashBidiMapTest extends TestCase {
+	private HashBidiMap<String, Integer> map;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		map = new HashBidiMap<String, Integer>();
+		map.put("one", 1);
+		map.put("two", 2);
+		map.put("three", 3);
+	}
+
+	public void testPut() {
+		assertEquals("Unexpected value.", Integer.valueOf(2), map.get("two"));
+		assertEquals("Unexpected key.", "two", map.getKey(2));
+
+		assertEquals("Unexpected previous value.", Integer.valueOf(2), map.put("two", 22));
+		assertNull("Stale reverse mapping.", map.getKey(2));
+		assertEquals("Unexpected key.", "two", map.getKey(22));
+
+		assertNull("Unexpected previous value.", map.put("uno", 1));
+		assertFalse("Stale mapping for re-mapped value.", map.containsKey("one"));
+		assertEquals("Unexpected key.", "uno", map.getKey(1));
+		assertEquals("Unexpected size.", 3, map.size());
+	}
+
+	public void testRemove() {
+		assertEquals("Unexpected value removed.", Integer.valueOf(1), map.remove("one"));
+		assertFalse("Value not removed.", map.containsValue(1));
+		assertEquals("Unexpected key removed.", "two", map.removeValue(2));
+		assertFalse("Key not removed.", map.containsKey("two"));
+		assertEquals("Unexpected size.", 1, map.size());
+	}
+
+	public void testViews() {
+		assertEquals("Unexpected keys.", new HashSet<String>(Arrays.asList("one", "two", "three")), map.keySet());
+		assertEquals("Unexpected values.", new HashSet<Integer>(Arrays.asList(1, 2, 3)), map.values());
+
+		map.keySet().remove("one");
+		assertFalse("View not backed by map.", map.containsValue(1));
+		map.values().remove(2);
+		assertFalse("View not backed by map.", map.containsKey("two"));
+
+		for (Map.Entry<String, Integer> entry : map.entrySet()) {
+			entry.setValue(33);
+		}
+		assertEquals("View not backed by map.", "three", map.getKey(33));
+
+		map.put("four", 4);
+		for (Map.Entry<String, Integer> entry : map.entrySet()) {
+			if (entry.getKey().equals("three")) {
+				try {
+					entry.setValue(4);
+					fail("Expected IllegalArgumentException.");
+				} catch (IllegalArgumentException e) {
+					// expected
+				}
+			}
+		}
+
+		for (Iterator<String> i = map.keySet().iterator(); i.hasNext();) {
+			i.next();
+			i.remove();
+		}
+		assertTrue("Expected empty map.", map.isEmpty());
+		assertNull("Stale reverse mapping.", map.getKey(4));
+	}
+
+	public void testResize() {
+		for (int i = 0; i < 1000; i++) {
+			map.put("value" + i, i + 10);
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("Unexpected value.", Integer.valueOf(i + 10), map.get("value" + i));
+			assertEquals("Unexpected key.", "value" + i, map.getKey(i + 10));
+		}
+		assertEquals("Unexpected size.", 1003, map.size());
+	}
+
+	public void testFreeze() {
+		BidiMap<String, Integer> frozen = map.freeze();
+		assertEquals("Frozen map not equal.", map, frozen);
+		assertEquals("Unexpected key.", "three", frozen.getKey(3));
+		assertNull("Unexpected key.", frozen.getKey(4));
+
+		try {
+			frozen.put("four", 4);
+			fail("Expected UnsupportedOperationException.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link IntHashBidiMap} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class IntHashBidiMapTest extends TestCase {
+	/**
+	 * Tests that a random sequence of operations gives the same result as the
+	 * same operations performed on a {@link HashBidiMap}.
+	 */
+	public void testRandomOperations() {
+		Random random = new Random(42);
+		BidiMap<Integer, String> expected = new HashBidiMap<Integer, String>();
+		IntHashBidiMap<String> actual = new IntHashBidiMap<String>();
+
+		for (int i = 0; i < 10000; i++) {
+			int key = random.nextInt(500) - 250;
+			String value = "v" + random.nextInt(500);
+			switch (random.nextInt(4)) {
+			case 0:
+			case 1:
+				assertEquals("Unexpected previous value.", expected.put(key, value), actual.put(key, value));
+				break;
+			case 2:
+				assertEquals("Unexpected value removed.", expected.remove(key), actual.remove(key));
+				break;
+			default:
+				assertEquals("Unexpected key removed.", expected.removeValue(value), actual.removeValue(value));
+			}
+
+			assertEquals("Unexpected value.", expected.get(key), actual.get(key));
+			assertEquals("Unexpected key.", expected.getKey(value), actual.getKey(value));
+		}
+
+		assertEquals("Maps not equal.", expected, actual);
+		assertEquals("Frozen map not equal.", expected, actual.freeze());
+	}
+
+	public void testFreeze() {
+		IntHashBidiMap<String> map = new IntHashBidiMap<String>();
+		map.put(1, "one");
+		map.put(2, "two");
+
+		IntHashBidiMap<String> frozen = map.freeze();
+		assertTrue("Expected frozen map.", frozen.isFrozen());
+		assertEquals("Unexpected value.", "two", frozen.get(2));
+		assertEquals("Unexpected key.", 1, frozen.getKeyOrDefault("one", -1));
+		assertEquals("Unexpected key.", -1, frozen.getKeyOrDefault("three", -1));
+
+		try {
+			frozen.keySet().iterator().remove();
+			fail("Expected exception.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		try {
+			frozen.remove(1);
+			fail("Expected UnsupportedOperationException.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+
+/**
+ * Compares the performance of 2-opt moves on a tour stored in an
+ * {@link InvertibleList} with the same moves performed in-place on an
+ * {@link ArrayList}. Each move looks up the positions of two random cities and
+ * reverses the segment between them. The time needed for both steps is
+ * reported separately.
+ *
+ * <p>
+ * As in a typical array-based 2-opt implementation, the {@link ArrayList} is
+ * accompanied by an array with the position of each city, which is updated
+ * while reversing a segment. The {@link InvertibleList} finds positions using
+ * {@link InvertibleList#indexOf(Object)}.
+ *
+ * <p>
+ * Usage: <code>InvertibleListBenchmark [cities] [moves]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class InvertibleListBenchmark {
+	public static void main(String[] args) {
+		int cities = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int moves = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + (run + 1) + ": " + cities + " cities, " + moves + " moves");
+			print("ArrayList:     ", arrayTwoOpt(cities, moves));
+			print("InvertibleList:", invertibleTwoOpt(cities, moves));
+		}
+	}
+
+	private static void print(String name, long[] times) {
+		System.out.printf("  %s lookup %8.1f ms, reverse %8.1f ms%n", name, times[0] / 1e6, times[1] / 1e6);
+	}
+
+	/**
+	 * Performs the moves on an array list, keeping track of the position of
+	 * each city.
+	 *
+	 * @return Time spent looking up positions and reversing segments, in
+	 *         nanoseconds.
+	 */
+	private static long[] arrayTwoOpt(int cities, int moves) {
+		List<Integer> tour = new ArrayList<Integer>(cities);
+		int[] position = new int[cities];
+		for (int i = 0; i < cities; i++) {
+			tour.add(i);
+			position[i] = i;
+		}
+
+		Random random = new Random(1);
+		long lookup = 0;
+		long reverse = 0;
+		for (int i = 0; i < moves; i++) {
+			long start = System.nanoTime();
+			int a = position[random.nextInt(cities)];
+			int b = position[random.nextInt(cities)];
+			long middle = System.nanoTime();
+			for (int from = Math.min(a, b) + 1, to = Math.max(a, b); from < to; from++, to--) {
+				Integer first = tour.get(from);
+				Integer last = tour.get(to);
+				tour.set(from, last);
+				tour.set(to, first);
+				position[last] = from;
+				position[first] = to;
+			}
+			long end = System.nanoTime();
+			lookup += middle - start;
+			reverse += end - middle;
+		}
+
+		checkTour(tour, cities);
+		return new long[] { lookup, reverse };
+	}
+
+	/**
+	 * Performs the moves on an invertible list.
+	 *
+	 * @return Time spent looking up positions and reversing segments, in
+	 *         nanoseconds.
+	 */
+	private static long[] invertibleTwoOpt(int cities, int moves) {
+		InvertibleList<Integer> tour = new InvertibleList<Integer>();
+		for (int i = 0; i < cities; i++) {
+			tour.add(i);
+		}
+
+		Random random = new Random(1);
+		long lookup = 0;
+		long reverse = 0;
+		for (int i = 0; i < moves; i++) {
+			long start = System.nanoTime();
+			int a = tour.indexOf(random.nextInt(cities));
+			int b = tour.indexOf(random.nextInt(cities));
+			long middle = System.nanoTime();
+			tour.reverse(Math.min(a, b) + 1, Math.max(a, b) + 1);
+			long end = System.nanoTime();
+			lookup += middle - start;
+			reverse += end - middle;
+		}
+
+		checkTour(tour, cities);
+		return new long[] { lookup, reverse };
+	}
+
+	/**
+	 * Performs a quick sanity check of the tour, which also prevents dead code
+	 * elimination.
+	 */
+	private static void checkTour(List<Integer> tour, int cities) {
+		if (tour.size() != cities || tour.get(0) < 0) {
+			throw new AssertionError("corrupt tour");
+		}
+	}
+}
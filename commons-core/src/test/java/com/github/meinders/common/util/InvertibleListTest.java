@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link InvertibleList} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class InvertibleListTest extends TestCase {
+	public void testAddGetRemove() {
+		InvertibleList<String> list = new InvertibleList<String>();
+		assertTrue("Expected empty list.", list.isEmpty());
+
+		list.add("b");
+		list.add("d");
+		list.add(0, "a");
+		list.add(2, "c");
+		assertEquals("Unexpected contents.", Arrays.asList("a", "b", "c", "d"), list);
+
+		assertEquals("Unexpected element removed.", "b", list.remove(1));
+		assertEquals("Unexpected contents.", Arrays.asList("a", "c", "d"), list);
+		assertFalse("Removed element still present.", list.contains("b"));
+
+		try {
+			list.get(3);
+			fail("Expected IndexOutOfBoundsException.");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	public void testReverse() {
+		InvertibleList<Integer> list = new InvertibleList<Integer>(Arrays.asList(0, 1, 2, 3, 4, 5));
+
+		list.reverse(1, 5);
+		assertEquals("Unexpected contents.", Arrays.asList(0, 4, 3, 2, 1, 5), list);
+		assertEquals("Unexpected index.", 1, list.indexOf(4));
+		assertEquals("Unexpected index.", 4, list.indexOf(1));
+
+		list.reverse();
+		assertEquals("Unexpected contents.", Arrays.asList(5, 1, 2, 3, 4, 0), list);
+		assertEquals("Unexpected index.", 0, list.indexOf(5));
+		assertEquals("Unexpected index.", -1, list.indexOf(6));
+	}
+
+	/**
+	 * Tests that a random sequence of operations gives the same result as the
+	 * same operations performed on an {@link ArrayList}.
+	 */
+	public void testRandomOperations() {
+		Random random = new Random(42);
+		List<Integer> expected = new ArrayList<Integer>();
+		InvertibleList<Integer> actual = new InvertibleList<Integer>();
+
+		for (int i = 0; i < 5000; i++) {
+			int size = expected.size();
+			int operation = random.nextInt(5);
+			if ((operation == 0) || (size == 0)) {
+				int index = random.nextInt(size + 1);
+				Integer value = random.nextInt(100);
+				expected.add(index, value);
+				actual.add(index, value);
+			} else if (operation == 1) {
+				int index = random.nextInt(size);
+				assertEquals("Unexpected element removed.", expected.remove(index), actual.remove(index));
+			} else if (operation == 2) {
+				int index = random.nextInt(size);
+				Integer value = random.nextInt(100);
+				assertEquals("Unexpected element replaced.", expected.set(index, value), actual.set(index, value));
+			} else {
+				int from = random.nextInt(size + 1);
+				int to = from + random.nextInt(size - from + 1);
+				Collections.reverse(expected.subList(from, to));
+				actual.reverse(from, to);
+			}
+
+			Integer value = random.nextInt(100);
+			assertEquals("Unexpected index.", expected.indexOf(value), actual.indexOf(value));
+			assertEquals("Unexpected last index.", expected.lastIndexOf(value), actual.lastIndexOf(value));
+		}
+
+		assertEquals("Unexpected contents.", expected, actual);
+	}
+}
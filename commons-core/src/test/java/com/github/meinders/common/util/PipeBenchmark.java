@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Measures the throughput of {@link Pipe} when copying a file to another file,
+ * comparing the original mode (a 4 KB heap buffer, yielding after each chunk)
+ * with a larger heap buffer and with the channel-based mode. In addition, the
+ * synchronous and asynchronous modes are compared on a slow source and sink,
+ * which each take about a millisecond per buffer.
+ *
+ * <p>
+ * Usage: <code>PipeBenchmark [megabytes]</code>
+ *
+ * @author Gerrit Meinders
+ */
+public class PipeBenchmark {
+	public static void main(String[] args) throws Exception {
+		int megabytes = (args.length > 0) ? Integer.parseInt(args[0]) : 256;
+
+		File source = File.createTempFile("pipe", ".in");
+		File target = File.createTempFile("pipe", ".out");
+		source.deleteOnExit();
+		target.deleteOnExit();
+
+		byte[] block = new byte[0x100000];
+		new Random(1).nextBytes(block);
+		OutputStream out = new FileOutputStream(source);
+		try {
+			for (int i = 0; i < megabytes; i++) {
+				out.write(block);
+			}
+		} finally {
+			out.close();
+		}
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + (run + 1) + ": " + megabytes + " MB");
+			System.out.printf("  4 KB buffer, yielding: %8.1f MB/s%n", run(source, target, 0x1000, true, false) * megabytes);
+			System.out.printf("  64 KB buffer:          %8.1f MB/s%n", run(source, target, 0x10000, false, false) * megabytes);
+			System.out.printf("  channels:              %8.1f MB/s%n", run(source, target, 0x10000, false, true) * megabytes);
+		}
+
+		source.delete();
+		target.delete();
+
+		byte[] data = new byte[Math.min(megabytes, 16) * 0x100000];
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + (run + 1) + ": " + (data.length >> 20) + " MB, slow source and sink");
+			Pipe synchronous = runSlow(data, false);
+			System.out.printf("  synchronous:  %8.1f MB/s%n", synchronous.getBytesPerSecond() / 0x100000);
+			Pipe asynchronous = runSlow(data, true);
+			System.out.printf("  asynchronous: %8.1f MB/s (stalled on input %.0f ms, on output %.0f ms)%n", asynchronous.getBytesPerSecond() / 0x100000,
+			        asynchronous.getInputStallTime() / 1e6, asynchronous.getOutputStallTime() / 1e6);
+		}
+	}
+
+	private static Pipe runSlow(byte[] data, boolean asynchronous) throws IOException {
+		Pipe pipe = new Pipe(new SlowInputStream(new ByteArrayInputStream(data)), new SlowOutputStream(new ByteArrayOutputStream()));
+		pipe.setAsynchronous(asynchronous);
+		pipe.call();
+
+		if (pipe.getBytesTransferred() != data.length) {
+			throw new AssertionError("incomplete copy");
+		}
+		return pipe;
+	}
+
+	/**
+	 * Returns the number of times the source file could be piped per second.
+	 */
+	private static double run(File source, File target, int bufferSize, boolean yielding, boolean channels) throws IOException {
+		long start = System.nanoTime();
+		Pipe pipe = new Pipe(new FileInputStream(source), new FileOutputStream(target));
+		pipe.setBufferSize(bufferSize);
+		pipe.setYielding(yielding);
+		pipe.setChannelsEnabled(channels);
+		pipe.call();
+		long end = System.nanoTime();
+
+		if (target.length() != source.length()) {
+			throw new AssertionError("incomplete copy");
+		}
+		return 1e9 / (end - start);
+	}
+
+	private static void pause() throws InterruptedIOException {
+		try {
+			Thread.sleep(1);
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private static class SlowInputStream extends FilterInputStream {
+		SlowInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			pause();
+			return super.read(b, off, len);
+		}
+	}
+
+	private static class SlowOutputStream extends FilterOutputStream {
+		SlowOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			pause();
+			out.write(b, off, len);
+		}
+	}
+}
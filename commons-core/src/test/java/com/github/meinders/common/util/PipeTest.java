@@ -0,0 +1,401 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link Pipe} class.
+ *
+ * @author Gerrit Meinders
+ */
+public class PipeTest extends TestCase {
+	private byte[] data;
+
+	private Path source;
+
+	private Path target;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// not a multiple of any buffer size
+		data = new byte[300007];
+		new Random(1).nextBytes(data);
+		source = Files.createTempFile("pipe", ".in");
+		target = Files.createTempFile("pipe", ".out");
+		Files.write(source, data);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Files.deleteIfExists(source);
+		Files.deleteIfExists(target);
+		super.tearDown();
+	}
+
+	public void testFileToFile() throws Exception {
+		Pipe pipe = new Pipe(new FileInputStream(source.toFile()),
+		        new FileOutputStream(target.toFile()));
+		pipe.call();
+		assertEquals("Unexpected number of bytes transferred.", data.length, pipe.getBytesTransferred());
+		assertTrue("Unexpected target contents.", Arrays.equals(data, Files.readAllBytes(target)));
+	}
+
+	public void testFileToFileAtPosition() throws Exception {
+		FileInputStream in = new FileInputStream(source.toFile());
+		assertEquals(1000, in.skip(1000));
+		FileOutputStream out = new FileOutputStream(target.toFile());
+		out.write(new byte[] { 1, 2, 3 });
+
+		new Pipe(in, out).call();
+		byte[] expected = new byte[data.length - 1000 + 3];
+		expected[0] = 1;
+		expected[1] = 2;
+		expected[2] = 3;
+		System.arraycopy(data, 1000, expected, 3, data.length - 1000);
+		assertTrue("Unexpected target contents.", Arrays.equals(expected, Files.readAllBytes(target)));
+	}
+
+	public void testStreamToFile() throws Exception {
+		Pipe pipe = new Pipe(new ByteArrayInputStream(data),
+		        new FileOutputStream(target.toFile()));
+		pipe.call();
+		assertEquals("Unexpected number of bytes transferred.", data.length, pipe.getBytesTransferred());
+		assertTrue("Unexpected target contents.", Arrays.equals(data, Files.readAllBytes(target)));
+	}
+
+	public void testFileToStream() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Pipe pipe = new Pipe(new FileInputStream(source.toFile()), out);
+		pipe.call();
+		assertEquals("Unexpected number of bytes transferred.", data.length, pipe.getBytesTransferred());
+		assertTrue("Unexpected target contents.", Arrays.equals(data, out.toByteArray()));
+	}
+
+	public void testStreamToStream() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Pipe pipe = new Pipe(new ByteArrayInputStream(data), out);
+		pipe.setBufferSize(1000);
+		pipe.call();
+		assertEquals("Unexpected number of bytes transferred.", data.length, pipe.getBytesTransferred());
+		assertTrue("Unexpected target contents.", Arrays.equals(data, out.toByteArray()));
+	}
+
+	/**
+	 * Tests that a file stream that wraps a FIFO, which can't be used for
+	 * channel transfers, is written to like any other stream.
+	 */
+	public void testStreamToFifo() throws Exception {
+		final Path fifo = createFifo();
+		if (fifo == null) {
+			return;
+		}
+		try {
+			Future<byte[]> received = readFully(fifo);
+			Pipe pipe = new Pipe(new ByteArrayInputStream(data),
+			        new FileOutputStream(fifo.toFile()));
+			pipe.call();
+			assertEquals("Unexpected number of bytes transferred.", data.length, pipe.getBytesTransferred());
+			assertTrue("Unexpected data received.", Arrays.equals(data, received.get(10, TimeUnit.SECONDS)));
+		} finally {
+			Files.delete(fifo);
+		}
+	}
+
+	/**
+	 * Tests that a file stream that wraps a FIFO, which can't be used for
+	 * channel transfers, is read from like any other stream.
+	 */
+	public void testFifoToFile() throws Exception {
+		final Path fifo = createFifo();
+		if (fifo == null) {
+			return;
+		}
+		try {
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			try {
+				Future<Object> writer = executor.submit(new Callable<Object>() {
+					public Object call() throws IOException {
+						Files.write(fifo, data);
+						return null;
+					}
+				});
+				Pipe pipe = new Pipe(new FileInputStream(fifo.toFile()),
+				        new FileOutputStream(target.toFile()));
+				pipe.call();
+				writer.get(10, TimeUnit.SECONDS);
+			} finally {
+				executor.shutdown();
+			}
+			assertTrue("Unexpected target contents.", Arrays.equals(data, Files.readAllBytes(target)));
+		} finally {
+			Files.delete(fifo);
+		}
+	}
+
+	public void testAsynchronous() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Pipe pipe = new Pipe(new ByteArrayInputStream(data), out);
+		pipe.setAsynchronous(true);
+		pipe.setBufferSize(1000);
+		pipe.call();
+		assertEquals("Unexpected number of bytes transferred.", data.length, pipe.getBytesTransferred());
+		assertTrue("Unexpected target contents.", Arrays.equals(data, out.toByteArray()));
+	}
+
+	public void testAsynchronousFileToFile() throws Exception {
+		Pipe pipe = new Pipe(new FileInputStream(source.toFile()),
+		        new FileOutputStream(target.toFile()));
+		pipe.setAsynchronous(true);
+		pipe.call();
+		assertTrue("Unexpected target contents.", Arrays.equals(data, Files.readAllBytes(target)));
+	}
+
+	/**
+	 * Tests that the reading thread waits while all buffers are waiting to be
+	 * written.
+	 */
+	public void testAsynchronousBackPressure() throws Exception {
+		final AtomicInteger reads = new AtomicInteger();
+		InputStream in = new FilterInputStream(new ByteArrayInputStream(data)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				reads.incrementAndGet();
+				return super.read(b, off, len);
+			}
+		};
+		final CountDownLatch writable = new CountDownLatch(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				awaitUninterruptibly(writable);
+				super.write(b, off, len);
+			}
+		};
+
+		final Pipe pipe = new Pipe(in, out);
+		pipe.setAsynchronous(true);
+		pipe.setBufferSize(1000);
+		pipe.setBufferCount(3);
+		FutureTask<Object> task = new FutureTask<Object>(pipe);
+		new Thread(task).start();
+
+		for (int i = 0; i < 1000 && reads.get() < 3; i++) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		assertEquals("Reader must wait while all buffers are filled.", 3, reads.get());
+
+		writable.countDown();
+		task.get(10, TimeUnit.SECONDS);
+		assertTrue("Unexpected target contents.", Arrays.equals(data, out.toByteArray()));
+		assertTrue("Expected output stall time.", pipe.getOutputStallTime() > 0);
+	}
+
+	public void testAsynchronousReadError() throws Exception {
+		final IOException error = new IOException("read error");
+		InputStream in = new FilterInputStream(new ByteArrayInputStream(data)) {
+			private int remaining = 3;
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (--remaining < 0) {
+					throw error;
+				}
+				return super.read(b, off, len);
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RecordingThreadFactory threads = new RecordingThreadFactory();
+		Pipe pipe = new Pipe(in, out);
+		pipe.setAsynchronous(true);
+		pipe.setBufferSize(1000);
+		pipe.setThreadFactory(threads);
+		try {
+			pipe.call();
+			fail("Expected read error.");
+		} catch (IOException e) {
+			assertSame("Unexpected exception.", error, e);
+		}
+		assertEquals("Data read before the error must be written.", 3000, out.size());
+		assertFalse("Reader must be terminated.", threads.thread.isAlive());
+	}
+
+	public void testAsynchronousWriteError() throws Exception {
+		final IOException error = new IOException("write error");
+		OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw error;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				throw error;
+			}
+		};
+		RecordingThreadFactory threads = new RecordingThreadFactory();
+		Pipe pipe = new Pipe(new ByteArrayInputStream(data), out, false);
+		pipe.setAsynchronous(true);
+		pipe.setBufferSize(1000);
+		pipe.setThreadFactory(threads);
+		try {
+			pipe.call();
+			fail("Expected write error.");
+		} catch (IOException e) {
+			assertSame("Unexpected exception.", error, e);
+		}
+		assertFalse("Reader must be terminated.", threads.thread.isAlive());
+	}
+
+	/**
+	 * Tests that cancelling an asynchronous pipe while the reader is stuck in
+	 * a read that ignores interrupts doesn't corrupt the data of the next
+	 * call, when the stuck read finally fills the buffer it was given.
+	 */
+	public void testAsynchronousCancel() throws Exception {
+		final CountDownLatch readStarted = new CountDownLatch(1);
+		final CountDownLatch readReleased = new CountDownLatch(1);
+		final CountDownLatch garbageWritten = new CountDownLatch(1);
+		InputStream in = new FilterInputStream(new ByteArrayInputStream(data)) {
+			private boolean first = true;
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				synchronized (this) {
+					if (!first) {
+						return super.read(b, off, len);
+					}
+					first = false;
+				}
+				readStarted.countDown();
+				awaitUninterruptibly(readReleased);
+				Arrays.fill(b, off, off + len, (byte) 0x55);
+				garbageWritten.countDown();
+				return len;
+			}
+		};
+		final CountDownLatch writeStarted = new CountDownLatch(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				writeStarted.countDown();
+				try {
+					garbageWritten.await(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.write(b, off, len);
+			}
+		};
+
+		final Pipe pipe = new Pipe(in, out, false);
+		pipe.setAsynchronous(true);
+		pipe.setBufferSize(1000);
+
+		final AtomicReference<Throwable> cancelled = new AtomicReference<Throwable>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					pipe.call();
+				} catch (Throwable e) {
+					cancelled.set(e);
+				}
+			}
+		};
+		thread.start();
+		assertTrue(readStarted.await(10, TimeUnit.SECONDS));
+		thread.interrupt();
+		thread.join(10000);
+		assertTrue("Expected cancellation, but was: " + cancelled.get(), cancelled.get() instanceof InterruptedIOException);
+
+		FutureTask<Object> task = new FutureTask<Object>(pipe);
+		new Thread(task).start();
+		assertTrue(writeStarted.await(10, TimeUnit.SECONDS));
+		readReleased.countDown();
+		task.get(10, TimeUnit.SECONDS);
+		assertTrue("Unexpected target contents.", Arrays.equals(data, out.toByteArray()));
+	}
+
+	/**
+	 * Creates a named pipe, if supported by the platform.
+	 *
+	 * @return the named pipe, or <code>null</code> if not supported
+	 */
+	private Path createFifo() throws Exception {
+		Path fifo = source.resolveSibling(source.getFileName() + ".fifo");
+		try {
+			Process process = new ProcessBuilder("mkfifo", fifo.toString()).start();
+			if (process.waitFor() == 0) {
+				return fifo;
+			}
+		} catch (IOException e) {
+			// mkfifo isn't available
+		}
+		return null;
+	}
+
+	private static Future<byte[]> readFully(final Path file) {
+		FutureTask<byte[]> result = new FutureTask<byte[]>(new Callable<byte[]>() {
+			public byte[] call() throws IOException {
+				return Files.readAllBytes(file);
+			}
+		});
+		Thread thread = new Thread(result, "FIFO reader");
+		thread.setDaemon(true);
+		thread.start();
+		return result;
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Creates daemon threads, keeping track of the last one created.
+	 */
+	private static class RecordingThreadFactory implements ThreadFactory {
+		private volatile Thread thread;
+
+		public Thread newThread(Runnable r) {
+			Thread result = new Thread(r, "Pipe reader");
+			result.setDaemon(true);
+			thread = result;
+			return result;
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2018 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.meinders.common.util;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for the {@link Pipeline} class and the included
+ * {@link BufferTransform}s.
+ *
+ * @author Gerrit Meinders
+ */
+public class PipelineTest extends TestCase {
+	private byte[] data;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// compressible, but not trivially so
+		data = new byte[500009];
+		Random random = new Random(1);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + random.nextInt(8));
+		}
+	}
+
+	public void testFanOut() throws Exception {
+		ByteArrayOutputStream[] outs = new ByteArrayOutputStream[5];
+		Pipeline pipeline = new Pipeline(new ByteArrayInputStream(data));
+		pipeline.setBufferSize(1000);
+		pipeline.setQueueCapacity(2);
+		for (int i = 0; i < outs.length; i++) {
+			outs[i] = new ByteArrayOutputStream();
+			pipeline.addSink(outs[i]);
+		}
+		ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+		pipeline.addSink(Channels.newChannel(channelOut));
+		pipeline.addBranch(new ChecksumTransform(new CRC32()));
+		pipeline.call();
+
+		assertEquals("Unexpected number of bytes read.", data.length, pipeline.getBytesRead());
+		for (ByteArrayOutputStream out : outs) {
+			assertTrue("Unexpected sink contents.", Arrays.equals(data, out.toByteArray()));
+		}
+		assertTrue("Unexpected channel contents.", Arrays.equals(data, channelOut.toByteArray()));
+	}
+
+	public void testChecksumAndDigest() throws Exception {
+		ChecksumTransform crc = new ChecksumTransform(new CRC32C());
+		DigestTransform sha = new DigestTransform("SHA-256");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Pipeline pipeline = new Pipeline(new ByteArrayInputStream(data));
+		pipeline.setBufferSize(1000);
+		pipeline.addSink(out, crc, sha);
+		pipeline.call();
+
+		CRC32C expectedCrc = new CRC32C();
+		expectedCrc.update(data);
+		assertEquals("Unexpected checksum.", expectedCrc.getValue(), crc.getValue());
+		byte[] expectedDigest = MessageDigest.getInstance("SHA-256").digest(data);
+		assertTrue("Unexpected digest.", Arrays.equals(expectedDigest, sha.getDigest()));
+		assertTrue("Unexpected sink contents.", Arrays.equals(data, out.toByteArray()));
+	}
+
+	public void testDeflate() throws Exception {
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+		ByteArrayOutputStream deflate = new ByteArrayOutputStream();
+		ChecksumTransform crc = new ChecksumTransform(new CRC32());
+
+		Pipeline pipeline = new Pipeline(new ByteArrayInputStream(data));
+		pipeline.setBufferSize(1000);
+		pipeline.addSink(gzip, new DeflaterTransform());
+		pipeline.addSink(zlib, new DeflaterTransform(DeflaterTransform.Format.ZLIB, Deflater.BEST_SPEED));
+		pipeline.addSink(deflate, crc, new DeflaterTransform(DeflaterTransform.Format.DEFLATE, Deflater.DEFAULT_COMPRESSION));
+		pipeline.call();
+
+		assertTrue("Expected compression.", gzip.size() < data.length / 2);
+		// GZIPInputStream also verifies the CRC-32 and size in the trailer
+		assertTrue("Unexpected GZIP contents.", Arrays.equals(data, readFully(new GZIPInputStream(new ByteArrayInputStream(gzip.toByteArray())))));
+		assertTrue("Unexpected zlib contents.", Arrays.equals(data, readFully(new InflaterInputStream(new ByteArrayInputStream(zlib.toByteArray())))));
+		assertTrue("Unexpected deflate contents.", Arrays.equals(data, readFully(new InflaterInputStream(new ByteArrayInputStream(deflate.toByteArray()), new Inflater(true)))));
+
+		CRC32 expectedCrc = new CRC32();
+		expectedCrc.update(data);
+		assertEquals("Unexpected checksum.", expectedCrc.getValue(), crc.getValue());
+	}
+
+	public void testEmptyInput() throws Exception {
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		DigestTransform sha = new DigestTransform("SHA-256");
+		Pipeline pipeline = new Pipeline(new ByteArrayInputStream(new byte[0]));
+		pipeline.addSink(gzip, sha, new DeflaterTransform());
+		pipeline.call();
+
+		assertEquals("Unexpected GZIP contents.", 0, readFully(new GZIPInputStream(new ByteArrayInputStream(gzip.toByteArray()))).length);
+		assertTrue("Unexpected digest.", Arrays.equals(MessageDigest.getInstance("SHA-256").digest(), sha.getDigest()));
+	}
+
+	/**
+	 * Tests that a failing sink aborts the whole pipeline, including the
+	 * source, which would otherwise block on the full queue of the failed
+	 * sink.
+	 */
+	public void testFailingSink() throws Exception {
+		final IOException error = new IOException("sink failed");
+		OutputStream failing = new OutputStream() {
+			private int writes = 0;
+
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (++writes > 3) {
+					throw error;
+				}
+			}
+		};
+		CloseTrackingOutputStream other = new CloseTrackingOutputStream();
+
+		Pipeline pipeline = new Pipeline(new ByteArrayInputStream(data));
+		pipeline.setBufferSize(1000);
+		pipeline.setQueueCapacity(1);
+		pipeline.addSink(other, new ChecksumTransform(new CRC32()));
+		pipeline.addSink(failing);
+		FutureTask<Object> task = new FutureTask<Object>((Callable<Object>) pipeline);
+		new Thread(task).start();
+		try {
+			task.get(10, TimeUnit.SECONDS);
+			fail("Expected sink failure.");
+		} catch (ExecutionException e) {
+			assertSame("Unexpected exception.", error, e.getCause());
+		}
+		assertTrue("Sinks must be closed.", other.closed);
+		assertTrue("Source must be aborted.", pipeline.getBytesRead() < data.length);
+	}
+
+	/**
+	 * Tests that a cancelled pipeline doesn't close its sinks while a stage is
+	 * still writing to them.
+	 */
+	public void testCancel() throws Exception {
+		CloseTrackingOutputStream slow = new CloseTrackingOutputStream();
+		slow.writeDelay = 200;
+		InputStream endless = new InputStream() {
+			@Override
+			public int read() {
+				return 'a';
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				Arrays.fill(b, off, off + len, (byte) 'a');
+				return len;
+			}
+		};
+
+		final Pipeline pipeline = new Pipeline(endless);
+		pipeline.setBufferSize(1000);
+		pipeline.addSink(slow, new DeflaterTransform());
+		final AtomicReference<Throwable> result = new AtomicReference<Throwable>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					pipeline.call();
+				} catch (Throwable e) {
+					result.set(e);
+				}
+			}
+		};
+		thread.start();
+		assertTrue(slow.writing.await(10, TimeUnit.SECONDS));
+		thread.interrupt();
+		thread.join(10000);
+
+		assertFalse("Pipeline must terminate.", thread.isAlive());
+		assertTrue("Expected cancellation, but was: " + result.get(), result.get() instanceof InterruptedIOException);
+		assertTrue("Sinks must be closed.", slow.closed);
+		assertFalse("Sink closed while writing.", slow.closedWhileWriting);
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Pipe(in, out).call();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Records whether the stream is closed, and whether that happened during
+	 * a call to {@link #write(byte[], int, int)}. Writes may be delayed,
+	 * ignoring interrupts like many blocking streams.
+	 */
+	private static class CloseTrackingOutputStream extends ByteArrayOutputStream {
+		volatile boolean closed;
+
+		volatile boolean closedWhileWriting;
+
+		long writeDelay;
+
+		final CountDownLatch writing = new CountDownLatch(1);
+
+		private final AtomicInteger writers = new AtomicInteger();
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			writers.incrementAndGet();
+			writing.countDown();
+			try {
+				long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeDelay);
+				long remaining;
+				while ((remaining = end - System.nanoTime()) > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(remaining);
+					} catch (InterruptedException e) {
+						// ignored
+					}
+				}
+				super.write(b, off, len);
+			} finally {
+				writers.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			if (writers.get() > 0) {
+				closedWhileWriting = true;
+			}
+		}
+	}
+}